@@ -0,0 +1,421 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.bundlerepository.impl;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.felix.bundlerepository.Capability;
+import org.apache.felix.bundlerepository.Repository;
+import org.apache.felix.bundlerepository.Requirement;
+import org.apache.felix.bundlerepository.Resource;
+
+/**
+ * Index of the capabilities provided by the resources of a repository.
+ *
+ * Capabilities are grouped by name (namespace) and, for the well-known namespaces, by the value of their
+ * key attribute (package name, symbolic name, service interface...). Looking up the providers of a
+ * requirement whose filter contains an equality on that attribute then only has to check a handful of
+ * capabilities instead of every capability of every resource.
+ *
+ * An index is immutable once built and can be shared between threads and resolver instances.
+ */
+class CapabilityIndex
+{
+    private static final Map<String, String> KEY_ATTRIBUTES = new HashMap<String, String>();
+
+    static
+    {
+        KEY_ATTRIBUTES.put(Capability.PACKAGE, Capability.PACKAGE);
+        KEY_ATTRIBUTES.put(Capability.BUNDLE, Resource.SYMBOLIC_NAME);
+        KEY_ATTRIBUTES.put(Capability.FRAGMENT, "host");
+        KEY_ATTRIBUTES.put(Capability.SERVICE, Capability.SERVICE);
+        KEY_ATTRIBUTES.put(Capability.EXECUTIONENVIRONMENT, Capability.EXECUTIONENVIRONMENT);
+    }
+
+    private final Resource[] m_resources;
+    private final List<Entry> m_entries = new ArrayList<Entry>();
+    private final Map<String, List<Entry>> m_byName = new HashMap<String, List<Entry>>();
+    private final Map<String, Map<String, List<Entry>>> m_byKey = new HashMap<String, Map<String, List<Entry>>>();
+    private final Map<String, List<Entry>> m_unkeyed = new HashMap<String, List<Entry>>();
+
+    CapabilityIndex(Resource[] resources)
+    {
+        m_resources = resources;
+        for (int resIdx = 0; (resources != null) && (resIdx < resources.length); resIdx++)
+        {
+            Resource resource = resources[resIdx];
+            Capability[] caps = resource != null ? resource.getCapabilities() : null;
+            for (int capIdx = 0; (caps != null) && (capIdx < caps.length); capIdx++)
+            {
+                index(new Entry(m_entries.size(), resource, caps[capIdx]));
+            }
+        }
+    }
+
+    private void index(Entry entry)
+    {
+        m_entries.add(entry);
+        String name = entry.capability.getName();
+        add(m_byName, name, entry);
+
+        String keyAttribute = KEY_ATTRIBUTES.get(name);
+        if (keyAttribute == null)
+        {
+            return;
+        }
+        List<String> values = getStringValues(entry.capability.getPropertiesAsMap(), keyAttribute);
+        if (values == null)
+        {
+            // Cannot be indexed, the capability must be checked for any requirement on this namespace.
+            add(m_unkeyed, name, entry);
+            return;
+        }
+        Map<String, List<Entry>> byValue = m_byKey.get(name);
+        if (byValue == null)
+        {
+            byValue = new HashMap<String, List<Entry>>();
+            m_byKey.put(name, byValue);
+        }
+        for (String value : values)
+        {
+            List<Entry> entries = byValue.get(value);
+            // Multi-valued attributes may list the same value twice
+            if (entries == null || entries.get(entries.size() - 1) != entry)
+            {
+                add(byValue, value, entry);
+            }
+        }
+    }
+
+    private static void add(Map<String, List<Entry>> map, String key, Entry entry)
+    {
+        List<Entry> entries = map.get(key);
+        if (entries == null)
+        {
+            entries = new ArrayList<Entry>();
+            map.put(key, entries);
+        }
+        entries.add(entry);
+    }
+
+    /**
+     * Gets the string values of an attribute, looking up its name without case as filters do.
+     * @return the values, or <code>null</code> if the attribute is missing or is not made of strings
+     */
+    private static List<String> getStringValues(Map<String, Object> attributes, String name)
+    {
+        Object value = attributes.get(name);
+        if (value == null)
+        {
+            for (Map.Entry<String, Object> attribute : attributes.entrySet())
+            {
+                if (attribute.getKey().equalsIgnoreCase(name))
+                {
+                    value = attribute.getValue();
+                    break;
+                }
+            }
+        }
+        if (value instanceof String)
+        {
+            return Collections.singletonList((String) value);
+        }
+        Collection<?> collection = null;
+        if (value instanceof Collection)
+        {
+            collection = (Collection<?>) value;
+        }
+        else if (value instanceof String[])
+        {
+            collection = Arrays.asList((String[]) value);
+        }
+        if (collection == null)
+        {
+            return null;
+        }
+        List<String> values = new ArrayList<String>(collection.size());
+        for (Object o : collection)
+        {
+            if (!(o instanceof String))
+            {
+                return null;
+            }
+            values.add((String) o);
+        }
+        return values;
+    }
+
+    /**
+     * Checks whether this index has been built for the given resources.
+     */
+    boolean isIndexOf(Resource[] resources)
+    {
+        if (resources == m_resources)
+        {
+            return true;
+        }
+        if (resources == null || m_resources == null || resources.length != m_resources.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < resources.length; i++)
+        {
+            if (resources[i] != m_resources[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Resource[] getResources()
+    {
+        return m_resources;
+    }
+
+    /**
+     * Finds the capabilities satisfying the given requirement, in the order of the indexed resources.
+     * @param req the requirement
+     * @return the matching capabilities, never <code>null</code>
+     */
+    List<ResourceCapability> findProviders(Requirement req)
+    {
+        List<ResourceCapability> result = new ArrayList<ResourceCapability>();
+        for (Entry entry : getCandidates(req))
+        {
+            if (req.isSatisfied(entry.capability))
+            {
+                result.add(new ResourceCapabilityImpl(entry.resource, entry.capability));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the capabilities that may satisfy the given requirement. Only our own requirements are known to
+     * check the capability name, other implementations are checked against every capability.
+     */
+    private List<Entry> getCandidates(Requirement req)
+    {
+        if (!(req instanceof RequirementImpl))
+        {
+            return m_entries;
+        }
+        String name = req.getName();
+        List<Entry> named = m_byName.get(name);
+        if (named == null)
+        {
+            return Collections.emptyList();
+        }
+        String keyAttribute = KEY_ATTRIBUTES.get(name);
+        String value = keyAttribute != null ? getEqualityValue(req.getFilter(), keyAttribute) : null;
+        if (value == null)
+        {
+            return named;
+        }
+        Map<String, List<Entry>> byValue = m_byKey.get(name);
+        List<Entry> keyed = byValue != null ? byValue.get(value) : null;
+        List<Entry> unkeyed = m_unkeyed.get(name);
+        if (unkeyed == null)
+        {
+            return keyed != null ? keyed : Collections.<Entry>emptyList();
+        }
+        if (keyed == null)
+        {
+            return unkeyed;
+        }
+        return merge(keyed, unkeyed);
+    }
+
+    /**
+     * Merges two lists of entries sorted by ordinal, so candidates keep the order of the resources.
+     */
+    private static List<Entry> merge(List<Entry> l1, List<Entry> l2)
+    {
+        List<Entry> merged = new ArrayList<Entry>(l1.size() + l2.size());
+        int i1 = 0;
+        int i2 = 0;
+        while (i1 < l1.size() && i2 < l2.size())
+        {
+            if (l1.get(i1).ordinal < l2.get(i2).ordinal)
+            {
+                merged.add(l1.get(i1++));
+            }
+            else
+            {
+                merged.add(l2.get(i2++));
+            }
+        }
+        merged.addAll(l1.subList(i1, l1.size()));
+        merged.addAll(l2.subList(i2, l2.size()));
+        return merged;
+    }
+
+    /**
+     * Extracts the value a filter requires for the given attribute, if the filter is an equality on this
+     * attribute or a conjunction containing such an equality at its top level.
+     * @param filter the filter string, as normalized by the filter implementation
+     * @param attribute the attribute name
+     * @return the unescaped value, or <code>null</code> if the filter does not constrain the attribute to a single value
+     */
+    static String getEqualityValue(String filter, String attribute)
+    {
+        if (filter == null)
+        {
+            return null;
+        }
+        filter = filter.trim();
+        if (filter.startsWith("(&") && filter.endsWith(")"))
+        {
+            int depth = 0;
+            int start = -1;
+            for (int i = 2; i < filter.length() - 1; i++)
+            {
+                char c = filter.charAt(i);
+                if (c == '\\')
+                {
+                    i++;
+                }
+                else if (c == '(')
+                {
+                    if (depth++ == 0)
+                    {
+                        start = i;
+                    }
+                }
+                else if (c == ')')
+                {
+                    if (--depth == 0)
+                    {
+                        String value = getSimpleEqualityValue(filter.substring(start, i + 1), attribute);
+                        if (value != null)
+                        {
+                            return value;
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+        return getSimpleEqualityValue(filter, attribute);
+    }
+
+    private static String getSimpleEqualityValue(String filter, String attribute)
+    {
+        if (!filter.startsWith("(") || !filter.endsWith(")"))
+        {
+            return null;
+        }
+        int eq = filter.indexOf('=');
+        if (eq < 1)
+        {
+            return null;
+        }
+        char op = filter.charAt(eq - 1);
+        if (op == '<' || op == '>' || op == '~' || op == '*')
+        {
+            return null;
+        }
+        if (!filter.substring(1, eq).trim().equalsIgnoreCase(attribute))
+        {
+            return null;
+        }
+        StringBuilder value = new StringBuilder();
+        for (int i = eq + 1; i < filter.length() - 1; i++)
+        {
+            char c = filter.charAt(i);
+            if (c == '*')
+            {
+                // Presence or substring
+                return null;
+            }
+            if (c == '\\' && i + 1 < filter.length() - 1)
+            {
+                c = filter.charAt(++i);
+            }
+            value.append(c);
+        }
+        return value.toString();
+    }
+
+    private static class Entry
+    {
+        final int ordinal;
+        final Resource resource;
+        final Capability capability;
+
+        Entry(int ordinal, Resource resource, Capability capability)
+        {
+            this.ordinal = ordinal;
+            this.resource = resource;
+            this.capability = capability;
+        }
+    }
+
+    /**
+     * Keeps the indexes of the repositories, so they are reused by successive resolvers until the content
+     * of a repository changes. Indexes are softly referenced: they reference the resources, which may
+     * reference their repository, and would otherwise prevent the weak keys from being cleared.
+     */
+    static class Cache
+    {
+        private final Map<Repository, SoftReference<CapabilityIndex>> m_indexes =
+            new WeakHashMap<Repository, SoftReference<CapabilityIndex>>();
+
+        /**
+         * Gets the index of the current resources of the given repository, building it if needed.
+         */
+        CapabilityIndex getIndex(Repository repository)
+        {
+            Resource[] resources = repository.getResources();
+            synchronized (m_indexes)
+            {
+                SoftReference<CapabilityIndex> ref = m_indexes.get(repository);
+                CapabilityIndex index = ref != null ? ref.get() : null;
+                if (index != null && index.isIndexOf(resources))
+                {
+                    return index;
+                }
+            }
+            // Build outside of the lock, concurrent builds of the same index are harmless.
+            CapabilityIndex index = new CapabilityIndex(resources);
+            synchronized (m_indexes)
+            {
+                m_indexes.put(repository, new SoftReference<CapabilityIndex>(index));
+            }
+            return index;
+        }
+
+        void remove(Repository repository)
+        {
+            synchronized (m_indexes)
+            {
+                m_indexes.remove(repository);
+            }
+        }
+    }
+}
@@ -89,6 +89,17 @@ public class DataModelHelperImpl implements DataModelHelper
     }
 
     public Repository repository(final URL url) throws Exception
+    {
+        URLConnection conn = url.openConnection();
+        FileUtil.setProxyAuth(conn);
+        return repository(url, conn);
+    }
+
+    /**
+     * Parses the repository at the given URL from the given connection to it, which has
+     * to be set up with all request properties already as it may have been connected.
+     */
+    RepositoryImpl repository(final URL url, final URLConnection conn) throws Exception
     {
         InputStream is = null;
 
@@ -96,7 +107,7 @@ public class DataModelHelperImpl implements DataModelHelper
         {
             if (url.getPath().endsWith(".zip"))
             {
-                ZipInputStream zin = new ZipInputStream(FileUtil.openURL(url));
+                ZipInputStream zin = new ZipInputStream(FileUtil.getInputStream(conn));
                 ZipEntry entry = zin.getNextEntry();
                 while (entry != null)
                 {
@@ -122,11 +133,11 @@ public class DataModelHelperImpl implements DataModelHelper
             }
             else if (url.getPath().endsWith(".gz"))
             {
-                is = new GZIPInputStream(FileUtil.openURL(url));
+                is = new GZIPInputStream(FileUtil.getInputStream(conn));
             }
             else
             {
-                is = FileUtil.openURL(url);
+                is = FileUtil.getInputStream(conn);
             }
 
             if (is != null)
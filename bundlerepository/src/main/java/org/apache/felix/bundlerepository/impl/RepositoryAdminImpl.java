@@ -18,6 +18,7 @@
  */
 package org.apache.felix.bundlerepository.impl;
 
+import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.AccessController;
@@ -27,11 +28,17 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.felix.bundlerepository.Capability;
 import org.apache.felix.bundlerepository.DataModelHelper;
 import org.apache.felix.bundlerepository.Repository;
 import org.apache.felix.bundlerepository.RepositoryAdmin;
@@ -50,15 +57,20 @@ public class RepositoryAdminImpl implements RepositoryAdmin
     private final Logger m_logger;
     private final SystemRepositoryImpl m_system;
     private final LocalRepositoryImpl m_local;
-    private final DataModelHelper m_helper = new DataModelHelperImpl();
+    private final DataModelHelperImpl m_helper = new DataModelHelperImpl();
+    private final RepositoryCache m_cache;
     private Map m_repoMap = new LinkedHashMap();
     private boolean m_initialized = false;
+    private final CapabilityIndex.Cache m_indexes = new CapabilityIndex.Cache();
+    private ExecutorService m_executor;
 
     // Reusable comparator for sorting resources by name.
     private Comparator m_nameComparator = new ResourceComparator();
 
     public static final String REPOSITORY_URL_PROP = "obr.repository.url";
     public static final String EXTERN_REPOSITORY_TAG = "extern-repositories";
+    public static final String RESOLVER_THREADS_PROP = "obr.resolver.threads";
+    public static final String REPOSITORY_CACHE_PROP = "obr.repository.cache";
 
     public RepositoryAdminImpl(BundleContext context, Logger logger)
     {
@@ -66,6 +78,21 @@ public class RepositoryAdminImpl implements RepositoryAdmin
         m_logger = logger;
         m_system = new SystemRepositoryImpl(context, logger);
         m_local = new LocalRepositoryImpl(context, logger);
+        m_cache = createCache(context, m_helper, logger);
+    }
+
+    /**
+     * Creates the cache of parsed repositories in the bundle data area, unless it is disabled
+     * through the {@link #REPOSITORY_CACHE_PROP} property or there is no data area.
+     */
+    private static RepositoryCache createCache(BundleContext context, DataModelHelperImpl helper, Logger logger)
+    {
+        if ("false".equalsIgnoreCase(context.getProperty(REPOSITORY_CACHE_PROP)))
+        {
+            return null;
+        }
+        File dir = context.getDataFile("repository-cache");
+        return dir != null ? new RepositoryCache(dir, helper, logger) : null;
     }
 
     public DataModelHelper getHelper()
@@ -86,6 +113,14 @@ public class RepositoryAdminImpl implements RepositoryAdmin
     public void dispose()
     {
         m_local.dispose();
+        synchronized (this)
+        {
+            if (m_executor != null)
+            {
+                m_executor.shutdownNow();
+                m_executor = null;
+            }
+        }
     }
 
     public Repository addRepository(String uri) throws Exception
@@ -111,10 +146,14 @@ public class RepositoryAdminImpl implements RepositoryAdmin
             {
                 public Object run() throws Exception
                 {
-                    return m_helper.repository(url);
+                    return m_cache != null ? m_cache.repository(url) : m_helper.repository(url);
                 }
             });
-            m_repoMap.put(url.toExternalForm(), repository);
+            Repository previous = (Repository) m_repoMap.put(url.toExternalForm(), repository);
+            if (previous != null)
+            {
+                m_indexes.remove(previous);
+            }
 
             // resolve referrals
             hopCount--;
@@ -147,14 +186,24 @@ public class RepositoryAdminImpl implements RepositoryAdmin
         try
         {
             URL url = new URL(uri);
-            return m_repoMap.remove(url.toExternalForm()) != null;
+            return removeRepositoryAndIndex(url.toExternalForm());
         }
         catch (MalformedURLException e)
         {
-            return m_repoMap.remove(uri) != null;
+            return removeRepositoryAndIndex(uri);
         }
     }
 
+    private boolean removeRepositoryAndIndex(String key)
+    {
+        Repository repository = (Repository) m_repoMap.remove(key);
+        if (repository != null)
+        {
+            m_indexes.remove(repository);
+        }
+        return repository != null;
+    }
+
     public synchronized Repository[] listRepositories()
     {
         initialize();
@@ -181,13 +230,53 @@ public class RepositoryAdminImpl implements RepositoryAdmin
         {
             return resolver();
         }
-        return new ResolverImpl(m_context, repositories, m_logger);
+        return new ResolverImpl(m_context, repositories, m_logger, m_indexes, getExecutor());
     }
 
-    public synchronized Resource[] discoverResources(String filterExpr) throws InvalidSyntaxException
+    /**
+     * Gets the executor used by the resolvers to search the providers of requirements in parallel.
+     * The number of threads is given by the {@link #RESOLVER_THREADS_PROP} property and defaults
+     * to the number of processors; a value lower than 2 disables the parallel search.
+     */
+    private ExecutorService getExecutor()
     {
-        initialize();
+        if (m_executor == null)
+        {
+            int threads = Runtime.getRuntime().availableProcessors();
+            String threadsStr = m_context.getProperty(RESOLVER_THREADS_PROP);
+            if (threadsStr != null)
+            {
+                try
+                {
+                    threads = Integer.parseInt(threadsStr.trim());
+                }
+                catch (NumberFormatException ex)
+                {
+                    m_logger.log(Logger.LOG_WARNING, "Invalid value for " + RESOLVER_THREADS_PROP + ": " + threadsStr);
+                }
+            }
+            if (threads < 2)
+            {
+                return null;
+            }
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+                {
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread thread = new Thread(r, "OBR Resolver");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            executor.allowCoreThreadTimeOut(true);
+            m_executor = executor;
+        }
+        return m_executor;
+    }
 
+    public Resource[] discoverResources(String filterExpr) throws InvalidSyntaxException
+    {
         Filter filter = filterExpr != null ? m_helper.filter(filterExpr) : null;
         Resource[] resources;
         MapToDictionary dict = new MapToDictionary(null);
@@ -212,42 +301,45 @@ public class RepositoryAdminImpl implements RepositoryAdmin
         return resources;
     }
 
-    public synchronized Resource[] discoverResources(Requirement[] requirements)
+    public Resource[] discoverResources(Requirement[] requirements)
     {
-        initialize();
-
         Resource[] resources = null;
         Repository[] repos = listRepositories();
         List matchList = new ArrayList();
         for (int repoIdx = 0; (repos != null) && (repoIdx < repos.length); repoIdx++)
         {
-            resources = repos[repoIdx].getResources();
-            for (int resIdx = 0; (resources != null) && (resIdx < resources.length); resIdx++)
+            CapabilityIndex index = m_indexes.getIndex(repos[repoIdx]);
+            resources = index.getResources();
+            if ((requirements == null) || (requirements.length == 0))
             {
-                boolean match = true;
-                for (int reqIdx = 0; (requirements != null) && (reqIdx < requirements.length); reqIdx++)
+                for (int resIdx = 0; (resources != null) && (resIdx < resources.length); resIdx++)
                 {
-                    boolean reqMatch = false;
-                    Capability[] caps = resources[resIdx].getCapabilities();
-                    for (int capIdx = 0; (caps != null) && (capIdx < caps.length); capIdx++)
-                    {
-                        if (requirements[reqIdx].isSatisfied(caps[capIdx]))
-                        {
-                            reqMatch = true;
-                            break;
-                        }
-                    }
-                    match &= reqMatch;
-                    if (!match)
+                    matchList.add(resources[resIdx]);
+                }
+                continue;
+            }
+            // Start from the providers of the first requirement, and only keep those
+            // satisfying all the other requirements.
+            Set matches = null;
+            for (int reqIdx = 0; reqIdx < requirements.length; reqIdx++)
+            {
+                Set providers = new LinkedHashSet();
+                List caps = index.findProviders(requirements[reqIdx]);
+                for (int capIdx = 0; capIdx < caps.size(); capIdx++)
+                {
+                    Resource provider = ((ResourceCapability) caps.get(capIdx)).getResource();
+                    if ((matches == null) || matches.contains(provider))
                     {
-                        break;
+                        providers.add(provider);
                     }
                 }
-                if (match)
+                matches = providers;
+                if (matches.isEmpty())
                 {
-                    matchList.add(resources[resIdx]);
+                    break;
                 }
             }
+            matchList.addAll(matches);
         }
 
         // Convert matching resources to an array an sort them by name.
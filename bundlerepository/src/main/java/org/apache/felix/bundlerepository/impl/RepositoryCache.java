@@ -0,0 +1,727 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.bundlerepository.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.bundlerepository.Capability;
+import org.apache.felix.bundlerepository.Property;
+import org.apache.felix.bundlerepository.Requirement;
+import org.apache.felix.bundlerepository.Resource;
+import org.apache.felix.utils.log.Logger;
+import org.osgi.framework.Version;
+
+/**
+ * Binary cache of parsed repository indexes.
+ *
+ * Each repository URL gets a snapshot file in the cache directory, holding the repository content
+ * in a compact form: a table of unique strings followed by resources, capabilities and requirements
+ * referencing those strings by index, with the names, types and values of properties stored as separate
+ * columns. The snapshot is read back with a buffered stream in one pass, so no XML parsing is involved
+ * and each distinct string is only allocated once.
+ *
+ * A snapshot of a local index is used as long as the last modification time and the length of the
+ * index are the ones recorded when it was written. Remote indexes are fetched with a conditional
+ * request using the recorded modification time and entity tag, and the snapshot is used when the
+ * server answers that the index is not modified. Sources which provide neither a modification time
+ * nor an entity tag are not cached.
+ */
+public class RepositoryCache
+{
+    private static final int MAGIC = 0x4F425243; // "OBRC"
+    private static final int FORMAT_VERSION = 2;
+    private static final int NO_STRING = -1;
+
+    private static final int EXTEND = 1;
+    private static final int MULTIPLE = 2;
+    private static final int OPTIONAL = 4;
+
+    private final File m_directory;
+    private final DataModelHelperImpl m_helper;
+    private final Logger m_logger;
+
+    public RepositoryCache(File directory, DataModelHelperImpl helper, Logger logger)
+    {
+        m_directory = directory;
+        m_helper = helper;
+        m_logger = logger;
+    }
+
+    /**
+     * Gets the repository at the given URL, from its snapshot if it is up to date, or by parsing it,
+     * in which case a new snapshot is written.
+     */
+    public RepositoryImpl repository(URL url) throws Exception
+    {
+        File file = getFile(url);
+        if ("file".equals(url.getProtocol()))
+        {
+            File source = new File(url.getFile());
+            Stamp stamp = source.isFile() ? new Stamp(source.lastModified(), source.length(), null) : null;
+            RepositoryImpl repository = (stamp != null && file.isFile()) ? readQuietly(file, stamp) : null;
+            if (repository == null)
+            {
+                repository = (RepositoryImpl) m_helper.repository(url);
+                store(file, stamp, repository);
+            }
+            return repository;
+        }
+
+        // Let the source tell whether the snapshot is still up to date with the request fetching it
+        Stamp cached = file.isFile() ? readStampQuietly(file) : null;
+        URLConnection conn = openConnection(url, cached);
+        try
+        {
+            boolean notModified = (conn instanceof HttpURLConnection)
+                ? ((HttpURLConnection) conn).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED
+                : cached != null && cached.equals(getStamp(conn));
+            if (notModified && (cached != null))
+            {
+                RepositoryImpl repository = readQuietly(file, cached);
+                if (repository != null)
+                {
+                    return repository;
+                }
+                // The snapshot is unusable, fetch the whole index again
+                disconnect(conn);
+                conn = openConnection(url, null);
+            }
+            Stamp stamp = getStamp(conn);
+            RepositoryImpl repository = m_helper.repository(url, conn);
+            store(file, stamp, repository);
+            return repository;
+        }
+        finally
+        {
+            disconnect(conn);
+        }
+    }
+
+    private static URLConnection openConnection(URL url, Stamp cached) throws IOException
+    {
+        URLConnection conn = url.openConnection();
+        FileUtil.setProxyAuth(conn);
+        if (cached != null)
+        {
+            if (cached.m_lastModified > 0)
+            {
+                conn.setIfModifiedSince(cached.m_lastModified);
+            }
+            if (cached.m_etag != null)
+            {
+                conn.setRequestProperty("If-None-Match", cached.m_etag);
+            }
+        }
+        return conn;
+    }
+
+    private static void disconnect(URLConnection conn)
+    {
+        if (conn instanceof HttpURLConnection)
+        {
+            ((HttpURLConnection) conn).disconnect();
+        }
+    }
+
+    /**
+     * Gets the last modification time, the length and the entity tag of the fetched index.
+     * @return the stamp, or <code>null</code> if the source does not tell when it was modified
+     */
+    private static Stamp getStamp(URLConnection conn)
+    {
+        long lastModified = conn.getLastModified();
+        String etag = conn.getHeaderField("ETag");
+        return (lastModified > 0 || etag != null) ? new Stamp(lastModified, conn.getContentLength(), etag) : null;
+    }
+
+    private void store(File file, Stamp stamp, RepositoryImpl repository)
+    {
+        if (stamp == null)
+        {
+            // An older snapshot would never be valid again
+            file.delete();
+            return;
+        }
+        try
+        {
+            write(file, stamp, repository);
+        }
+        catch (IOException ex)
+        {
+            m_logger.log(Logger.LOG_DEBUG, "Unable to cache repository " + repository.getURI(), ex);
+            file.delete();
+        }
+    }
+
+    private File getFile(URL url) throws Exception
+    {
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        byte[] digest = md.digest(url.toExternalForm().getBytes("UTF-8"));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < digest.length; i++)
+        {
+            sb.append(Integer.toHexString((digest[i] >> 4) & 0xF)).append(Integer.toHexString(digest[i] & 0xF));
+        }
+        return new File(m_directory, sb.append(".obr").toString());
+    }
+
+    //
+    // Writing
+    //
+
+    void write(File file, Stamp stamp, RepositoryImpl repository) throws IOException
+    {
+        StringTable strings = new StringTable();
+        Resource[] resources = repository.getResources();
+
+        // The string table comes first, so collect all the strings before writing anything
+        strings.add(repository.getName());
+        strings.add(repository.getURI());
+        Referral[] referrals = repository.getReferrals();
+        for (int i = 0; (referrals != null) && (i < referrals.length); i++)
+        {
+            strings.add(referrals[i].getUrl());
+        }
+        for (int i = 0; i < resources.length; i++)
+        {
+            collect(strings, resources[i]);
+        }
+
+        m_directory.mkdirs();
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            stamp.write(out);
+            strings.write(out);
+
+            out.writeInt(strings.indexOf(repository.getName()));
+            out.writeInt(strings.indexOf(repository.getURI()));
+            out.writeLong(repository.getLastModified());
+            int nbReferrals = referrals != null ? referrals.length : 0;
+            out.writeInt(nbReferrals);
+            for (int i = 0; i < nbReferrals; i++)
+            {
+                out.writeInt(referrals[i].getDepth());
+                out.writeInt(strings.indexOf(referrals[i].getUrl()));
+            }
+            out.writeInt(resources.length);
+            for (int i = 0; i < resources.length; i++)
+            {
+                writeResource(out, strings, resources[i]);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        file.delete();
+        if (!tmp.renameTo(file))
+        {
+            tmp.delete();
+            throw new IOException("Unable to rename " + tmp + " to " + file);
+        }
+    }
+
+    /**
+     * Collects the strings of a resource, in the same order as {@link #writeResource} writes them.
+     */
+    private static void collect(StringTable strings, Resource resource) throws IOException
+    {
+        for (String[] p : getResourceProperties(resource))
+        {
+            strings.add(p[0]);
+            strings.add(p[1]);
+            strings.add(p[2]);
+        }
+        String[] categories = resource.getCategories();
+        for (int i = 0; i < categories.length; i++)
+        {
+            strings.add(categories[i]);
+        }
+        Capability[] caps = resource.getCapabilities();
+        for (int i = 0; i < caps.length; i++)
+        {
+            strings.add(caps[i].getName());
+            Property[] props = caps[i].getProperties();
+            for (int j = 0; j < props.length; j++)
+            {
+                strings.add(props[j].getName());
+                strings.add(props[j].getType());
+                strings.add(props[j].getValue());
+            }
+            for (Iterator it = caps[i].getDirectives().entrySet().iterator(); it.hasNext();)
+            {
+                Map.Entry e = (Map.Entry) it.next();
+                strings.add((String) e.getKey());
+                strings.add((String) e.getValue());
+            }
+        }
+        Requirement[] reqs = resource.getRequirements();
+        for (int i = 0; i < reqs.length; i++)
+        {
+            strings.add(reqs[i].getName());
+            strings.add(reqs[i].getFilter());
+            strings.add(reqs[i].getComment());
+            for (Iterator it = reqs[i].getAttributes().entrySet().iterator(); it.hasNext();)
+            {
+                Map.Entry e = (Map.Entry) it.next();
+                if (!(e.getValue() instanceof String))
+                {
+                    throw new IOException("Unsupported requirement attribute " + e.getKey());
+                }
+                strings.add((String) e.getKey());
+                strings.add((String) e.getValue());
+            }
+            for (Iterator it = reqs[i].getDirectives().entrySet().iterator(); it.hasNext();)
+            {
+                Map.Entry e = (Map.Entry) it.next();
+                strings.add((String) e.getKey());
+                strings.add((String) e.getValue());
+            }
+        }
+    }
+
+    private static void writeResource(DataOutputStream out, StringTable strings, Resource resource)
+        throws IOException
+    {
+        List<String[]> props = getResourceProperties(resource);
+        writeColumns(out, strings, props);
+
+        String[] categories = resource.getCategories();
+        out.writeInt(categories.length);
+        for (int i = 0; i < categories.length; i++)
+        {
+            out.writeInt(strings.indexOf(categories[i]));
+        }
+
+        Capability[] caps = resource.getCapabilities();
+        out.writeInt(caps.length);
+        for (int i = 0; i < caps.length; i++)
+        {
+            out.writeInt(strings.indexOf(caps[i].getName()));
+            Property[] capProps = caps[i].getProperties();
+            List<String[]> columns = new ArrayList<String[]>(capProps.length);
+            for (int j = 0; j < capProps.length; j++)
+            {
+                columns.add(new String[] { capProps[j].getName(), capProps[j].getType(), capProps[j].getValue() });
+            }
+            writeColumns(out, strings, columns);
+            writeMap(out, strings, caps[i].getDirectives());
+        }
+
+        Requirement[] reqs = resource.getRequirements();
+        out.writeInt(reqs.length);
+        for (int i = 0; i < reqs.length; i++)
+        {
+            out.writeInt(strings.indexOf(reqs[i].getName()));
+            out.writeInt(strings.indexOf(reqs[i].getFilter()));
+            out.writeInt(strings.indexOf(reqs[i].getComment()));
+            out.writeByte((reqs[i].isExtend() ? EXTEND : 0)
+                | (reqs[i].isMultiple() ? MULTIPLE : 0)
+                | (reqs[i].isOptional() ? OPTIONAL : 0));
+            writeMap(out, strings, reqs[i].getAttributes());
+            writeMap(out, strings, reqs[i].getDirectives());
+        }
+    }
+
+    /**
+     * Writes name / type / value triples as three columns of string indexes.
+     */
+    private static void writeColumns(DataOutputStream out, StringTable strings, List<String[]> triples)
+        throws IOException
+    {
+        out.writeInt(triples.size());
+        for (int column = 0; column < 3; column++)
+        {
+            for (String[] triple : triples)
+            {
+                out.writeInt(strings.indexOf(triple[column]));
+            }
+        }
+    }
+
+    private static void writeMap(DataOutputStream out, StringTable strings, Map map) throws IOException
+    {
+        out.writeInt(map.size());
+        for (Iterator it = map.entrySet().iterator(); it.hasNext();)
+        {
+            Map.Entry e = (Map.Entry) it.next();
+            out.writeInt(strings.indexOf((String) e.getKey()));
+            out.writeInt(strings.indexOf((String) e.getValue()));
+        }
+    }
+
+    /**
+     * Gets the properties of a resource as name / type / value triples that {@link ResourceImpl#put}
+     * turns back into the same values. Categories are stored separately.
+     */
+    private static List<String[]> getResourceProperties(Resource resource)
+    {
+        List<String[]> props = new ArrayList<String[]>();
+        for (Iterator it = resource.getProperties().entrySet().iterator(); it.hasNext();)
+        {
+            Map.Entry e = (Map.Entry) it.next();
+            String key = (String) e.getKey();
+            Object value = e.getValue();
+            if (Resource.CATEGORY.equals(key) || value == null)
+            {
+                continue;
+            }
+            String type = null;
+            String str;
+            if (value instanceof Version)
+            {
+                type = Property.VERSION;
+                str = value.toString();
+            }
+            else if (value instanceof Long)
+            {
+                type = Property.LONG;
+                str = value.toString();
+            }
+            else if (value instanceof Collection)
+            {
+                type = Property.SET;
+                StringBuilder sb = new StringBuilder();
+                for (Iterator vit = ((Collection) value).iterator(); vit.hasNext();)
+                {
+                    sb.append(vit.next());
+                    if (vit.hasNext())
+                    {
+                        sb.append(',');
+                    }
+                }
+                str = sb.toString();
+            }
+            else
+            {
+                str = value.toString();
+            }
+            props.add(new String[] { key, type, str });
+        }
+        return props;
+    }
+
+    //
+    // Reading
+    //
+
+    private RepositoryImpl readQuietly(File file, Stamp stamp)
+    {
+        try
+        {
+            return read(file, stamp);
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(Logger.LOG_WARNING, "Ignoring invalid repository cache " + file, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the stamp of the source a snapshot was written for.
+     * @return the stamp, or <code>null</code> if the file is not a readable snapshot
+     */
+    private static Stamp readStampQuietly(File file)
+    {
+        try
+        {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try
+            {
+                return readHeader(in);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException ex)
+        {
+            return null;
+        }
+    }
+
+    private static Stamp readHeader(DataInputStream in) throws IOException
+    {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+        {
+            return null;
+        }
+        return Stamp.read(in);
+    }
+
+    /**
+     * Reads a snapshot.
+     * @return the repository, or <code>null</code> if the snapshot is not the one of the given source
+     */
+    RepositoryImpl read(File file, Stamp stamp) throws Exception
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+        try
+        {
+            if (!stamp.equals(readHeader(in)))
+            {
+                return null;
+            }
+            String[] strings = readStrings(in);
+
+            RepositoryImpl repository = new RepositoryImpl();
+            repository.setName(string(strings, in.readInt()));
+            String uri = string(strings, in.readInt());
+            repository.setLastModified(in.readLong());
+            int nbReferrals = in.readInt();
+            for (int i = 0; i < nbReferrals; i++)
+            {
+                Referral referral = new Referral();
+                referral.setDepth(Integer.toString(in.readInt()));
+                referral.setUrl(string(strings, in.readInt()));
+                repository.addReferral(referral);
+            }
+            int nbResources = in.readInt();
+            for (int i = 0; i < nbResources; i++)
+            {
+                repository.addResource(readResource(in, strings));
+            }
+            repository.setURI(uri);
+            return repository;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException
+    {
+        String[] strings = new String[in.readInt()];
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < strings.length; i++)
+        {
+            int length = in.readInt();
+            if (bytes.length < length)
+            {
+                bytes = new byte[length];
+            }
+            in.readFully(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, "UTF-8");
+        }
+        return strings;
+    }
+
+    private static String string(String[] strings, int index)
+    {
+        return index == NO_STRING ? null : strings[index];
+    }
+
+    private static ResourceImpl readResource(DataInputStream in, String[] strings) throws IOException
+    {
+        ResourceImpl resource = new ResourceImpl();
+        String[][] props = readColumns(in, strings);
+        for (int i = 0; i < props.length; i++)
+        {
+            resource.put(props[i][0], props[i][2], props[i][1]);
+        }
+        int nbCategories = in.readInt();
+        for (int i = 0; i < nbCategories; i++)
+        {
+            resource.addCategory(string(strings, in.readInt()));
+        }
+
+        int nbCaps = in.readInt();
+        for (int i = 0; i < nbCaps; i++)
+        {
+            CapabilityImpl capability = new CapabilityImpl(string(strings, in.readInt()));
+            String[][] capProps = readColumns(in, strings);
+            for (int j = 0; j < capProps.length; j++)
+            {
+                capability.addProperty(new PropertyImpl(capProps[j][0], capProps[j][1], capProps[j][2]));
+            }
+            int nbDirectives = in.readInt();
+            for (int j = 0; j < nbDirectives; j++)
+            {
+                capability.addDirective(string(strings, in.readInt()), string(strings, in.readInt()));
+            }
+            resource.addCapability(capability);
+        }
+
+        int nbReqs = in.readInt();
+        for (int i = 0; i < nbReqs; i++)
+        {
+            RequirementImpl requirement = new RequirementImpl(string(strings, in.readInt()));
+            requirement.setFilter(string(strings, in.readInt()));
+            String comment = string(strings, in.readInt());
+            if (comment != null)
+            {
+                requirement.addText(comment);
+            }
+            int flags = in.readByte();
+            requirement.setExtend((flags & EXTEND) != 0);
+            requirement.setMultiple((flags & MULTIPLE) != 0);
+            requirement.setOptional((flags & OPTIONAL) != 0);
+            int nbAttributes = in.readInt();
+            if (nbAttributes > 0)
+            {
+                Map<String, Object> attributes = new HashMap<String, Object>();
+                for (int j = 0; j < nbAttributes; j++)
+                {
+                    attributes.put(string(strings, in.readInt()), string(strings, in.readInt()));
+                }
+                requirement.setAttributes(attributes);
+            }
+            int nbDirectives = in.readInt();
+            if (nbDirectives > 0)
+            {
+                Map<String, String> directives = new HashMap<String, String>();
+                for (int j = 0; j < nbDirectives; j++)
+                {
+                    directives.put(string(strings, in.readInt()), string(strings, in.readInt()));
+                }
+                requirement.setDirectives(directives);
+            }
+            resource.addRequire(requirement);
+        }
+        return resource;
+    }
+
+    private static String[][] readColumns(DataInputStream in, String[] strings) throws IOException
+    {
+        String[][] triples = new String[in.readInt()][3];
+        for (int column = 0; column < 3; column++)
+        {
+            for (int i = 0; i < triples.length; i++)
+            {
+                triples[i][column] = string(strings, in.readInt());
+            }
+        }
+        return triples;
+    }
+
+    /**
+     * Last modification time, length and entity tag of a source index, as recorded in its snapshot.
+     */
+    static class Stamp
+    {
+        final long m_lastModified;
+        final long m_length;
+        final String m_etag;
+
+        Stamp(long lastModified, long length, String etag)
+        {
+            m_lastModified = lastModified;
+            m_length = length;
+            m_etag = etag;
+        }
+
+        static Stamp read(DataInputStream in) throws IOException
+        {
+            long lastModified = in.readLong();
+            long length = in.readLong();
+            String etag = in.readUTF();
+            return new Stamp(lastModified, length, etag.length() > 0 ? etag : null);
+        }
+
+        void write(DataOutputStream out) throws IOException
+        {
+            out.writeLong(m_lastModified);
+            out.writeLong(m_length);
+            out.writeUTF(m_etag != null ? m_etag : "");
+        }
+
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Stamp))
+            {
+                return false;
+            }
+            Stamp other = (Stamp) o;
+            return m_lastModified == other.m_lastModified && m_length == other.m_length
+                && (m_etag == null ? other.m_etag == null : m_etag.equals(other.m_etag));
+        }
+
+        public int hashCode()
+        {
+            return (int) (m_lastModified ^ (m_lastModified >>> 32)) * 31 + (int) m_length;
+        }
+    }
+
+    /**
+     * Table of the unique strings of a snapshot.
+     */
+    private static class StringTable
+    {
+        private final Map<String, Integer> m_indexes = new HashMap<String, Integer>();
+        private final List<String> m_strings = new ArrayList<String>();
+
+        void add(String s)
+        {
+            if (s != null && !m_indexes.containsKey(s))
+            {
+                m_indexes.put(s, Integer.valueOf(m_strings.size()));
+                m_strings.add(s);
+            }
+        }
+
+        int indexOf(String s) throws IOException
+        {
+            if (s == null)
+            {
+                return NO_STRING;
+            }
+            Integer index = m_indexes.get(s);
+            if (index == null)
+            {
+                throw new IOException("String not collected: " + s);
+            }
+            return index.intValue();
+        }
+
+        void write(DataOutputStream out) throws IOException
+        {
+            out.writeInt(m_strings.size());
+            for (String s : m_strings)
+            {
+                byte[] bytes = s.getBytes("UTF-8");
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+}
@@ -20,6 +20,10 @@ package org.apache.felix.bundlerepository.impl;
 
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.felix.bundlerepository.*;
 import org.apache.felix.utils.log.Logger;
@@ -34,6 +38,8 @@ public class ResolverImpl implements Resolver
     private final BundleContext m_context;
     private final Logger m_logger;
     private final Repository[] m_repositories;
+    private final CapabilityIndex.Cache m_indexes;
+    private final ExecutorService m_executor;
     private final Set<Resource> m_addedSet = new HashSet<Resource>();
     private final Set<Requirement> m_addedRequirementSet = new HashSet<Requirement>();
     private final Set<Capability> m_globalCapabilities = new HashSet<Capability>();
@@ -46,12 +52,27 @@ public class ResolverImpl implements Resolver
     private boolean m_resolved = false;
     private long m_resolveTimeStamp;
     private int m_resolutionFlags;
+    private CapabilityIndex[] m_resolveIndexes;
 
     public ResolverImpl(BundleContext context, Repository[] repositories, Logger logger)
+    {
+        this(context, repositories, logger, new CapabilityIndex.Cache(), null);
+    }
+
+    /**
+     * Creates a resolver sharing the capability indexes of the repositories with other resolvers.
+     * @param indexes the cache of capability indexes
+     * @param executor the executor used to search the providers of the requirements of a resource in
+     *        parallel, or <code>null</code> to search them sequentially
+     */
+    ResolverImpl(BundleContext context, Repository[] repositories, Logger logger,
+        CapabilityIndex.Cache indexes, ExecutorService executor)
     {
         m_context = context;
         m_logger = logger;
         m_repositories = repositories;
+        m_indexes = indexes;
+        m_executor = executor;
     }
 
     public synchronized void add(Resource resource)
@@ -152,6 +173,16 @@ public class ResolverImpl implements Resolver
     private Resource[] getResources()
     {
         List<Resource> resources = new ArrayList<Resource>();
+        for (CapabilityIndex index : getIndexes())
+        {
+            Collections.addAll(resources, index.getResources());
+        }
+        return resources.toArray(new Resource[resources.size()]);
+    }
+
+    private CapabilityIndex[] getIndexes()
+    {
+        List<CapabilityIndex> indexes = new ArrayList<CapabilityIndex>();
         for (int repoIdx = 0; (m_repositories != null) && (repoIdx < m_repositories.length); repoIdx++)
         {
             boolean isLocal = m_repositories[repoIdx].getURI().equals(Repository.LOCAL);
@@ -162,9 +193,9 @@ public class ResolverImpl implements Resolver
             if (isSystem && (m_resolutionFlags & NO_SYSTEM_BUNDLE) != 0) {
                 continue;
             }
-            Collections.addAll(resources, m_repositories[repoIdx].getResources());
+            indexes.add(m_indexes.getIndex(m_repositories[repoIdx]));
         }
-        return resources.toArray(new Resource[resources.size()]);
+        return indexes.toArray(new CapabilityIndex[indexes.size()]);
     }
 
     public synchronized boolean resolve()
@@ -175,6 +206,7 @@ public class ResolverImpl implements Resolver
     public synchronized boolean resolve(int flags)
     {
         // Find resources
+        m_resolveIndexes = getIndexes();
         Resource[] locals = getLocalResources();
         Resource[] remotes = getRemoteResources();
 
@@ -262,8 +294,10 @@ public class ResolverImpl implements Resolver
         Requirement[] reqs = resource.getRequirements();
         if (reqs != null)
         {
+            List<Future<List<ResourceCapability>>> providers = searchProvidersInParallel(reqs);
             Resource candidate;
-            for (Requirement req : reqs) {
+            for (int reqIdx = 0; reqIdx < reqs.length; reqIdx++) {
+                Requirement req = reqs[reqIdx];
                 // Do not resolve optional requirements
                 if ((m_resolutionFlags & NO_OPTIONAL_RESOURCES) != 0 && req.isOptional()) {
                     continue;
@@ -279,8 +313,9 @@ public class ResolverImpl implements Resolver
                     candidate = searchResources(req, m_resolveSet);
                 }
                 if (candidate == null) {
-                    List<ResourceCapability> candidateCapabilities = searchResources(req, locals);
-                    candidateCapabilities.addAll(searchResources(req, remotes));
+                    List<ResourceCapability> candidateCapabilities = providers != null
+                        ? getProviders(providers.get(reqIdx)) : searchProviders(req);
+                    removeFailedResources(candidateCapabilities);
 
                     // Determine the best candidate available that
                     // can resolve.
@@ -362,32 +397,95 @@ public class ResolverImpl implements Resolver
     }
 
     /**
-     * Searches for resources that do meet the given requirement
+     * Searches the capabilities of the local and remote resources meeting the given requirement,
+     * using the capability indexes of the repositories.
      * @param req the the requirement that must be satisfied by resources
-     * @param resources list of resources to look at
-     * @return all resources meeting the given requirement
+     * @return all capabilities meeting the given requirement, local ones first
      */
-    private List<ResourceCapability> searchResources(Requirement req, Resource[] resources)
-    {
-        List<ResourceCapability> matchingCapabilities = new ArrayList<ResourceCapability>();
-
-        if (resources != null) {
-            for (Resource resource : resources) {
-                checkInterrupt();
-                // We don't need to look at resources we've already looked at.
-                if (!m_failedSet.contains(resource)) {
-                    Capability[] caps = resource.getCapabilities();
-                    if (caps != null) {
-                        for (Capability cap : caps) {
-                            if (req.isSatisfied(cap))
-                                matchingCapabilities.add(new ResourceCapabilityImpl(resource, cap));
-                        }
-                    }
+    private List<ResourceCapability> searchProviders(Requirement req)
+    {
+        List<ResourceCapability> locals = new ArrayList<ResourceCapability>();
+        List<ResourceCapability> remotes = new ArrayList<ResourceCapability>();
+        for (CapabilityIndex index : m_resolveIndexes)
+        {
+            checkInterrupt();
+            for (ResourceCapability cap : index.findProviders(req))
+            {
+                if (cap.getResource() != null && cap.getResource().isLocal())
+                {
+                    locals.add(cap);
+                }
+                else if (cap.getResource() != null)
+                {
+                    remotes.add(cap);
+                }
+            }
+        }
+        locals.addAll(remotes);
+        return locals;
+    }
+
+    /**
+     * Starts searching the providers of the given requirements on the executor, if there is one and
+     * more than one requirement. The indexes are immutable, so the searches do not interfere with the
+     * resolution which goes on in the calling thread.
+     * @return the pending searches, in the order of the requirements, or <code>null</code> if the
+     *         providers must be searched in the calling thread
+     */
+    private List<Future<List<ResourceCapability>>> searchProvidersInParallel(Requirement[] reqs)
+    {
+        if (m_executor == null || reqs.length < 2)
+        {
+            return null;
+        }
+        List<Future<List<ResourceCapability>>> futures = new ArrayList<Future<List<ResourceCapability>>>(reqs.length);
+        for (final Requirement req : reqs)
+        {
+            futures.add(m_executor.submit(new Callable<List<ResourceCapability>>()
+            {
+                public List<ResourceCapability> call() throws Exception
+                {
+                    return searchProviders(req);
                 }
+            }));
+        }
+        return futures;
+    }
+
+    private List<ResourceCapability> getProviders(Future<List<ResourceCapability>> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new org.apache.felix.bundlerepository.InterruptedResolutionException(e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
             }
+            throw new IllegalStateException(e.getCause());
         }
+    }
 
-        return matchingCapabilities;
+    private void removeFailedResources(List<ResourceCapability> caps)
+    {
+        // We don't need to look at resources we've already looked at.
+        if (!m_failedSet.isEmpty())
+        {
+            for (Iterator<ResourceCapability> it = caps.iterator(); it.hasNext();)
+            {
+                if (m_failedSet.contains(it.next().getResource()))
+                {
+                    it.remove();
+                }
+            }
+        }
     }
 
     /**
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.bundlerepository.impl;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.bundlerepository.Capability;
+import org.apache.felix.bundlerepository.Resource;
+
+public class CapabilityIndexTest extends TestCase
+{
+    private static ResourceImpl resource(String symbolicName, String... packages)
+    {
+        ResourceImpl resource = new ResourceImpl();
+        resource.put(Resource.SYMBOLIC_NAME, symbolicName);
+        CapabilityImpl bundle = new CapabilityImpl(Capability.BUNDLE);
+        bundle.addProperty(Resource.SYMBOLIC_NAME, symbolicName);
+        resource.addCapability(bundle);
+        for (String pkg : packages)
+        {
+            CapabilityImpl cap = new CapabilityImpl(Capability.PACKAGE);
+            cap.addProperty(Capability.PACKAGE, pkg);
+            cap.addProperty(Resource.VERSION, "version", "1.0.0");
+            resource.addCapability(cap);
+        }
+        return resource;
+    }
+
+    private static RequirementImpl requirement(String name, String filter)
+    {
+        RequirementImpl req = new RequirementImpl(name);
+        req.setFilter(filter);
+        return req;
+    }
+
+    public void testEqualityValue()
+    {
+        assertEquals("org.foo", CapabilityIndex.getEqualityValue("(package=org.foo)", "package"));
+        assertEquals("org.foo", CapabilityIndex.getEqualityValue("(&(package=org.foo)(version>=1.0.0))", "package"));
+        assertEquals("a(b)", CapabilityIndex.getEqualityValue("(&(version>=1.0.0)(package=a\\(b\\)))", "package"));
+        assertNull(CapabilityIndex.getEqualityValue("(package=org.*)", "package"));
+        assertNull(CapabilityIndex.getEqualityValue("(|(package=org.foo)(package=org.bar))", "package"));
+        assertNull(CapabilityIndex.getEqualityValue("(&(!(package=org.foo))(version>=1.0.0))", "package"));
+        assertNull(CapabilityIndex.getEqualityValue("(package~=org.foo)", "package"));
+    }
+
+    public void testFindProviders()
+    {
+        ResourceImpl r1 = resource("r1", "org.foo", "org.bar");
+        ResourceImpl r2 = resource("r2", "org.bar");
+        ResourceImpl r3 = resource("r3", "org.baz");
+        CapabilityIndex index = new CapabilityIndex(new Resource[] { r1, r2, r3 });
+
+        List<ResourceCapability> providers = index.findProviders(
+            requirement(Capability.PACKAGE, "(&(package=org.bar)(version>=1.0.0))"));
+        assertEquals(2, providers.size());
+        assertSame(r1, providers.get(0).getResource());
+        assertSame(r2, providers.get(1).getResource());
+
+        providers = index.findProviders(requirement(Capability.PACKAGE, "(package=org.*)"));
+        assertEquals(4, providers.size());
+
+        providers = index.findProviders(requirement(Capability.BUNDLE, "(symbolicname=r3)"));
+        assertEquals(1, providers.size());
+        assertSame(r3, providers.get(0).getResource());
+
+        assertTrue(index.findProviders(requirement(Capability.PACKAGE, "(package=org.none)")).isEmpty());
+        assertTrue(index.findProviders(requirement(Capability.SERVICE, "(service=org.foo)")).isEmpty());
+    }
+
+    public void testCacheReusesIndexUntilRepositoryChanges()
+    {
+        RepositoryImpl repository = new RepositoryImpl();
+        repository.addResource(resource("r1", "org.foo"));
+        CapabilityIndex.Cache cache = new CapabilityIndex.Cache();
+
+        CapabilityIndex index = cache.getIndex(repository);
+        assertSame(index, cache.getIndex(repository));
+
+        repository.addResource(resource("r2", "org.foo"));
+        CapabilityIndex updated = cache.getIndex(repository);
+        assertNotSame(index, updated);
+        assertEquals(2, updated.findProviders(requirement(Capability.PACKAGE, "(package=org.foo)")).size());
+    }
+}
@@ -81,6 +81,7 @@ public class RepositoryAdminTest extends TestCase
 
         Activator.setContext(bundleContext);
         EasyMock.expect(bundleContext.getProperty((String) EasyMock.anyObject())).andReturn(null).anyTimes();
+        EasyMock.expect(bundleContext.getDataFile((String) EasyMock.anyObject())).andReturn(null).anyTimes();
         EasyMock.expect(bundleContext.getBundle(0)).andReturn(systemBundle);
         EasyMock.expect(systemBundle.getHeaders()).andReturn(new Hashtable());
         EasyMock.expect(systemBundle.getRegisteredServices()).andReturn(null);
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.bundlerepository.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.bundlerepository.Repository;
+import org.apache.felix.utils.log.Logger;
+
+public class RepositoryCacheTest extends TestCase
+{
+    private File m_dir;
+
+    protected void setUp() throws Exception
+    {
+        m_dir = File.createTempFile("obr-cache", "");
+        m_dir.delete();
+        m_dir.mkdirs();
+    }
+
+    protected void tearDown() throws Exception
+    {
+        File[] files = m_dir.listFiles();
+        for (int i = 0; (files != null) && (i < files.length); i++)
+        {
+            files[i].delete();
+        }
+        m_dir.delete();
+    }
+
+    public void testSnapshotRoundTrip() throws Exception
+    {
+        checkRoundTrip("/repo_for_resolvertest.xml");
+        checkRoundTrip("/another_repository.xml");
+        checkRoundTrip("/referral1_repository.xml");
+    }
+
+    private void checkRoundTrip(String name) throws Exception
+    {
+        DataModelHelperImpl helper = new DataModelHelperImpl();
+        URL url = getClass().getResource(name);
+        RepositoryImpl parsed = (RepositoryImpl) helper.repository(url);
+
+        RepositoryCache cache = new RepositoryCache(m_dir, helper, new Logger(null));
+        File file = new File(m_dir, "test.obr");
+        RepositoryCache.Stamp stamp = new RepositoryCache.Stamp(1234L, 5678L, "\"abc\"");
+        cache.write(file, stamp, parsed);
+
+        RepositoryImpl cached = cache.read(file, stamp);
+        assertNotNull(cached);
+        assertEquals(parsed.getURI(), cached.getURI());
+        assertEquals(parsed.getResources().length, cached.getResources().length);
+        assertEquals(helper.writeRepository(parsed), helper.writeRepository(cached));
+
+        // A different source stamp invalidates the snapshot
+        assertNull(cache.read(file, new RepositoryCache.Stamp(1235L, 5678L, "\"abc\"")));
+        assertNull(cache.read(file, new RepositoryCache.Stamp(1234L, 5678L, "\"abd\"")));
+    }
+
+    public void testRepositoryIsCached() throws Exception
+    {
+        DataModelHelperImpl helper = new DataModelHelperImpl();
+        URL url = getClass().getResource("/another_repository.xml");
+        RepositoryCache cache = new RepositoryCache(m_dir, helper, new Logger(null));
+
+        Repository first = cache.repository(url);
+        assertEquals(1, m_dir.listFiles().length);
+        Repository second = cache.repository(url);
+        assertNotSame(first, second);
+        assertEquals(helper.writeRepository(first), helper.writeRepository(second));
+    }
+
+    public void testRemoteRepositoryIsRevalidated() throws Exception
+    {
+        final byte[] index = read(getClass().getResource("/another_repository.xml"));
+        final String[] etag = new String[] { "\"1\"" };
+        final List<String> requests = new ArrayList<String>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                requests.add(exchange.getRequestMethod() + " " + ifNoneMatch);
+                exchange.getResponseHeaders().add("ETag", etag[0]);
+                if (etag[0].equals(ifNoneMatch))
+                {
+                    exchange.sendResponseHeaders(304, -1);
+                }
+                else
+                {
+                    exchange.sendResponseHeaders(200, index.length);
+                    OutputStream os = exchange.getResponseBody();
+                    os.write(index);
+                    os.close();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        try
+        {
+            DataModelHelperImpl helper = new DataModelHelperImpl();
+            URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/repository.xml");
+            RepositoryCache cache = new RepositoryCache(m_dir, helper, new Logger(null));
+
+            Repository first = cache.repository(url);
+            Repository second = cache.repository(url);
+            etag[0] = "\"2\"";
+            Repository third = cache.repository(url);
+
+            // A single conditional GET per lookup, the snapshot is used when the index is not modified
+            assertEquals("GET null", requests.get(0));
+            assertEquals("GET \"1\"", requests.get(1));
+            assertEquals("GET \"1\"", requests.get(2));
+            assertEquals(3, requests.size());
+            assertEquals(url.toExternalForm(), second.getURI());
+            assertEquals(helper.writeRepository(first), helper.writeRepository(second));
+            assertEquals(first.getResources().length, third.getResources().length);
+
+            // The snapshot was updated with the new entity tag
+            cache.repository(url);
+            assertEquals("GET \"2\"", requests.get(3));
+        }
+        finally
+        {
+            server.stop(0);
+        }
+    }
+
+    private static byte[] read(URL url) throws IOException
+    {
+        InputStream is = url.openStream();
+        try
+        {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int len = is.read(buffer); len > 0; len = is.read(buffer))
+            {
+                baos.write(buffer, 0, len);
+            }
+            return baos.toByteArray();
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+}
@@ -32,6 +32,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.felix.configurator.impl.json.BinUtil;
 import org.apache.felix.configurator.impl.json.BinaryManager;
@@ -44,6 +50,7 @@ import org.apache.felix.configurator.impl.model.ConfigPolicy;
 import org.apache.felix.configurator.impl.model.ConfigState;
 import org.apache.felix.configurator.impl.model.ConfigurationFile;
 import org.apache.felix.configurator.impl.model.State;
+import org.apache.felix.configurator.impl.model.StateJournal;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
@@ -62,10 +69,15 @@ import org.osgi.util.tracker.BundleTrackerCustomizer;
  */
 public class Configurator {
 
+    /** Upper bound for the number of threads parsing configuration resources. */
+    private static final int MAX_PARSER_THREADS = 4;
+
     private final BundleContext bundleContext;
 
     private final State state;
 
+    private final StateJournal journal;
+
     private final org.osgi.util.tracker.BundleTracker<Bundle> tracker;
 
     private volatile boolean active = true;
@@ -74,6 +86,9 @@ public class Configurator {
 
     private final WorkerQueue queue;
 
+    /** Pool for parsing the configuration resources of a bundle. */
+    private final ThreadPoolExecutor parserPool;
+
     private final List<ServiceReference<ConfigurationAdmin>> configAdminReferences;
 
     /**
@@ -84,13 +99,15 @@ public class Configurator {
      */
     public Configurator(final BundleContext bc, final List<ServiceReference<ConfigurationAdmin>> configAdminReferences) {
         this.queue = new WorkerQueue();
+        this.parserPool = createParserPool();
         this.bundleContext = bc;
         this.configAdminReferences = configAdminReferences;
+        this.journal = new StateJournal(bundleContext.getDataFile(StateJournal.FILE_NAME));
         State s = null;
         try {
-            s = State.createOrReadState(bundleContext.getDataFile(State.FILE_NAME));
+            s = this.journal.readState(bundleContext.getDataFile(State.FILE_NAME));
         } catch ( final ClassNotFoundException | IOException e ) {
-            SystemLogger.error("Unable to read persisted state from " + State.FILE_NAME, e);
+            SystemLogger.error("Unable to read persisted state from " + StateJournal.FILE_NAME, e);
             s = new State();
         }
         this.state = s;
@@ -184,6 +201,28 @@ public class Configurator {
         this.active = false;
         this.queue.stop();
         this.tracker.close();
+        this.parserPool.shutdownNow();
+    }
+
+    /**
+     * Create the pool for parsing configuration resources. The pool is bounded
+     * by the number of processors and its threads terminate when idle.
+     * @return The pool
+     */
+    private static ThreadPoolExecutor createParserPool() {
+        final int size = Math.max(1, Math.min(MAX_PARSER_THREADS, Runtime.getRuntime().availableProcessors()));
+        final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+        final AtomicInteger counter = new AtomicInteger();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    final Thread t = defaultFactory.newThread(r);
+                    t.setDaemon(true);
+                    t.setName("Apache Felix Configurator Parser Thread #" + counter.incrementAndGet());
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
     }
 
     /**
@@ -333,7 +372,7 @@ public class Configurator {
                     public Enumeration<URL> findEntries(String path, String filePattern) {
                         return bundle.findEntries(path, filePattern, false);
                     }
-                }, paths, report);
+                }, paths, report, this.parserPool);
                 for(final String w : report.warnings) {
                     SystemLogger.warning(w);
                 }
@@ -388,18 +427,14 @@ public class Configurator {
         }
 
         boolean retry = false;
+        final List<String> changedPids = new ArrayList<>();
         try {
             for(final String pid : state.getPids()) {
                 final ConfigList configList = state.getConfigurations(pid);
 
                 if ( configList.hasChanges() ) {
-                    if ( process(configList) ) {
-                        try {
-                            State.writeState(this.bundleContext.getDataFile(State.FILE_NAME), state);
-                        } catch ( final IOException ioe) {
-                            SystemLogger.error("Unable to persist state to " + State.FILE_NAME, ioe);
-                        }
-                    } else {
+                    changedPids.add(pid);
+                    if ( !process(configList) ) {
                         retry = true;
                     }
                 }
@@ -412,21 +447,18 @@ public class Configurator {
         }
         if ( !retry ) {
             // check whether there is a stale config admin bundle id
-            boolean changed = false;
             for(final Long bundleId : this.state.getBundleIdsUsingConfigAdmin()) {
                 if ( this.state.getLastModified(bundleId) == null ) {
                     this.state.removeConfigAdminBundleId(bundleId);
-                    changed = true;
-                }
-            }
-            if ( changed ) {
-                try {
-                    State.writeState(this.bundleContext.getDataFile(State.FILE_NAME), state);
-                } catch ( final IOException ioe) {
-                    SystemLogger.error("Unable to persist state to " + State.FILE_NAME, ioe);
                 }
             }
         }
+        // persist all changes of this run at once
+        try {
+            this.journal.write(this.state, changedPids);
+        } catch ( final IOException ioe) {
+            SystemLogger.error("Unable to persist state to " + StateJournal.FILE_NAME, ioe);
+        }
     }
 
     /**
@@ -25,6 +25,7 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -33,6 +34,10 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.felix.cm.json.io.ConfigurationReader;
 import org.apache.felix.cm.json.io.ConfigurationResource;
@@ -66,12 +71,74 @@ public class JSONUtil {
     public static BundleState readConfigurationsFromBundle(final BinUtil.ResourceProvider provider,
             final Set<String> paths,
             final Report report) {
+        return readConfigurationsFromBundle(provider, paths, report, null);
+    }
+
+    /**
+     * Read all configurations from a bundle. The json files are parsed
+     * using the provided executor. Errors and warnings are added to the
+     * report in the order of the files, regardless of the order in which
+     * the files have been parsed. If the calling thread is interrupted while
+     * waiting, the files not parsed yet are skipped and reported as errors.
+     * @param provider The bundle provider
+     * @param paths The paths to read from
+     * @param report The report for errors and warnings
+     * @param executor The executor used for parsing or {@code null} to parse in the calling thread
+     * @return The bundle state.
+     */
+    public static BundleState readConfigurationsFromBundle(final BinUtil.ResourceProvider provider,
+            final Set<String> paths,
+            final Report report,
+            final ExecutorService executor) {
         final BundleState config = new BundleState();
 
-        final List<ConfigurationFile> allFiles = new ArrayList<>();
+        final List<ResourceParser> parsers = new ArrayList<>();
         for(final String path : paths) {
-            final List<ConfigurationFile> files = readJSON(provider, path, report);
-            allFiles.addAll(files);
+            parsers.addAll(findJSON(provider, path, report));
+        }
+
+        final List<ConfigurationFile> allFiles = new ArrayList<>();
+        // the parsers whose state may be read, or why it may not
+        final boolean[] completed = new boolean[parsers.size()];
+        final String[] failures = new String[parsers.size()];
+        if ( executor == null || parsers.size() < 2 ) {
+            for(int i=0;i<parsers.size();i++) {
+                parsers.get(i).call();
+                completed[i] = true;
+            }
+        } else {
+            final List<Future<ConfigurationFile>> futures = new ArrayList<>();
+            for(final ResourceParser parser : parsers) {
+                futures.add(executor.submit(parser));
+            }
+            for(int i=0;i<futures.size();i++) {
+                try {
+                    futures.get(i).get();
+                    completed[i] = true;
+                } catch ( final InterruptedException ie ) {
+                    Thread.currentThread().interrupt();
+                    // the remaining parsers are abandoned, their state is not read
+                    for(int j=i;j<futures.size();j++) {
+                        futures.get(j).cancel(true);
+                        failures[j] = "Interrupted while reading " + parsers.get(j).name;
+                    }
+                    break;
+                } catch ( final ExecutionException ee ) {
+                    failures[i] = "Unable to read " + parsers.get(i).name + " : " + ee.getCause();
+                }
+            }
+        }
+        for(int i=0;i<parsers.size();i++) {
+            final ResourceParser parser = parsers.get(i);
+            if ( completed[i] ) {
+                report.warnings.addAll(parser.report.warnings);
+                report.errors.addAll(parser.report.errors);
+                if ( parser.result != null ) {
+                    allFiles.add(parser.result);
+                }
+            } else {
+                report.errors.add(failures[i]);
+            }
         }
         Collections.sort(allFiles);
 
@@ -81,17 +148,17 @@ public class JSONUtil {
     }
 
     /**
-     * Read all json files from a given path in the bundle
+     * Find all json files from a given path in the bundle
      *
      * @param provider The bundle provider
      * @param path The path
      * @param report The report for errors and warnings
-     * @return A list of configuration files - sorted by url, might be empty.
+     * @return A list of parsers, one for each file - might be empty.
      */
-    private static List<ConfigurationFile> readJSON(final BinUtil.ResourceProvider provider,
+    private static List<ResourceParser> findJSON(final BinUtil.ResourceProvider provider,
             final String path,
             final Report report) {
-        final List<ConfigurationFile> result = new ArrayList<>();
+        final List<ResourceParser> result = new ArrayList<>();
         final Enumeration<URL> urls = provider.findEntries(path, "*.json");
         if ( urls != null ) {
             while ( urls.hasMoreElements() ) {
@@ -101,32 +168,57 @@ public class JSONUtil {
                 final int pos = filePath.lastIndexOf('/');
                 final String name = path + filePath.substring(pos);
 
-                try {
-                    final String contents = getResource(name, url);
-                    boolean done = false;
-                    final BinaryManager binaryManager = new BinaryManager(provider, report);
-                    try {
-                        final ConfigurationFile file = readJSON(binaryManager, name, url, provider.getBundleId(), contents, report);
-                        if ( file != null ) {
-                            result.add(file);
-                            done = true;
-                        }
-                    } finally {
-                        if ( !done ) {
-                            binaryManager.cleanupFiles();
-                        }
-                    }
-                } catch ( final IOException ioe ) {
-                    report.errors.add("Unable to read " + name + " : " + ioe.getMessage());
-                }
+                result.add(new ResourceParser(provider, name, url));
             }
-            Collections.sort(result);
         } else {
             report.errors.add("No configurations found at path " + path);
         }
         return result;
     }
 
+    /**
+     * Parser for a single json file of a bundle. Each parser collects
+     * its own errors and warnings, therefore parsers can run concurrently.
+     */
+    private static final class ResourceParser implements Callable<ConfigurationFile> {
+
+        private final BinUtil.ResourceProvider provider;
+
+        private final String name;
+
+        private final URL url;
+
+        private final Report report = new Report();
+
+        private volatile ConfigurationFile result;
+
+        ResourceParser(final BinUtil.ResourceProvider provider, final String name, final URL url) {
+            this.provider = provider;
+            this.name = name;
+            this.url = url;
+        }
+
+        @Override
+        public ConfigurationFile call() {
+            final BinaryManager binaryManager = new BinaryManager(provider, report);
+            boolean done = false;
+            try (final Reader reader = openResource(url)) {
+                final ConfigurationFile file = readJSON(binaryManager, name, url, provider.getBundleId(), reader, report);
+                if ( file != null ) {
+                    this.result = file;
+                    done = true;
+                }
+            } catch ( final IOException ioe ) {
+                report.errors.add("Unable to read " + name + " : " + ioe.getMessage());
+            } finally {
+                if ( !done ) {
+                    binaryManager.cleanupFiles();
+                }
+            }
+            return this.result;
+        }
+    }
+
     /**
      * Read a single JSON file
      *
@@ -145,8 +237,34 @@ public class JSONUtil {
             final long bundleId,
             final String contents,
             final Report report) {
-        final String identifier = (url == null ? name : url.toString());
         try (final Reader reader = new StringReader(contents)) {
+            return readJSON(binaryManager, name, url, bundleId, reader, report);
+        } catch (final IOException ioe) {
+            // closing a string reader does not throw
+            return null;
+        }
+    }
+
+    /**
+     * Read a single JSON file from a reader
+     *
+     * @param binaryManager The binary manager
+     * @param name      The name of the file
+     * @param url       The url to that file or {@code null}
+     * @param bundleId  The bundle id of the bundle containing the file
+     * @param reader    The reader for the contents of the file, not closed by this method
+     * @param report    The report for errors and warnings
+     * @return The configuration file or {@code null}.
+     */
+    public static ConfigurationFile readJSON(
+            final BinaryManager binaryManager,
+            final String name,
+            final URL url,
+            final long bundleId,
+            final Reader reader,
+            final Report report) {
+        final String identifier = (url == null ? name : url.toString());
+        try {
 
             final Map<String, Integer> rankingMap = new HashMap<>();
             final Map<String, ConfigPolicy> policyMap = new HashMap<>();
@@ -251,4 +369,15 @@ public class JSONUtil {
             return sb.toString();
         }
     }
+
+    /**
+     * Open a reader for a resource, encoded as UTF-8
+     * @param url The resource URL
+     * @return The reader
+     * @throws IOException If anything goes wrong
+     */
+    static Reader openResource(final URL url) throws IOException {
+        final URLConnection connection = url.openConnection();
+        return new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+    }
 }
@@ -46,6 +46,27 @@ public class ConfigList implements Serializable, Iterable<Config> {
     /** Last installed configuration. */
     private volatile Config lastInstalled;
 
+    public ConfigList() {
+        // default constructor
+    }
+
+    /**
+     * Create a list from persisted state
+     * @param configurations The sorted configurations
+     * @param lastInstalled The last installed configuration
+     * @param changeCount The change count
+     * @param hasChanges Whether the list needs to be processed
+     */
+    ConfigList(final List<Config> configurations,
+            final Config lastInstalled,
+            final long changeCount,
+            final boolean hasChanges) {
+        this.configurations = configurations;
+        this.lastInstalled = lastInstalled;
+        this.changeCount = changeCount;
+        this.hasChanges = hasChanges;
+    }
+
     /**
      * Serialize the object
      * - write version id
@@ -93,7 +114,7 @@ public class ConfigList implements Serializable, Iterable<Config> {
      * @param value New value.
      */
     public void setHasChanges(final boolean value) {
-        this.hasChanges = hasChanges;
+        this.hasChanges = value;
     }
 
     /**
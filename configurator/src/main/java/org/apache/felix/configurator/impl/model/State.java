@@ -20,10 +20,8 @@ package org.apache.felix.configurator.impl.model;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -45,6 +43,9 @@ public class State extends AbstractState implements Serializable {
 
     private volatile Set<String> initialHashes;
 
+    /** Flag whether the bundle information changed since it has been persisted. */
+    private volatile boolean bundleInfoChanged;
+
     /**
      * Serialize the object
      * - write version id
@@ -88,15 +89,21 @@ public class State extends AbstractState implements Serializable {
         }
     }
 
-    public static void writeState(final File f, final State state)
-    throws IOException {
-        if ( f == null ) {
-            // do nothing, no file system support
-            return;
-        }
-        try ( final ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(f)) ) {
-            oos.writeObject(state);
-        }
+    /**
+     * Has the bundle information (last modified, configuration admin bundle ids
+     * and initial hashes) changed since it has been persisted?
+     * @return {@code true} if it changed
+     */
+    public boolean hasBundleInfoChanges() {
+        return this.bundleInfoChanged;
+    }
+
+    /**
+     * Set the bundle information changed flag.
+     * @param value New value
+     */
+    public void setBundleInfoChanges(final boolean value) {
+        this.bundleInfoChanged = value;
     }
 
     public Long getLastModified(final long bundleId) {
@@ -104,11 +111,16 @@ public class State extends AbstractState implements Serializable {
     }
 
     public void setLastModified(final long bundleId, final long lastModified) {
-        this.bundlesLastModified.put(bundleId, lastModified);
+        final Long old = this.bundlesLastModified.put(bundleId, lastModified);
+        if ( old == null || old.longValue() != lastModified ) {
+            this.bundleInfoChanged = true;
+        }
     }
 
     public void removeLastModified(final long bundleId) {
-        this.bundlesLastModified.remove(bundleId);
+        if ( this.bundlesLastModified.remove(bundleId) != null ) {
+            this.bundleInfoChanged = true;
+        }
     }
 
     public Long getConfigAdminBundleId(final long bundleId) {
@@ -116,11 +128,16 @@ public class State extends AbstractState implements Serializable {
     }
 
     public void setConfigAdminBundleId(final long bundleId, final long lastModified) {
-        this.bundlesConfigAdminBundleId.put(bundleId, lastModified);
+        final Long old = this.bundlesConfigAdminBundleId.put(bundleId, lastModified);
+        if ( old == null || old.longValue() != lastModified ) {
+            this.bundleInfoChanged = true;
+        }
     }
 
     public void removeConfigAdminBundleId(final long bundleId) {
-        this.bundlesConfigAdminBundleId.remove(bundleId);
+        if ( this.bundlesConfigAdminBundleId.remove(bundleId) != null ) {
+            this.bundleInfoChanged = true;
+        }
     }
 
     public Set<Long> getKnownBundleIds() {
@@ -133,6 +150,15 @@ public class State extends AbstractState implements Serializable {
 
     public void setInitialHashes(final Set<String> value) {
         this.initialHashes = value;
+        this.bundleInfoChanged = true;
+    }
+
+    Map<Long, Long> getLastModifiedMap() {
+        return this.bundlesLastModified;
+    }
+
+    Map<Long, Long> getConfigAdminBundleIdMap() {
+        return this.bundlesConfigAdminBundleId;
     }
 
     /**
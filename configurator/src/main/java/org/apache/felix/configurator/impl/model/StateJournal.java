@@ -0,0 +1,539 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.configurator.impl.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only persistence of the {@link State}.
+ * <p>
+ * The journal starts with a header followed by records. Each record is
+ * framed by its length and a CRC32 checksum and either contains the
+ * bundle information of the state or all configurations of a single pid.
+ * When the state is read, later records replace earlier ones. A torn
+ * record at the end of the journal (e.g. after a crash) is ignored.
+ * <p>
+ * Changes are appended in batches, once the journal grows to more than twice
+ * its compacted size, it is rewritten with a single record per pid.
+ */
+public class StateJournal {
+
+    public static final String FILE_NAME = "state.journal";
+
+    private static final int MAGIC = 0x46435354; // FCST
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 8;
+
+    /** Journal size to reach before a compaction is considered. */
+    private static final long MIN_COMPACTION_SIZE = 64 * 1024;
+
+    private static final byte RECORD_BUNDLE_INFO = 1;
+    private static final byte RECORD_PID = 2;
+
+    private static final byte LAST_INSTALLED_NONE = 0;
+    private static final byte LAST_INSTALLED_INDEX = 1;
+    private static final byte LAST_INSTALLED_CONFIG = 2;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_BYTE = 6;
+    private static final byte TYPE_SHORT = 7;
+    private static final byte TYPE_CHARACTER = 8;
+    private static final byte TYPE_BOOLEAN = 9;
+    private static final byte TYPE_ARRAY = 10;
+    private static final byte TYPE_COLLECTION = 11;
+    private static final byte TYPE_SERIALIZED = 12;
+
+    private static final Map<String, Class<?>> ARRAY_COMPONENT_TYPES = new HashMap<>();
+    static {
+        for(final Class<?> c : new Class<?>[] {
+                String.class, Integer.class, Long.class, Float.class, Double.class,
+                Byte.class, Short.class, Character.class, Boolean.class,
+                int.class, long.class, float.class, double.class,
+                byte.class, short.class, char.class, boolean.class}) {
+            ARRAY_COMPONENT_TYPES.put(c.getName(), c);
+        }
+    }
+
+    /** The journal file, {@code null} if there is no file system support. */
+    private final File file;
+
+    /** The size of the journal after the last compaction. */
+    private long compactedSize;
+
+    /**
+     * Create a new journal
+     * @param file The journal file or {@code null} if there is no file system support
+     */
+    public StateJournal(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Read the state from the journal. If there is no journal yet, the state is
+     * read from the serialized state file of previous versions (if available)
+     * which is removed afterwards.
+     * The read state is compacted into a new journal.
+     * @param legacyFile The state file of previous versions, might be {@code null}
+     * @return The state
+     * @throws IOException If reading fails
+     * @throws ClassNotFoundException If the legacy state file can't be read
+     */
+    public State readState(final File legacyFile) throws IOException, ClassNotFoundException {
+        if ( this.file == null ) {
+            return new State();
+        }
+        final State state;
+        if ( this.file.exists() ) {
+            state = new State();
+            try ( final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file))) ) {
+                if ( in.readInt() != MAGIC || in.readInt() != VERSION ) {
+                    throw new IOException("Unknown state journal format " + this.file);
+                }
+                byte[] record;
+                while ( (record = readRecord(in)) != null ) {
+                    apply(state, record);
+                }
+            }
+        } else if ( legacyFile != null && legacyFile.exists() ) {
+            state = State.createOrReadState(legacyFile);
+        } else {
+            return new State();
+        }
+        this.compact(state);
+        if ( legacyFile != null ) {
+            legacyFile.delete();
+        }
+        return state;
+    }
+
+    /**
+     * Append the changes of the state to the journal
+     * @param state The state
+     * @param changedPids The pids whose configurations changed
+     * @throws IOException If writing fails
+     */
+    public void write(final State state, final Collection<String> changedPids) throws IOException {
+        if ( this.file == null || (changedPids.isEmpty() && !state.hasBundleInfoChanges()) ) {
+            return;
+        }
+        if ( !this.file.exists() ) {
+            this.compact(state);
+            return;
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        if ( state.hasBundleInfoChanges() ) {
+            writeRecord(out, encodeBundleInfo(state));
+        }
+        for(final String pid : changedPids) {
+            final ConfigList list = state.getConfigurations(pid);
+            if ( list != null ) {
+                writeRecord(out, encodeConfigList(pid, list));
+            }
+        }
+        out.flush();
+        try ( final FileOutputStream fos = new FileOutputStream(this.file, true) ) {
+            bytes.writeTo(fos);
+            fos.getFD().sync();
+        }
+        state.setBundleInfoChanges(false);
+
+        final long size = this.file.length();
+        if ( size > MIN_COMPACTION_SIZE && size > 2 * this.compactedSize ) {
+            this.compact(state);
+        }
+    }
+
+    /**
+     * Rewrite the journal with the complete state
+     * @param state The state
+     * @throws IOException If writing fails
+     */
+    void compact(final State state) throws IOException {
+        final File tmpFile = new File(this.file.getParentFile(), this.file.getName() + ".tmp");
+        try ( final FileOutputStream fos = new FileOutputStream(tmpFile) ) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeRecord(out, encodeBundleInfo(state));
+            for(final Map.Entry<String, ConfigList> entry : state.getConfigurations().entrySet()) {
+                writeRecord(out, encodeConfigList(entry.getKey(), entry.getValue()));
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmpFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        this.compactedSize = this.file.length();
+        state.setBundleInfoChanges(false);
+    }
+
+    private static void writeRecord(final DataOutputStream out, final byte[] record) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(record);
+        out.writeInt(record.length);
+        out.writeInt((int) crc.getValue());
+        out.write(record);
+    }
+
+    /**
+     * Read the next record
+     * @return The record or {@code null} if the end of the journal (or a torn record) is reached
+     */
+    private static byte[] readRecord(final DataInputStream in) throws IOException {
+        try {
+            final int length = in.readInt();
+            final int checksum = in.readInt();
+            if ( length < 1 ) {
+                return null;
+            }
+            final byte[] record = new byte[length];
+            in.readFully(record);
+            final CRC32 crc = new CRC32();
+            crc.update(record);
+            if ( (int) crc.getValue() != checksum ) {
+                return null;
+            }
+            return record;
+        } catch ( final EOFException eof ) {
+            return null;
+        }
+    }
+
+    private static void apply(final State state, final byte[] record) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        final byte type = in.readByte();
+        if ( type == RECORD_BUNDLE_INFO ) {
+            readLongMap(in, state.getLastModifiedMap());
+            readLongMap(in, state.getConfigAdminBundleIdMap());
+            final int count = in.readInt();
+            if ( count < 0 ) {
+                state.setInitialHashes(null);
+            } else {
+                final Set<String> hashes = new HashSet<>();
+                for(int i=0;i<count;i++) {
+                    hashes.add(readString(in));
+                }
+                state.setInitialHashes(hashes);
+            }
+        } else if ( type == RECORD_PID ) {
+            final String pid = readString(in);
+            state.getConfigurations().put(pid, readConfigList(pid, in));
+        } else {
+            throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    private static byte[] encodeBundleInfo(final State state) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(RECORD_BUNDLE_INFO);
+        writeLongMap(out, state.getLastModifiedMap());
+        writeLongMap(out, state.getConfigAdminBundleIdMap());
+        final Set<String> hashes = state.getInitialHashes();
+        if ( hashes == null ) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(hashes.size());
+            for(final String h : hashes) {
+                writeString(out, h);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeConfigList(final String pid, final ConfigList list) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(RECORD_PID);
+        writeString(out, pid);
+        out.writeLong(list.getChangeCount());
+        out.writeBoolean(list.hasChanges());
+        out.writeInt(list.size());
+        int lastInstalledIndex = -1;
+        int index = 0;
+        for(final Config cfg : list) {
+            if ( cfg == list.getLastInstalled() ) {
+                lastInstalledIndex = index;
+            }
+            writeConfig(out, cfg);
+            index++;
+        }
+        final Config lastInstalled = list.getLastInstalled();
+        if ( lastInstalled == null ) {
+            out.writeByte(LAST_INSTALLED_NONE);
+        } else if ( lastInstalledIndex != -1 ) {
+            out.writeByte(LAST_INSTALLED_INDEX);
+            out.writeInt(lastInstalledIndex);
+        } else {
+            out.writeByte(LAST_INSTALLED_CONFIG);
+            writeConfig(out, lastInstalled);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static ConfigList readConfigList(final String pid, final DataInputStream in) throws IOException {
+        final long changeCount = in.readLong();
+        final boolean hasChanges = in.readBoolean();
+        final int size = in.readInt();
+        final List<Config> configs = new ArrayList<>(size);
+        for(int i=0;i<size;i++) {
+            configs.add(readConfig(pid, in));
+        }
+        final Config lastInstalled;
+        switch ( in.readByte() ) {
+            case LAST_INSTALLED_INDEX  : lastInstalled = configs.get(in.readInt());
+                                         break;
+            case LAST_INSTALLED_CONFIG : lastInstalled = readConfig(pid, in);
+                                         break;
+            default : lastInstalled = null;
+        }
+        return new ConfigList(configs, lastInstalled, changeCount, hasChanges);
+    }
+
+    private static void writeConfig(final DataOutputStream out, final Config cfg) throws IOException {
+        out.writeInt(cfg.getRanking());
+        out.writeLong(cfg.getBundleId());
+        writeString(out, cfg.getPolicy().name());
+        out.writeInt(cfg.getIndex());
+        writeString(out, cfg.getState().name());
+
+        final Dictionary<String, Object> properties = cfg.getProperties();
+        if ( properties == null ) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(properties.size());
+            final Enumeration<String> keys = properties.keys();
+            while ( keys.hasMoreElements() ) {
+                final String key = keys.nextElement();
+                writeString(out, key);
+                writeValue(out, properties.get(key));
+            }
+        }
+
+        final List<File> files = cfg.getFiles();
+        if ( files == null ) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(files.size());
+            for(final File f : files) {
+                writeString(out, f.getPath());
+            }
+        }
+    }
+
+    private static Config readConfig(final String pid, final DataInputStream in) throws IOException {
+        final int ranking = in.readInt();
+        final long bundleId = in.readLong();
+        final ConfigPolicy policy = ConfigPolicy.valueOf(readString(in));
+        final int index = in.readInt();
+        final ConfigState state = ConfigState.valueOf(readString(in));
+
+        Dictionary<String, Object> properties = null;
+        final int propCount = in.readInt();
+        if ( propCount >= 0 ) {
+            properties = new Hashtable<>();
+            for(int i=0;i<propCount;i++) {
+                final String key = readString(in);
+                properties.put(key, readValue(in));
+            }
+        }
+
+        List<File> files = null;
+        final int fileCount = in.readInt();
+        if ( fileCount >= 0 ) {
+            files = new ArrayList<>(fileCount);
+            for(int i=0;i<fileCount;i++) {
+                files.add(new File(readString(in)));
+            }
+        }
+
+        final Config cfg = new Config(pid, properties, bundleId, ranking, policy);
+        cfg.setIndex(index);
+        cfg.setState(state);
+        cfg.setFiles(files);
+        return cfg;
+    }
+
+    private static void writeValue(final DataOutputStream out, final Object value) throws IOException {
+        if ( value == null ) {
+            out.writeByte(TYPE_NULL);
+        } else if ( value instanceof String ) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) value);
+        } else if ( value instanceof Integer ) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if ( value instanceof Long ) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if ( value instanceof Float ) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) value);
+        } else if ( value instanceof Double ) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if ( value instanceof Byte ) {
+            out.writeByte(TYPE_BYTE);
+            out.writeByte((Byte) value);
+        } else if ( value instanceof Short ) {
+            out.writeByte(TYPE_SHORT);
+            out.writeShort((Short) value);
+        } else if ( value instanceof Character ) {
+            out.writeByte(TYPE_CHARACTER);
+            out.writeChar((Character) value);
+        } else if ( value instanceof Boolean ) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if ( value.getClass().isArray()
+                && ARRAY_COMPONENT_TYPES.containsKey(value.getClass().getComponentType().getName()) ) {
+            out.writeByte(TYPE_ARRAY);
+            writeString(out, value.getClass().getComponentType().getName());
+            final int length = Array.getLength(value);
+            out.writeInt(length);
+            for(int i=0;i<length;i++) {
+                writeValue(out, Array.get(value, i));
+            }
+        } else if ( value instanceof Collection ) {
+            out.writeByte(TYPE_COLLECTION);
+            final Collection<?> c = (Collection<?>) value;
+            out.writeInt(c.size());
+            for(final Object o : c) {
+                writeValue(out, o);
+            }
+        } else {
+            // any other type is not expected in a configuration, fall back to serialization
+            out.writeByte(TYPE_SERIALIZED);
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try ( final ObjectOutputStream oos = new ObjectOutputStream(bytes) ) {
+                oos.writeObject(value);
+            }
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+    }
+
+    private static Object readValue(final DataInputStream in) throws IOException {
+        final byte type = in.readByte();
+        switch ( type ) {
+            case TYPE_NULL      : return null;
+            case TYPE_STRING    : return readString(in);
+            case TYPE_INTEGER   : return in.readInt();
+            case TYPE_LONG      : return in.readLong();
+            case TYPE_FLOAT     : return in.readFloat();
+            case TYPE_DOUBLE    : return in.readDouble();
+            case TYPE_BYTE      : return in.readByte();
+            case TYPE_SHORT     : return in.readShort();
+            case TYPE_CHARACTER : return in.readChar();
+            case TYPE_BOOLEAN   : return in.readBoolean();
+            case TYPE_ARRAY     : final Class<?> componentType = ARRAY_COMPONENT_TYPES.get(readString(in));
+                                  if ( componentType == null ) {
+                                      throw new IOException("Unknown array type");
+                                  }
+                                  final int length = in.readInt();
+                                  final Object array = Array.newInstance(componentType, length);
+                                  for(int i=0;i<length;i++) {
+                                      Array.set(array, i, readValue(in));
+                                  }
+                                  return array;
+            case TYPE_COLLECTION : final int size = in.readInt();
+                                  final List<Object> list = new ArrayList<>(size);
+                                  for(int i=0;i<size;i++) {
+                                      list.add(readValue(in));
+                                  }
+                                  return list;
+            case TYPE_SERIALIZED : final byte[] bytes = new byte[in.readInt()];
+                                  in.readFully(bytes);
+                                  try ( final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes)) ) {
+                                      return ois.readObject();
+                                  } catch ( final ClassNotFoundException cnfe ) {
+                                      throw new IOException(cnfe);
+                                  }
+        }
+        throw new IOException("Unknown value type " + type);
+    }
+
+    private static void writeLongMap(final DataOutputStream out, final Map<Long, Long> map) throws IOException {
+        out.writeInt(map.size());
+        for(final Map.Entry<Long, Long> entry : map.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    private static void readLongMap(final DataInputStream in, final Map<Long, Long> map) throws IOException {
+        map.clear();
+        final int size = in.readInt();
+        for(int i=0;i<size;i++) {
+            final long key = in.readLong();
+            map.put(key, in.readLong());
+        }
+    }
+
+    /**
+     * Write a string, unlike {@link DataOutputStream#writeUTF(String)} this
+     * supports strings of any length.
+     */
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.configurator.impl.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.felix.configurator.impl.model.BundleState;
+import org.junit.Test;
+
+public class JSONUtilTest {
+
+    private BinUtil.ResourceProvider provider(final String... names) {
+        return new BinUtil.ResourceProvider() {
+
+            @Override
+            public long getBundleId() {
+                return 1;
+            }
+
+            @Override
+            public URL getEntry(final String path) {
+                return null;
+            }
+
+            @Override
+            public String getIdentifier() {
+                return "test";
+            }
+
+            @Override
+            public Enumeration<URL> findEntries(final String path, final String filePattern) {
+                final Vector<URL> urls = new Vector<>();
+                for(final String name : names) {
+                    urls.add(JSONUtilTest.class.getResource("/bundles/" + name + ".json"));
+                }
+                return urls.elements();
+            }
+        };
+    }
+
+    @Test public void testParallelRead() throws Exception {
+        final BinUtil.ResourceProvider provider = provider("1", "3");
+
+        final JSONUtil.Report sequentialReport = new JSONUtil.Report();
+        final BundleState sequential = JSONUtil.readConfigurationsFromBundle(provider,
+                Collections.singleton("OSGI-INF/configurator"), sequentialReport);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final JSONUtil.Report parallelReport = new JSONUtil.Report();
+            final BundleState parallel = JSONUtil.readConfigurationsFromBundle(provider,
+                    Collections.singleton("OSGI-INF/configurator"), parallelReport, executor);
+
+            assertTrue(parallelReport.errors.isEmpty());
+            assertEquals(sequentialReport.warnings, parallelReport.warnings);
+            assertEquals(new HashSet<>(sequential.getPids()), new HashSet<>(parallel.getPids()));
+            for(final String pid : sequential.getPids()) {
+                assertEquals(sequential.getConfigurations(pid).size(), parallel.getConfigurations(pid).size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test public void testInterruptedParallelRead() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch latch = new CountDownLatch(1);
+        try {
+            // keep the only thread busy, so none of the files is parsed
+            executor.submit(() -> {
+                latch.await();
+                return null;
+            });
+
+            final JSONUtil.Report report = new JSONUtil.Report();
+            Thread.currentThread().interrupt();
+            final BundleState state;
+            try {
+                state = JSONUtil.readConfigurationsFromBundle(provider("1", "3"),
+                        Collections.singleton("OSGI-INF/configurator"), report, executor);
+            } finally {
+                assertTrue(Thread.interrupted());
+            }
+
+            assertTrue(state.getPids().isEmpty());
+            assertEquals(Arrays.asList("Interrupted while reading OSGI-INF/configurator/1.json",
+                    "Interrupted while reading OSGI-INF/configurator/3.json"), report.errors);
+        } finally {
+            latch.countDown();
+            executor.shutdownNow();
+        }
+    }
+}
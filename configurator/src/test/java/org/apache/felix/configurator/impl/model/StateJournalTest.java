@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.configurator.impl.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashSet;
+import java.util.Hashtable;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StateJournalTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private Config createConfig(final String pid, final int ranking) {
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put("string", "value");
+        props.put("int", 5);
+        props.put("long", 7L);
+        props.put("double", 1.5d);
+        props.put("bool", true);
+        props.put("char", 'c');
+        props.put("strings", new String[] {"a", "b"});
+        props.put("ints", new int[] {1, 2, 3});
+        props.put("list", Arrays.asList("x", "y"));
+        final Config c = new Config(pid, props, 1, ranking, ConfigPolicy.FORCE);
+        c.setFiles(Collections.singletonList(new File("bin", "file")));
+        return c;
+    }
+
+    @Test public void testReadWrite() throws Exception {
+        final File file = new File(folder.getRoot(), StateJournal.FILE_NAME);
+        final State state = new State();
+        state.add(createConfig("a", 0));
+        state.add(new Config("b", null, 2, 10, ConfigPolicy.DEFAULT));
+        state.getConfigurations("a").setLastInstalled(state.getConfigurations("a").iterator().next());
+        state.setLastModified(1, 5);
+        state.setConfigAdminBundleId(1, 3);
+        state.setInitialHashes(new HashSet<>(Collections.singleton("hash")));
+
+        final StateJournal journal = new StateJournal(file);
+        journal.write(state, state.getPids());
+        assertTrue(file.exists());
+        assertFalse(state.hasBundleInfoChanges());
+
+        final State s = new StateJournal(file).readState(null);
+        assertEquals(5L, (Object)s.getLastModified(1));
+        assertEquals(3L, (Object)s.getConfigAdminBundleId(1));
+        assertEquals(Collections.singleton("hash"), s.getInitialHashes());
+
+        final ConfigList list = s.getConfigurations("a");
+        assertEquals(1, list.size());
+        final Config c = list.iterator().next();
+        assertSame(c, list.getLastInstalled());
+        assertEquals(ConfigPolicy.FORCE, c.getPolicy());
+        assertEquals(Collections.singletonList(new File("bin", "file")), c.getFiles());
+        assertEquals("value", c.getProperties().get("string"));
+        assertEquals(5, c.getProperties().get("int"));
+        assertEquals(7L, c.getProperties().get("long"));
+        assertEquals(1.5d, c.getProperties().get("double"));
+        assertEquals(true, c.getProperties().get("bool"));
+        assertEquals('c', c.getProperties().get("char"));
+        assertArrayEquals(new String[] {"a", "b"}, (String[])c.getProperties().get("strings"));
+        assertArrayEquals(new int[] {1, 2, 3}, (int[])c.getProperties().get("ints"));
+        assertEquals(Arrays.asList("x", "y"), c.getProperties().get("list"));
+
+        assertNull(s.getConfigurations("b").getLastInstalled());
+        assertNull(s.getConfigurations("b").iterator().next().getProperties());
+    }
+
+    @Test public void testIncrementalWrite() throws Exception {
+        final File file = new File(folder.getRoot(), StateJournal.FILE_NAME);
+        final State state = new State();
+        state.add(createConfig("a", 0));
+        state.add(createConfig("b", 0));
+
+        final StateJournal journal = new StateJournal(file);
+        journal.write(state, state.getPids());
+        final long size = file.length();
+
+        state.add(createConfig("b", 20));
+        state.getConfigurations("b").setChangeCount(4);
+        journal.write(state, Collections.singleton("b"));
+        assertTrue(file.length() > size);
+
+        final State s = new StateJournal(file).readState(null);
+        assertEquals(1, s.getConfigurations("a").size());
+        assertEquals(2, s.getConfigurations("b").size());
+        assertEquals(4L, s.getConfigurations("b").getChangeCount());
+
+        // reading compacts the journal
+        assertTrue(file.length() < size + size / 2 + 512);
+    }
+
+    @Test public void testTornRecord() throws Exception {
+        final File file = new File(folder.getRoot(), StateJournal.FILE_NAME);
+        final State state = new State();
+        state.add(createConfig("a", 0));
+
+        final StateJournal journal = new StateJournal(file);
+        journal.write(state, state.getPids());
+        final long size = file.length();
+
+        state.add(createConfig("b", 0));
+        journal.write(state, Collections.singleton("b"));
+
+        // simulate a crash while appending
+        try ( final RandomAccessFile raf = new RandomAccessFile(file, "rw") ) {
+            raf.setLength(size + (file.length() - size) / 2);
+        }
+
+        final State s = new StateJournal(file).readState(null);
+        assertEquals(1, s.getConfigurations("a").size());
+        assertNull(s.getConfigurations("b"));
+    }
+
+    @Test public void testLegacyMigration() throws Exception {
+        final File legacy = new File(folder.getRoot(), State.FILE_NAME);
+        final State state = new State();
+        state.add(createConfig("a", 0));
+        state.setLastModified(1, 5);
+        try ( final ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(legacy)) ) {
+            oos.writeObject(state);
+        }
+
+        final File file = new File(folder.getRoot(), StateJournal.FILE_NAME);
+        final State s = new StateJournal(file).readState(legacy);
+        assertEquals(1, s.getConfigurations("a").size());
+        assertEquals(5L, (Object)s.getLastModified(1));
+        assertTrue(file.exists());
+        assertFalse(legacy.exists());
+    }
+}
@@ -35,6 +35,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -279,18 +284,94 @@ public class PojoSR implements PojoServiceRegistry
             bundles.add(bundle);
         }
 
-        for (Bundle bundle : bundles)
+        int threads = getStartThreads();
+        if (threads <= 1)
+        {
+            for (Bundle bundle : bundles)
+            {
+                startBundle(bundle);
+            }
+            return;
+        }
+
+        // Bundles without an activator are started right away, as there is
+        // nothing to run for them, only the activators are run concurrently.
+        final ClassLoader tccl = Thread.currentThread().getContextClassLoader();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private final AtomicInteger m_count = new AtomicInteger();
+
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "PojoSR Bundle Starter " + m_count.incrementAndGet());
+                thread.setContextClassLoader(tccl);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try
+        {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (final Bundle bundle : bundles)
+            {
+                if (bundle.getHeaders().get(Constants.BUNDLE_ACTIVATOR) == null)
+                {
+                    startBundle(bundle);
+                }
+                else
+                {
+                    futures.add(executor.submit(new Runnable()
+                    {
+                        public void run()
+                        {
+                            startBundle(bundle);
+                        }
+                    }));
+                }
+            }
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private void startBundle(Bundle bundle)
+    {
+        try
+        {
+            bundle.start();
+        }
+        catch (Throwable e)
+        {
+            System.out.println("Unable to start bundle: " + bundle);
+            e.printStackTrace();
+        }
+    }
+
+    private int getStartThreads()
+    {
+        Object threads = bundleConfig.get(PojoServiceRegistryFactory.BUNDLES_START_THREADS);
+        if (threads instanceof Number)
+        {
+            return ((Number) threads).intValue();
+        }
+        else if (threads != null)
         {
             try
             {
-                bundle.start();
+                return Integer.parseInt(threads.toString().trim());
             }
-            catch (Throwable e)
+            catch (NumberFormatException ex)
             {
-                System.out.println("Unable to start bundle: " + bundle);
-                e.printStackTrace();
+                System.out.println("Invalid " + PojoServiceRegistryFactory.BUNDLES_START_THREADS + ": " + threads);
             }
         }
+        return 1;
     }
 
     public Bundle registerBundle(BundleDescriptor desc) throws Exception
@@ -404,12 +485,12 @@ public class PojoSR implements PojoServiceRegistry
                 }
             }
         }
+        String index = System.getProperty("pojosr.index");
         Map<String, Object> config = new HashMap<String, Object>();
         config.put(
                 PojoServiceRegistryFactory.BUNDLE_DESCRIPTORS,
-                (filter != null) ? new ClasspathScanner()
-                        .scanForBundles(filter.toString()) : new ClasspathScanner()
-                        .scanForBundles());
+                new ClasspathScanner().scanForBundles((filter != null) ? filter.toString() : null, null,
+                        (index != null) ? new File(index) : null));
         new PojoServiceRegistryFactoryImpl().newPojoServiceRegistry(config);
         if (main != null)
         {
@@ -55,19 +55,21 @@ public class PojoServiceRegistryFactoryImpl implements PojoServiceRegistryFactor
 
     public Framework newFramework(Map<String, String> configuration)
     {
-        return new FrameworkImpl(configuration.get("pojosr.filter"), configuration);
+        return new FrameworkImpl(configuration.get("pojosr.filter"), configuration.get("pojosr.index"), configuration);
     }
 
     private static final class FrameworkImpl implements Framework
     {
         private final String m_filter;
+        private final String m_index;
         private volatile Bundle m_bundle = null;
         private volatile PojoServiceRegistry m_reg = null;
         private volatile Map<String, Object> m_configuration;
 
-        public FrameworkImpl(String filter, Map configuration)
+        public FrameworkImpl(String filter, String index, Map configuration)
         {
             m_filter = filter;
+            m_index = index;
             m_configuration = configuration;
         }
 
@@ -107,9 +109,8 @@ public class PojoServiceRegistryFactoryImpl implements PojoServiceRegistryFactor
         {
             try
             {
-                m_reg.startBundles((m_filter != null) ? new ClasspathScanner()
-                        .scanForBundles(m_filter)
-                        : new ClasspathScanner().scanForBundles());
+                m_reg.startBundles(new ClasspathScanner().scanForBundles(m_filter, null,
+                        (m_index != null) ? new File(m_index) : null));
             }
             catch (Exception e)
             {
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.connect.launch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index of the main manifest headers found on the classpath, keyed by
+ * manifest url. An entry is only reused as long as the jar file or directory
+ * it was read from has not been modified since.
+ */
+class ClasspathIndex
+{
+    private static final int MAGIC = 0x46434349; // FCCI
+    private static final int VERSION = 1;
+
+    private final Map<String, Entry> m_entries = new LinkedHashMap<String, Entry>();
+    private boolean m_modified;
+
+    static ClasspathIndex read(File file)
+    {
+        ClasspathIndex index = new ClasspathIndex();
+        if (file == null || !file.isFile())
+        {
+            return index;
+        }
+        DataInputStream input = null;
+        try
+        {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION)
+            {
+                index.m_modified = true;
+                return index;
+            }
+            for (int count = input.readInt(); count > 0; count--)
+            {
+                String url = readString(input);
+                long lastModified = input.readLong();
+                Map<String, String> headers = new HashMap<String, String>();
+                for (int size = input.readInt(); size > 0; size--)
+                {
+                    headers.put(readString(input), readString(input));
+                }
+                index.m_entries.put(url, new Entry(lastModified, headers));
+            }
+        }
+        catch (IOException ex)
+        {
+            // start over with an empty index, it is rewritten after the scan
+            index.m_entries.clear();
+            index.m_modified = true;
+        }
+        finally
+        {
+            close(input);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the indexed headers of the manifest or <code>null</code> if the
+     * manifest is not indexed or has been modified since it was indexed.
+     */
+    Map<String, String> get(URL manifestURL)
+    {
+        Entry entry = m_entries.get(manifestURL.toExternalForm());
+        if (entry != null)
+        {
+            long lastModified = getLastModified(manifestURL);
+            if (lastModified != 0 && lastModified == entry.m_lastModified)
+            {
+                return new HashMap<String, String>(entry.m_headers);
+            }
+        }
+        return null;
+    }
+
+    void put(URL manifestURL, Map<String, String> headers)
+    {
+        long lastModified = getLastModified(manifestURL);
+        if (lastModified != 0)
+        {
+            m_entries.put(manifestURL.toExternalForm(), new Entry(lastModified, new HashMap<String, String>(headers)));
+            m_modified = true;
+        }
+    }
+
+    /**
+     * Drops all entries whose manifest url is not contained in the given
+     * set of urls, that is which are no longer on the classpath.
+     */
+    void retain(Set<String> manifestURLs)
+    {
+        if (m_entries.keySet().retainAll(manifestURLs))
+        {
+            m_modified = true;
+        }
+    }
+
+    boolean isModified()
+    {
+        return m_modified;
+    }
+
+    void write(File file) throws IOException
+    {
+        File tmp = new File(file.getPath() + ".tmp");
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+        {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try
+        {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(m_entries.size());
+            for (Map.Entry<String, Entry> entry : m_entries.entrySet())
+            {
+                writeString(output, entry.getKey());
+                output.writeLong(entry.getValue().m_lastModified);
+                output.writeInt(entry.getValue().m_headers.size());
+                for (Map.Entry<String, String> header : entry.getValue().m_headers.entrySet())
+                {
+                    writeString(output, header.getKey());
+                    writeString(output, header.getValue());
+                }
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+        if (!tmp.renameTo(file) && (!file.delete() || !tmp.renameTo(file)))
+        {
+            tmp.delete();
+            throw new IOException("Unable to write index " + file);
+        }
+        m_modified = false;
+    }
+
+    /**
+     * Returns the last modification time of the file a manifest url points
+     * into: the (outermost) jar file for <code>jar:</code> urls and the
+     * manifest file itself for <code>file:</code> urls. Returns 0 for any
+     * other url, which is therefore never indexed.
+     */
+    static long getLastModified(URL manifestURL)
+    {
+        String url = manifestURL.toExternalForm();
+        try
+        {
+            if (url.startsWith("jar:"))
+            {
+                int idx = url.indexOf("!/");
+                if (idx < 0)
+                {
+                    return 0;
+                }
+                url = url.substring("jar:".length(), idx);
+            }
+            if (url.startsWith("file:"))
+            {
+                return new File(new URI(url)).lastModified();
+            }
+        }
+        catch (Exception ex)
+        {
+            // not a file we can check
+        }
+        return 0;
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException
+    {
+        // not writeUTF, as Export-Package headers can exceed its 64k limit
+        byte[] bytes = value.getBytes("UTF-8");
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException
+    {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void close(DataInputStream input)
+    {
+        if (input != null)
+        {
+            try
+            {
+                input.close();
+            }
+            catch (IOException ex)
+            {
+                // ignore
+            }
+        }
+    }
+
+    private static class Entry
+    {
+        final long m_lastModified;
+        final Map<String, String> m_headers;
+
+        Entry(long lastModified, Map<String, String> headers)
+        {
+            m_lastModified = lastModified;
+            m_headers = headers;
+        }
+    }
+}
@@ -18,13 +18,17 @@
  */
 package org.apache.felix.connect.launch;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkUtil;
@@ -51,18 +55,52 @@ public class ClasspathScanner
 
     public List<BundleDescriptor> scanForBundles(String filterString, ClassLoader loader)
             throws Exception
+    {
+        return scanForBundles(filterString, loader, null);
+    }
+
+    /**
+     * Scans the classpath for bundles like {@link #scanForBundles(String, ClassLoader)}
+     * but reuses the manifest headers recorded in the given index file for all
+     * jar files and directories which have not been modified since they were
+     * indexed. The index file is created or updated if needed, so it may either
+     * be generated at build time or on the first run.
+     *
+     * @param filterString an optional filter the bundle headers have to match
+     * @param loader the class loader to scan, defaults to the loader of this class
+     * @param indexFile the index file, if <code>null</code> no index is used
+     */
+    public List<BundleDescriptor> scanForBundles(String filterString, ClassLoader loader, File indexFile)
+            throws Exception
     {
         Filter filter = (filterString != null) ? FrameworkUtil
                 .createFilter(filterString) : null;
 
         loader = (loader != null) ? loader : getClass().getClassLoader();
 
+        ClasspathIndex index = (indexFile != null) ? ClasspathIndex.read(indexFile) : null;
+        Set<String> manifestURLs = new HashSet<String>();
+
         List<BundleDescriptor> bundles = new ArrayList<BundleDescriptor>();
         byte[] bytes = new byte[1024 * 1024 * 2];
         for (Enumeration<URL> e = loader.getResources(
                 "META-INF/MANIFEST.MF"); e.hasMoreElements(); )
         {
             URL manifestURL = e.nextElement();
+            if (index != null)
+            {
+                manifestURLs.add(manifestURL.toExternalForm());
+                Map<String, String> headers = index.get(manifestURL);
+                if (headers != null)
+                {
+                    if ((filter == null)
+                            || filter.match(new MapToDictionary<String, String>(headers)))
+                    {
+                        bundles.add(new BundleDescriptor(loader, getParentURL(manifestURL).toExternalForm(), headers));
+                    }
+                    continue;
+                }
+            }
             InputStream input = null;
             try
             {
@@ -154,6 +192,10 @@ public class ClasspathScanner
                         bytes[current++] = bytes[i];
                     }
                 }
+                if (index != null)
+                {
+                    index.put(manifestURL, headers);
+                }
                 if ((filter == null)
                         || filter.match(new MapToDictionary<String, String>(headers)))
                 {
@@ -168,6 +210,23 @@ public class ClasspathScanner
                 }
             }
         }
+
+        if (index != null)
+        {
+            index.retain(manifestURLs);
+            if (index.isModified())
+            {
+                try
+                {
+                    index.write(indexFile);
+                }
+                catch (IOException ex)
+                {
+                    System.out.println("Unable to write classpath index: " + indexFile);
+                    ex.printStackTrace();
+                }
+            }
+        }
         return bundles;
     }
 
@@ -28,5 +28,14 @@ public interface PojoServiceRegistryFactory
     public static final String BUNDLES_AUTOSTART =
             PojoServiceRegistry.class.getName().toLowerCase() + ".bundles.autostart";
 
+    /**
+     * The number of threads used to start bundles with a Bundle-Activator.
+     * Defaults to 1, i.e. all bundles are started sequentially in the order
+     * of the bundle descriptors. Only use more threads if the activators of
+     * the bundles don't depend on being started in a particular order.
+     */
+    public static final String BUNDLES_START_THREADS =
+            PojoServiceRegistry.class.getName().toLowerCase() + ".bundles.start.threads";
+
     public PojoServiceRegistry newPojoServiceRegistry(Map<String, Object> configuration) throws Exception;
 }
@@ -25,7 +25,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
 
 import org.osgi.framework.Bundle;
 import org.osgi.service.coordinator.Coordination;
@@ -74,7 +74,7 @@ public class CoordinationImpl implements Coordination
 
     private final Map<Class<?>, Object> variables;
 
-    private TimerTask timeoutTask;
+    private ScheduledFuture<?> timeoutTask;
 
     private Thread associatedThread;
 
@@ -506,22 +506,19 @@ public class CoordinationImpl implements Coordination
     {
         if (timeoutTask != null)
         {
-            owner.schedule(timeoutTask, -1);
+            owner.cancel(timeoutTask);
             timeoutTask = null;
         }
 
         if (deadLine > System.currentTimeMillis())
         {
-            timeoutTask = new TimerTask()
+            timeoutTask = owner.schedule(new Runnable()
             {
-                @Override
                 public void run()
                 {
                     CoordinationImpl.this.timeout();
                 }
-            };
-
-            owner.schedule(timeoutTask, deadLine);
+            }, deadLine);
         }
     }
 
@@ -20,15 +20,16 @@ package org.apache.felix.coordinator.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
-import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.osgi.framework.Bundle;
@@ -48,15 +49,25 @@ public class CoordinationMgr
         public CoordinationHolder holder;
     }
 
-    private ThreadLocal<Stack<CoordinationImpl>> perThreadStack;
+    /**
+     * Number of lock stripes for the participants, must be a power of two.
+     */
+    private static final int PARTICIPANT_STRIPES = 16;
+
+    private ThreadLocal<List<CoordinationImpl>> perThreadStack;
 
     private final AtomicLong ctr;
 
     private final Map<Long, CoordinationImpl> coordinations;
 
-    private final Map<Participant, CoordinationImpl> participants;
+    /**
+     * The participants locked into a coordination. Participants are
+     * compared by identity and distributed over the stripes by their
+     * identity hash code. Each stripe is its own monitor.
+     */
+    private final Map<Participant, CoordinationImpl>[] participants;
 
-    private final Timer coordinationTimer;
+    private final ScheduledThreadPoolExecutor coordinationTimer;
 
     /**
      * Wait at most 60 seconds for participant to be eligible for participation
@@ -66,27 +77,37 @@ public class CoordinationMgr
      */
     private long participationTimeOut = 60 * 1000L;
 
+    @SuppressWarnings("unchecked")
     CoordinationMgr()
     {
-        perThreadStack = new ThreadLocal<Stack<CoordinationImpl>>();
+        perThreadStack = new ThreadLocal<List<CoordinationImpl>>();
         ctr = new AtomicLong(-1);
-        coordinations = new HashMap<Long, CoordinationImpl>();
-        participants = new IdentityHashMap<Participant, CoordinationImpl>();
-        coordinationTimer = new Timer("Coordination Timer", true);
+        coordinations = new ConcurrentHashMap<Long, CoordinationImpl>();
+        participants = new Map[PARTICIPANT_STRIPES];
+        for (int i = 0; i < participants.length; i++)
+        {
+            participants[i] = new IdentityHashMap<Participant, CoordinationImpl>();
+        }
+        coordinationTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+        {
+            public Thread newThread(final Runnable r)
+            {
+                final Thread t = new Thread(r, "Coordination Timer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        coordinationTimer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
     }
 
     void cleanUp()
     {
         // terminate coordination timeout timer
-        coordinationTimer.purge();
-        coordinationTimer.cancel();
+        coordinationTimer.shutdownNow();
 
         // terminate all active coordinations
-        final List<CoordinationImpl> coords = new ArrayList<CoordinationImpl>();
-        synchronized ( this.coordinations ) {
-            coords.addAll(this.coordinations.values());
-            this.coordinations.clear();
-        }
+        final List<CoordinationImpl> coords = new ArrayList<CoordinationImpl>(this.coordinations.values());
+        this.coordinations.clear();
         for(final CoordinationImpl c : coords)
         {
             if ( !c.isTerminated() )
@@ -96,49 +117,86 @@ public class CoordinationMgr
         }
 
         // release all participants
-        synchronized ( this.participants )
+        for (final Map<Participant, CoordinationImpl> stripe : participants)
         {
-            participants.clear();
+            synchronized ( stripe )
+            {
+                stripe.clear();
+                stripe.notifyAll();
+            }
         }
 
         // cannot really clear out the thread local but we can let it go
         perThreadStack = null;
     }
 
-    private Stack<CoordinationImpl> getThreadStack(final boolean create)
+    /**
+     * Returns the coordination stack of the current thread. The stack is
+     * only accessed by its thread and therefore not synchronized, the top
+     * of the stack is the last element of the list.
+     */
+    private List<CoordinationImpl> getThreadStack(final boolean create)
     {
-        final ThreadLocal<Stack<CoordinationImpl>> tl = this.perThreadStack;
-        Stack<CoordinationImpl> stack = null;
+        final ThreadLocal<List<CoordinationImpl>> tl = this.perThreadStack;
+        List<CoordinationImpl> stack = null;
         if ( tl != null )
         {
             stack = tl.get();
             if ( stack == null && create ) {
-                stack = new Stack<CoordinationImpl>();
+                stack = new ArrayList<CoordinationImpl>();
                 tl.set(stack);
             }
         }
         return stack;
     }
 
+    private Map<Participant, CoordinationImpl> getStripe(final Participant p)
+    {
+        int h = System.identityHashCode(p);
+        h ^= (h >>> 16);
+        return participants[h & (PARTICIPANT_STRIPES - 1)];
+    }
+
     void configure(final long participationTimeout)
     {
         this.participationTimeOut = participationTimeout;
     }
 
-    void schedule(final TimerTask task, final long deadLine)
+    /**
+     * Schedules the task to run at the dead line.
+     *
+     * @return The future for cancelling the task or {@code null} if the
+     *         manager has already been cleaned up.
+     */
+    ScheduledFuture<?> schedule(final Runnable task, final long deadLine)
     {
-        if (deadLine < 0)
+        try
         {
-            task.cancel();
+            return coordinationTimer.schedule(task, deadLine - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
         }
-        else
+        catch (final RejectedExecutionException ree)
+        {
+            // timer has been shut down
+            return null;
+        }
+    }
+
+    /**
+     * Cancels a task scheduled with {@link #schedule(Runnable, long)}. The task
+     * is removed from the timer queue right away, so cancelled tasks do not
+     * accumulate until their dead line.
+     */
+    void cancel(final ScheduledFuture<?> future)
+    {
+        if (future.cancel(false))
         {
-            coordinationTimer.schedule(task, new Date(deadLine));
+            coordinationTimer.remove((Runnable) future);
         }
     }
 
     void lockParticipant(final Participant p, final CoordinationImpl c)
     {
+        final Map<Participant, CoordinationImpl> participants = getStripe(p);
         synchronized (participants)
         {
             // wait for participant to be released
@@ -186,6 +244,7 @@ public class CoordinationMgr
 
     void releaseParticipant(final Participant p)
     {
+        final Map<Participant, CoordinationImpl> participants = getStripe(p);
         synchronized (participants)
         {
             participants.remove(p);
@@ -199,22 +258,16 @@ public class CoordinationMgr
     {
         final long id = ctr.incrementAndGet();
         final CreationResult result = CoordinationImpl.create(owner, id, name, timeout);
-        synchronized ( this.coordinations )
-        {
-            coordinations.put(id, result.coordination);
-        }
+        coordinations.put(id, result.coordination);
         return result;
     }
 
     void unregister(final CoordinationImpl c, final boolean removeFromThread)
     {
-        synchronized ( this.coordinations )
-        {
-            coordinations.remove(c.getId());
-        }
+        coordinations.remove(c.getId());
         if ( removeFromThread )
         {
-            final Stack<CoordinationImpl> stack = this.getThreadStack(false);
+            final List<CoordinationImpl> stack = this.getThreadStack(false);
             if (stack != null)
             {
                 stack.remove(c);
@@ -224,7 +277,7 @@ public class CoordinationMgr
 
     void push(final CoordinationImpl c)
     {
-        Stack<CoordinationImpl> stack = this.getThreadStack(true);
+        final List<CoordinationImpl> stack = this.getThreadStack(true);
         if ( stack != null)
         {
             if ( stack.contains(c) )
@@ -232,16 +285,16 @@ public class CoordinationMgr
                 throw new CoordinationException("Coordination already pushed", c, CoordinationException.ALREADY_PUSHED);
             }
             c.setAssociatedThread(Thread.currentThread());
-            stack.push(c);
+            stack.add(c);
         }
     }
 
     Coordination pop()
     {
-        final Stack<CoordinationImpl> stack = this.getThreadStack(false);
+        final List<CoordinationImpl> stack = this.getThreadStack(false);
         if (stack != null && !stack.isEmpty())
         {
-            final CoordinationImpl c = stack.pop();
+            final CoordinationImpl c = stack.remove(stack.size() - 1);
             if ( c != null ) {
                 c.setAssociatedThread(null);
             }
@@ -252,10 +305,10 @@ public class CoordinationMgr
 
     Coordination peek()
     {
-        final Stack<CoordinationImpl> stack = this.getThreadStack(false);
+        final List<CoordinationImpl> stack = this.getThreadStack(false);
         if (stack != null && !stack.isEmpty())
         {
-            return stack.peek();
+            return stack.get(stack.size() - 1);
         }
         return null;
     }
@@ -263,34 +316,28 @@ public class CoordinationMgr
     Collection<Coordination> getCoordinations()
     {
         final ArrayList<Coordination> result = new ArrayList<Coordination>();
-        synchronized ( this.coordinations )
+        for(final CoordinationImpl c : this.coordinations.values() )
         {
-            for(final CoordinationImpl c : this.coordinations.values() )
-            {
-                result.add(c.getHolder());
-            }
+            result.add(c.getHolder());
         }
         return result;
     }
 
     Coordination getCoordinationById(final long id)
     {
-        synchronized ( this.coordinations )
-        {
-            final CoordinationImpl c = coordinations.get(id);
-            return (c == null || c.isTerminated()) ? null : c;
-        }
+        final CoordinationImpl c = coordinations.get(id);
+        return (c == null || c.isTerminated()) ? null : c;
     }
 
 	public Coordination getEnclosingCoordination(final CoordinationImpl c)
 	{
-        final Stack<CoordinationImpl> stack = this.getThreadStack(false);
+        final List<CoordinationImpl> stack = this.getThreadStack(false);
         if ( stack != null )
         {
         	final int index = stack.indexOf(c);
         	if ( index > 0 )
         	{
-        		return stack.elementAt(index - 1);
+        		return stack.get(index - 1);
         	}
         }
 		return null;
@@ -299,7 +346,7 @@ public class CoordinationMgr
 	public CoordinationException endNestedCoordinations(final CoordinationImpl c)
 	{
 	    CoordinationException partiallyFailed = null;
-        final Stack<CoordinationImpl> stack = this.getThreadStack(false);
+        final List<CoordinationImpl> stack = this.getThreadStack(false);
         if ( stack != null )
         {
         	final int index = stack.indexOf(c) + 1;
@@ -308,7 +355,7 @@ public class CoordinationMgr
         		final int count = stack.size()-index;
         		for(int i=0;i<count;i++)
         		{
-        			final CoordinationImpl nested = stack.pop();
+        			final CoordinationImpl nested = stack.remove(stack.size() - 1);
         			try
         			{
         			    if ( partiallyFailed != null)
@@ -333,17 +380,14 @@ public class CoordinationMgr
 	 */
     public void dispose(final Bundle owner) {
         final List<CoordinationImpl> candidates = new ArrayList<CoordinationImpl>();
-        synchronized ( this.coordinations )
+        final Iterator<Map.Entry<Long, CoordinationImpl>> iter = this.coordinations.entrySet().iterator();
+        while ( iter.hasNext() )
         {
-            final Iterator<Map.Entry<Long, CoordinationImpl>> iter = this.coordinations.entrySet().iterator();
-            while ( iter.hasNext() )
+            final Map.Entry<Long, CoordinationImpl> entry = iter.next();
+            final CoordinationImpl c = entry.getValue();
+            if ( c.getBundle().getBundleId() == owner.getBundleId() )
             {
-                final Map.Entry<Long, CoordinationImpl> entry = iter.next();
-                final CoordinationImpl c = entry.getValue();
-                if ( c.getBundle().getBundleId() == owner.getBundleId() )
-                {
-                    candidates.add(c);
-                }
+                candidates.add(c);
             }
         }
         if ( candidates.size() > 0 )
@@ -21,7 +21,7 @@ package org.apache.felix.coordinator.impl;
 import java.security.Permission;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
 
 import org.osgi.framework.Bundle;
 import org.osgi.service.coordinator.Coordination;
@@ -281,9 +281,14 @@ public class CoordinatorImpl implements Coordinator
         mgr.unregister(c, removeFromStack);
     }
 
-    void schedule(final TimerTask task, final long deadLine)
+    ScheduledFuture<?> schedule(final Runnable task, final long deadLine)
     {
-        mgr.schedule(task, deadLine);
+        return mgr.schedule(task, deadLine);
+    }
+
+    void cancel(final ScheduledFuture<?> future)
+    {
+        mgr.cancel(future);
     }
 
     void lockParticipant(final Participant p, final CoordinationImpl c)
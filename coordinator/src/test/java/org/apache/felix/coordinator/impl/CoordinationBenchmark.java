@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.coordinator.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.osgi.service.coordinator.Coordination;
+import org.osgi.service.coordinator.Participant;
+
+/**
+ * JMH benchmark for the throughput of begin/addParticipant/end cycles.
+ * <p>
+ * The benchmark is not run as part of the unit tests, it can be started
+ * from the test classpath with {@link #main(String[])} or through the
+ * JMH runner using the class name as the include pattern.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CoordinationBenchmark
+{
+
+    @State(Scope.Benchmark)
+    public static class Manager
+    {
+        /** Coordination timeout in milliseconds, 0 disables the timeout. */
+        @Param({"0", "60000"})
+        public long timeout;
+
+        CoordinationMgr mgr;
+
+        CoordinatorImpl coordinator;
+
+        @Setup(Level.Trial)
+        public void setUp()
+        {
+            mgr = new CoordinationMgr();
+            coordinator = new CoordinatorImpl(null, mgr);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown()
+        {
+            mgr.cleanUp();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Participants
+    {
+        final Participant first = new NoopParticipant();
+
+        final Participant second = new NoopParticipant();
+    }
+
+    @Benchmark
+    public Coordination singleThread(final Manager m, final Participants p) throws Exception
+    {
+        return cycle(m, p);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Coordination fourThreads(final Manager m, final Participants p) throws Exception
+    {
+        return cycle(m, p);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Coordination fourThreadsNested(final Manager m, final Participants p) throws Exception
+    {
+        final Coordination outer = m.coordinator.begin("outer", m.timeout);
+        outer.addParticipant(p.first);
+        final Coordination inner = m.coordinator.begin("inner", m.timeout);
+        inner.addParticipant(p.second);
+        inner.end();
+        outer.end();
+        return outer;
+    }
+
+    private static Coordination cycle(final Manager m, final Participants p)
+    {
+        final Coordination c = m.coordinator.begin("benchmark", m.timeout);
+        c.addParticipant(p.first);
+        c.addParticipant(p.second);
+        c.end();
+        return c;
+    }
+
+    private static final class NoopParticipant implements Participant
+    {
+        public void ended(final Coordination coordination)
+        {
+            // nothing to do
+        }
+
+        public void failed(final Coordination coordination)
+        {
+            // nothing to do
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException
+    {
+        final Options opt = new OptionsBuilder()
+                .include(CoordinationBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
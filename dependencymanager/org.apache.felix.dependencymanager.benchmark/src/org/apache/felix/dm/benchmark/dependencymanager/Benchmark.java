@@ -47,11 +47,24 @@ public class Benchmark {
     volatile ScenarioController m_controller;
     final List<Component> m_components = new ArrayList<>();
 
+    /**
+     * Constructor used when this class is instantiated as a component by our activators.
+     */
+    public Benchmark() {
+    }
+
+    /**
+     * Constructor used by the JMH suite, which drives the scenario from outside of the scenario bundles.
+     */
+    public Benchmark(DependencyManager dm, ScenarioController controller) {
+        m_dm = dm;
+        m_controller = controller;
+    }
+
     /**
      * Initialize our Artists, Albums/Tracks, possibly using a parallel dependency manager.
      */
-    @SuppressWarnings("unused")
-    private void start() {
+    public void start() {
         Helper.debug(() -> "Benchmark.start");
         
         IntStream.range(0, ARTISTS)
@@ -65,8 +78,10 @@ public class Benchmark {
         m_components.stream().forEach(m_dm::add);
     }
     
-    @SuppressWarnings("unused")
-    private void stop() {
+    /**
+     * Removes all the Artists, Albums/Tracks created by the start method.
+     */
+    public void stop() {
         m_components.forEach(m_dm::remove);
     }
 
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.dm.benchmark.jmh;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.dm.ComponentExecutorFactory;
+import org.apache.felix.dm.DependencyManager;
+import org.apache.felix.dm.FilterIndex;
+import org.apache.felix.dm.benchmark.dependencymanager.Benchmark;
+import org.apache.felix.dm.benchmark.scenario.Helper;
+import org.apache.felix.dm.impl.Activator;
+import org.apache.felix.dm.impl.index.multiproperty.MultiPropertyFilterIndex;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.launch.FrameworkFactory;
+
+/**
+ * JMH version of the Artist/Album/Track scenario: each trial boots an embedded Felix framework, and each
+ * benchmark invocation adds, then removes, all the scenario components using the system bundle context.
+ * The score is the number of components added and removed per second.
+ * 
+ * The trials are parameterized with the DM component executor (serial, or parallel using a
+ * ComponentExecutorFactory like the ParallelActivator), and with the "objectClass,id" multi property
+ * filter index turned on or off. Each parameter combination runs in its own JVM, since the component
+ * scheduler and the service registry cache are static.
+ * 
+ * @author <a href="mailto:dev@felix.apache.org">Felix Project Team</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1024m", "-Xmx1024m" })
+public class DependencyManagerBenchmark {
+    /**
+     * Filter index used when the index is turned on (same as in index.bndrun).
+     */
+    private final static String FILTER_INDEX = "objectClass,id";
+
+    @Param({ "serial", "parallel" })
+    String executor;
+
+    @Param({ "false", "true" })
+    boolean filterIndex;
+
+    private File m_storage;
+    private Framework m_framework;
+    private Activator m_dmActivator;
+    private DependencyManager m_dm;
+    private final LatchScenarioController m_controller = new LatchScenarioController();
+
+    @Setup
+    public void setup() throws Exception {
+        m_storage = Files.createTempDirectory("dm-benchmark").toFile();
+        Map<String, String> config = new HashMap<>();
+        config.put(Constants.FRAMEWORK_STORAGE, m_storage.getAbsolutePath());
+        config.put(Constants.FRAMEWORK_STORAGE_CLEAN, Constants.FRAMEWORK_STORAGE_CLEAN_ONFIRSTINIT);
+        FrameworkFactory factory = ServiceLoader.load(FrameworkFactory.class).iterator().next();
+        m_framework = factory.newFramework(config);
+        m_framework.start();
+
+        // DM is loaded from the class path, so we start its activator ourself with the system bundle context
+        BundleContext context = m_framework.getBundleContext();
+        m_dmActivator = new Activator();
+        m_dmActivator.start(context);
+
+        if (filterIndex) {
+            context.registerService(FilterIndex.class, new MultiPropertyFilterIndex(FILTER_INDEX), null);
+        }
+        if ("parallel".equals(executor)) {
+            context.registerService(ComponentExecutorFactory.class, component -> Helper.getThreadPool(), null);
+        }
+        m_dm = new DependencyManager(context);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        m_dm.clear();
+        m_dmActivator.stop(m_framework.getBundleContext());
+        m_framework.stop();
+        m_framework.waitForStop(10000);
+        delete(m_storage);
+    }
+
+    /**
+     * Adds all Artist/Album/Track components, waits until they are all bound, then removes them
+     * and waits until they are all unbound.
+     */
+    @org.openjdk.jmh.annotations.Benchmark
+    @OperationsPerInvocation(LatchScenarioController.COMPONENTS)
+    public void addRemoveComponents() throws Exception {
+        Benchmark scenario = new Benchmark(m_dm, m_controller);
+        m_controller.reset();
+        scenario.start();
+        m_controller.awaitStarted(60, TimeUnit.SECONDS);
+        awaitQuiescence();
+        scenario.stop();
+        awaitQuiescence();
+        m_controller.awaitStopped(60, TimeUnit.SECONDS);
+    }
+
+    private void awaitQuiescence() {
+        // Make sure the threadpool has finished to register/unregister all components
+        if (! Helper.getThreadPool().awaitQuiescence(5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("thread pool is still active after 5 seconds");
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Runs the suite with allocation profiling. Any JMH command line option can be passed, for example
+     * "-p executor=parallel" to select a single executor.
+     */
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .include(DependencyManagerBenchmark.class.getName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.dm.benchmark.jmh;
+
+import static org.apache.felix.dm.benchmark.scenario.Artist.ALBUMS;
+import static org.apache.felix.dm.benchmark.scenario.Artist.ARTISTS;
+import static org.apache.felix.dm.benchmark.scenario.Artist.TRACKS;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.dm.benchmark.controller.ScenarioController;
+import org.apache.felix.dm.benchmark.scenario.Album;
+import org.apache.felix.dm.benchmark.scenario.Artist;
+import org.apache.felix.dm.benchmark.scenario.Track;
+
+/**
+ * ScenarioController used by the JMH suite: it only counts started/stopped components, so that
+ * a benchmark invocation can wait until all Artist/Album/Track components are bound or unbound.
+ * 
+ * @author <a href="mailto:dev@felix.apache.org">Felix Project Team</a>
+ */
+public class LatchScenarioController implements ScenarioController {
+    /**
+     * Number of components created by one scenario run.
+     */
+    public final static int COMPONENTS = ARTISTS + (ARTISTS * (ALBUMS + (ALBUMS * TRACKS)));
+
+    /**
+     * Latches used to detect when expected services are registered, or unregistered.
+     */
+    private volatile CountDownLatch m_startLatch, m_stopLatch;
+
+    /**
+     * Prepares the latches before a new scenario run is started.
+     */
+    public void reset() {
+        m_startLatch = new CountDownLatch(COMPONENTS);
+        m_stopLatch = new CountDownLatch(COMPONENTS);
+    }
+
+    /**
+     * Waits for all components to be started.
+     */
+    public void awaitStarted(long timeout, TimeUnit unit) throws InterruptedException {
+        await(m_startLatch, timeout, unit, "started");
+    }
+
+    /**
+     * Waits for all components to be stopped.
+     */
+    public void awaitStopped(long timeout, TimeUnit unit) throws InterruptedException {
+        await(m_stopLatch, timeout, unit, "stopped");
+    }
+
+    @Override
+    public void artistAdded(Artist artist) {
+        int size = artist.getAlbums().size();
+        if (size != ALBUMS) {
+            throw new IllegalStateException("Artist has not created expected number of albums:" + size);
+        }
+        artist.play();
+        m_startLatch.countDown();
+    }
+
+    @Override
+    public void artistRemoved(Artist artist) {
+        m_stopLatch.countDown();
+    }
+
+    @Override
+    public void albumAdded(Album album) {
+        int size = album.getMusicTracks().size();
+        if (size != TRACKS) {
+            throw new IllegalStateException("Album does not contain expected number of music tracks:" + size);
+        }
+        m_startLatch.countDown();
+    }
+
+    @Override
+    public void albumRemoved(Album album) {
+        m_stopLatch.countDown();
+    }
+
+    @Override
+    public void trackAdded(Track track) {
+        m_startLatch.countDown();
+    }
+
+    @Override
+    public void trackRemoved(Track track) {
+        m_stopLatch.countDown();
+    }
+
+    private void await(CountDownLatch latch, long timeout, TimeUnit unit, String state) throws InterruptedException {
+        if (! latch.await(timeout, unit)) {
+            throw new IllegalStateException("Components not " + state + " timely: " + latch.getCount() + " remaining");
+        }
+    }
+}
@@ -39,7 +39,14 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
 import java.util.regex.Pattern;
@@ -110,6 +117,12 @@ public class DirectoryWatcher extends Thread implements BundleListener
     public final static String FRAGMENT_SCOPE = "felix.fileinstall.fragmentRefreshScope";
     public final static String DISABLE_NIO2 = "felix.fileinstall.disableNio2";
     public final static String SUBDIR_MODE = "felix.fileinstall.subdir.mode";
+    public final static String NIO2_VERIFY_INTERVAL = "felix.fileinstall.nio2.verifyInterval";
+    public final static String NIO2_DEBOUNCE = "felix.fileinstall.nio2.debounce";
+    // Number of threads jaring, matching and transforming changed artifacts. With more than one
+    // thread, ArtifactListener.canHandle() and ArtifactTransformer.transform() of the registered
+    // listeners are called concurrently and must be thread-safe.
+    public final static String PREPARE_THREADS = "felix.fileinstall.prepare.threads";
 
     public final static String SCOPE_NONE = "none";
     public final static String SCOPE_MANAGED = "managed";
@@ -139,8 +152,14 @@ public class DirectoryWatcher extends Thread implements BundleListener
     String fragmentScope;
     String optionalScope;
     boolean disableNio2;
+    long nio2VerifyInterval;
+    long nio2Debounce;
+    int prepareThreads;
     int frameworkStartLevel;
 
+    // Executor preparing artifacts concurrently, null if they are prepared by the watcher thread
+    ExecutorService prepareExecutor;
+
     // Map of all installed artifacts
     final Map<File, Artifact> currentManagedArtifacts = new HashMap<File, Artifact>();
 
@@ -188,13 +207,32 @@ public class DirectoryWatcher extends Thread implements BundleListener
         fragmentScope = properties.get(FRAGMENT_SCOPE);
         optionalScope = properties.get(OPTIONAL_SCOPE);
         disableNio2 = getBoolean(properties, DISABLE_NIO2, false);
+        nio2VerifyInterval = getLong(properties, NIO2_VERIFY_INTERVAL, 0);  // by default, verify all files on each change
+        nio2Debounce = getLong(properties, NIO2_DEBOUNCE, 0);
+        prepareThreads = getInt(properties, PREPARE_THREADS, 1);  // by default, prepare artifacts in the watcher thread
         this.context.addBundleListener(this);
 
+        if (prepareThreads > 1) {
+            final String name = "fileinstall-prepare-" + getThreadName(properties) + "-";
+            prepareExecutor = Executors.newFixedThreadPool(prepareThreads, new ThreadFactory()
+            {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, name + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
         if (disableNio2) {
             scanner = new Scanner(watchedDirectory, filter, properties.get(SUBDIR_MODE));
         } else {
             try {
-                scanner = new WatcherScanner(context, watchedDirectory, filter, properties.get(SUBDIR_MODE));
+                scanner = new WatcherScanner(context, watchedDirectory, filter, properties.get(SUBDIR_MODE),
+                        nio2VerifyInterval, nio2Debounce);
             } catch (Throwable t) {
                 scanner = new Scanner(watchedDirectory, filter, properties.get(SUBDIR_MODE));
             }
@@ -282,7 +320,8 @@ public class DirectoryWatcher extends Thread implements BundleListener
                             + START_NEW_BUNDLES + " = " + startBundles + ", "
                             + TMPDIR + " = " + tmpDir + ", "
                             + FILTER + " = " + filter + ", "
-                            + START_LEVEL + " = " + startLevel + "}", null
+                            + START_LEVEL + " = " + startLevel + ", "
+                            + PREPARE_THREADS + " = " + prepareThreads + "}", null
             );
 
             if (!noInitialDelay) {
@@ -384,101 +423,27 @@ public class DirectoryWatcher extends Thread implements BundleListener
             processingFailures.clear();
         }
 
+        // Prepare the artifacts (jaring exploded directories, finding their
+        // listener and transforming them), possibly concurrently, while the
+        // changes are collected in the order of the files
+        Map<File, Future<Change>> prepared = prepareConcurrently(files, listeners);
         for (File file : files) {
-            boolean exists = file.exists();
-            Artifact artifact = getArtifact(file);
-            // File has been deleted
-            if (!exists) {
-                if (artifact != null) {
-                    deleteJaredDirectory(artifact);
-                    deleteTransformedFile(artifact);
-                    deleted.add(artifact);
-                }
+            Change change = prepared != null
+                    ? getPrepared(prepared.get(file))
+                    : prepare(file, listeners);
+            if (change == null) {
+                continue;
             }
-            // File exists
-            else {
-                File jar = file;
-                URL jaredUrl = null;
-                try {
-                    jaredUrl = file.toURI().toURL();
-                } catch (MalformedURLException e) {
-                    // Ignore, can't happen
-                }
-                // Jar up the directory if needed
-                if (file.isDirectory()) {
-                    prepareTempDir();
-                    try {
-                        jar = new File(tmpDir, file.getName() + ".jar");
-                        Util.jarDir(file, jar);
-                        jaredUrl = new URL(JarDirUrlHandler.PROTOCOL, null, file.getPath());
-
-                    } catch (IOException e) {
-                        // Notify user of problem, won't retry until the dir is updated.
-                        log(Logger.LOG_ERROR,
-                                "Unable to create jar for: " + file.getAbsolutePath(), e);
-                        continue;
-                    }
-                }
-                // File has been modified
-                if (artifact != null) {
-                    artifact.setChecksum(scanner.getChecksum(file));
-                    // If there's no listener, this is because this artifact has been installed before
-                    // fileinstall has been restarted.  In this case, try to find a listener.
-                    if (artifact.getListener() == null) {
-                        ArtifactListener listener = findListener(jar, listeners);
-                        // If no listener can handle this artifact, we need to defer the
-                        // processing for this artifact until one is found
-                        if (listener == null) {
-                            synchronized (processingFailures) {
-                                processingFailures.add(file);
-                            }
-                            continue;
-                        }
-                        artifact.setListener(listener);
-                    }
-                    // If the listener can not handle this file anymore,
-                    // uninstall the artifact and try as if is was new
-                    if (!listeners.contains(artifact.getListener()) || !artifact.getListener().canHandle(jar)) {
-                        deleted.add(artifact);
-                    }
-                    // The listener is still ok
-                    else {
-                        deleteTransformedFile(artifact);
-                        artifact.setJaredDirectory(jar);
-                        artifact.setJaredUrl(jaredUrl);
-                        if (transformArtifact(artifact)) {
-                            modified.add(artifact);
-                        } else {
-                            deleteJaredDirectory(artifact);
-                            deleted.add(artifact);
-                        }
-                    }
-                }
-                // File has been added
-                else {
-                    // Find the listener
-                    ArtifactListener listener = findListener(jar, listeners);
-                    // If no listener can handle this artifact, we need to defer the
-                    // processing for this artifact until one is found
-                    if (listener == null) {
-                        synchronized (processingFailures) {
-                            processingFailures.add(file);
-                        }
-                        continue;
-                    }
-                    // Create the artifact
-                    artifact = new Artifact();
-                    artifact.setPath(file);
-                    artifact.setJaredDirectory(jar);
-                    artifact.setJaredUrl(jaredUrl);
-                    artifact.setListener(listener);
-                    artifact.setChecksum(scanner.getChecksum(file));
-                    if (transformArtifact(artifact)) {
-                        created.add(artifact);
-                    } else {
-                        deleteJaredDirectory(artifact);
-                    }
-                }
+            switch (change.kind) {
+                case Change.DELETED:
+                    deleted.add(change.artifact);
+                    break;
+                case Change.MODIFIED:
+                    modified.add(change.artifact);
+                    break;
+                default:
+                    created.add(change.artifact);
+                    break;
             }
         }
         // Handle deleted artifacts
@@ -527,6 +492,189 @@ public class DirectoryWatcher extends Thread implements BundleListener
         }
     }
 
+    /**
+     * Prepare the artifact for a changed file.
+     *
+     * @return the change to apply for this file, or <code>null</code> if there is none
+     */
+    private Change prepare(File file, List<ArtifactListener> listeners)
+    {
+        boolean exists = file.exists();
+        Artifact artifact = getArtifact(file);
+        // File has been deleted
+        if (!exists) {
+            if (artifact != null) {
+                deleteJaredDirectory(artifact);
+                deleteTransformedFile(artifact);
+                return new Change(Change.DELETED, artifact);
+            }
+        }
+        // File exists
+        else {
+            File jar = file;
+            URL jaredUrl = null;
+            try {
+                jaredUrl = file.toURI().toURL();
+            } catch (MalformedURLException e) {
+                // Ignore, can't happen
+            }
+            // Jar up the directory if needed
+            if (file.isDirectory()) {
+                prepareTempDir();
+                try {
+                    jar = getJarFile(file);
+                    Util.jarDir(file, jar);
+                    jaredUrl = new URL(JarDirUrlHandler.PROTOCOL, null, file.getPath());
+
+                } catch (IOException e) {
+                    // Notify user of problem, won't retry until the dir is updated.
+                    log(Logger.LOG_ERROR,
+                            "Unable to create jar for: " + file.getAbsolutePath(), e);
+                    return null;
+                }
+            }
+            // File has been modified
+            if (artifact != null) {
+                artifact.setChecksum(scanner.getChecksum(file));
+                // If there's no listener, this is because this artifact has been installed before
+                // fileinstall has been restarted.  In this case, try to find a listener.
+                if (artifact.getListener() == null) {
+                    ArtifactListener listener = findListener(jar, listeners);
+                    // If no listener can handle this artifact, we need to defer the
+                    // processing for this artifact until one is found
+                    if (listener == null) {
+                        synchronized (processingFailures) {
+                            processingFailures.add(file);
+                        }
+                        return null;
+                    }
+                    artifact.setListener(listener);
+                }
+                // If the listener can not handle this file anymore,
+                // uninstall the artifact and try as if is was new
+                if (!listeners.contains(artifact.getListener()) || !artifact.getListener().canHandle(jar)) {
+                    return new Change(Change.DELETED, artifact);
+                }
+                // The listener is still ok
+                else {
+                    deleteTransformedFile(artifact);
+                    artifact.setJaredDirectory(jar);
+                    artifact.setJaredUrl(jaredUrl);
+                    if (transformArtifact(artifact)) {
+                        return new Change(Change.MODIFIED, artifact);
+                    } else {
+                        deleteJaredDirectory(artifact);
+                        return new Change(Change.DELETED, artifact);
+                    }
+                }
+            }
+            // File has been added
+            else {
+                // Find the listener
+                ArtifactListener listener = findListener(jar, listeners);
+                // If no listener can handle this artifact, we need to defer the
+                // processing for this artifact until one is found
+                if (listener == null) {
+                    synchronized (processingFailures) {
+                        processingFailures.add(file);
+                    }
+                    return null;
+                }
+                // Create the artifact
+                artifact = new Artifact();
+                artifact.setPath(file);
+                artifact.setJaredDirectory(jar);
+                artifact.setJaredUrl(jaredUrl);
+                artifact.setListener(listener);
+                artifact.setChecksum(scanner.getChecksum(file));
+                if (transformArtifact(artifact)) {
+                    return new Change(Change.CREATED, artifact);
+                } else {
+                    deleteJaredDirectory(artifact);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Submit the preparation of all files to the prepare executor, if there is one.
+     *
+     * @return the pending changes keyed by file, or <code>null</code> if the files
+     *         have to be prepared by the caller
+     */
+    private Map<File, Future<Change>> prepareConcurrently(Set<File> files, final List<ArtifactListener> listeners)
+    {
+        if (prepareExecutor == null || files.size() < 2)
+        {
+            return null;
+        }
+        // Make sure the temporary directory is not created concurrently
+        prepareTempDir();
+        Map<File, Future<Change>> prepared = new HashMap<File, Future<Change>>();
+        for (final File file : files)
+        {
+            prepared.put(file, prepareExecutor.submit(new Callable<Change>()
+            {
+                public Change call()
+                {
+                    return prepare(file, listeners);
+                }
+            }));
+        }
+        return prepared;
+    }
+
+    private Change getPrepared(Future<Change> future) throws InterruptedException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error)
+            {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * The change of an artifact computed when preparing a file.
+     */
+    private static class Change
+    {
+        static final int CREATED = 0;
+        static final int MODIFIED = 1;
+        static final int DELETED = 2;
+
+        final int kind;
+        final Artifact artifact;
+
+        Change(int kind, Artifact artifact)
+        {
+            this.kind = kind;
+            this.artifact = artifact;
+        }
+    }
+
+    /**
+     * Returns the temporary jar for an exploded directory.  Directories with the same
+     * name in different sub directories must not share a jar, as they may be prepared
+     * concurrently, so the name is qualified with a hash of the directory path.
+     */
+    File getJarFile(File dir)
+    {
+        return new File(tmpDir, dir.getName() + "-"
+                + Integer.toHexString(dir.getAbsolutePath().hashCode()) + ".jar");
+    }
+
     ArtifactListener findListener(File artifact, List<ArtifactListener> listeners)
     {
         for (ArtifactListener listener : listeners) {
@@ -771,6 +919,10 @@ public class DirectoryWatcher extends Thread implements BundleListener
     {
         this.context.removeBundleListener(this);
         interrupt();
+        if (prepareExecutor != null)
+        {
+            prepareExecutor.shutdownNow();
+        }
         for (Artifact artifact : getArtifacts()) {
             deleteTransformedFile(artifact);
             deleteJaredDirectory(artifact);
@@ -186,6 +186,7 @@ public abstract class Watcher implements Closeable {
 
                 if (kind == OVERFLOW) {
 //                    rescan();
+                    onOverflow();
                     continue;
                 }
 
@@ -325,4 +326,10 @@ public abstract class Watcher implements Closeable {
     protected abstract void warn(String message, Object... args);
     protected abstract void process(Path path);
     protected abstract void onRemove(Path path);
+
+    /**
+     * Called when events have been lost, so that watched files may have changed unnoticed.
+     */
+    protected void onOverflow() {
+    }
 }
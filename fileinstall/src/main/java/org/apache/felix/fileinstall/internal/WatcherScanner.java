@@ -23,8 +23,10 @@ import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import org.osgi.framework.BundleContext;
@@ -35,7 +37,13 @@ public class WatcherScanner extends Scanner {
     PathMatcher fileMatcher;
     Watcher watcher;
 
-    Set<File> changed = new HashSet<File>();
+    long verifyInterval;
+    long debounce;
+    long lastVerification;
+    volatile boolean overflow;
+
+    // Changed files with the time of their last event
+    Map<File, Long> changed = new HashMap<File, Long>();
 
     /**
      * Create a scanner for the specified directory and file filter
@@ -45,8 +53,28 @@ public class WatcherScanner extends Scanner {
      * @param subdirMode to use when scanning
      */
     public WatcherScanner(BundleContext bundleContext, File directory, String filterString, String subdirMode) throws IOException {
+        this(bundleContext, directory, filterString, subdirMode, 0, 0);
+    }
+
+    /**
+     * Create a scanner for the specified directory and file filter
+     *
+     * @param directory the directory to scan
+     * @param filterString a filter for file names
+     * @param subdirMode to use when scanning
+     * @param verifyInterval the minimum time in milliseconds between two verifications
+     *                       of all known files, 0 to verify them whenever a file changed,
+     *                       a negative value to only verify them when events have been lost
+     * @param debounce the time in milliseconds a file must not have changed before it
+     *                 is checked, 0 to check it on the next scan
+     */
+    public WatcherScanner(BundleContext bundleContext, File directory, String filterString, String subdirMode,
+                          long verifyInterval, long debounce) throws IOException {
         super(directory, filterString, subdirMode);
         this.bundleContext = bundleContext;
+        this.verifyInterval = verifyInterval;
+        this.debounce = debounce;
+        this.lastVerification = System.currentTimeMillis();
         if (filterString != null) {
             this.fileMatcher = FileSystems.getDefault().getPathMatcher("regex:" + filterString);
         } else {
@@ -62,7 +90,10 @@ public class WatcherScanner extends Scanner {
     public Set<File> scan(boolean reportImmediately) {
         watcher.processEvents();
         synchronized (changed) {
-            if (changed.isEmpty()) {
+            long now = System.currentTimeMillis();
+            boolean verify = verifyInterval == 0 || overflow
+                    || (verifyInterval > 0 && now - lastVerification >= verifyInterval);
+            if (changed.isEmpty() && (verifyInterval == 0 || !verify)) {
                 return new HashSet<File>();
             }
             Set<File> files = new HashSet<File>();
@@ -70,15 +101,21 @@ public class WatcherScanner extends Scanner {
             if (reportImmediately) {
                 removed.addAll(storedChecksums.keySet());
             }
-            for (Iterator<File> iterator = changed.iterator(); iterator.hasNext(); ) {
-                File file = iterator.next();
+            // Do not look at files which are still being written
+            boolean debouncing = debounce > 0 && !reportImmediately;
+            for (Iterator<Map.Entry<File, Long>> iterator = changed.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<File, Long> entry = iterator.next();
+                File file = entry.getKey();
+                if (debouncing && now - entry.getValue() < debounce) {
+                    continue;
+                }
                 long lastChecksum = lastChecksums.get(file) != null ? (Long) lastChecksums.get(file) : 0;
                 long storedChecksum = storedChecksums.get(file) != null ? (Long) storedChecksums.get(file) : 0;
                 long newChecksum = checksum(file);
                 lastChecksums.put(file, newChecksum);
                 if (file.exists()) {
                     // Only handle file when it does not change anymore and it has changed since last reported
-                    if ((newChecksum == lastChecksum || reportImmediately)) {
+                    if ((newChecksum == lastChecksum || reportImmediately || debouncing)) {
                         if (newChecksum != storedChecksum) {
                             storedChecksums.put(file, newChecksum);
                             files.add(file);
@@ -105,8 +142,12 @@ public class WatcherScanner extends Scanner {
             }
             // Double check known files because modifications from externally mounted
             // file systems are not well handled by inotify in Linux.
-            for (File file : new HashSet<File>(storedChecksums.keySet())) {
-                verifyChecksum(files, file, false);
+            if (verify) {
+                lastVerification = now;
+                overflow = false;
+                for (File file : new HashSet<File>(storedChecksums.keySet())) {
+                    verifyChecksum(files, file, false);
+                }
             }
             return files;
         }
@@ -140,7 +181,7 @@ public class WatcherScanner extends Scanner {
               // Otherwise we recurse by adding the file as-is.
             }
             synchronized (changed) {
-                changed.add(file);
+                changed.put(file, System.currentTimeMillis());
             }
         }
 
@@ -149,6 +190,11 @@ public class WatcherScanner extends Scanner {
             process(path);
         }
 
+        @Override
+        protected void onOverflow() {
+            overflow = true;
+        }
+
         @Override
         protected void debug(String message, Object... args) {
             log(Util.Logger.LOG_DEBUG, message, args);
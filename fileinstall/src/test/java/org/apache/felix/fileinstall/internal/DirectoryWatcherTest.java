@@ -20,8 +20,12 @@ package org.apache.felix.fileinstall.internal;
 
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Map;
@@ -215,10 +219,119 @@ public class DirectoryWatcherTest extends TestCase
                 new File(System.getProperty("java.io.tmpdir")).getAbsolutePath()));
         assertEquals("Default START_NEW_BUNDLES parameter correctly read", true, dw.startBundles);
         assertEquals( "Default FILTER parameter correctly read", null, dw.filter );
+        assertEquals( "Default NIO2_VERIFY_INTERVAL parameter correctly read", 0, dw.nio2VerifyInterval );
+        assertEquals( "Default NIO2_DEBOUNCE parameter correctly read", 0, dw.nio2Debounce );
+        assertEquals( "Default PREPARE_THREADS parameter correctly read", 1, dw.prepareThreads );
+        assertNull( "No prepare executor by default", dw.prepareExecutor );
         EasyMock.verify(mockBundleContext);
     }
 
 
+    public void testNio2AndPrepareParameters() throws Exception
+    {
+        props.put( DirectoryWatcher.DIR, new File( "src/test/resources" ).getAbsolutePath() );
+        props.put( DirectoryWatcher.NIO2_VERIFY_INTERVAL, "-1" );
+        props.put( DirectoryWatcher.NIO2_DEBOUNCE, "500" );
+        props.put( DirectoryWatcher.PREPARE_THREADS, "3" );
+
+        mockBundleContext.addBundleListener((BundleListener) org.easymock.EasyMock.anyObject());
+        EasyMock.replay(mockBundleContext, mockBundle, mockSysBundle, mockStartLevel);
+
+        dw = new DirectoryWatcher( new FileInstall(), props, mockBundleContext );
+        try
+        {
+            assertEquals( "NIO2_VERIFY_INTERVAL parameter correctly read", -1, dw.nio2VerifyInterval );
+            assertEquals( "NIO2_DEBOUNCE parameter correctly read", 500, dw.nio2Debounce );
+            assertEquals( "PREPARE_THREADS parameter correctly read", 3, dw.prepareThreads );
+            assertNotNull( "Prepare executor created", dw.prepareExecutor );
+            WatcherScanner scanner = (WatcherScanner) dw.scanner;
+            assertEquals( "NIO2_VERIFY_INTERVAL passed to the scanner", -1, scanner.verifyInterval );
+            assertEquals( "NIO2_DEBOUNCE passed to the scanner", 500, scanner.debounce );
+        }
+        finally
+        {
+            dw.prepareExecutor.shutdownNow();
+            dw.scanner.close();
+        }
+        EasyMock.verify(mockBundleContext);
+    }
+
+
+    public void testJarFileIsUniquePerDirectory()
+    {
+        props.put( DirectoryWatcher.DIR, new File( "src/test/resources" ).getAbsolutePath() );
+
+        mockBundleContext.addBundleListener((BundleListener) org.easymock.EasyMock.anyObject());
+        EasyMock.replay(mockBundleContext, mockBundle, mockSysBundle, mockStartLevel);
+
+        dw = new DirectoryWatcher( new FileInstall(), props, mockBundleContext );
+
+        File first = dw.getJarFile( new File( "src/test/resources/a/bundle" ) );
+        File second = dw.getJarFile( new File( "src/test/resources/b/bundle" ) );
+        assertEquals( "Jar is created in TMPDIR", dw.tmpDir, first.getParentFile() );
+        assertTrue( "Jar is named after the directory", first.getName().startsWith( "bundle-" ) );
+        assertFalse( "Directories with the same name get distinct jars", first.equals( second ) );
+        assertEquals( "Jar is stable for a directory", first,
+            dw.getJarFile( new File( "src/test/resources/a/bundle" ) ) );
+        EasyMock.verify(mockBundleContext);
+    }
+
+
+    public void testNio2Debounce() throws Exception
+    {
+        File watched = new File( "target/debounce" );
+        watched.mkdirs();
+        for ( File file : watched.listFiles() )
+        {
+            file.delete();
+        }
+        write( new File( watched, "test.cfg" ), "key=value" );
+        props.put( DirectoryWatcher.DIR, watched.getAbsolutePath() );
+        props.put( DirectoryWatcher.NIO2_VERIFY_INTERVAL, "-1" );
+        props.put( DirectoryWatcher.NIO2_DEBOUNCE, "60000" );
+
+        mockBundleContext.addBundleListener((BundleListener) org.easymock.EasyMock.anyObject());
+        EasyMock.replay(mockBundleContext, mockBundle, mockSysBundle, mockStartLevel);
+
+        dw = new DirectoryWatcher( new FileInstall(), props, mockBundleContext );
+        WatcherScanner scanner = (WatcherScanner) dw.scanner;
+        try
+        {
+            assertEquals( "The existing file is seen as changed", 1, scanner.changed.size() );
+            File file = scanner.changed.keySet().iterator().next();
+
+            assertTrue( "A file changed within the debounce time is not reported", scanner.scan( false ).isEmpty() );
+
+            synchronized ( scanner.changed )
+            {
+                scanner.changed.put( file, System.currentTimeMillis() - 60000 );
+            }
+            assertEquals( "A settled file is reported without waiting for an identical checksum",
+                Collections.singleton( file ), scanner.scan( false ) );
+            assertTrue( "A reported file is not reported again", scanner.scan( false ).isEmpty() );
+        }
+        finally
+        {
+            scanner.close();
+        }
+        EasyMock.verify(mockBundleContext);
+    }
+
+
+    private static void write( File file, String content ) throws IOException
+    {
+        OutputStream out = new FileOutputStream( file );
+        try
+        {
+            out.write( content.getBytes( "UTF-8" ) );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+
     public void testIsFragment() throws Exception
     {
         mockBundleContext.addBundleListener((BundleListener) org.easymock.EasyMock.anyObject());
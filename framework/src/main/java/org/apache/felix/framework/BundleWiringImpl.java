@@ -172,6 +172,12 @@ public class BundleWiringImpl implements BundleWiring
 
     private volatile ConcurrentHashMap<String, ClassLoader> m_accessorLookupCache;
 
+    // Packages for which a dynamic import found no provider, mapped to the
+    // resolver stamp at the time of the failed attempt.
+    private static final int MAX_DYNAMIC_IMPORT_MISSES = 1000;
+    private final ConcurrentHashMap<String, Long> m_dynamicImportMisses =
+        new ConcurrentHashMap<>();
+
     BundleWiringImpl(
         Logger logger, Map<String,?> configMap, StatefulResolver resolver,
         BundleRevisionImpl revision, List<BundleRevision> fragments,
@@ -668,6 +674,20 @@ public class BundleWiringImpl implements BundleWiring
         return null;
     }
 
+    Long getDynamicImportMiss(String pkgName)
+    {
+        return m_dynamicImportMisses.get(pkgName);
+    }
+
+    void addDynamicImportMiss(String pkgName, long stamp)
+    {
+        if (m_dynamicImportMisses.size() >= MAX_DYNAMIC_IMPORT_MISSES)
+        {
+            m_dynamicImportMisses.clear();
+        }
+        m_dynamicImportMisses.put(pkgName, stamp);
+    }
+
     public synchronized void addDynamicWire(BundleWire wire)
     {
         // Make new wires list.
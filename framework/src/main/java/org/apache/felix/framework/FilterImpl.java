@@ -22,18 +22,15 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.apache.felix.framework.ServiceRegistrationImpl.ServiceReferenceImpl;
 import org.apache.felix.framework.capabilityset.CapabilitySet;
 import org.apache.felix.framework.capabilityset.SimpleFilter;
 import org.apache.felix.framework.util.StringMap;
-import org.apache.felix.framework.wiring.BundleCapabilityImpl;
 import org.osgi.framework.Filter;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
-import org.osgi.framework.wiring.BundleRevision;
 
 public class FilterImpl implements Filter
 {
@@ -60,26 +57,28 @@ public class FilterImpl implements Filter
         }
         else
         {
-            return CapabilitySet.matches(new WrapperCapability(sr), m_filter);
+            return m_filter.matches(new DictionaryToMap(sr.getProperties(), false));
         }
     }
 
     @Override
 	public boolean match(Dictionary<String, ? > dctnr)
     {
-        return CapabilitySet.matches(new WrapperCapability(dctnr, false), m_filter);
+        return m_filter.matches(new DictionaryToMap(dctnr, false));
     }
 
     @Override
 	public boolean matchCase(Dictionary<String, ? > dctnr)
     {
-        return CapabilitySet.matches(new WrapperCapability(dctnr, true), m_filter);
+        return m_filter.matches(new DictionaryToMap(dctnr, true));
     }
 
     @Override
 	public boolean matches(Map<String, ?> map)
     {
-        return CapabilitySet.matches(new WrapperCapability(map), m_filter);
+        return m_filter.matches((map != null)
+            ? Collections.<String, Object>unmodifiableMap(map)
+            : Collections.<String, Object>emptyMap());
     }
 
     @Override
@@ -100,62 +99,6 @@ public class FilterImpl implements Filter
         return m_filter.toString();
     }
 
-    static class WrapperCapability extends BundleCapabilityImpl
-    {
-        private final Map<String, Object> m_map;
-
-        public WrapperCapability(Map<String, ?> map)
-        {
-            super(null, null, Collections.emptyMap(), Collections.emptyMap());
-                m_map = Collections.emptyMap();
-                if(map != null ) {
-            }
-            m_map.putAll(map);
-        }
-
-        public WrapperCapability(Dictionary<String, ?> dict, boolean caseSensitive)
-        {
-            super(null, null, Collections.emptyMap(), Collections.emptyMap());
-            m_map = new DictionaryToMap(dict, caseSensitive);
-        }
-
-        public WrapperCapability(ServiceReference<?> sr)
-        {
-            super(null, null, Collections.emptyMap(), Collections.emptyMap());
-            m_map = new DictionaryToMap(sr.getProperties(), false);
-        }
-
-        @Override
-        public BundleRevision getRevision()
-        {
-            throw new UnsupportedOperationException("Not supported yet.");
-        }
-
-        @Override
-        public String getNamespace()
-        {
-            throw new UnsupportedOperationException("Not supported yet.");
-        }
-
-        @Override
-        public Map<String, String> getDirectives()
-        {
-            throw new UnsupportedOperationException("Not supported yet.");
-        }
-
-        @Override
-        public Map<String, Object> getAttributes()
-        {
-            return m_map;
-        }
-
-        @Override
-        public List<String> getUses()
-        {
-            throw new UnsupportedOperationException("Not supported yet.");
-        }
-    }
-
     private static class DictionaryToMap implements Map<String,Object>
     {
         private final Map<String,Object> m_map;
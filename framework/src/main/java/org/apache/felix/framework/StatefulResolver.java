@@ -30,12 +30,14 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.felix.framework.capabilityset.CapabilitySet;
 import org.apache.felix.framework.capabilityset.SimpleFilter;
@@ -90,6 +92,10 @@ class StatefulResolver
     private final Map<String, List<BundleRevision>> m_singletons;
     // Selected singleton bundle revisions.
     private final Set<BundleRevision> m_selectedSingletons;
+    // Stamp incremented whenever package capabilities are indexed.
+    private final AtomicLong m_dynamicImportStamp = new AtomicLong();
+    // Maps package names to the stamp at which they were last indexed.
+    private final Map<String, Long> m_packageStamps = new ConcurrentHashMap<>();
     private volatile ServiceRegistration<?> m_serviceRegistration;
 
     StatefulResolver(Felix felix, ServiceRegistry registry)
@@ -533,7 +539,8 @@ class StatefulResolver
         // dynamic import is allowed without holding any locks, but this is
         // okay since the resolver will double check later after we have
         // acquired the global lock below.
-        if ((revision.getWiring() != null) && isAllowedDynamicImport(revision, pkgName))
+        if ((revision.getWiring() != null) && !isKnownDynamicImportMiss(revision, pkgName)
+            && isAllowedDynamicImport(revision, pkgName))
         {
             // Acquire global lock.
             boolean locked = m_felix.acquireGlobalLock();
@@ -589,7 +596,15 @@ class StatefulResolver
                                 BundleRevision.PACKAGE_NAMESPACE,
                                 Collections.emptyMap(),
                                 attrs);
+                        // Read the stamp before searching, so that a package
+                        // indexed concurrently invalidates any recorded miss.
+                        long stamp = m_dynamicImportStamp.get();
                         final List<BundleCapability> candidates = findProvidersInternal(record, req, false, true);
+                        if (candidates.isEmpty() && !isPackageIndexed(req))
+                        {
+                            ((BundleWiringImpl) revision.getWiring())
+                                .addDynamicImportMiss(pkgName, stamp);
+                        }
 
                         // Try to find a dynamic requirement that matches the capabilities.
                         final BundleRequirementImpl dynReq = findDynamicRequirement(dynamics, candidates);
@@ -973,7 +988,14 @@ class StatefulResolver
             BundleRevision.PACKAGE_NAMESPACE,
             Collections.emptyMap(),
             attrs);
+        // Read the stamp before searching, so that a package indexed
+        // concurrently invalidates any recorded miss.
+        long stamp = m_dynamicImportStamp.get();
         List<BundleCapability> candidates = findProviders(req, false);
+        if (candidates.isEmpty() && !isPackageIndexed(req))
+        {
+            ((BundleWiringImpl) revision.getWiring()).addDynamicImportMiss(pkgName, stamp);
+        }
 
         // Try to find a dynamic requirement that matches the capabilities.
         BundleRequirementImpl dynReq = null;
@@ -1403,9 +1425,55 @@ class StatefulResolver
                     capSet.addCapability(cap);
                 }
             }
+            updatePackageStamps(br, caps);
+        }
+    }
+
+    private void updatePackageStamps(BundleRevision br, List<BundleCapability> caps)
+    {
+        long stamp = m_dynamicImportStamp.incrementAndGet();
+        for (BundleCapability cap : caps)
+        {
+            if ((cap.getRevision() == br)
+                && BundleRevision.PACKAGE_NAMESPACE.equals(cap.getNamespace()))
+            {
+                Object pkgName = cap.getAttributes().get(BundleRevision.PACKAGE_NAMESPACE);
+                if (pkgName instanceof String)
+                {
+                    m_packageStamps.put((String) pkgName, stamp);
+                }
+            }
         }
     }
 
+    private boolean isKnownDynamicImportMiss(BundleRevision revision, String pkgName)
+    {
+        // A recorded miss stays valid as long as no capability for the
+        // package has been indexed since it was recorded, in which case
+        // we can fail fast without acquiring the global lock.
+        BundleWiring wiring = revision.getWiring();
+        if (!(wiring instanceof BundleWiringImpl))
+        {
+            return false;
+        }
+        Long miss = ((BundleWiringImpl) wiring).getDynamicImportMiss(pkgName);
+        if (miss == null)
+        {
+            return false;
+        }
+        Long indexed = m_packageStamps.get(pkgName);
+        return (indexed == null) || (miss.longValue() >= indexed.longValue());
+    }
+
+    private synchronized boolean isPackageIndexed(BundleRequirementImpl req)
+    {
+        // Only a package without any indexed capability is recorded as a
+        // miss, since otherwise the outcome may depend on resolver hooks,
+        // security or the state of the providers.
+        CapabilitySet capSet = m_capSets.get(BundleRevision.PACKAGE_NAMESPACE);
+        return (capSet != null) && !capSet.match(req.getFilter(), false).isEmpty();
+    }
+
     private synchronized void deindexCapabilities(BundleRevision br)
     {
         // We only need be concerned with declared capabilities here,
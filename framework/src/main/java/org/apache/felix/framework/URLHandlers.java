@@ -18,6 +18,7 @@
  */
 package org.apache.felix.framework;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.net.ContentHandler;
 import java.net.ContentHandlerFactory;
@@ -26,9 +27,14 @@ import java.net.URLConnection;
 import java.net.URLStreamHandler;
 import java.net.URLStreamHandlerFactory;
 import java.util.List;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import static org.apache.felix.framework.util.Util.putIfAbsentAndReturn;
 
@@ -96,6 +102,30 @@ class URLHandlers implements URLStreamHandlerFactory, ContentHandlerFactory
     private static final CopyOnWriteArrayList<Felix> m_frameworks = new CopyOnWriteArrayList<>();
     private static volatile int m_counter = 0;
 
+    // Caches the framework owning a bundle class loader. Values are weakly
+    // referenced because a framework strongly reaches its class loaders.
+    private static final Map<ClassLoader, WeakReference<Object>> m_classLoaderToFramework =
+        new WeakHashMap<>();
+
+    // Records whether a class loader type is a bundle class loader; the
+    // names are compared because frameworks may live in other class loaders.
+    private static final ClassValue<Boolean> m_bundleClassLoaderTypes = new ClassValue<Boolean>()
+    {
+        @Override
+        protected Boolean computeValue(Class<?> type)
+        {
+            String name = type.getName();
+            return name.startsWith("org.apache.felix.framework.ModuleImpl$ModuleClassLoader")
+                || name.equals("org.apache.felix.framework.searchpolicy.ContentClassLoader")
+                || name.startsWith("org.apache.felix.framework.BundleWiringImpl$BundleClassLoader");
+        }
+    };
+
+    // StackWalker is accessed reflectively since we still run on Java 8.
+    private static final Object m_stackWalker;
+    private static final Method m_walk;
+    private static final Method m_getDeclaringClass;
+
     private static final ConcurrentHashMap<String, ContentHandler> m_contentHandlerCache = new ConcurrentHashMap<>();
     private static final ConcurrentHashMap<String, URLStreamHandler> m_streamHandlerCache = new ConcurrentHashMap<>();
     private static final ConcurrentHashMap<String, URL> m_protocolToURL = new ConcurrentHashMap<>();
@@ -126,6 +156,29 @@ class URLHandlers implements URLStreamHandlerFactory, ContentHandlerFactory
             loaded = false;
         }
         m_loaded = loaded;
+
+        Object stackWalker = null;
+        Method walk = null;
+        Method getDeclaringClass = null;
+        try
+        {
+            Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+            Class<?> optionClass = Class.forName("java.lang.StackWalker$Option");
+            Object retainClassReference = optionClass.getField("RETAIN_CLASS_REFERENCE").get(null);
+            walk = walkerClass.getMethod("walk", Function.class);
+            getDeclaringClass = Class.forName("java.lang.StackWalker$StackFrame").getMethod("getDeclaringClass");
+            stackWalker = m_secureAction.invoke(
+                walkerClass.getMethod("getInstance", optionClass), null, new Object[]{retainClassReference});
+        }
+        catch (Throwable ex)
+        {
+            // Not much we can do - probably not on java9, fall back to
+            // the class context of the security manager.
+            stackWalker = null;
+        }
+        m_stackWalker = stackWalker;
+        m_walk = walk;
+        m_getDeclaringClass = getDeclaringClass;
     }
 
     private void init(String protocol, URLStreamHandlerFactory factory)
@@ -676,6 +729,20 @@ class URLHandlers implements URLStreamHandlerFactory, ContentHandlerFactory
     **/
     public static void unregisterFrameworkInstance(Object framework)
     {
+        // Evict the class loaders cached for this framework (and for
+        // frameworks that are gone), a stopped framework owns none of them.
+        synchronized (m_classLoaderToFramework)
+        {
+            for (Iterator<WeakReference<Object>> it = m_classLoaderToFramework.values().iterator(); it.hasNext();)
+            {
+                Object cached = it.next().get();
+                if ((cached == null) || (cached == framework))
+                {
+                    it.remove();
+                }
+            }
+        }
+
         boolean unregister = false;
         synchronized (m_frameworks)
         {
@@ -760,32 +827,15 @@ class URLHandlers implements URLStreamHandlerFactory, ContentHandlerFactory
             }
         }
 
-        // get the current class call stack.
-        Class<?>[] stack = m_sm.getClassContext();
-        // Find the first class that is loaded from a bundle.
-        Class<?> targetClass = null;
-        ClassLoader targetClassLoader = null;
-        for (Class<?> element : stack) {
-            ClassLoader classLoader = m_secureAction.getClassLoader(element);
-			if (classLoader != null)
-            {
-                String name = classLoader.getClass().getName();
-                if (name.startsWith("org.apache.felix.framework.ModuleImpl$ModuleClassLoader")
-                    || name.equals("org.apache.felix.framework.searchpolicy.ContentClassLoader")
-                    || name.startsWith("org.apache.felix.framework.BundleWiringImpl$BundleClassLoader"))
-                {
-                    targetClass = element;
-                    targetClassLoader = classLoader;
-                    break;
-                }
-            }
-        }
+        // Find the first class on the call stack that is loaded from a bundle.
+        Class<?> targetClass = findBundleClass();
 
         // If we found a class loaded from a bundle, then iterate
         // over the framework instances and see which framework owns
         // the bundle that loaded the class.
         if (targetClass != null)
         {
+            ClassLoader targetClassLoader = m_secureAction.getClassLoader(targetClass);
             ClassLoader index = m_secureAction.getClassLoader(targetClassLoader.getClass());
 
             List<?> frameworks = m_classloaderToFrameworkLists.get(index);
@@ -796,6 +846,14 @@ class URLHandlers implements URLStreamHandlerFactory, ContentHandlerFactory
             }
             if (frameworks != null)
             {
+                // A cached framework is only used while it is still
+                // registered, which covers frameworks that were stopped.
+                Object cached = getCachedFramework(targetClassLoader);
+                if ((cached != null) && frameworks.contains(cached))
+                {
+                    return cached;
+                }
+
                 // Check the registry of framework instances
                 for (Object framework : frameworks)
                 {
@@ -806,6 +864,11 @@ class URLHandlers implements URLStreamHandlerFactory, ContentHandlerFactory
                             "getBundle", CLASS_TYPE),
                             framework, new Object[]{targetClass}) != null)
                         {
+                            synchronized (m_classLoaderToFramework)
+                            {
+                                m_classLoaderToFramework.put(
+                                    targetClassLoader, new WeakReference<>(framework));
+                            }
                             return framework;
                         }
                     }
@@ -822,6 +885,71 @@ class URLHandlers implements URLStreamHandlerFactory, ContentHandlerFactory
         return null;
     }
 
+    private static Class<?> findBundleClass()
+    {
+        if (m_stackWalker != null)
+        {
+            try
+            {
+                // The stack is walked lazily, so we stop at the first
+                // frame whose class is loaded by a bundle class loader.
+                return (Class<?>) m_walk.invoke(m_stackWalker, new Function<Stream<?>, Class<?>>()
+                {
+                    @Override
+                    public Class<?> apply(Stream<?> frames)
+                    {
+                        for (Iterator<?> it = frames.iterator(); it.hasNext();)
+                        {
+                            Class<?> clazz;
+                            try
+                            {
+                                clazz = (Class<?>) m_getDeclaringClass.invoke(it.next());
+                            }
+                            catch (Exception ex)
+                            {
+                                throw new IllegalStateException(ex);
+                            }
+                            if (isBundleClass(clazz))
+                            {
+                                return clazz;
+                            }
+                        }
+                        return null;
+                    }
+                });
+            }
+            catch (Exception ex)
+            {
+                // Fall back to the class context below.
+            }
+        }
+
+        for (Class<?> element : m_sm.getClassContext())
+        {
+            if (isBundleClass(element))
+            {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isBundleClass(Class<?> clazz)
+    {
+        ClassLoader classLoader = m_secureAction.getClassLoader(clazz);
+        return (classLoader != null) && m_bundleClassLoaderTypes.get(classLoader.getClass());
+    }
+
+    static Object getCachedFramework(ClassLoader classLoader)
+    {
+        WeakReference<Object> ref;
+        synchronized (m_classLoaderToFramework)
+        {
+            ref = m_classLoaderToFramework.get(classLoader);
+        }
+        return (ref != null) ? ref.get() : null;
+    }
+
     public static Object getFrameworkFromContext(String uuid)
     {
         if (uuid != null)
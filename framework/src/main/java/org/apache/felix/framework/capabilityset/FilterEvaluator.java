@@ -0,0 +1,472 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.capabilityset;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.framework.Version;
+import org.osgi.framework.VersionRange;
+
+/**
+ * A {@link SimpleFilter} compiled into a tree of evaluators. Comparisons
+ * keep the right hand side coerced to the type of the last attribute value
+ * they were evaluated against, so repeated matching of the same filter
+ * does not convert the filter value again.
+ */
+abstract class FilterEvaluator
+{
+    private static final Object COERCION_FAILED = new Object();
+
+    private final Set<String> m_attributeNames;
+
+    FilterEvaluator(Set<String> attributeNames)
+    {
+        m_attributeNames = attributeNames;
+    }
+
+    abstract boolean evaluate(Map<String, Object> attrs);
+
+    /**
+     * Returns whether the attribute is compared by the filter itself or by
+     * one of the operands of a top level conjunction, which is what mandatory
+     * attributes have to be matched by.
+     */
+    boolean isMandatoryAttributeMatched(String name)
+    {
+        return m_attributeNames.contains(name);
+    }
+
+    static FilterEvaluator compile(SimpleFilter sf)
+    {
+        switch (sf.getOperation())
+        {
+            case SimpleFilter.MATCH_ALL:
+                return new MatchAll();
+            case SimpleFilter.AND:
+            {
+                List<SimpleFilter> sfs = (List<SimpleFilter>) sf.getValue();
+                Set<String> names = new HashSet<>();
+                boolean equalsOnly = true;
+                for (SimpleFilter child : sfs)
+                {
+                    if (child.getName() != null)
+                    {
+                        names.add(child.getName());
+                    }
+                    equalsOnly &= (child.getOperation() == SimpleFilter.EQ)
+                        && (child.getValue() instanceof String);
+                }
+                if (equalsOnly && !sfs.isEmpty())
+                {
+                    return new EqualsAll(sfs, names);
+                }
+                return new And(compile(sfs), names);
+            }
+            case SimpleFilter.OR:
+                return new Or(compile((List<SimpleFilter>) sf.getValue()));
+            case SimpleFilter.NOT:
+                return new Not(compile((List<SimpleFilter>) sf.getValue()));
+            default:
+                return new Compare(sf.getName(), sf.getValue(), sf.getOperation());
+        }
+    }
+
+    private static FilterEvaluator[] compile(List<SimpleFilter> sfs)
+    {
+        // Evaluate the plain attribute comparisons of a composite first,
+        // they are the cheapest way to short-circuit it.
+        List<FilterEvaluator> evaluators = new ArrayList<>(sfs.size());
+        List<FilterEvaluator> composites = new ArrayList<>();
+        for (SimpleFilter sf : sfs)
+        {
+            FilterEvaluator evaluator = compile(sf);
+            if (evaluator instanceof Compare)
+            {
+                evaluators.add(evaluator);
+            }
+            else
+            {
+                composites.add(evaluator);
+            }
+        }
+        evaluators.addAll(composites);
+        return evaluators.toArray(new FilterEvaluator[evaluators.size()]);
+    }
+
+    private static final class MatchAll extends FilterEvaluator
+    {
+        MatchAll()
+        {
+            super(Collections.<String>emptySet());
+        }
+
+        @Override
+        boolean evaluate(Map<String, Object> attrs)
+        {
+            return true;
+        }
+    }
+
+    private static final class And extends FilterEvaluator
+    {
+        private final FilterEvaluator[] m_evaluators;
+
+        And(FilterEvaluator[] evaluators, Set<String> names)
+        {
+            super(names);
+            m_evaluators = evaluators;
+        }
+
+        @Override
+        boolean evaluate(Map<String, Object> attrs)
+        {
+            for (FilterEvaluator evaluator : m_evaluators)
+            {
+                if (!evaluator.evaluate(attrs))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Conjunction of string equality comparisons, the most common filter
+     * for package and service requirements.
+     */
+    private static final class EqualsAll extends FilterEvaluator
+    {
+        private final String[] m_names;
+        private final String[] m_values;
+        private final Compare[] m_compares;
+
+        EqualsAll(List<SimpleFilter> sfs, Set<String> names)
+        {
+            super(names);
+            m_names = new String[sfs.size()];
+            m_values = new String[sfs.size()];
+            m_compares = new Compare[sfs.size()];
+            for (int i = 0; i < sfs.size(); i++)
+            {
+                SimpleFilter sf = sfs.get(i);
+                m_names[i] = sf.getName();
+                m_values[i] = (String) sf.getValue();
+                m_compares[i] = new Compare(sf.getName(), sf.getValue(), SimpleFilter.EQ);
+            }
+        }
+
+        @Override
+        boolean evaluate(Map<String, Object> attrs)
+        {
+            for (int i = 0; i < m_names.length; i++)
+            {
+                Object lhs = attrs.get(m_names[i]);
+                if (lhs == null)
+                {
+                    return false;
+                }
+                if (lhs instanceof String)
+                {
+                    if (!m_values[i].equals(lhs))
+                    {
+                        return false;
+                    }
+                }
+                else if (!m_compares[i].compare(lhs))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Or extends FilterEvaluator
+    {
+        private final FilterEvaluator[] m_evaluators;
+
+        Or(FilterEvaluator[] evaluators)
+        {
+            super(Collections.<String>emptySet());
+            m_evaluators = evaluators;
+        }
+
+        @Override
+        boolean evaluate(Map<String, Object> attrs)
+        {
+            for (FilterEvaluator evaluator : m_evaluators)
+            {
+                if (evaluator.evaluate(attrs))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Not extends FilterEvaluator
+    {
+        private final FilterEvaluator[] m_evaluators;
+
+        Not(FilterEvaluator[] evaluators)
+        {
+            super(Collections.<String>emptySet());
+            m_evaluators = evaluators;
+        }
+
+        @Override
+        boolean evaluate(Map<String, Object> attrs)
+        {
+            boolean matched = true;
+            for (FilterEvaluator evaluator : m_evaluators)
+            {
+                matched = !evaluator.evaluate(attrs);
+            }
+            return matched;
+        }
+    }
+
+    private static final class Compare extends FilterEvaluator
+    {
+        private final String m_name;
+        private final Object m_value;
+        private final int m_op;
+        private volatile Coerced m_coerced;
+
+        Compare(String name, Object value, int op)
+        {
+            super(Collections.singleton(name));
+            m_name = name;
+            m_value = value;
+            m_op = op;
+        }
+
+        @Override
+        boolean evaluate(Map<String, Object> attrs)
+        {
+            Object lhs = attrs.get(m_name);
+            return (lhs != null) && compare(lhs);
+        }
+
+        boolean compare(Object lhs)
+        {
+            // If this is a PRESENT operation, then just return true immediately
+            // since we wouldn't be here if the attribute wasn't present.
+            if (m_op == SimpleFilter.PRESENT)
+            {
+                return true;
+            }
+
+            //Need a special case here when lhs is a Version and rhs is a VersionRange
+            //Version is comparable so we need to check this first
+            if (lhs instanceof Version && m_op == SimpleFilter.EQ)
+            {
+                Object rhs = coerce(lhs);
+                if (rhs instanceof VersionRange)
+                {
+                    return ((VersionRange) rhs).includes((Version) lhs);
+                }
+            }
+
+            // If the type is comparable, then we can just return the
+            // result immediately.
+            if (lhs instanceof Comparable)
+            {
+                // Spec says SUBSTRING is false for all types other than string.
+                if ((m_op == SimpleFilter.SUBSTRING) && !(lhs instanceof String))
+                {
+                    return false;
+                }
+
+                Object rhs;
+                if (m_op == SimpleFilter.SUBSTRING)
+                {
+                    rhs = m_value;
+                }
+                else
+                {
+                    rhs = coerce(lhs);
+                    if (rhs == COERCION_FAILED)
+                    {
+                        return false;
+                    }
+                }
+
+                switch (m_op)
+                {
+                    case SimpleFilter.EQ :
+                        try
+                        {
+                            return (((Comparable) lhs).compareTo(rhs) == 0);
+                        }
+                        catch (Exception ex)
+                        {
+                            return false;
+                        }
+                    case SimpleFilter.GTE :
+                        try
+                        {
+                            return (((Comparable) lhs).compareTo(rhs) >= 0);
+                        }
+                        catch (Exception ex)
+                        {
+                            return false;
+                        }
+                    case SimpleFilter.LTE :
+                        try
+                        {
+                            return (((Comparable) lhs).compareTo(rhs) <= 0);
+                        }
+                        catch (Exception ex)
+                        {
+                            return false;
+                        }
+                    case SimpleFilter.APPROX :
+                        return CapabilitySet.compareApproximate(lhs, rhs);
+                    case SimpleFilter.SUBSTRING :
+                        return SimpleFilter.compareSubstring((List<String>) rhs, (String) lhs);
+                    default:
+                        throw new RuntimeException(
+                            "Unknown comparison operator: " + m_op);
+                }
+            }
+            // Booleans do not implement comparable, so special case them.
+            else if (lhs instanceof Boolean)
+            {
+                Object rhs = coerce(lhs);
+                if (rhs == COERCION_FAILED)
+                {
+                    return false;
+                }
+
+                switch (m_op)
+                {
+                    case SimpleFilter.EQ :
+                    case SimpleFilter.GTE :
+                    case SimpleFilter.LTE :
+                    case SimpleFilter.APPROX :
+                        return (lhs.equals(rhs));
+                    default:
+                        throw new RuntimeException(
+                            "Unknown comparison operator: " + m_op);
+                }
+            }
+
+            // If the LHS is not a comparable or boolean, check if it is an
+            // array. If so, convert it to a list so we can treat it as a
+            // collection.
+            if (lhs.getClass().isArray())
+            {
+                lhs = CapabilitySet.convertArrayToList(lhs);
+            }
+
+            // If LHS is a collection, then call compare() on each element
+            // of the collection until a match is found.
+            if (lhs instanceof Collection)
+            {
+                for (Iterator iter = ((Collection) lhs).iterator(); iter.hasNext(); )
+                {
+                    Object element = iter.next();
+                    if ((element != null) && compare(element))
+                    {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+
+            // Spec says SUBSTRING is false for all types other than string.
+            if (m_op == SimpleFilter.SUBSTRING)
+            {
+                return false;
+            }
+
+            // Since we cannot identify the LHS type, then we can only perform
+            // equality comparison.
+            Object rhs = coerce(lhs);
+            if (rhs == COERCION_FAILED)
+            {
+                return false;
+            }
+            try
+            {
+                return lhs.equals(rhs);
+            }
+            catch (Exception ex)
+            {
+                return false;
+            }
+        }
+
+        /**
+         * Returns the filter value converted to the type of the attribute
+         * value, or COERCION_FAILED if it cannot be converted.
+         */
+        private Object coerce(Object lhs)
+        {
+            if (!(m_value instanceof String))
+            {
+                return COERCION_FAILED;
+            }
+            if (lhs instanceof String)
+            {
+                return m_value;
+            }
+
+            Coerced coerced = m_coerced;
+            if ((coerced == null) || (coerced.m_type != lhs.getClass()))
+            {
+                Object rhs;
+                try
+                {
+                    rhs = CapabilitySet.coerceType(lhs, (String) m_value);
+                }
+                catch (Exception ex)
+                {
+                    rhs = COERCION_FAILED;
+                }
+                coerced = new Coerced(lhs.getClass(), rhs);
+                m_coerced = coerced;
+            }
+            return coerced.m_value;
+        }
+    }
+
+    private static final class Coerced
+    {
+        final Class<?> m_type;
+        final Object m_value;
+
+        Coerced(Class<?> type, Object value)
+        {
+            m_type = type;
+            m_value = value;
+        }
+    }
+}
@@ -42,6 +42,7 @@ public class SimpleFilter
     private final String m_name;
     private final Object m_value;
     private final int m_op;
+    private volatile FilterEvaluator m_evaluator;
 
     public SimpleFilter(String attr, Object value, int op)
     {
@@ -84,6 +85,32 @@ public class SimpleFilter
         return m_op;
     }
 
+    /**
+     * Evaluates the filter against the given attributes. Mandatory attributes
+     * are not taken into account, see {@link CapabilitySet#matches}.
+     * @param attrs The attributes to match.
+     * @return <code>true</code> if the attributes match the filter.
+     */
+    public boolean matches(Map<String, Object> attrs)
+    {
+        return getEvaluator().evaluate(attrs);
+    }
+
+    /**
+     * Returns the compiled form of the filter, it is created when the filter
+     * is evaluated the first time, after all operands have been added.
+     */
+    FilterEvaluator getEvaluator()
+    {
+        FilterEvaluator evaluator = m_evaluator;
+        if (evaluator == null)
+        {
+            evaluator = FilterEvaluator.compile(this);
+            m_evaluator = evaluator;
+        }
+        return evaluator;
+    }
+
     @Override
 	public String toString()
     {
@@ -23,10 +23,12 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Dictionary;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.jupiter.api.Test;
@@ -35,6 +37,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.Version;
 
 class FilterTest
 {
@@ -96,6 +99,67 @@ class FilterTest
         assertThat(filter.match(createTestDict(linkedList))).isTrue();
     }
 
+    @Test
+    void typedComparisons() throws InvalidSyntaxException
+    {
+        Filter filter = new FilterImpl(
+            "(&(objectClass=foo)(ranking>=10)(version=[1.0,2.0\\))(enabled=true))");
+
+        Dictionary<String, Object> dict = new Hashtable<>();
+        dict.put("objectClass", new String[] { "bar", "foo" });
+        dict.put("ranking", 20L);
+        dict.put("version", new Version(1, 5, 0));
+        dict.put("enabled", Boolean.TRUE);
+        assertThat(filter.match(dict)).isTrue();
+        // evaluate again with the operands already coerced
+        assertThat(filter.match(dict)).isTrue();
+
+        dict.put("ranking", 5);
+        assertThat(filter.match(dict)).isFalse();
+        dict.put("ranking", "20");
+        assertThat(filter.match(dict)).isTrue();
+        dict.put("ranking", 20L);
+        dict.put("version", new Version(2, 0, 0));
+        assertThat(filter.match(dict)).isFalse();
+    }
+
+    @Test
+    void equalsConjunction() throws InvalidSyntaxException
+    {
+        Filter filter = new FilterImpl("(&(name=test)(count=3))");
+
+        Dictionary<String, Object> dict = new Hashtable<>();
+        dict.put("NAME", "test");
+        dict.put("count", "3");
+        assertThat(filter.match(dict)).isTrue();
+        assertThat(filter.matchCase(dict)).isFalse();
+
+        dict.put("count", 3);
+        assertThat(filter.match(dict)).isTrue();
+        dict.put("count", new int[] { 1, 2 });
+        assertThat(filter.match(dict)).isFalse();
+        dict.put("count", new int[] { 1, 3 });
+        assertThat(filter.match(dict)).isTrue();
+        dict.remove("count");
+        assertThat(filter.match(dict)).isFalse();
+    }
+
+    @Test
+    void matchesMap() throws InvalidSyntaxException
+    {
+        Filter filter = new FilterImpl("(|(a=1)(!(b=*)))");
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("a", 1);
+        map.put("b", "x");
+        assertThat(filter.matches(map)).isTrue();
+        map.put("a", 2);
+        assertThat(filter.matches(map)).isFalse();
+        map.remove("b");
+        assertThat(filter.matches(map)).isTrue();
+        assertThat(filter.matches(null)).isTrue();
+    }
+
     private static Dictionary<String, Object> createTestDict(Object o)
     {
         Hashtable<String, Object> dictionary = new Hashtable<>();
@@ -26,7 +26,12 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.hooks.resolver.ResolverHook;
+import org.osgi.framework.hooks.resolver.ResolverHookFactory;
 import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRequirement;
 import org.osgi.framework.wiring.BundleRevision;
 import org.osgi.framework.wiring.BundleWire;
 import org.osgi.framework.wiring.BundleWiring;
@@ -36,10 +41,12 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 
@@ -281,6 +288,138 @@ class ResolveTest
         assertThat(ho).isEqualTo(requiredWires.get(1).getProvider().getBundle());
     }
 
+    @Test
+    void dynamicImportMissIsInvalidatedByInstall() throws Exception
+    {
+        Bundle dyn = installDynamicImporter();
+
+        assertDynamicImportMiss(dyn, true);
+
+        Bundle exp = felix.getBundleContext().installBundle(createExporter("cap.exp").toURI().toASCIIString());
+
+        assertDynamicImportWiredTo(dyn, exp);
+    }
+
+    @Test
+    void dynamicImportMissIsInvalidatedByResolve() throws Exception
+    {
+        Bundle dyn = installDynamicImporter();
+
+        assertDynamicImportMiss(dyn, true);
+
+        // unresolved singletons are only indexed once they are resolved
+        Bundle exp = felix.getBundleContext().installBundle(
+            createExporter("cap.exp;singleton:=true").toURI().toASCIIString());
+        assertDynamicImportMiss(dyn, true);
+        felix.adapt(FrameworkWiring.class).resolveBundles(Collections.singletonList(exp));
+        assertThat(exp.getState()).isEqualTo(Bundle.RESOLVED);
+
+        assertDynamicImportWiredTo(dyn, exp);
+    }
+
+    @Test
+    void dynamicImportMissIsInvalidatedWithResolverHooks() throws Exception
+    {
+        final AtomicInteger resolves = new AtomicInteger();
+        ServiceRegistration<ResolverHookFactory> reg = felix.getBundleContext().registerService(
+            ResolverHookFactory.class, triggers -> {
+                resolves.incrementAndGet();
+                return new ResolverHook()
+                {
+                    @Override
+                    public void filterResolvable(Collection<BundleRevision> candidates)
+                    {
+                    }
+
+                    @Override
+                    public void filterSingletonCollisions(BundleCapability singleton,
+                        Collection<BundleCapability> collisionCandidates)
+                    {
+                    }
+
+                    @Override
+                    public void filterMatches(BundleRequirement requirement,
+                        Collection<BundleCapability> candidates)
+                    {
+                    }
+
+                    @Override
+                    public void end()
+                    {
+                    }
+                };
+            }, null);
+        try
+        {
+            Bundle dyn = installDynamicImporter();
+            int resolved = resolves.get();
+
+            assertDynamicImportMiss(dyn, true);
+            assertThat(resolves.get()).isEqualTo(resolved);
+
+            Bundle exp = felix.getBundleContext().installBundle(createExporter("cap.exp").toURI().toASCIIString());
+
+            assertDynamicImportWiredTo(dyn, exp);
+            assertThat(resolves.get()).isGreaterThan(resolved);
+        }
+        finally
+        {
+            reg.unregister();
+        }
+    }
+
+    private Bundle installDynamicImporter() throws Exception
+    {
+        String dynm = "Bundle-SymbolicName: cap.dyn\n"
+            + "Bundle-Version: 1.0.0\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "DynamicImport-Package: test.dyn\n";
+        Bundle dyn = felix.getBundleContext().installBundle(createBundle(dynm).toURI().toASCIIString());
+        felix.adapt(FrameworkWiring.class).resolveBundles(Collections.singletonList(dyn));
+        assertThat(dyn.getState()).isEqualTo(Bundle.RESOLVED);
+        return dyn;
+    }
+
+    private File createExporter(String symbolicName) throws IOException
+    {
+        return createBundle("Bundle-SymbolicName: " + symbolicName + "\n"
+            + "Bundle-Version: 1.0.0\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Export-Package: test.dyn\n");
+    }
+
+    private void assertDynamicImportMiss(Bundle dyn, boolean recorded)
+    {
+        try
+        {
+            dyn.loadClass("test.dyn.Foo");
+            fail("");
+        }
+        catch (ClassNotFoundException ex)
+        {
+            // Expected
+        }
+        BundleWiringImpl wiring = (BundleWiringImpl) dyn.adapt(BundleWiring.class);
+        assertThat(wiring.getDynamicImportMiss("test.dyn") != null).isEqualTo(recorded);
+    }
+
+    private void assertDynamicImportWiredTo(Bundle dyn, Bundle exp)
+    {
+        try
+        {
+            dyn.loadClass("test.dyn.Foo");
+            fail("");
+        }
+        catch (ClassNotFoundException ex)
+        {
+            // Expected, the exporter does not contain the class
+        }
+        assertThat(exp.getState()).isEqualTo(Bundle.RESOLVED);
+        List<BundleWire> requiredWires = dyn.adapt(BundleWiring.class).getRequiredWires(BundleRevision.PACKAGE_NAMESPACE);
+        assertThat(requiredWires).hasSize(1);
+        assertThat(requiredWires.get(0).getProvider().getBundle()).isEqualTo(exp);
+    }
+
     private File createBundle(String manifest) throws IOException
     {
         File f = File.createTempFile("felix-bundle", ".jar", tempDir);
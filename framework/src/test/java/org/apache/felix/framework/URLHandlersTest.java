@@ -15,6 +15,7 @@
  */
 package org.apache.felix.framework;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
 
 import java.io.ByteArrayInputStream;
@@ -43,6 +44,7 @@ import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.framework.launch.Framework;
+import org.osgi.service.url.AbstractURLStreamHandlerService;
 import org.osgi.service.url.URLConstants;
 import org.osgi.service.url.URLStreamHandlerService;
 import org.osgi.service.url.URLStreamHandlerSetter;
@@ -163,6 +165,101 @@ public class URLHandlersTest
         }
     }
 
+    @Test
+    void urlHandlersCacheOwnerPerFramework() throws Exception
+    {
+        String mf = "Bundle-SymbolicName: url.owner\n"
+            + "Bundle-Version: 1.0.0\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Import-Package: org.osgi.framework,org.osgi.service.url\n"
+            + "Manifest-Version: 1.0\n"
+            + Constants.BUNDLE_ACTIVATOR + ": " + TestOwnerActivator.class.getName() + "\n\n";
+
+        File bundleFile = createBundle(mf, TestOwnerActivator.class, UC.class);
+
+        Framework f1 = createFramework();
+        Framework f2 = createFramework();
+        f1.init();
+        f1.start();
+        f2.init();
+        f2.start();
+
+        try
+        {
+            // The activators open a connection, so the owning framework is
+            // looked up from the stack and cached for their class loaders.
+            Bundle b1 = f1.getBundleContext().installBundle(bundleFile.toURI().toString());
+            b1.start();
+            Bundle b2 = f2.getBundleContext().installBundle(bundleFile.toURI().toString());
+            b2.start();
+
+            ClassLoader cl1 = b1.loadClass(TestOwnerActivator.class.getName()).getClassLoader();
+            ClassLoader cl2 = b2.loadClass(TestOwnerActivator.class.getName()).getClassLoader();
+            assertThat(URLHandlers.getCachedFramework(cl1)).isSameAs(f1);
+            assertThat(URLHandlers.getCachedFramework(cl2)).isSameAs(f2);
+
+            f1.stop();
+            f1.waitForStop(10000);
+
+            assertThat(URLHandlers.getCachedFramework(cl1)).isNull();
+            assertThat(URLHandlers.getCachedFramework(cl2)).isSameAs(f2);
+
+            // The remaining framework is still found through the cache.
+            b2.stop();
+            b2.start();
+            assertThat(URLHandlers.getCachedFramework(cl2)).isSameAs(f2);
+        }
+        finally
+        {
+            try
+            {
+                f1.stop();
+            }
+            catch (Throwable t)
+            {
+            }
+            try
+            {
+                f2.stop();
+            }
+            catch (Throwable t)
+            {
+            }
+        }
+    }
+
+    public static class TestOwnerActivator extends AbstractURLStreamHandlerService implements BundleActivator
+    {
+        @Override
+        public URLConnection openConnection(URL u) throws IOException
+        {
+            return new UC(u);
+        }
+
+        @Override
+        public void start(BundleContext context) throws Exception
+        {
+            String protocol = "owner" + System.identityHashCode(this);
+            Hashtable<String, String> props = new Hashtable<>();
+            props.put(URLConstants.URL_HANDLER_PROTOCOL, protocol);
+            ServiceRegistration<URLStreamHandlerService> reg =
+                context.registerService(URLStreamHandlerService.class, this, props);
+            try
+            {
+                new URL(protocol + ":").openConnection();
+            }
+            finally
+            {
+                reg.unregister();
+            }
+        }
+
+        @Override
+        public void stop(BundleContext context) throws Exception
+        {
+        }
+    }
+
     public static class DelegatingClassLoader extends ClassLoader
     {
         private final Object m_lock = new Object();
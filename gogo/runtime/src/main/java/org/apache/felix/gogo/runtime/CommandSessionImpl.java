@@ -40,6 +40,7 @@ import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.Formatter;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
@@ -49,6 +50,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.stream.BaseStream;
 
 import org.apache.felix.service.command.Job;
 import org.apache.felix.service.command.Job.Status;
@@ -507,6 +509,68 @@ public class CommandSessionImpl implements CommandSession, Converter
         }
     }
 
+    /**
+     * Print the formatted result on the given stream.
+     * Collections, iterators and streams are formatted and printed element by
+     * element, so that a large result is not held in memory as a whole before it
+     * flows to the next command of a pipe, which in turn can consume the elements
+     * as soon as they are produced.
+     */
+    void print(PrintStream out, Object result)
+    {
+        Iterator<?> iterator = null;
+        if (result instanceof Iterator)
+        {
+            iterator = (Iterator<?>) result;
+        }
+        else if (result instanceof BaseStream)
+        {
+            iterator = ((BaseStream<?, ?>) result).iterator();
+        }
+        else if (result instanceof Collection)
+        {
+            for (Converter c : processor.converters)
+            {
+                CharSequence s;
+                try
+                {
+                    s = c.format(result, Converter.INSPECT, this);
+                }
+                catch (Exception e)
+                {
+                    s = "<can not format " + result + ":" + e;
+                }
+                if (s != null)
+                {
+                    out.println(s);
+                    return;
+                }
+            }
+            iterator = ((Collection<?>) result).iterator();
+        }
+        if (iterator == null)
+        {
+            out.println(format(result, Converter.INSPECT));
+            return;
+        }
+        try
+        {
+            while (iterator.hasNext() && !out.checkError())
+            {
+                out.print(format(iterator.next(), Converter.INSPECT + 1));
+                out.print("\n");
+            }
+            out.println();
+        }
+        finally
+        {
+            if (result instanceof BaseStream)
+            {
+                ((BaseStream<?, ?>) result).close();
+            }
+        }
+    }
+
     public Object expr(CharSequence expr)
     {
         return processor.expr(this, expr);
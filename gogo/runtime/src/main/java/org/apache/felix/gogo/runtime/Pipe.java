@@ -53,7 +53,6 @@ import org.apache.felix.service.command.Process;
 import org.apache.felix.gogo.runtime.CommandSessionImpl.JobImpl;
 import org.apache.felix.gogo.runtime.Parser.Statement;
 import org.apache.felix.gogo.runtime.Pipe.Result;
-import org.apache.felix.service.command.Converter;
 import org.apache.felix.service.threadio.ThreadIO;
 
 public class Pipe implements Callable<Result>, Process
@@ -428,7 +427,7 @@ public class Pipe implements Callable<Result>, Process
                 // We don't print the result if we're at the end of the pipe
                 if (result != null && !endOfPipe && !Boolean.FALSE.equals(closure.session().get(".FormatPipe")))
                 {
-                    out.println(closure.session().format(result, Converter.INSPECT));
+                    closure.session().print(out, result);
                 }
                 return new Result(result);
 
@@ -53,6 +53,45 @@ public final class Reflective
                 "finally", "long", "strictfp", "volatile", "const", "float", "native",
                 "super", "while"));
 
+    /**
+     * The public methods of a class and all its ancestors, public classes
+     * first, along with their lowercased names.
+     */
+    private static final ClassValue<ClassMethods> METHODS = new ClassValue<ClassMethods>()
+    {
+        @Override
+        protected ClassMethods computeValue(Class<?> type)
+        {
+            Set<Class<?>> publicClasses = new LinkedHashSet<>();
+            Set<Class<?>> nonPublicClasses = new LinkedHashSet<>();
+            getClassAndAncestors(publicClasses, nonPublicClasses, type);
+            Set<Method> methods = new LinkedHashSet<>();
+            for (Class<?> cl : publicClasses) {
+                Collections.addAll(methods, cl.getMethods());
+            }
+            for (Class<?> cl : nonPublicClasses) {
+                Collections.addAll(methods, cl.getMethods());
+            }
+            return new ClassMethods(methods.toArray(new Method[methods.size()]));
+        }
+    };
+
+    private static final class ClassMethods
+    {
+        final Method[] methods;
+        final String[] names;
+
+        ClassMethods(Method[] methods)
+        {
+            this.methods = methods;
+            this.names = new String[methods.length];
+            for (int i = 0; i < methods.length; i++)
+            {
+                names[i] = methods[i].getName().toLowerCase(Locale.ENGLISH);
+            }
+        }
+    }
+
     /**
      * invokes the named method on the given target using the supplied args,
      * which are converted if necessary.
@@ -69,25 +108,13 @@ public final class Reflective
         name = name.toLowerCase(Locale.ENGLISH);
 
         String org = name;
-        String get = "get" + name;
-        String is = "is" + name;
-        String set = "set" + name;
 
         if (KEYWORDS.contains(name))
         {
             name = "_" + name;
         }
 
-        Set<Class<?>> publicClasses = new LinkedHashSet<>();
-        Set<Class<?>> nonPublicClasses = new LinkedHashSet<>();
-        getClassAndAncestors(publicClasses, nonPublicClasses, target.getClass());
-        List<Method> methods = new ArrayList<>();
-        for (Class<?> cl : publicClasses) {
-            Collections.addAll(methods, cl.getMethods());
-        }
-        for (Class<?> cl : nonPublicClasses) {
-            Collections.addAll(methods, cl.getMethods());
-        }
+        List<Method> methods = getCandidates(target.getClass(), org);
 
         Method bestMethod = null;
         Object[] bestArgs = null;
@@ -96,40 +123,35 @@ public final class Reflective
 
         for (Method m : methods)
         {
-            String mname = m.getName().toLowerCase(Locale.ENGLISH);
-            if (mname.equals(name) || mname.equals(get) || mname.equals(set)
-                || mname.equals(is) || mname.equals(MAIN))
-            {
-                Class<?>[] types = m.getParameterTypes();
-                ArrayList<Object> xargs = new ArrayList<>(args);
+            Class<?>[] types = m.getParameterTypes();
+            ArrayList<Object> xargs = new ArrayList<>(args);
 
-                // pass command name as argv[0] to main, so it can handle
-                // multiple commands
-                if (mname.equals(MAIN))
-                {
-                    xargs.add(0, org);
-                }
+            // pass command name as argv[0] to main, so it can handle
+            // multiple commands
+            if (m.getName().equalsIgnoreCase(MAIN))
+            {
+                xargs.add(0, org);
+            }
 
-                Object[] parms = new Object[types.length];
-                int match = coerce(session, target, m, types, parms, xargs);
+            Object[] parms = new Object[types.length];
+            int match = coerce(session, target, m, types, parms, xargs);
 
-                if (match < 0)
+            if (match < 0)
+            {
+                // coerce failed
+                possibleTypes.add(types);
+            }
+            else
+            {
+                if (match < lowestMatch)
                 {
-                    // coerce failed
-                    possibleTypes.add(types);
+                    lowestMatch = match;
+                    bestMethod = m;
+                    bestArgs = parms;
                 }
-                else
-                {
-                    if (match < lowestMatch)
-                    {
-                        lowestMatch = match;
-                        bestMethod = m;
-                        bestArgs = parms;
-                    }
 
-                    if (match == 0)
-                        break; // can't get better score
-                }
+                if (match == 0)
+                    break; // can't get better score
             }
         }
 
@@ -204,6 +226,35 @@ public final class Reflective
         }
     }
 
+    /**
+     * Get the methods of the given class that may be invoked for the given
+     * command name, in the order in which they are tried.
+     * The methods and their lowercased names are cached per class; the cache
+     * is attached to the class, so it goes away with the class loader.
+     * Matches are not cached per command name, as the names are arbitrary
+     * user input.
+     */
+    private static List<Method> getCandidates(Class<?> clazz, String org)
+    {
+        String name = KEYWORDS.contains(org) ? "_" + org : org;
+        String get = "get" + org;
+        String is = "is" + org;
+        String set = "set" + org;
+
+        ClassMethods cm = METHODS.get(clazz);
+        List<Method> list = new ArrayList<>();
+        for (int i = 0; i < cm.methods.length; i++)
+        {
+            String mname = cm.names[i];
+            if (mname.equals(name) || mname.equals(get) || mname.equals(set)
+                || mname.equals(is) || mname.equals(MAIN))
+            {
+                list.add(cm.methods[i]);
+            }
+        }
+        return list;
+    }
+
     private static void getClassAndAncestors(Set<Class<?>> publicClasses, Set<Class<?>> nonPublicClasses, Class<?> aClass)
     {
         for (Class<?> itf : aClass.getInterfaces())
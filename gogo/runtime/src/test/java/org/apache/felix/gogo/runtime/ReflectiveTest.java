@@ -68,6 +68,15 @@ public class ReflectiveTest {
                 Collections.<Object>singletonList(conv));
     }
 
+    @Test
+    public void testRepeatedInvocation() throws Exception {
+        // the second invocations are resolved from the cached method tables
+        assertEquals(new Object[] { 1, "ab" }, invoke("test1", Arrays.<Object>asList(1, "ab")));
+        assertEquals(new Object[] { 1, "ab" }, invoke("TEST1", Arrays.<Object>asList(1, "ab")));
+        assertEquals(new String[] { "1", "ab" }, invoke("test2", Arrays.<Object>asList(1, "ab")));
+        assertEquals(new String[] { "1", "ab" }, invoke("Test2", Arrays.<Object>asList(1, "ab")));
+    }
+
     static class Target {
         public Object test1(CommandSession session, Object[] argv) {
             return argv;
@@ -24,8 +24,11 @@ import java.io.InputStreamReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.apache.felix.service.command.Process;
 import org.apache.felix.gogo.runtime.Parser.Pipeline;
@@ -159,6 +162,57 @@ public class TestParser extends AbstractParserTest
 //        assertEquals("defghi", c.execute("(echoout abc; echoout def; echoout ghi)|grep 'def|ghi'|capture"));
     }
 
+    @Test
+    public void testStreamingPipe() throws Exception
+    {
+        Context c = new Context();
+        c.addCommand("capture", this);
+        c.addCommand("grep", this);
+        c.addCommand("lines", this);
+        c.addCommand("linestream", this);
+        c.addCommand("linelist", this);
+
+        // Disable file name generation to avoid escaping patterns
+        c.currentDir(null);
+
+        assertEquals("line99999", c.execute("lines 100000|grep line99999|capture"));
+        assertEquals("line42", c.execute("linestream 100|grep ^line42$|capture"));
+        assertEquals("line2", c.execute("linelist 3|grep line2|capture"));
+    }
+
+    public Iterator<String> lines(final int count)
+    {
+        return new Iterator<String>()
+        {
+            int i = 0;
+
+            public boolean hasNext()
+            {
+                return i < count;
+            }
+
+            public String next()
+            {
+                return "line" + i++;
+            }
+        };
+    }
+
+    public Stream<String> linestream(int count)
+    {
+        return IntStream.range(0, count).mapToObj(i -> "line" + i);
+    }
+
+    public List<String> linelist(int count)
+    {
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            list.add("line" + i);
+        }
+        return list;
+    }
+
     @Test
     public void testAssignment() throws Exception
     {
@@ -18,6 +18,7 @@
 package org.apache.felix.hc.core.impl.executor;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.apache.felix.hc.api.HealthCheck;
 import org.apache.felix.hc.api.execution.HealthCheckExecutionOptions;
@@ -38,4 +39,8 @@ public interface ExtendedHealthCheckExecutor extends HealthCheckExecutor {
     /** internal interface to execute checks for service references */
     List<HealthCheckExecutionResult> execute(final ServiceReference<HealthCheck>[] healthCheckReferences, HealthCheckExecutionOptions options);
 
+    /** internal interface to execute checks passing each result to the listener as soon as it is available, used by the servlet */
+    List<HealthCheckExecutionResult> execute(HealthCheckSelector selector, HealthCheckExecutionOptions options,
+            Consumer<HealthCheckExecutionResult> resultListener);
+
 }
\ No newline at end of file
@@ -34,9 +34,12 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.apache.felix.hc.api.FormattingResultLog;
 import org.apache.felix.hc.api.HealthCheck;
@@ -170,6 +173,13 @@ public class HealthCheckExecutorImpl implements ExtendedHealthCheckExecutor, Ser
 
     @Override
     public List<HealthCheckExecutionResult> execute(HealthCheckSelector selector, HealthCheckExecutionOptions options) {
+        return execute(selector, options, null);
+    }
+
+    /** @see org.apache.felix.hc.core.impl.executor.ExtendedHealthCheckExecutor#execute(HealthCheckSelector, HealthCheckExecutionOptions, Consumer) */
+    @Override
+    public List<HealthCheckExecutionResult> execute(HealthCheckSelector selector, HealthCheckExecutionOptions options,
+            Consumer<HealthCheckExecutionResult> resultListener) {
         logger.debug("Starting executing checks for filter selector {} and execution options {}", selector, options);
 
         if ((selector.names() == null || selector.names().length == 0) && (selector.tags() == null || selector.tags().length == 0)) {
@@ -178,7 +188,7 @@ public class HealthCheckExecutorImpl implements ExtendedHealthCheckExecutor, Ser
         }
 
         final ServiceReference<HealthCheck>[] healthCheckReferences = selectHealthCheckReferences(selector, options);
-        List<HealthCheckExecutionResult> results = this.execute(healthCheckReferences, options);
+        List<HealthCheckExecutionResult> results = this.execute(healthCheckReferences, options, resultListener);
         return results;
 
     }
@@ -203,6 +213,11 @@ public class HealthCheckExecutorImpl implements ExtendedHealthCheckExecutor, Ser
     @Override
     public List<HealthCheckExecutionResult> execute(final ServiceReference<HealthCheck>[] healthCheckReferences,
             HealthCheckExecutionOptions options) {
+        return execute(healthCheckReferences, options, null);
+    }
+
+    private List<HealthCheckExecutionResult> execute(final ServiceReference<HealthCheck>[] healthCheckReferences,
+            HealthCheckExecutionOptions options, Consumer<HealthCheckExecutionResult> resultListener) {
         
         long effectiveTimeout = getEffectiveTimeout(options);
         final long startTime = System.currentTimeMillis();
@@ -212,7 +227,7 @@ public class HealthCheckExecutorImpl implements ExtendedHealthCheckExecutor, Ser
 
         final long intermediateTiming = System.currentTimeMillis();
         
-        createResultsForDescriptors(healthCheckDescriptors, results, options);
+        createResultsForDescriptors(healthCheckDescriptors, results, options, resultListener);
         
 
         // sort result
@@ -249,7 +264,7 @@ public class HealthCheckExecutorImpl implements ExtendedHealthCheckExecutor, Ser
         final List<HealthCheckMetadata> healthCheckDescriptors = new ArrayList<HealthCheckMetadata>();
         healthCheckDescriptors.add(metadata);
 
-        createResultsForDescriptors(healthCheckDescriptors, results, new HealthCheckExecutionOptions());
+        createResultsForDescriptors(healthCheckDescriptors, results, new HealthCheckExecutionOptions(), null);
         
         if (results.size() != 1) {
             throw new IllegalStateException("Execute method for a single service reference unexpectedly resulted in "+results.size()+ " results: "+results);
@@ -259,49 +274,55 @@ public class HealthCheckExecutorImpl implements ExtendedHealthCheckExecutor, Ser
     }
     
     private void createResultsForDescriptors(final List<HealthCheckMetadata> healthCheckDescriptors,
-            final List<HealthCheckExecutionResult> results, HealthCheckExecutionOptions options) {
+            final List<HealthCheckExecutionResult> results, HealthCheckExecutionOptions options,
+            Consumer<HealthCheckExecutionResult> resultListener) {
         // -- All methods below check if they can transform a healthCheckDescriptor into a result
         // -- if yes the descriptor is removed from the list and the result added
 
+        final List<HealthCheckExecutionResult> availableResults = new ArrayList<HealthCheckExecutionResult>();
+
         // get async results
         if (!options.isForceInstantExecution()) {
             if (asyncHealthCheckExecutor != null) {
-                asyncHealthCheckExecutor.collectAsyncResults(healthCheckDescriptors, results, healthCheckResultCache);
+                asyncHealthCheckExecutor.collectAsyncResults(healthCheckDescriptors, availableResults, healthCheckResultCache);
             }
         }
 
         // reuse cached results where possible
         if (!options.isForceInstantExecution()) {
-            healthCheckResultCache.useValidCacheResults(healthCheckDescriptors, results, resultCacheTtlInMs);
+            healthCheckResultCache.useValidCacheResults(healthCheckDescriptors, availableResults, resultCacheTtlInMs);
+        }
+
+        for (final HealthCheckExecutionResult result : availableResults) {
+            addResult(result, results, resultListener);
         }
 
         // everything else is executed in parallel via futures
         List<HealthCheckFuture> futures = createOrReuseFutures(healthCheckDescriptors);
 
-        // wait for futures at most until timeout (but will return earlier if all futures are finished)
-        waitForFuturesRespectingTimeout(futures, options);
-        collectResultsFromFutures(futures, results);
+        // collect results as futures finish, at most until timeout
+        collectResultsRespectingTimeout(futures, results, options, resultListener);
+    }
+
+    /** Finishes a result and adds it to the results (and passes it to the listener, if given) */
+    private void addResult(HealthCheckExecutionResult result, final List<HealthCheckExecutionResult> results,
+            Consumer<HealthCheckExecutionResult> resultListener) {
 
         // respect sticky results if configured via HealthCheck.KEEP_NON_OK_RESULTS_STICKY_FOR_SEC
-        appendStickyResultLogIfConfigured(results);
+        Long warningsStickForMinutes = result.getHealthCheckMetadata().getKeepNonOkResultsStickyForSec();
+        if (warningsStickForMinutes != null && warningsStickForMinutes > 0) {
+            result = healthCheckResultCache.createExecutionResultWithStickyResults(result);
+        }
 
         // ensure long standing TEMPORARILY_UNAVAILABLE results are marked as CRITICAL
-        tempUnavailableGracePeriodEvaluator.evaluateGracePeriodForTemporarilyUnavailableResults(results);
-    }
+        result = tempUnavailableGracePeriodEvaluator.evaluateGracePeriodForTemporarilyUnavailableResult(result);
 
-    private void appendStickyResultLogIfConfigured(List<HealthCheckExecutionResult> results) {
-        ListIterator<HealthCheckExecutionResult> resultsIt = results.listIterator();
-        while (resultsIt.hasNext()) {
-            HealthCheckExecutionResult result = resultsIt.next();
-            Long warningsStickForMinutes = result.getHealthCheckMetadata().getKeepNonOkResultsStickyForSec();
-            if (warningsStickForMinutes != null && warningsStickForMinutes > 0) {
-                result = healthCheckResultCache.createExecutionResultWithStickyResults(result);
-                resultsIt.set(result);
-            }
+        results.add(result);
+        if (resultListener != null) {
+            resultListener.accept(result);
         }
     }
 
-
     /** Create the health check meta data */
     private List<HealthCheckMetadata> getHealthCheckMetadata(final ServiceReference<?>... healthCheckReferences) {
         final List<HealthCheckMetadata> descriptors = new LinkedList<HealthCheckMetadata>();
@@ -355,54 +376,58 @@ public class HealthCheckExecutorImpl implements ExtendedHealthCheckExecutor, Ser
             });
             this.stillRunningFutures.put(metadata, future);
 
-            final HealthCheckFuture newFuture = future;
-
-            healthCheckExecutorThreadPool.execute(new Runnable() {
-                @Override
-                public void run() {
-                    newFuture.run();
-                    synchronized (stillRunningFutures) {
-                        // notify executor threads that newFuture is finished. Wrapping it in another runnable
-                        // ensures that newFuture.isDone() will return true (if e.g. done in callback above, there are
-                        // still a few lines of code until the future is really done and hence then the executor thread
-                        // is sometime notified a bit too early, still receives the result isDone()=false and then waits
-                        // for another 50ms, even though the future was about to be done one ms later)
-                        stillRunningFutures.notifyAll();
-                    }
-                }
-            });
+            healthCheckExecutorThreadPool.execute(future);
         }
 
         return future;
     }
 
-    /** Wait for the futures until the timeout is reached */
-    private void waitForFuturesRespectingTimeout(final List<HealthCheckFuture> futuresForResultOfThisCall,
-            HealthCheckExecutionOptions options) {
-        
-        final long callExcutionStartTime = System.currentTimeMillis();
-        boolean allFuturesDone;
-
-        long effectiveTimeout = getEffectiveTimeout(options);
+    /** Collect the results of the futures in the order they finish, waiting at most until the timeout is reached.
+     * Futures still running at the timeout are collected as timed out results. */
+    void collectResultsRespectingTimeout(final List<HealthCheckFuture> futuresForResultOfThisCall,
+            final List<HealthCheckExecutionResult> results, HealthCheckExecutionOptions options,
+            Consumer<HealthCheckExecutionResult> resultListener) {
 
         if (futuresForResultOfThisCall.isEmpty()) {
             return; // nothing to wait for (usually because of cached results)
         }
 
-        do {
-            try {
-                synchronized (stillRunningFutures) {
-                    stillRunningFutures.wait(50); // wait for notifications of callbacks of HealthCheckFutures
+        final long deadline = System.currentTimeMillis() + getEffectiveTimeout(options);
+
+        // the futures signal their completion via this queue, no polling required
+        final BlockingQueue<HealthCheckFuture> finishedFutures = new LinkedBlockingQueue<HealthCheckFuture>();
+        final List<HealthCheckFuture> waitedFor = new ArrayList<HealthCheckFuture>(futuresForResultOfThisCall);
+        for (final HealthCheckFuture healthCheckFuture : waitedFor) {
+            healthCheckFuture.addWaitingRequest(finishedFutures);
+        }
+
+        try {
+            while (!futuresForResultOfThisCall.isEmpty()) {
+                final long remainingTime = deadline - System.currentTimeMillis();
+                final HealthCheckFuture finishedFuture = remainingTime > 0
+                        ? finishedFutures.poll(remainingTime, TimeUnit.MILLISECONDS)
+                        : null;
+                if (finishedFuture == null) {
+                    break; // timeout reached
                 }
-            } catch (final InterruptedException ie) {
-                logger.warn("Unexpected InterruptedException while waiting for healthCheckContributors", ie);
+                futuresForResultOfThisCall.remove(finishedFuture);
+                addResult(collectResultFromFuture(finishedFuture), results, resultListener);
             }
-
-            allFuturesDone = true;
-            for (final HealthCheckFuture healthCheckFuture : futuresForResultOfThisCall) {
-                allFuturesDone &= healthCheckFuture.isDone();
+        } catch (final InterruptedException ie) {
+            logger.warn("Unexpected InterruptedException while waiting for healthCheckContributors", ie);
+            Thread.currentThread().interrupt();
+        } finally {
+            // futures reused by other requests must not keep this request's queue
+            for (final HealthCheckFuture healthCheckFuture : waitedFor) {
+                healthCheckFuture.removeWaitingRequest(finishedFutures);
             }
-        } while (!allFuturesDone && (System.currentTimeMillis() - callExcutionStartTime) < effectiveTimeout);
+        }
+
+        final List<HealthCheckExecutionResult> timedOutResults = new ArrayList<HealthCheckExecutionResult>();
+        collectResultsFromFutures(futuresForResultOfThisCall, timedOutResults);
+        for (final HealthCheckExecutionResult result : timedOutResults) {
+            addResult(result, results, resultListener);
+        }
     }
 
     /** Collect the results from all futures
@@ -24,7 +24,10 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Date;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.FutureTask;
 
 import org.apache.felix.hc.api.FormattingResultLog;
@@ -52,6 +55,8 @@ public class HealthCheckFuture extends FutureTask<ExecutionResult> {
 
     private final HealthCheckMetadata metadata;
     private final Date createdTime;
+    /** Queues of the requests currently waiting for this future, each is notified at most once */
+    private final Set<Queue<HealthCheckFuture>> waitingRequests = ConcurrentHashMap.newKeySet();
 
     public HealthCheckFuture(final HealthCheckMetadata metadata, final BundleContext bundleContext, final Callback callback) {
         super(new Callable<ExecutionResult>() {
@@ -105,6 +110,38 @@ public class HealthCheckFuture extends FutureTask<ExecutionResult> {
 
     }
 
+    @Override
+    protected void done() {
+        // called once the outcome is set, hence isDone() is already true for every notified request
+        for (final Queue<HealthCheckFuture> finishedFutures : waitingRequests) {
+            notifyFinished(finishedFutures);
+        }
+    }
+
+    /** Adds this future to the given queue once the health check has finished (immediately if it is already done).
+     * The queue has to be removed again with {@link #removeWaitingRequest(Queue)} when the request stops waiting. */
+    void addWaitingRequest(final Queue<HealthCheckFuture> finishedFutures) {
+        waitingRequests.add(finishedFutures);
+        if (isDone()) {
+            notifyFinished(finishedFutures);
+        }
+    }
+
+    void removeWaitingRequest(final Queue<HealthCheckFuture> finishedFutures) {
+        waitingRequests.remove(finishedFutures);
+    }
+
+    int getWaitingRequestCount() {
+        return waitingRequests.size();
+    }
+
+    private void notifyFinished(final Queue<HealthCheckFuture> finishedFutures) {
+        // whoever removes the queue notifies it, either done() or a request registering after completion
+        if (waitingRequests.remove(finishedFutures)) {
+            finishedFutures.add(this);
+        }
+    }
+
     Date getCreatedTime() {
         return this.createdTime;
     }
@@ -20,8 +20,6 @@ package org.apache.felix.hc.core.impl.executor;
 import static org.apache.felix.hc.api.FormattingResultLog.msHumanReadable;
 
 import java.util.Date;
-import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -58,38 +56,33 @@ public class TempUnavailableGracePeriodEvaluator {
         }
     }
 
-    void evaluateGracePeriodForTemporarilyUnavailableResults(List<HealthCheckExecutionResult> results) {
-        ListIterator<HealthCheckExecutionResult> resultsIt = results.listIterator();
-        while (resultsIt.hasNext()) {
-            ExecutionResult executionResult = (ExecutionResult) resultsIt.next();
-            if (executionResult.getHealthCheckResult().getStatus() != Result.Status.TEMPORARILY_UNAVAILABLE) {
-                continue; // not TEMPORARILY_UNAVAILABLE
-            }
-
-            Date firstTempUnavailableDate = firstTempUnavailableDateByServiceId.get(executionResult.getServiceId());
-            
-            if(firstTempUnavailableDate == null) {
-                continue; // no previous TEMPORARILY_UNAVAILABLE found
-            }
-            
-            long timestampForCritical = firstTempUnavailableDate.getTime() + temporarilyAvailableGracePeriodInMs;
-            if (executionResult.getFinishedAt().getTime() < timestampForCritical) {
-                continue; // grace period not exceeded
-            }
-
-            ResultLog resultLog = new ResultLog();
-            for (ResultLog.Entry entry : executionResult.getHealthCheckResult()) {
-                resultLog.add(entry);
-            }
+    HealthCheckExecutionResult evaluateGracePeriodForTemporarilyUnavailableResult(HealthCheckExecutionResult result) {
+        ExecutionResult executionResult = (ExecutionResult) result;
+        if (executionResult.getHealthCheckResult().getStatus() != Result.Status.TEMPORARILY_UNAVAILABLE) {
+            return executionResult; // not TEMPORARILY_UNAVAILABLE
+        }
 
-            resultLog.add(new Entry(Result.Status.CRITICAL, "Grace period for being temporarily unavailable exceeded "
-                    + "by " + msHumanReadable(executionResult.getFinishedAt().getTime() - timestampForCritical)
-                    + " (configured grace period: " + msHumanReadable(temporarilyAvailableGracePeriodInMs) + ")"));
-            executionResult = new ExecutionResult(executionResult.getHealthCheckMetadata(), new Result(resultLog),
-                    executionResult.getFinishedAt(), executionResult.getElapsedTimeInMs(), false);
-            resultsIt.set(executionResult);
+        Date firstTempUnavailableDate = firstTempUnavailableDateByServiceId.get(executionResult.getServiceId());
+        
+        if(firstTempUnavailableDate == null) {
+            return executionResult; // no previous TEMPORARILY_UNAVAILABLE found
+        }
+        
+        long timestampForCritical = firstTempUnavailableDate.getTime() + temporarilyAvailableGracePeriodInMs;
+        if (executionResult.getFinishedAt().getTime() < timestampForCritical) {
+            return executionResult; // grace period not exceeded
+        }
 
+        ResultLog resultLog = new ResultLog();
+        for (ResultLog.Entry entry : executionResult.getHealthCheckResult()) {
+            resultLog.add(entry);
         }
+
+        resultLog.add(new Entry(Result.Status.CRITICAL, "Grace period for being temporarily unavailable exceeded "
+                + "by " + msHumanReadable(executionResult.getFinishedAt().getTime() - timestampForCritical)
+                + " (configured grace period: " + msHumanReadable(temporarilyAvailableGracePeriodInMs) + ")"));
+        return new ExecutionResult(executionResult.getHealthCheckMetadata(), new Result(resultLog),
+                executionResult.getFinishedAt(), executionResult.getElapsedTimeInMs(), false);
     }
     
 
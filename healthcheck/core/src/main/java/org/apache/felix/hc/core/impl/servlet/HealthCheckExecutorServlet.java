@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.function.Consumer;
 
 import jakarta.servlet.Servlet;
 import jakarta.servlet.ServletException;
@@ -46,6 +47,7 @@ import org.apache.felix.hc.api.execution.HealthCheckExecutionResult;
 import org.apache.felix.hc.api.execution.HealthCheckExecutor;
 import org.apache.felix.hc.api.execution.HealthCheckSelector;
 import org.apache.felix.hc.core.impl.executor.CombinedExecutionResult;
+import org.apache.felix.hc.core.impl.executor.ExtendedHealthCheckExecutor;
 import org.apache.felix.hc.core.impl.util.lang.StringUtils;
 import org.osgi.dto.DTO;
 import org.osgi.framework.BundleContext;
@@ -64,7 +66,7 @@ import org.slf4j.LoggerFactory;
  * Parameters:
  * <ul>
  * <li>tags: The health check tags to take into account
- * <li>format: html|json|jsonp|txt|verbose.txt
+ * <li>format: html|json|jsonp|jsonl|txt|verbose.txt
  * <li>includeDebug: If true, debug messages from result log are included.
  * <li>callback: For jsonp, the JS callback function name (defaults to "processHealthCheckResults")
  * <li>httpStatus: health check status to http status mapping in format httpStatus=WARN:418,CRITICAL:503,HEALTH_CHECK_ERROR:500.
@@ -73,6 +75,11 @@ import org.slf4j.LoggerFactory;
  * For omitted health check status values the next best code will be used (e.g. for httpStatus=CRITICAL:503 a result WARN will return 200,
  * CRITICAL 503 and HEALTH_CHECK_ERROR also 503). By default all requests answer with an http status of 200.
  * <p>
+ * The format jsonl streams one json object per line for each health check as soon as it is finished, terminated by a line
+ * containing the overall result. As the response is committed with the first result, the http status mapping is not applied
+ * for this format (the status is always 200) and no X-Health header is sent: the overall status is only contained in the last
+ * line. Therefore jsonl is not part of the default allowed formats and has to be enabled explicitly.
+ * <p>
  * Useful in combination with load balancers. */
 @Component(configurationPolicy = ConfigurationPolicy.REQUIRE)
 @Designate(ocd = HealthCheckExecutorServletConfiguration.class, factory=true)
@@ -126,6 +133,7 @@ public class HealthCheckExecutorServlet extends HttpServlet {
     static final String FORMAT_HTML = "html";
     static final String FORMAT_JSON = "json";
     static final String FORMAT_JSONP = "jsonp";
+    static final String FORMAT_JSONL = "jsonl";
     static final String FORMAT_TXT = "txt";
     static final String FORMAT_VERBOSE_TXT = "verbose.txt";
 
@@ -133,6 +141,7 @@ public class HealthCheckExecutorServlet extends HttpServlet {
     private static final String CONTENT_TYPE_TXT = "text/plain";
     private static final String CONTENT_TYPE_JSON = "application/json";
     private static final String CONTENT_TYPE_JSONP = "application/javascript";
+    private static final String CONTENT_TYPE_JSONL = "application/jsonl";
     private static final String STATUS_HEADER_NAME = "X-Health";
 
     private static final String CACHE_CONTROL_KEY = "Cache-control";
@@ -217,6 +226,9 @@ public class HealthCheckExecutorServlet extends HttpServlet {
         if ( isFormatAllowed(FORMAT_JSONP) ) {
             servletsToRegister.put(this.servletPath.concat(".").concat(FORMAT_JSONP), new ProxyServlet(FORMAT_JSONP));
         }
+        if ( isFormatAllowed(FORMAT_JSONL) ) {
+            servletsToRegister.put(this.servletPath.concat(".").concat(FORMAT_JSONL), new ProxyServlet(FORMAT_JSONL));
+        }
         if ( isFormatAllowed(FORMAT_TXT) ) {
             servletsToRegister.put(this.servletPath.concat(".").concat(FORMAT_TXT), new ProxyServlet(FORMAT_TXT));
         }
@@ -328,6 +340,13 @@ public class HealthCheckExecutorServlet extends HttpServlet {
             executionOptions.setOverrideGlobalTimeout((int) servletDefaultTimeout);
         }
 
+        final boolean formatAllowed = this.isFormatAllowed(format);
+
+        if (formatAllowed && FORMAT_JSONL.equals(format)) {
+            sendStreamingJsonResponse(selector, executionOptions, response, includeDebug);
+            return;
+        }
+
         List<HealthCheckExecutionResult> executionResults = this.healthCheckExecutor.execute(selector, executionOptions);
 
         CombinedExecutionResult combinedExecutionResult = new CombinedExecutionResult(executionResults);
@@ -341,8 +360,6 @@ public class HealthCheckExecutorServlet extends HttpServlet {
 
         response.setHeader(STATUS_HEADER_NAME, overallResult.getStatus().toString());
         
-        final boolean formatAllowed = this.isFormatAllowed(format);
-
         if (formatAllowed && FORMAT_HTML.equals(format)) {
             sendHtmlResponse(overallResult, executionResults, request, response, includeDebug);
         } else if (formatAllowed && FORMAT_JSON.equals(format)) {
@@ -377,7 +394,7 @@ public class HealthCheckExecutorServlet extends HttpServlet {
 
     String[] splitFormat(final String pathInfo) {
         if ( pathInfo != null ) {
-            for (String format : new String[] { FORMAT_HTML, FORMAT_JSON, FORMAT_JSONP, FORMAT_VERBOSE_TXT, FORMAT_TXT }) {
+            for (String format : new String[] { FORMAT_HTML, FORMAT_JSON, FORMAT_JSONP, FORMAT_JSONL, FORMAT_VERBOSE_TXT, FORMAT_TXT }) {
                 final String formatWithDot = ".".concat(format);
                 if (pathInfo.endsWith(formatWithDot)) {
                     return new String[] { pathInfo.substring(0, pathInfo.length() - formatWithDot.length()), format };
@@ -414,6 +431,31 @@ public class HealthCheckExecutorServlet extends HttpServlet {
         writer.append(resultJson);
     }
 
+    private void sendStreamingJsonResponse(final HealthCheckSelector selector, final HealthCheckExecutionOptions executionOptions,
+            final HttpServletResponse response, final boolean includeDebug) throws IOException {
+        sendNoCacheHeaders(response);
+        sendCorsHeaders(response);
+        response.setContentType(CONTENT_TYPE_JSONL);
+        response.setCharacterEncoding("UTF-8");
+
+        final PrintWriter writer = response.getWriter();
+        final Consumer<HealthCheckExecutionResult> resultWriter = result -> {
+            writer.write(this.jsonSerializer.serializeResult(result, includeDebug) + "\n");
+            writer.flush();
+        };
+
+        List<HealthCheckExecutionResult> executionResults;
+        if (this.healthCheckExecutor instanceof ExtendedHealthCheckExecutor) {
+            executionResults = ((ExtendedHealthCheckExecutor) this.healthCheckExecutor).execute(selector, executionOptions, resultWriter);
+        } else {
+            executionResults = this.healthCheckExecutor.execute(selector, executionOptions);
+            executionResults.forEach(resultWriter);
+        }
+
+        Result overallResult = new CombinedExecutionResult(executionResults).getHealthCheckResult();
+        writer.write(this.jsonSerializer.serializeOverallResult(overallResult) + "\n");
+    }
+
     private void sendHtmlResponse(final Result overallResult, final List<HealthCheckExecutionResult> executionResults,
             final HttpServletRequest request, final HttpServletResponse response, boolean includeDebug)
             throws IOException {
@@ -49,16 +49,19 @@ import org.osgi.service.metatype.annotations.Option;
             @Option(label = "HTML", value = HealthCheckExecutorServlet.FORMAT_HTML),
             @Option(label = "JSON", value = HealthCheckExecutorServlet.FORMAT_JSON),
             @Option(label = "JSONP", value = HealthCheckExecutorServlet.FORMAT_JSONP),
+            @Option(label = "JSON LINES (streaming)", value = HealthCheckExecutorServlet.FORMAT_JSONL),
             @Option(label = "TXT", value = HealthCheckExecutorServlet.FORMAT_TXT),
             @Option(label = "VERBOSE TXT", value = HealthCheckExecutorServlet.FORMAT_VERBOSE_TXT)
         })
     String format() default HealthCheckExecutorServlet.FORMAT_HTML;
 
-    @AttributeDefinition(name = "Allowed Formats", description = "Allow list for formats passed in via the URL",
+    @AttributeDefinition(name = "Allowed Formats", description = "Allow list for formats passed in via the URL. JSON LINES (jsonl) has to be added explicitly: "
+        + "it neither applies the http status mapping nor sends the X-Health header, the overall status is only contained in the last line",
         options = {
             @Option(label = "HTML", value = HealthCheckExecutorServlet.FORMAT_HTML),
             @Option(label = "JSON", value = HealthCheckExecutorServlet.FORMAT_JSON),
             @Option(label = "JSONP", value = HealthCheckExecutorServlet.FORMAT_JSONP),
+            @Option(label = "JSON LINES (streaming)", value = HealthCheckExecutorServlet.FORMAT_JSONL),
             @Option(label = "TXT", value = HealthCheckExecutorServlet.FORMAT_TXT),
             @Option(label = "VERBOSE TXT", value = HealthCheckExecutorServlet.FORMAT_VERBOSE_TXT)
         })
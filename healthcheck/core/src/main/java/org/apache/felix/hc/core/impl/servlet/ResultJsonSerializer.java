@@ -72,6 +72,32 @@ public class ResultJsonSerializer {
 
     }
 
+    /** Serializes a single result into one line of json, used when streaming results. */
+    public String serializeResult(final HealthCheckExecutionResult executionResult, boolean includeDebug) {
+        StringWriter writer = new StringWriter();
+        try {
+            writeResult(executionResult, includeDebug, new JSONWriter(writer));
+        } catch(IOException e) {
+            LOG.error("Could not serialise health check result: e="+e, e);
+            writer.write("{error:'"+e.getMessage()+"'}");
+        }
+        return writer.toString();
+    }
+
+    /** Serializes the overall result into one line of json, used to terminate a stream of results. */
+    public String serializeOverallResult(final Result overallResult) {
+        StringWriter writer = new StringWriter();
+        try {
+            new JSONWriter(writer).object()
+                .key("overallResult").value(overallResult.getStatus().toString())
+                .endObject();
+        } catch(IOException e) {
+            LOG.error("Could not serialise overall health check result: e="+e, e);
+            writer.write("{error:'"+e.getMessage()+"'}");
+        }
+        return writer.toString();
+    }
+
     private void writeResult(final HealthCheckExecutionResult healthCheckResult, boolean includeDebug, JSONWriter jsonWriter) throws IOException {
 
         jsonWriter.object()
@@ -17,13 +17,17 @@
  */
 package org.apache.felix.hc.core.impl.executor;
 
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
@@ -31,7 +35,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.felix.hc.api.HealthCheck;
 import org.apache.felix.hc.api.Result;
 import org.apache.felix.hc.api.Result.Status;
 import org.apache.felix.hc.api.ResultLog.Entry;
@@ -42,6 +51,8 @@ import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
 
 public class HealthCheckExecutorImplTest {
 
@@ -57,6 +68,9 @@ public class HealthCheckExecutorImplTest {
     @Spy
     private HealthCheckResultCache healthCheckResultCache = new HealthCheckResultCache();
 
+    @Spy
+    private TempUnavailableGracePeriodEvaluator tempUnavailableGracePeriodEvaluator = new TempUnavailableGracePeriodEvaluator(60000L);
+
     @Before
     public void setup() {
         initMocks(this);
@@ -164,6 +178,83 @@ public class HealthCheckExecutorImplTest {
         assertEquals(3, getLogEntryCount(result));
     }
 
+    @Test
+    public void testCollectResultsRespectingTimeoutAsFuturesFinish() throws Exception {
+
+        healthCheckExecutorImpl.setTimeoutInMs(500L);
+
+        final CountDownLatch slowCheckReleased = new CountDownLatch(1);
+        final HealthCheckFuture fastFuture1 = createFuture("Fast Check 1", () -> new Result(Status.OK, "fast 1"));
+        final HealthCheckFuture slowFuture = createFuture("Slow Check", () -> {
+            try {
+                slowCheckReleased.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Result(Status.OK, "slow");
+        });
+        final HealthCheckFuture fastFuture2 = createFuture("Fast Check 2", () -> new Result(Status.OK, "fast 2"));
+
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            executor.execute(fastFuture1);
+            executor.execute(slowFuture);
+            executor.execute(fastFuture2);
+
+            // the fast checks are collected as they finish, the slow one once the timeout is reached
+            final List<HealthCheckExecutionResult> results = new ArrayList<HealthCheckExecutionResult>();
+            final List<String> notified = new ArrayList<String>();
+            healthCheckExecutorImpl.collectResultsRespectingTimeout(new LinkedList<HealthCheckFuture>(asList(fastFuture1, slowFuture, fastFuture2)),
+                    results, null, r -> notified.add(r.getHealthCheckMetadata().getTitle()));
+
+            assertEquals(3, results.size());
+            assertEquals(asList("Fast Check 1", "Fast Check 2"), new ArrayList<String>(new TreeSet<String>(notified.subList(0, 2))));
+            assertEquals("Slow Check", notified.get(2));
+            assertEquals(Status.OK, results.get(0).getHealthCheckResult().getStatus());
+            assertEquals(Status.OK, results.get(1).getHealthCheckResult().getStatus());
+            assertEquals(Status.WARN, results.get(2).getHealthCheckResult().getStatus());
+            assertEquals(0, slowFuture.getWaitingRequestCount());
+
+            // a second request reuses the still running future and gets its result as soon as it finishes
+            healthCheckExecutorImpl.setTimeoutInMs(5000L);
+            executor.execute(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                slowCheckReleased.countDown();
+            });
+            final List<HealthCheckExecutionResult> resultsOfReuse = new ArrayList<HealthCheckExecutionResult>();
+            healthCheckExecutorImpl.collectResultsRespectingTimeout(new LinkedList<HealthCheckFuture>(asList(slowFuture)),
+                    resultsOfReuse, null, null);
+
+            assertEquals(1, resultsOfReuse.size());
+            assertEquals(Status.OK, resultsOfReuse.get(0).getHealthCheckResult().getStatus());
+            assertEquals(0, slowFuture.getWaitingRequestCount());
+
+            // requests for an already finished future do not wait at all
+            final List<HealthCheckExecutionResult> resultsOfFinished = new ArrayList<HealthCheckExecutionResult>();
+            healthCheckExecutorImpl.collectResultsRespectingTimeout(new LinkedList<HealthCheckFuture>(asList(slowFuture)),
+                    resultsOfFinished, null, null);
+            assertEquals(1, resultsOfFinished.size());
+            assertEquals(0, slowFuture.getWaitingRequestCount());
+        } finally {
+            slowCheckReleased.countDown();
+            executor.shutdown();
+        }
+    }
+
+    private HealthCheckFuture createFuture(String title, HealthCheck healthCheck) {
+        final HealthCheckMetadata metadata = mock(HealthCheckMetadata.class);
+        final ServiceReference<?> serviceReference = mock(ServiceReference.class);
+        when(metadata.getTitle()).thenReturn(title);
+        doReturn(serviceReference).when(metadata).getServiceReference();
+        final BundleContext bundleContext = mock(BundleContext.class);
+        doReturn(healthCheck).when(bundleContext).getService(serviceReference);
+        return new HealthCheckFuture(metadata, bundleContext, result -> {});
+    }
+
     private int getLogEntryCount(HealthCheckExecutionResult result) {
         int logEntryCount = 0;
         final Iterator<Entry> it = result.getHealthCheckResult().iterator();
@@ -54,7 +54,7 @@ public class TempUnavailableGracePeriodEvaluatorTest {
         
         List<HealthCheckExecutionResult> results = asList(result, createResult(2, Result.Status.OK), createResult(3, Result.Status.WARN));
         
-        tempUnavailableGracePeriodEvaluator.evaluateGracePeriodForTemporarilyUnavailableResults(results);
+        evaluateGracePeriod(results);
         
         assertEquals(Result.Status.TEMPORARILY_UNAVAILABLE, results.get(0).getHealthCheckResult().getStatus());
         assertEquals(Result.Status.OK, results.get(1).getHealthCheckResult().getStatus());
@@ -76,7 +76,7 @@ public class TempUnavailableGracePeriodEvaluatorTest {
         
         List<HealthCheckExecutionResult> results = asList(result, createResult(2, Result.Status.OK), createResult(3, Result.Status.WARN));
         
-        tempUnavailableGracePeriodEvaluator.evaluateGracePeriodForTemporarilyUnavailableResults(results);
+        evaluateGracePeriod(results);
         
         // overall result has to be CRITICAL now
         assertEquals(Result.Status.CRITICAL, results.get(0).getHealthCheckResult().getStatus());
@@ -90,13 +90,19 @@ public class TempUnavailableGracePeriodEvaluatorTest {
         result = createResult(1, Result.Status.TEMPORARILY_UNAVAILABLE);
         results.set(0, result);
         
-        tempUnavailableGracePeriodEvaluator.evaluateGracePeriodForTemporarilyUnavailableResults(results);
+        evaluateGracePeriod(results);
         // overall result has to be back to TEMPORARILY_UNAVAILABLE now
         assertEquals(Result.Status.TEMPORARILY_UNAVAILABLE, results.get(0).getHealthCheckResult().getStatus());
         assertEquals(Result.Status.OK, results.get(1).getHealthCheckResult().getStatus());
         assertEquals(Result.Status.WARN, results.get(2).getHealthCheckResult().getStatus());
     }
 
+    private void evaluateGracePeriod(List<HealthCheckExecutionResult> results) {
+        for (int i = 0; i < results.size(); i++) {
+            results.set(i, tempUnavailableGracePeriodEvaluator.evaluateGracePeriodForTemporarilyUnavailableResult(results.get(i)));
+        }
+    }
+
     private HealthCheckExecutionResult createResult(long serviceId, Result.Status status) {
         doReturn(serviceId).when(hcServiceRef).getProperty(Constants.SERVICE_ID);
         HealthCheckExecutionResult result = new ExecutionResult(new HealthCheckMetadata(hcServiceRef), new Result(status, "Result of status "+status), 1);
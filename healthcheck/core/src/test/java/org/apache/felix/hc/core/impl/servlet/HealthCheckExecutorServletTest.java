@@ -18,6 +18,8 @@
 package org.apache.felix.hc.core.impl.servlet;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
@@ -107,6 +109,7 @@ public class HealthCheckExecutorServletTest {
         doReturn(new String[] {HealthCheckExecutorServlet.FORMAT_HTML,
             HealthCheckExecutorServlet.FORMAT_JSON,
             HealthCheckExecutorServlet.FORMAT_JSONP,
+            HealthCheckExecutorServlet.FORMAT_JSONL,
             HealthCheckExecutorServlet.FORMAT_TXT,
             HealthCheckExecutorServlet.FORMAT_VERBOSE_TXT}).when(healthCheckExecutorServletConfig).allowed_formats();
         doReturn("/hc").when(healthCheckExecutorServletConfig).servletPath();
@@ -228,6 +231,37 @@ public class HealthCheckExecutorServletTest {
 
     }
 
+    @Test
+    public void testDoGetJsonl() throws ServletException, IOException {
+
+        final String testTag = "testTag";
+        doReturn("/" + testTag + ".jsonl").when(request).getPathInfo();
+        final List<HealthCheckExecutionResult> executionResults = getExecutionResults(Result.Status.CRITICAL);
+        doReturn(executionResults).when(healthCheckExecutor).execute(selector(new String[] { testTag }, new String[0]),
+                any(HealthCheckExecutionOptions.class));
+
+        healthCheckExecutorServlet.doGet(request, response);
+
+        verifyNoInteractions(htmlSerializer);
+        verifyNoInteractions(txtSerializer);
+        verifyNoInteractions(verboseTxtSerializer);
+        verify(jsonSerializer).serializeResult(executionResults.get(0), false);
+        verify(jsonSerializer).serializeResult(executionResults.get(1), false);
+        verify(jsonSerializer).serializeOverallResult(resultEquals(new Result(Result.Status.CRITICAL, "Overall Status CRITICAL")));
+        verify(jsonSerializer, never()).serialize(any(), any(), any(), eq(false));
+        // streamed responses are committed before the overall result is known
+        verify(response, never()).setStatus(503);
+        verify(response, never()).setHeader(eq("X-Health"), any());
+    }
+
+    @Test
+    public void testJsonlNotAllowedByDefault() throws Exception {
+        final String[] defaultFormats = (String[]) HealthCheckExecutorServletConfiguration.class
+                .getMethod("allowed_formats").getDefaultValue();
+        assertFalse(Arrays.asList(defaultFormats).contains(HealthCheckExecutorServlet.FORMAT_JSONL));
+        assertTrue(Arrays.asList(defaultFormats).contains(HealthCheckExecutorServlet.FORMAT_JSON));
+    }
+
     private List<HealthCheckExecutionResult> getExecutionResults(Result.Status worstStatus) {
         List<HealthCheckExecutionResult> results = new ArrayList<HealthCheckExecutionResult>();
         results.add(new ExecutionResult(new HealthCheckMetadata(hcServiceRef), new Result(worstStatus, worstStatus.name()), 100));
@@ -21,11 +21,13 @@ package org.apache.felix.http.base.internal.handler;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.http.HttpSession;
@@ -45,17 +47,20 @@ public class HttpSessionWrapper implements HttpSession
     /** All special attributes are prefixed with this prefix. */
     private static final String PREFIX = "org.apache.felix.http.session.context.";
 
-    /** For each internal session, the attributes are prefixed with this followed by the context id */
-    private static final String ATTR_PREFIX = PREFIX + "attr.";
+    /** The state of all internal sessions is kept in a single attribute with this name. */
+    private static final String ATTR_CONTEXTS = PREFIX + "contexts";
 
-    /** The created time for the internal session (appended with context id) */
-    private static final String ATTR_CREATED = PREFIX + "created.";
+    /** Previous versions prefixed the attributes of an internal session with this followed by the context id */
+    private static final String LEGACY_ATTR_PREFIX = PREFIX + "attr.";
 
-    /** The last accessed time for the internal session (appended with context id), as Epoch time (milliseconds). */
-    private static final String ATTR_LAST_ACCESSED = PREFIX + "lastaccessed.";
+    /** Previous versions kept the created time in this attribute (appended with context id) */
+    private static final String LEGACY_ATTR_CREATED = PREFIX + "created.";
 
-    /** The max inactive time (appended with context id), in seconds. */
-    private static final String ATTR_MAX_INACTIVE = PREFIX + "maxinactive.";
+    /** Previous versions kept the last accessed time in this attribute (appended with context id) */
+    private static final String LEGACY_ATTR_LAST_ACCESSED = PREFIX + "lastaccessed.";
+
+    /** Previous versions kept the max inactive time in this attribute (appended with context id) */
+    private static final String LEGACY_ATTR_MAX_INACTIVE = PREFIX + "maxinactive.";
 
     /** The underlying container session. */
     private final HttpSession delegate;
@@ -66,21 +71,18 @@ public class HttpSessionWrapper implements HttpSession
     /** The id for this session. */
     private final String sessionId;
 
-    /** The key prefix for attributes belonging to this session. */
-    private final String keyPrefix;
+    /** The internal sessions of the container session. */
+    private final ConcurrentHashMap<String, ContextSession> contexts;
+
+    /** The state of this internal session. */
+    private final ContextSession state;
 
     /** Flag to handle the validity of this session. */
     private volatile boolean isInvalid = false;
 
-    /** The time this has been created. */
-    private final long created;
-
     /** The time this has been last accessed. */
     private final long lastAccessed;
 
-    /** The max timeout interval. */
-    private int maxTimeout;
-
     /**
      * Is this a new session?
      */
@@ -91,33 +93,161 @@ public class HttpSessionWrapper implements HttpSession
      */
     private final HttpConfig config;
 
+    /**
+     * The state of an internal session, kept per context name within the
+     * container session.
+     */
+    static final class ContextSession implements Serializable
+    {
+        private static final long serialVersionUID = -2291577346543618154L;
+
+        /** The created time. */
+        final long created;
+
+        /** The last accessed time, as Epoch time (milliseconds). */
+        volatile long lastAccessed;
+
+        /** The max inactive time, in seconds. */
+        volatile int maxInactive;
+
+        /** The attributes of the internal session. */
+        final ConcurrentHashMap<String, Object> attributes = new ConcurrentHashMap<>();
+
+        ContextSession(final long created, final int maxInactive)
+        {
+            this.created = created;
+            this.lastAccessed = created;
+            this.maxInactive = maxInactive;
+        }
+
+        boolean isExpired(final long now)
+        {
+            final long maxTimeout = 1000L * this.maxInactive;
+            return (maxTimeout > 0) && (this.lastAccessed + maxTimeout) < now;
+        }
+    }
 
+    /**
+     * Get the internal sessions of the container session. The map is created
+     * once per container session, when it is first used, and kept even if it
+     * becomes empty.
+     */
+    @SuppressWarnings("unchecked")
+    static ConcurrentHashMap<String, ContextSession> getContexts(final HttpSession session)
+    {
+        final Object contexts = session.getAttribute(ATTR_CONTEXTS);
+        if ( contexts instanceof ConcurrentHashMap )
+        {
+            return (ConcurrentHashMap<String, ContextSession>) contexts;
+        }
+        return migrateContexts(session);
+    }
+
+    /**
+     * Create the map of internal sessions of the container session. Concurrent
+     * requests of the same session synchronize on the container session, so all
+     * of them end up using the same map. The internal sessions a previous version
+     * kept in separate prefixed attributes are moved into the map and those
+     * attributes are removed.
+     * @param session The container session
+     * @return The internal sessions
+     */
+    @SuppressWarnings("unchecked")
+    private static ConcurrentHashMap<String, ContextSession> migrateContexts(final HttpSession session)
+    {
+        synchronized ( session )
+        {
+            final Object current = session.getAttribute(ATTR_CONTEXTS);
+            if ( current instanceof ConcurrentHashMap )
+            {
+                return (ConcurrentHashMap<String, ContextSession>) current;
+            }
+
+            final List<String> legacyNames = new ArrayList<>();
+            final List<String> ids = new ArrayList<>();
+            final Enumeration<String> names = session.getAttributeNames();
+            while ( names.hasMoreElements() )
+            {
+                final String name = names.nextElement();
+                if ( name.startsWith(PREFIX) && !name.equals(ATTR_CONTEXTS) )
+                {
+                    legacyNames.add(name);
+                    if ( name.startsWith(LEGACY_ATTR_CREATED) )
+                    {
+                        ids.add(name.substring(LEGACY_ATTR_CREATED.length()));
+                    }
+                }
+            }
+            final ConcurrentHashMap<String, ContextSession> contexts = new ConcurrentHashMap<>();
+            for (final String id : ids)
+            {
+                final Object created = session.getAttribute(LEGACY_ATTR_CREATED.concat(id));
+                final Object maxInactive = session.getAttribute(LEGACY_ATTR_MAX_INACTIVE.concat(id));
+                final Object lastAccessed = session.getAttribute(LEGACY_ATTR_LAST_ACCESSED.concat(id));
+                if ( created instanceof Long )
+                {
+                    final ContextSession state = new ContextSession((Long) created,
+                            maxInactive instanceof Integer ? (Integer) maxInactive : session.getMaxInactiveInterval());
+                    if ( lastAccessed instanceof Long )
+                    {
+                        state.lastAccessed = (Long) lastAccessed;
+                    }
+                    contexts.put(id, state);
+                }
+            }
+
+            // context ids may contain dots, so the longest matching id wins
+            ids.sort((a, b) -> b.length() - a.length());
+            for (final String name : legacyNames)
+            {
+                if ( name.startsWith(LEGACY_ATTR_PREFIX) )
+                {
+                    for (final String id : ids)
+                    {
+                        final String keyPrefix = LEGACY_ATTR_PREFIX.concat(id).concat(".");
+                        final ContextSession state = contexts.get(id);
+                        if ( state != null && name.startsWith(keyPrefix) )
+                        {
+                            Object value = session.getAttribute(name);
+                            if ( value instanceof SessionBindingValueListenerWrapper )
+                            {
+                                value = ((SessionBindingValueListenerWrapper) value).getHttpSessionBindingListener();
+                            }
+                            if ( value != null )
+                            {
+                                state.attributes.put(name.substring(keyPrefix.length()), value);
+                            }
+                            break;
+                        }
+                    }
+                }
+            }
+
+            session.setAttribute(ATTR_CONTEXTS, contexts);
+            for (final String name : legacyNames)
+            {
+                session.removeAttribute(name);
+            }
+            return contexts;
+        }
+    }
 
     public static boolean hasSession(final String contextName, final HttpSession session)
     {
-        return session.getAttribute(ATTR_CREATED.concat(contextName)) != null;
+        return getContexts(session).containsKey(contextName);
     }
 
     public static Set<String> getExpiredSessionContextNames(final HttpSession session)
     {
+        final Map<String, ContextSession> contexts = getContexts(session);
         final long now = System.currentTimeMillis();
 
         final Set<String> names = new HashSet<>();
-        final Enumeration<String> attrNames = session.getAttributeNames();
-        while (attrNames.hasMoreElements())
+        for (final Map.Entry<String, ContextSession> entry : contexts.entrySet())
         {
-            final String name = attrNames.nextElement();
-            if (name.startsWith(ATTR_LAST_ACCESSED))
+            if ( entry.getValue().isExpired(now) )
             {
-                final String id = name.substring(ATTR_LAST_ACCESSED.length());
-
-                final long lastAccess = (Long) session.getAttribute(name);
-                final long maxTimeout = 1000L * ((Integer) session.getAttribute(ATTR_MAX_INACTIVE + id));
-
-                if ((maxTimeout > 0) && (lastAccess + maxTimeout) < now)
-                {
-                    names.add(id);
-                }
+                names.add(entry.getKey());
             }
         }
         return names;
@@ -130,19 +260,7 @@ public class HttpSessionWrapper implements HttpSession
      */
     public static Set<String> getSessionContextNames(final HttpSession session)
     {
-        final Set<String> names = new HashSet<>();
-        final Enumeration<String> attrNames = session.getAttributeNames();
-        while (attrNames.hasMoreElements())
-        {
-            final String name = attrNames.nextElement();
-            if (name.startsWith(ATTR_LAST_ACCESSED))
-            {
-                final String id = name.substring(ATTR_LAST_ACCESSED.length());
-                names.add(id);
-            }
-        }
-
-        return names;
+        return new HashSet<>(getContexts(session).keySet());
     }
 
     /**
@@ -161,42 +279,41 @@ public class HttpSessionWrapper implements HttpSession
         this.delegate = session;
         this.context = context;
         this.sessionId = context.getServletContextName();
-        this.keyPrefix = ATTR_PREFIX.concat(this.sessionId).concat(".");
 
-        final String createdAttrName = ATTR_CREATED.concat(this.sessionId);
+        this.contexts = getContexts(session);
 
         final long now = System.currentTimeMillis();
-        if ( session.getAttribute(createdAttrName) == null )
+        final ContextSession created = new ContextSession(now, session.getMaxInactiveInterval());
+        final ContextSession existing = this.contexts.putIfAbsent(this.sessionId, created);
+        if ( existing == null )
         {
-            this.created = now;
-            this.maxTimeout = session.getMaxInactiveInterval();
+            this.state = created;
             this.isNew = true;
-
-            session.setAttribute(createdAttrName, this.created);
-            session.setAttribute(ATTR_MAX_INACTIVE.concat(this.sessionId), this.maxTimeout);
+            this.update();
 
             context.getHttpSessionListener().sessionCreated(new HttpSessionEvent(this));
         }
         else
         {
-            this.created = (Long)session.getAttribute(createdAttrName);
-            this.maxTimeout = (Integer)session.getAttribute(ATTR_MAX_INACTIVE.concat(this.sessionId));
+            this.state = existing;
             this.isNew = false;
         }
 
         this.lastAccessed = now;
         if ( !terminate )
         {
-            session.setAttribute(ATTR_LAST_ACCESSED.concat(this.sessionId), this.lastAccessed);
+            this.state.lastAccessed = now;
+            this.update();
         }
     }
 
     /**
-     * Helper method to get the real key within the real session.
+     * Set the state attribute again, so that the container notices the
+     * change, for example to replicate or persist the session.
      */
-    private String getKey(final String name)
+    private void update()
     {
-        return this.keyPrefix.concat(name);
+        this.delegate.setAttribute(ATTR_CONTEXTS, this.contexts);
     }
 
     /**
@@ -215,60 +332,21 @@ public class HttpSessionWrapper implements HttpSession
     public Object getAttribute(final String name)
     {
         this.checkInvalid();
-        Object result = this.delegate.getAttribute(this.getKey(name));
-        if ( result instanceof SessionBindingValueListenerWrapper )
-        {
-            result = ((SessionBindingValueListenerWrapper)result).getHttpSessionBindingListener();
-        }
-        return result;
+        return this.state.attributes.get(name);
     }
 
     @Override
     public Enumeration<String> getAttributeNames()
     {
         this.checkInvalid();
-        final Enumeration<String> e = this.delegate.getAttributeNames();
-        return new Enumeration<String>() {
-
-            String next = peek();
-
-            private String peek()
-            {
-                while ( e.hasMoreElements() )
-                {
-                    final String name = e.nextElement();
-                    if ( name.startsWith(keyPrefix))
-                    {
-                        return name.substring(keyPrefix.length());
-                    }
-                }
-                return null;
-            }
-
-            @Override
-            public boolean hasMoreElements() {
-                return next != null;
-            }
-
-            @Override
-            public String nextElement() {
-                if ( next == null )
-                {
-                    throw new NoSuchElementException();
-                }
-                final String result = next;
-                next = this.peek();
-                return result;
-            }
-        };
-
+        return Collections.enumeration(new ArrayList<>(this.state.attributes.keySet()));
     }
 
     @Override
     public long getCreationTime()
     {
         this.checkInvalid();
-        return this.created;
+        return this.state.created;
     }
 
     @Override
@@ -293,7 +371,7 @@ public class HttpSessionWrapper implements HttpSession
     public int getMaxInactiveInterval()
     {
         // no validity check conforming to the javadocs
-        return this.maxTimeout;
+        return this.state.maxInactive;
     }
 
     @Override
@@ -329,25 +407,25 @@ public class HttpSessionWrapper implements HttpSession
         // session listener must be called before the session is invalidated
         context.getHttpSessionListener().sessionDestroyed(new HttpSessionEvent(this));
 
-        this.delegate.removeAttribute(ATTR_CREATED + this.sessionId);
-        this.delegate.removeAttribute(ATTR_LAST_ACCESSED + this.sessionId);
-        this.delegate.removeAttribute(ATTR_MAX_INACTIVE + this.sessionId);
-
         // remove all attributes belonging to this session
-        final Enumeration<String> names = this.delegate.getAttributeNames();
-        while ( names.hasMoreElements() )
+        for (final String name : new ArrayList<>(this.state.attributes.keySet()))
         {
-            final String name = names.nextElement();
-
-            if ( name.startsWith(this.keyPrefix) ) {
-                this.removeAttribute(name.substring(this.keyPrefix.length()));
-            }
+            this.removeAttribute(name);
         }
 
+        // the map is kept even if empty, so the container session is not migrated again
+        this.contexts.remove(this.sessionId);
+        this.update();
+
         if ( this.config.isInvalidateContainerSession() )
         {
             // if the session is empty we can invalidate
-            final Enumeration<String> remainingNames = this.delegate.getAttributeNames();
+            final List<String> names = Collections.list(this.delegate.getAttributeNames());
+            if ( this.contexts.isEmpty() )
+            {
+                names.remove(ATTR_CONTEXTS);
+            }
+            final Enumeration<String> remainingNames = Collections.enumeration(names);
             if ( (!remainingNames.hasMoreElements()) || (isRemainingAttributeAddedByContainer(remainingNames)))
             {
                 this.delegate.invalidate();
@@ -390,10 +468,10 @@ public class HttpSessionWrapper implements HttpSession
     public void removeAttribute(final String name)
     {
         this.checkInvalid();
-        final Object oldValue = this.getAttribute(name);
+        final Object oldValue = this.state.attributes.remove(name);
         if ( oldValue != null )
         {
-            this.delegate.removeAttribute(this.getKey(name));
+            this.update();
             if ( oldValue instanceof HttpSessionBindingListener )
             {
                 ((HttpSessionBindingListener)oldValue).valueUnbound(new HttpSessionBindingEvent(this, name));
@@ -421,17 +499,10 @@ public class HttpSessionWrapper implements HttpSession
             return;
         }
 
-        final Object oldValue = this.getAttribute(name);
-        // wrap http session binding listener to avoid container calling it!
-        if ( value instanceof HttpSessionBindingListener )
-        {
-            this.delegate.setAttribute(this.getKey(name),
-                    new SessionBindingValueListenerWrapper((HttpSessionBindingListener)value));
-        }
-        else
-        {
-            this.delegate.setAttribute(this.getKey(name), value);
-        }
+        // the attributes are not visible to the container, so it never calls
+        // a http session binding listener itself
+        final Object oldValue = this.state.attributes.put(name, value);
+        this.update();
         if ( value instanceof HttpSessionBindingListener )
         {
             ((HttpSessionBindingListener)value).valueBound(new HttpSessionBindingEvent(this, name));
@@ -458,14 +529,18 @@ public class HttpSessionWrapper implements HttpSession
         {
             this.delegate.setMaxInactiveInterval(interval);
         }
-        this.maxTimeout = interval;
+        this.state.maxInactive = interval;
         try {
-            this.delegate.setAttribute(ATTR_MAX_INACTIVE + this.sessionId, interval);
+            this.update();
         } catch ( final IllegalStateException iae) {
             // this might throw if delegate is invalid
         }
     }
 
+    /**
+     * Binding listeners were wrapped by previous versions, this is only kept to
+     * read those attributes when migrating a persisted session.
+     */
     private static final class SessionBindingValueListenerWrapper implements Serializable
     {
 
@@ -94,35 +94,45 @@ public final class FilterRegistry
      * Add a filter.
      * @param handler The handler for the filter
      */
-    public synchronized void addFilter(@NotNull final FilterHandler handler)
+    public void addFilter(@NotNull final FilterHandler handler)
     {
-        final int result = handler.init();
-        PathResolver[] prs = null;
+        this.addFilters(Collections.singletonList(handler));
+    }
 
-        if ( result == -1 )
+    /**
+     * Add several filters, sorting the registrations only once.
+     * @param handlers The handlers for the filters
+     */
+    public synchronized void addFilters(@NotNull final List<FilterHandler> handlers)
+    {
+        final List<FilterRegistrationStatus> newList = new ArrayList<FilterRegistry.FilterRegistrationStatus>(this.filters);
+        for(final FilterHandler handler : handlers)
         {
-            final List<PathResolver> resolvers = new ArrayList<PathResolver>();
-            if ( handler.getFilterInfo().getPatterns() != null )
+            final int result = handler.init();
+            PathResolver[] prs = null;
+
+            if ( result == -1 )
             {
-                for(final String pattern : handler.getFilterInfo().getPatterns() ) {
-                    resolvers.add(PathResolverFactory.createPatternMatcher(null, pattern));
+                final List<PathResolver> resolvers = new ArrayList<PathResolver>();
+                if ( handler.getFilterInfo().getPatterns() != null )
+                {
+                    for(final String pattern : handler.getFilterInfo().getPatterns() ) {
+                        resolvers.add(PathResolverFactory.createPatternMatcher(null, pattern));
+                    }
                 }
-            }
-            if ( handler.getFilterInfo().getRegexs() != null )
-            {
-                for(final String regex : handler.getFilterInfo().getRegexs() ) {
-                    resolvers.add(PathResolverFactory.createRegexMatcher(regex));
+                if ( handler.getFilterInfo().getRegexs() != null )
+                {
+                    for(final String regex : handler.getFilterInfo().getRegexs() ) {
+                        resolvers.add(PathResolverFactory.createRegexMatcher(regex));
+                    }
                 }
+                Collections.sort(resolvers);
+
+                prs = resolvers.toArray(new PathResolver[resolvers.size()]);
             }
-            Collections.sort(resolvers);
 
-            prs = resolvers.toArray(new PathResolver[resolvers.size()]);
+            newList.add(new FilterRegistrationStatus(handler, prs, result));
         }
-
-        final FilterRegistrationStatus status = new FilterRegistrationStatus(handler, prs, result);
-
-        final List<FilterRegistrationStatus> newList = new ArrayList<FilterRegistry.FilterRegistrationStatus>(this.filters);
-        newList.add(status);
         Collections.sort(newList);
 
         this.filters = newList;
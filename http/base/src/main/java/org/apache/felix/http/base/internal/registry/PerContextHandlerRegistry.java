@@ -16,6 +16,8 @@
  */
 package org.apache.felix.http.base.internal.registry;
 
+import java.util.List;
+
 import jakarta.servlet.DispatcherType;
 
 import org.apache.felix.http.base.internal.HttpConfig;
@@ -220,6 +222,19 @@ public final class PerContextHandlerRegistry implements Comparable<PerContextHan
         this.errorPageRegistry.addServlet(handler);
     }
 
+    /**
+     * Add several servlets at once
+     * @param handlers The servlet handlers
+     */
+    public void registerServlets(@NotNull final List<ServletHandler> handlers)
+    {
+        this.servletRegistry.addServlets(handlers);
+        for(final ServletHandler handler : handlers)
+        {
+            this.errorPageRegistry.addServlet(handler);
+        }
+    }
+
     /**
      * Remove a servlet
      * @param servletInfo The servlet info
@@ -240,6 +255,15 @@ public final class PerContextHandlerRegistry implements Comparable<PerContextHan
         this.filterRegistry.addFilter(handler);
     }
 
+    /**
+     * Add several filters at once
+     * @param handlers The filter handlers
+     */
+    public void registerFilters(@NotNull final List<FilterHandler> handlers)
+    {
+        this.filterRegistry.addFilters(handlers);
+    }
+
     /**
      * Remove a filter
      * @param info The filter info
@@ -103,16 +103,41 @@ public final class ServletRegistry
      *
      * @param handler The servlet handler
      */
-    public synchronized void addServlet(@NotNull final ServletHandler handler)
+    public void addServlet(@NotNull final ServletHandler handler)
+    {
+        this.addServlets(Collections.singletonList(handler));
+    }
+
+    /**
+     * Add several servlets. The servlets are added in the given order, like
+     * calling {@link #addServlet(ServletHandler)} for each of them, but the
+     * active resolvers and the mapping are only rebuilt once.
+     *
+     * @param handlers The servlet handlers
+     */
+    public synchronized void addServlets(@NotNull final List<ServletHandler> handlers)
+    {
+        final Map<ServletInfo, RegistrationStatus> newMap = new TreeMap<ServletInfo, ServletRegistry.RegistrationStatus>(this.mapping);
+
+        final List<PathResolver> resolvers = new ArrayList<PathResolver>(this.activeResolvers);
+
+        for(final ServletHandler handler : handlers)
+        {
+            this.addServlet(handler, newMap, resolvers);
+        }
+        Collections.sort(resolvers);
+        this.activeResolvers = resolvers;
+        this.mapping = newMap;
+    }
+
+    private void addServlet(final ServletHandler handler,
+            final Map<ServletInfo, RegistrationStatus> newMap,
+            final List<PathResolver> resolvers)
     {
         // we have to check for every pattern in the info
         // Can be null in case of error-handling servlets and named servlets
         if ( handler.getServletInfo().getPatterns() != null )
         {
-            final Map<ServletInfo, RegistrationStatus> newMap = new TreeMap<ServletInfo, ServletRegistry.RegistrationStatus>(this.mapping);
-
-            final List<PathResolver> resolvers = new ArrayList<PathResolver>(this.activeResolvers);
-
             final RegistrationStatus status = new RegistrationStatus();
             status.handler = handler;
 
@@ -171,14 +196,9 @@ public final class ServletRegistry
             {
                 addToNameMapping(handler);
             }
-            Collections.sort(resolvers);
-            this.activeResolvers = resolvers;
-            this.mapping = newMap;
         }
         else if ( !handler.getServletInfo().isResource() && handler.getServletInfo().getName() != null )
         {
-            final Map<ServletInfo, RegistrationStatus> newMap = new TreeMap<ServletInfo, ServletRegistry.RegistrationStatus>(this.mapping);
-
             final RegistrationStatus status = new RegistrationStatus();
             status.handler = handler;
 
@@ -193,7 +213,6 @@ public final class ServletRegistry
             addPattern(status, result, NAMED_SERVLET_PATTERN);
 
             newMap.put(handler.getServletInfo(), status);
-            this.mapping = newMap;
         }
     }
 
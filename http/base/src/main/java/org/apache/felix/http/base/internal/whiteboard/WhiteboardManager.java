@@ -28,6 +28,7 @@ import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -121,6 +122,28 @@ public final class WhiteboardManager
     private volatile ServletContext webContext;
     private volatile Map<String, Object> attributesForSharedContext = new HashMap<>();
 
+    /**
+     * Whiteboard services added while the trackers are opened. They are registered
+     * as one batch once all trackers are open. Modified while holding the context map lock.
+     */
+    private volatile List<WhiteboardServiceInfo<?>> pendingServices;
+
+    /**
+     * Servlets and filters of the pending services, per context. They are added to
+     * the registry of each context at once, so the registries are only rebuilt once
+     * for the whole batch. Only used while holding the context map lock.
+     */
+    private Map<WhiteboardContextHandler, RegistrationBatch> registrationBatches;
+
+    /** The servlets and filters to be added to the registry of a single context */
+    private static final class RegistrationBatch
+    {
+        final List<ServletHandler> servlets = new ArrayList<>();
+        final List<WhiteboardServiceInfo<?>> servletInfos = new ArrayList<>();
+        final List<FilterHandler> filters = new ArrayList<>();
+        final List<WhiteboardServiceInfo<?>> filterInfos = new ArrayList<>();
+    }
+
     /**
      * Create a new whiteboard http manager
      *
@@ -154,6 +177,13 @@ public final class WhiteboardManager
 
         this.webContext = containerContext;
 
+        // services reported while opening the trackers are registered as one batch
+        // once all servlet context helpers are known
+        synchronized ( this.contextMap )
+        {
+            this.pendingServices = new ArrayList<>();
+        }
+
         // add context for http service
         final List<WhiteboardContextHandler> httpContextList = new ArrayList<>();
         final ServletContextHelperInfo httpInfo = new ServletContextHelperInfo(Integer.MAX_VALUE,
@@ -178,6 +208,126 @@ public final class WhiteboardManager
         addTracker(new ResourceTracker(this.httpBundleContext, this));
         addTracker(new JavaxFilterTracker(httpBundleContext, this));
         addTracker(new JavaxServletTracker(httpBundleContext, this));
+
+        this.processPendingServices();
+    }
+
+    /**
+     * Register all whiteboard services collected while the trackers were opened.
+     * The batch is applied while holding the context map lock, the registries of
+     * the contexts are rebuilt and the change count is updated once for the whole
+     * batch.
+     */
+    private void processPendingServices()
+    {
+        synchronized ( this.contextMap )
+        {
+            final List<WhiteboardServiceInfo<?>> infos = this.pendingServices;
+            this.pendingServices = null;
+            if ( infos != null )
+            {
+                this.registrationBatches = new LinkedHashMap<>();
+                try
+                {
+                    for(final WhiteboardServiceInfo<?> info : infos)
+                    {
+                        this.processWhiteboardService(info);
+                    }
+                }
+                finally
+                {
+                    final Map<WhiteboardContextHandler, RegistrationBatch> batches = this.registrationBatches;
+                    this.registrationBatches = null;
+                    this.registerBatches(batches);
+                }
+            }
+        }
+        this.serviceRuntime.updateChangeCount();
+    }
+
+    /**
+     * Add the collected servlets and filters to the registries of their contexts
+     * @param batches The servlets and filters per context
+     */
+    private void registerBatches(final Map<WhiteboardContextHandler, RegistrationBatch> batches)
+    {
+        for(final Map.Entry<WhiteboardContextHandler, RegistrationBatch> entry : batches.entrySet())
+        {
+            final WhiteboardContextHandler handler = entry.getKey();
+            final RegistrationBatch batch = entry.getValue();
+            if ( !batch.filters.isEmpty() )
+            {
+                try
+                {
+                    handler.getRegistry().registerFilters(batch.filters);
+                }
+                catch (final Exception e)
+                {
+                    for(final WhiteboardServiceInfo<?> info : batch.filterInfos)
+                    {
+                        this.failureStateHandler.addFailure(info, handler.getContextInfo().getServiceId(), FAILURE_REASON_UNKNOWN, e);
+                    }
+                }
+            }
+            if ( !batch.servlets.isEmpty() )
+            {
+                try
+                {
+                    handler.getRegistry().registerServlets(batch.servlets);
+                }
+                catch (final Exception e)
+                {
+                    for(final WhiteboardServiceInfo<?> info : batch.servletInfos)
+                    {
+                        this.failureStateHandler.addFailure(info, handler.getContextInfo().getServiceId(), FAILURE_REASON_UNKNOWN, e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Register a servlet, or add it to the batch of its context
+     * @param handler Context handler
+     * @param info Whiteboard service info
+     * @param servletHandler The servlet handler
+     */
+    private void registerServlet(final WhiteboardContextHandler handler, final WhiteboardServiceInfo<?> info,
+            final ServletHandler servletHandler)
+    {
+        final Map<WhiteboardContextHandler, RegistrationBatch> batches = this.registrationBatches;
+        if ( batches != null )
+        {
+            final RegistrationBatch batch = batches.computeIfAbsent(handler, key -> new RegistrationBatch());
+            batch.servlets.add(servletHandler);
+            batch.servletInfos.add(info);
+        }
+        else
+        {
+            handler.getRegistry().registerServlet(servletHandler);
+        }
+    }
+
+    /**
+     * Register a filter, or add it to the batch of its context
+     * @param handler Context handler
+     * @param info Whiteboard service info
+     * @param filterHandler The filter handler
+     */
+    private void registerFilter(final WhiteboardContextHandler handler, final WhiteboardServiceInfo<?> info,
+            final FilterHandler filterHandler)
+    {
+        final Map<WhiteboardContextHandler, RegistrationBatch> batches = this.registrationBatches;
+        if ( batches != null )
+        {
+            final RegistrationBatch batch = batches.computeIfAbsent(handler, key -> new RegistrationBatch());
+            batch.filters.add(filterHandler);
+            batch.filterInfos.add(info);
+        }
+        else
+        {
+            handler.getRegistry().registerFilter(filterHandler);
+        }
     }
 
     /**
@@ -196,6 +346,7 @@ public final class WhiteboardManager
     public void stop()
     {
         this.webContext = null;
+        this.pendingServices = null;
         this.serviceRuntime.unregister();
         for(final ServiceTracker<?, ?> t : this.trackers)
         {
@@ -550,56 +701,79 @@ public final class WhiteboardManager
         // no logging and no DTO if other target service
         if ( isMatchingService(info) )
         {
-            if ( info.isValid() )
+            // preprocessors do not depend on a context and are initialized right away,
+            // outside of the context map lock
+            synchronized ( this.contextMap )
             {
-                if ( info instanceof PreprocessorInfo )
+                final List<WhiteboardServiceInfo<?>> pending = this.pendingServices;
+                if ( pending != null && !(info instanceof PreprocessorInfo) )
                 {
-                    final PreprocessorHandler handler = new PreprocessorHandler(this.httpBundleContext,
-                            this.webContext, ((PreprocessorInfo)info));
-                    final int result = handler.init();
-                    if ( result == -1 )
-                    {
-                        synchronized ( this.preprocessorHandlers )
-                        {
-                            final List<PreprocessorHandler> newList = new ArrayList<>(this.preprocessorHandlers);
-                            newList.add(handler);
-                            Collections.sort(newList);
-                            this.preprocessorHandlers = newList;
-                        }
-                    }
-                    else
-                    {
-                        this.failureStateHandler.addFailure(info, FAILURE_REASON_VALIDATION_FAILED);
-                    }
-                    updateRuntimeChangeCount();
+                    pending.add(info);
                     return true;
                 }
-                synchronized ( this.contextMap )
+            }
+            this.processWhiteboardService(info);
+            updateRuntimeChangeCount();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Register a matching whiteboard service
+     *
+     * @param info Whiteboard service info
+     */
+    private void processWhiteboardService(@NotNull final WhiteboardServiceInfo<?> info)
+    {
+        if ( info.isValid() )
+        {
+            if ( info instanceof PreprocessorInfo )
+            {
+                final PreprocessorHandler handler = new PreprocessorHandler(this.httpBundleContext,
+                        this.webContext, ((PreprocessorInfo)info));
+                final int result = handler.init();
+                if ( result == -1 )
                 {
-                    final List<WhiteboardContextHandler> handlerList = this.getMatchingContexts(info);
-                    this.servicesMap.put(info, handlerList);
-                    if (handlerList.isEmpty())
+                    synchronized ( this.preprocessorHandlers )
                     {
-                        this.failureStateHandler.addFailure(info, FAILURE_REASON_NO_SERVLET_CONTEXT_MATCHING);
+                        final List<PreprocessorHandler> newList = new ArrayList<>(this.preprocessorHandlers);
+                        newList.add(handler);
+                        Collections.sort(newList);
+                        this.preprocessorHandlers = newList;
                     }
-                    else
+                }
+                else
+                {
+                    this.failureStateHandler.addFailure(info, FAILURE_REASON_VALIDATION_FAILED);
+                }
+                return;
+            }
+            synchronized ( this.contextMap )
+            {
+                final List<WhiteboardContextHandler> handlerList = this.getMatchingContexts(info);
+                this.servicesMap.put(info, handlerList);
+                if (handlerList.isEmpty())
+                {
+                    this.failureStateHandler.addFailure(info, FAILURE_REASON_NO_SERVLET_CONTEXT_MATCHING);
+                }
+                else
+                {
+                    for(final WhiteboardContextHandler h : handlerList)
                     {
-                        for(final WhiteboardContextHandler h : handlerList)
+                        final int result = this.checkForServletRegistrationInHttpServiceContext(h, info);
+                        if ( result == -1)
                         {
-                            final int result = this.checkForServletRegistrationInHttpServiceContext(h, info);
-                            if ( result == -1)
+                            this.registerWhiteboardService(h, info);
+                            if ( info instanceof ListenerInfo && ((ListenerInfo)info).isListenerType(ServletContextListener.class.getName()) )
                             {
-                                this.registerWhiteboardService(h, info);
-                                if ( info instanceof ListenerInfo && ((ListenerInfo)info).isListenerType(ServletContextListener.class.getName()) )
+                                final ListenerHandler handler = h.getRegistry().getEventListenerRegistry().getServletContextListener((ListenerInfo)info);
+                                if ( handler != null )
                                 {
-                                    final ListenerHandler handler = h.getRegistry().getEventListenerRegistry().getServletContextListener((ListenerInfo)info);
-                                    if ( handler != null )
+                                    final ServletContextListener listener = (ServletContextListener)handler.getListener();
+                                    if ( listener != null )
                                     {
-                                        final ServletContextListener listener = (ServletContextListener)handler.getListener();
-                                        if ( listener != null )
-                                        {
-                                            EventListenerRegistry.contextInitialized(handler.getListenerInfo(), listener, new ServletContextEvent(handler.getContext()));
-                                        }
+                                        EventListenerRegistry.contextInitialized(handler.getListenerInfo(), listener, new ServletContextEvent(handler.getContext()));
                                     }
                                 }
                             }
@@ -607,14 +781,11 @@ public final class WhiteboardManager
                     }
                 }
             }
-            else
-            {
-                this.failureStateHandler.addFailure(info, FAILURE_REASON_VALIDATION_FAILED);
-            }
-            updateRuntimeChangeCount();
-            return true;
         }
-        return false;
+        else
+        {
+            this.failureStateHandler.addFailure(info, FAILURE_REASON_VALIDATION_FAILED);
+        }
     }
 
     /**
@@ -673,6 +844,12 @@ public final class WhiteboardManager
     {
         synchronized ( this.contextMap )
         {
+            final List<WhiteboardServiceInfo<?>> pending = this.pendingServices;
+            if ( pending != null && pending.remove(info) )
+            {
+                // not registered yet
+                return;
+            }
             if ( !failureStateHandler.remove(info) )
             {
                 if ( info instanceof PreprocessorInfo )
@@ -745,7 +922,7 @@ public final class WhiteboardManager
                 else
                 {
                     final ServletHandler servletHandler = getServletHandler(handler, info, servletContext);
-                    handler.getRegistry().registerServlet(servletHandler);
+                    this.registerServlet(handler, info, servletHandler);
                 }
             }
             else if ( info instanceof FilterInfo )
@@ -762,7 +939,7 @@ public final class WhiteboardManager
                             servletContext,
                             (FilterInfo)info,
                             handler.getBundleContext());
-                    handler.getRegistry().registerFilter(filterHandler);
+                    this.registerFilter(handler, info, filterHandler);
                 }
             }
             else if ( info instanceof ResourceInfo )
@@ -780,7 +957,7 @@ public final class WhiteboardManager
                             servletContext,
                             servletInfo,
                             new ResourceServlet(servletInfo.getPrefix()));
-                    handler.getRegistry().registerServlet(servleHandler);
+                    this.registerServlet(handler, info, servleHandler);
                 }
             }
 
@@ -1002,6 +1179,11 @@ public final class WhiteboardManager
 
     private void updateRuntimeChangeCount()
     {
+        if ( this.pendingServices != null )
+        {
+            // updated once the batch is processed
+            return;
+        }
         this.serviceRuntime.updateChangeCount();
     }
 
@@ -19,7 +19,10 @@
 
 package org.apache.felix.http.base.internal.handler;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
@@ -75,13 +78,15 @@ public class HttpSessionWrapperTest
 
     private HttpSession createMockSession(String sessionName, long lastAccessed, int maxInactive)
     {
-        String attrLastAccessed = String.format("org.apache.felix.http.session.context.lastaccessed.%s", sessionName);
-        String attrMaxInactive = String.format("org.apache.felix.http.session.context.maxinactive.%s", sessionName);
+        String attrContexts = "org.apache.felix.http.session.context.contexts";
+
+        HttpSessionWrapper.ContextSession state = new HttpSessionWrapper.ContextSession(lastAccessed, maxInactive);
+        ConcurrentHashMap<String, HttpSessionWrapper.ContextSession> contexts = new ConcurrentHashMap<>();
+        contexts.put(sessionName, state);
 
         HttpSession session = mock(HttpSession.class);
-        when(session.getAttributeNames()).thenReturn(Collections.enumeration(Arrays.asList(attrLastAccessed)));
-        when(session.getAttribute(eq(attrLastAccessed))).thenReturn(lastAccessed);
-        when(session.getAttribute(eq(attrMaxInactive))).thenReturn(maxInactive);
+        when(session.getAttributeNames()).thenReturn(Collections.enumeration(Arrays.asList(attrContexts)));
+        when(session.getAttribute(eq(attrContexts))).thenReturn(contexts);
 
         return session;
     }
@@ -135,14 +140,15 @@ public class HttpSessionWrapperTest
         final HttpSession contextSession = new HttpSessionWrapper(containerSession, context, config, false);
         // invalidate context session and verify that invalidate is not called on the container session
         contextSession.invalidate();
-        assertTrue(attributes.isEmpty());
+        assertEquals(Collections.singleton("org.apache.felix.http.session.context.contexts"), attributes.keySet());
+        assertTrue(((Map<?, ?>) attributes.get("org.apache.felix.http.session.context.contexts")).isEmpty());
         Mockito.verify(containerSession, Mockito.never()).invalidate();
 
         config.setInvalidateContainerSession(true);
         final HttpSession newSession = new HttpSessionWrapper(containerSession, context, config, false);
         // invalidate context session and verify that invalidate is called on the container session
         newSession.invalidate();
-        assertTrue(attributes.isEmpty());
+        assertTrue(((Map<?, ?>) attributes.get("org.apache.felix.http.session.context.contexts")).isEmpty());
         Mockito.verify(containerSession).invalidate();
     }
 
@@ -211,4 +217,103 @@ public class HttpSessionWrapperTest
         Mockito.verify(containerSession).invalidate();
     }
 
+    @Test
+    public void testContextsAreSharedAndLegacyAttributesMigrated()
+    {
+        final String prefix = "org.apache.felix.http.session.context.";
+        final ConcurrentHashMap<String, Object> attributes = new ConcurrentHashMap<>();
+        attributes.put(prefix + "created.default", 1000L);
+        attributes.put(prefix + "lastaccessed.default", 2000L);
+        attributes.put(prefix + "maxinactive.default", 60);
+        attributes.put(prefix + "attr.default.foo", "bar");
+        attributes.put(prefix + "attr.default.a.b", "c");
+        attributes.put(prefix + "attr.orphan.x", "y");
+        attributes.put("container", "value");
+        final HttpSession containerSession = createContainerSession(attributes);
+
+        assertTrue(HttpSessionWrapper.hasSession("default", containerSession));
+        assertEquals(new HashSet<>(Arrays.asList(prefix + "contexts", "container")), attributes.keySet());
+
+        final HttpSessionListener listener = mock(HttpSessionListener.class);
+        final HttpConfig config = new HttpConfig();
+
+        final HttpSession migrated = new HttpSessionWrapper(containerSession, createContext("default", listener), config, false);
+        assertFalse(migrated.isNew());
+        assertEquals(1000L, migrated.getCreationTime());
+        assertEquals(60, migrated.getMaxInactiveInterval());
+        assertEquals("bar", migrated.getAttribute("foo"));
+        assertEquals("c", migrated.getAttribute("a.b"));
+        assertNull(migrated.getAttribute("x"));
+
+        final Object contexts = attributes.get(prefix + "contexts");
+        final HttpSession other = new HttpSessionWrapper(containerSession, createContext("other", listener), config, false);
+        assertTrue(other.isNew());
+        assertSame(contexts, attributes.get(prefix + "contexts"));
+        assertEquals(new HashSet<>(Arrays.asList("default", "other")), HttpSessionWrapper.getSessionContextNames(containerSession));
+        Mockito.verify(listener).sessionCreated(Mockito.any());
+    }
+
+    @Test
+    public void testContainerSessionIsMigratedOnce()
+    {
+        final ConcurrentHashMap<String, Object> attributes = new ConcurrentHashMap<>();
+        attributes.put("container", "value");
+        final HttpSession containerSession = createContainerSession(attributes);
+
+        assertFalse(HttpSessionWrapper.hasSession("default", containerSession));
+        assertTrue(HttpSessionWrapper.getExpiredSessionContextNames(containerSession).isEmpty());
+
+        final HttpConfig config = new HttpConfig();
+        config.setInvalidateContainerSession(false);
+        final HttpSession session = new HttpSessionWrapper(containerSession, createContext("default", mock(HttpSessionListener.class)), config, false);
+        assertTrue(HttpSessionWrapper.hasSession("default", containerSession));
+
+        // the empty map is kept after the last internal session is invalidated
+        session.invalidate();
+        assertFalse(HttpSessionWrapper.hasSession("default", containerSession));
+        assertTrue(HttpSessionWrapper.getExpiredSessionContextNames(containerSession).isEmpty());
+
+        Mockito.verify(containerSession, Mockito.times(1)).getAttributeNames();
+    }
+
+    private HttpSession createContainerSession(final Map<String, Object> attributes)
+    {
+        final HttpSession containerSession = mock(HttpSession.class);
+        when(containerSession.getAttributeNames()).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return Collections.enumeration(new HashSet<>(attributes.keySet()));
+            }
+        });
+        when(containerSession.getAttribute(Mockito.anyString())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return attributes.get(invocation.getArgument(0));
+            }
+        });
+        Mockito.doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                attributes.put((String)invocation.getArgument(0), invocation.getArgument(1));
+                return null;
+            }
+        }).when(containerSession).setAttribute(Mockito.anyString(), Mockito.any());
+        Mockito.doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                attributes.remove(invocation.getArgument(0));
+                return null;
+            }
+        }).when(containerSession).removeAttribute(Mockito.anyString());
+        return containerSession;
+    }
+
+    private ExtServletContext createContext(final String name, final HttpSessionListener listener)
+    {
+        final ExtServletContext context = mock(ExtServletContext.class);
+        when(context.getServletContextName()).thenReturn(name);
+        when(context.getHttpSessionListener()).thenReturn(listener);
+        return context;
+    }
+
 }
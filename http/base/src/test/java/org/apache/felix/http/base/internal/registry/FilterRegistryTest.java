@@ -24,6 +24,8 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+
 import org.apache.felix.http.base.internal.context.ExtServletContext;
 import org.apache.felix.http.base.internal.handler.FilterHandler;
 import org.apache.felix.http.base.internal.runtime.FilterInfo;
@@ -123,6 +125,27 @@ public class FilterRegistryTest {
         reg.removeFilter(h5.getFilterInfo(), true);
     }
 
+    @Test public void testAddFilters() throws InvalidSyntaxException
+    {
+        final FilterHandler h1 = createFilterHandler(1L, 20, "/foo");
+        final FilterHandler h2 = createFilterHandler(2L, 10, "/foo");
+        final FilterHandler h3 = createFilterHandler(3L, 30, "/foo");
+        final FilterHandler h4 = createFilterHandler(4L, 0, "/other");
+        reg.addFilters(Arrays.asList(h1, h2, h3, h4));
+
+        final FilterHandler[] handlers = reg.getFilterHandlers(null, DispatcherType.REQUEST, "/foo");
+        assertEquals(3, handlers.length);
+        assertEquals(h3.getFilterInfo(), handlers[0].getFilterInfo());
+        assertEquals(h1.getFilterInfo(), handlers[1].getFilterInfo());
+        assertEquals(h2.getFilterInfo(), handlers[2].getFilterInfo());
+
+        // cleanup
+        reg.removeFilter(h1.getFilterInfo(), true);
+        reg.removeFilter(h2.getFilterInfo(), true);
+        reg.removeFilter(h3.getFilterInfo(), true);
+        reg.removeFilter(h4.getFilterInfo(), true);
+    }
+
     private static FilterInfo createFilterInfo(final long id, final int ranking, final String... paths) throws InvalidSyntaxException
     {
         final BundleContext bCtx = mock(BundleContext.class);
@@ -27,6 +27,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -240,6 +241,36 @@ public class ServletRegistryTest {
         reg.removeServlet(h5.getServletInfo(), true);
     }
 
+    @Test public void testAddServlets() throws InvalidSyntaxException, ServletException
+    {
+        // the lower ranked servlet comes first and is replaced within the batch
+        final ServletHandler h1 = createServletHandler(1L, 0, "/foo");
+        final ServletHandler h2 = createServletHandler(2L, 10, "/foo");
+        final ServletHandler h3 = createServletHandler(3L, 0, "/bar");
+        final Servlet s1 = h1.getServlet();
+        reg.addServlets(Arrays.asList(h1, h2, h3));
+
+        verify(s1).init(ArgumentMatchers.any(ServletConfig.class));
+        verify(s1).destroy();
+        verify(h2.getServlet()).init(ArgumentMatchers.any(ServletConfig.class));
+        verify(h3.getServlet()).init(ArgumentMatchers.any(ServletConfig.class));
+
+        assertEquals(h2, reg.resolve("/foo").handler);
+        assertEquals(h3, reg.resolve("/bar").handler);
+
+        final FailedDTOHolder holder = new FailedDTOHolder();
+        final ServletContextDTO dto = new ServletContextDTO();
+        reg.getRuntimeInfo(dto, holder.failedServletDTOs, holder.failedResourceDTOs);
+        assertEquals(2, dto.servletDTOs.length);
+        assertEquals(1, holder.failedServletDTOs.size());
+        assertEquals(1, holder.failedServletDTOs.iterator().next().serviceId);
+
+        // cleanup
+        reg.removeServlet(h1.getServletInfo(), true);
+        reg.removeServlet(h2.getServletInfo(), true);
+        reg.removeServlet(h3.getServletInfo(), true);
+    }
+
     private static ServletInfo createServletInfo(final long id, final int ranking, final String... paths) throws InvalidSyntaxException
     {
         final BundleContext bCtx = mock(BundleContext.class);
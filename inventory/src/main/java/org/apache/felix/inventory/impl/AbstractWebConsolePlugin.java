@@ -139,7 +139,16 @@ public abstract class AbstractWebConsolePlugin extends HttpServlet
             response.setContentType(type);
 
             final ZipConfigurationWriter pw = ZipConfigurationWriter.create(response.getOutputStream());
-            printConfigurationInventory(pw, null, handler);
+            if (handler == null && this.inventoryPrinterManager.getZipThreads() > 1)
+            {
+                pw.printInventories(this.inventoryPrinterManager.getHandlers(null),
+                    this.inventoryPrinterManager.getZipThreads(), this.inventoryPrinterManager.getZipTimeout(),
+                    this.inventoryPrinterManager.getZipBufferSize(), this.inventoryPrinterManager.getZipSpoolSize());
+            }
+            else
+            {
+                printConfigurationInventory(pw, null, handler);
+            }
             pw.finish();
         }
         else if (request.getPathInfo().endsWith(".nfo"))
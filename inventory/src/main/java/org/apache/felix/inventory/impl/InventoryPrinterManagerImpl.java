@@ -37,6 +37,7 @@ import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceFactory;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.log.LogService;
 import org.osgi.util.tracker.ServiceTracker;
 import org.osgi.util.tracker.ServiceTrackerCustomizer;
 
@@ -48,6 +49,33 @@ import org.osgi.util.tracker.ServiceTrackerCustomizer;
 public class InventoryPrinterManagerImpl implements ServiceTrackerCustomizer<InventoryPrinter, InventoryPrinter>
 {
 
+    /**
+     * Framework property setting the number of inventory printers called
+     * concurrently for a ZIP dump. The default value of {@code 1} calls them
+     * one after the other.
+     */
+    static final String PROP_ZIP_THREADS = "felix.inventory.zip.threads";
+
+    /**
+     * Framework property setting the time in milliseconds a single inventory
+     * printer may take for a concurrent ZIP dump, the default value of
+     * {@code 0} disables the timeout.
+     */
+    static final String PROP_ZIP_TIMEOUT = "felix.inventory.zip.timeout";
+
+    /**
+     * Framework property setting the number of bytes of printer output kept
+     * in memory during a ZIP dump before spooling to temporary files.
+     */
+    static final String PROP_ZIP_BUFFER_SIZE = "felix.inventory.zip.buffer.size";
+
+    /**
+     * Framework property setting the maximum number of bytes of output kept
+     * for a single entry of a concurrent ZIP dump, including the part spooled
+     * to a temporary file.
+     */
+    static final String PROP_ZIP_SPOOL_SIZE = "felix.inventory.zip.spool.size";
+
     /** Bundle Context . */
     private final BundleContext bundleContext;
 
@@ -65,6 +93,18 @@ public class InventoryPrinterManagerImpl implements ServiceTrackerCustomizer<Inv
     /** Registration for the web console. */
     private final ServiceRegistration pluginRegistration;
 
+    /** Number of printers called concurrently for a ZIP dump. */
+    private final int zipThreads;
+
+    /** Timeout in milliseconds for a single printer of a ZIP dump. */
+    private final long zipTimeout;
+
+    /** Memory for the spooled printer output of a ZIP dump. */
+    private final long zipBufferSize;
+
+    /** Maximum size of the spooled output of a single entry of a ZIP dump. */
+    private final long zipSpoolSize;
+
     /**
      * Create the inventory printer manager
      *
@@ -75,6 +115,10 @@ public class InventoryPrinterManagerImpl implements ServiceTrackerCustomizer<Inv
     public InventoryPrinterManagerImpl(final BundleContext btx) throws InvalidSyntaxException
     {
         this.bundleContext = btx;
+        this.zipThreads = (int) getProperty(btx, PROP_ZIP_THREADS, 1);
+        this.zipTimeout = getProperty(btx, PROP_ZIP_TIMEOUT, 0);
+        this.zipBufferSize = getProperty(btx, PROP_ZIP_BUFFER_SIZE, 16 * 1024 * 1024);
+        this.zipSpoolSize = getProperty(btx, PROP_ZIP_SPOOL_SIZE, 64 * 1024 * 1024);
         this.cfgPrinterTracker = new ServiceTracker<>(this.bundleContext, InventoryPrinter.class, this);
         this.cfgPrinterTracker.open();
 
@@ -98,6 +142,23 @@ public class InventoryPrinterManagerImpl implements ServiceTrackerCustomizer<Inv
         }, props);
     }
 
+    private static long getProperty(final BundleContext btx, final String name, final long defaultValue)
+    {
+        final String value = btx.getProperty(name);
+        if (value != null)
+        {
+            try
+            {
+                return Long.parseLong(value.trim());
+            }
+            catch (final NumberFormatException nfe)
+            {
+                Activator.log(LogService.LOG_WARNING, "Ignoring invalid value for " + name + ": " + value, null);
+            }
+        }
+        return defaultValue;
+    }
+
     /**
      * Dispose this service
      */
@@ -315,4 +376,36 @@ public class InventoryPrinterManagerImpl implements ServiceTrackerCustomizer<Inv
         }
         return null;
     }
+
+    /**
+     * Return the number of printers called concurrently for a ZIP dump.
+     */
+    public int getZipThreads()
+    {
+        return this.zipThreads;
+    }
+
+    /**
+     * Return the time in milliseconds a single printer may take for a ZIP dump.
+     */
+    public long getZipTimeout()
+    {
+        return this.zipTimeout;
+    }
+
+    /**
+     * Return the number of bytes of printer output kept in memory for a ZIP dump.
+     */
+    public long getZipBufferSize()
+    {
+        return this.zipBufferSize;
+    }
+
+    /**
+     * Return the maximum number of bytes of output kept for a single entry of a ZIP dump.
+     */
+    public long getZipSpoolSize()
+    {
+        return this.zipSpoolSize;
+    }
 }
@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.inventory.impl.helper;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The <code>SpoolOutputStream</code> buffers the output of an inventory
+ * printer until it can be copied to the ZIP file. The output is kept in
+ * memory as long as the memory shared by all spools of a dump stays within
+ * the given budget, it is spilled to a temporary file otherwise. Output
+ * exceeding the maximum size of a spool is dropped and the spool is marked
+ * as truncated.
+ */
+class SpoolOutputStream extends OutputStream
+{
+
+    /** The number of bytes still available in memory, shared by all spools */
+    private final AtomicLong budget;
+
+    /** The maximum number of bytes kept by this spool */
+    private final long maxSize;
+
+    private long size;
+
+    private boolean truncated;
+
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+
+    private File file;
+
+    private OutputStream fileStream;
+
+    private boolean closed;
+
+    SpoolOutputStream(final AtomicLong budget, final long maxSize)
+    {
+        this.budget = budget;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public void write(final int b) throws IOException
+    {
+        this.write(new byte[]
+            { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(final byte[] b, final int off, int len) throws IOException
+    {
+        if (this.closed)
+        {
+            throw new IOException("Spool has been discarded");
+        }
+        if (this.size + len > this.maxSize)
+        {
+            this.truncated = true;
+            len = (int) (this.maxSize - this.size);
+            if (len <= 0)
+            {
+                return;
+            }
+        }
+        this.size += len;
+        if (this.memory != null)
+        {
+            if (this.budget.addAndGet(-len) >= 0)
+            {
+                this.memory.write(b, off, len);
+                return;
+            }
+            this.budget.addAndGet(len);
+            this.spill();
+        }
+        this.fileStream.write(b, off, len);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException
+    {
+        if (this.fileStream != null)
+        {
+            this.fileStream.flush();
+        }
+    }
+
+    /**
+     * Whether output has been dropped because it exceeded the maximum size.
+     */
+    synchronized boolean isTruncated()
+    {
+        return this.truncated;
+    }
+
+    /**
+     * Copies the spooled output to the given stream.
+     */
+    synchronized void writeTo(final OutputStream out) throws IOException
+    {
+        if (this.closed)
+        {
+            throw new IOException("Spool has been discarded");
+        }
+        if (this.memory != null)
+        {
+            this.memory.writeTo(out);
+        }
+        else
+        {
+            this.fileStream.flush();
+            final InputStream in = new FileInputStream(this.file);
+            try
+            {
+                final byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) > 0)
+                {
+                    out.write(buffer, 0, n);
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Releases the memory or temporary file used by this spool, any further
+     * output written to it fails.
+     */
+    synchronized void discard()
+    {
+        if (this.closed)
+        {
+            return;
+        }
+        this.closed = true;
+        if (this.memory != null)
+        {
+            this.budget.addAndGet(this.memory.size());
+            this.memory = null;
+        }
+        else
+        {
+            try
+            {
+                this.fileStream.close();
+            }
+            catch (final IOException ignore)
+            {
+                // ignore
+            }
+            this.file.delete();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        // the content is kept until it is discarded
+    }
+
+    private void spill() throws IOException
+    {
+        this.file = File.createTempFile("inventory", ".spool");
+        this.fileStream = new BufferedOutputStream(new FileOutputStream(this.file));
+        this.memory.writeTo(this.fileStream);
+        this.budget.addAndGet(this.memory.size());
+        this.memory = null;
+    }
+}
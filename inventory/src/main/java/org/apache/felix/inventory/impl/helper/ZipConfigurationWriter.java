@@ -21,16 +21,29 @@ package org.apache.felix.inventory.impl.helper;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.MessageFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.felix.inventory.Format;
+import org.apache.felix.inventory.impl.Activator;
 import org.apache.felix.inventory.impl.InventoryPrinterHandler;
+import org.osgi.service.log.LogService;
 
 /**
  * The ZIP configuration writer creates a zip with
@@ -117,6 +130,146 @@ public class ZipConfigurationWriter extends ConfigurationWriter
         this.zip.endHandler();
     }
 
+    /**
+     * Writes the output of all handlers to the ZIP file, like calling
+     * {@link #printInventory(Format, InventoryPrinterHandler)} for each of them.
+     * The printers are called concurrently, each rendering into its own spool,
+     * while the spooled output is written to the ZIP file in the order of the
+     * handlers as soon as it is available. A printer which does not finish
+     * within the timeout is interrupted and its entries only contain a note
+     * about the timeout. A printer which could not even be started because
+     * all threads are still busy - for example with printers ignoring the
+     * interrupt - is not called at all once the time it would have had in
+     * its turn is over, its entries only contain a note that it was not run.
+     *
+     * @param handlers The handlers to be called to generate the output
+     * @param threads The maximum number of printers called concurrently
+     * @param timeout The time in milliseconds a printer may take, no timeout
+     *            is applied if this is zero or negative
+     * @param maxBufferSize The number of bytes of spooled output kept in
+     *            memory, output exceeding it is spooled to temporary files
+     * @param maxSpoolSize The number of bytes of output kept for a single
+     *            entry, output exceeding it is dropped
+     *
+     * @throws IOException if an error occurrs writing to the ZIP file.
+     */
+    public void printInventories(final InventoryPrinterHandler[] handlers, final int threads, final long timeout,
+        final long maxBufferSize, final long maxSpoolSize) throws IOException
+    {
+        final AtomicLong budget = new AtomicLong(maxBufferSize);
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory()
+        {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r)
+            {
+                final Thread t = new Thread(r, "Apache Felix Inventory Printer #" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        final Section[] sections = new Section[handlers.length];
+        try
+        {
+            for (int i = 0; i < handlers.length; i++)
+            {
+                sections[i] = new Section(handlers[i], budget, maxSpoolSize);
+                sections[i].submitted = System.currentTimeMillis();
+                sections[i].rounds = i / Math.max(1, threads) + 1;
+                sections[i].future = executor.submit(sections[i]);
+            }
+            for (int i = 0; i < sections.length; i++)
+            {
+                this.printSection(sections[i], timeout);
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+            for (int i = 0; i < sections.length; i++)
+            {
+                if (sections[i] != null)
+                {
+                    sections[i].discard();
+                }
+            }
+        }
+    }
+
+    private void printSection(final Section section, final long timeout) throws IOException
+    {
+        final String failure = section.await(timeout);
+        final InventoryPrinterHandler handler = section.handler;
+        final String baseName = getBaseName(handler);
+
+        this.zip.handler(handler);
+
+        // the plain text output
+        if (section.text != null)
+        {
+            this.printEntry(baseName.concat(".txt"), Format.TEXT, section.text, failure);
+        }
+
+        // the JSON format output
+        if (section.json != null)
+        {
+            this.printEntry("json/" + baseName + ".json", Format.JSON, section.json, failure);
+        }
+
+        // any attachements from the handler
+        this.zip.attachements();
+        if (failure == null)
+        {
+            handler.addAttachments(this.zip, baseName.concat("/"));
+        }
+        this.zip.endAttachements();
+
+        this.zip.endHandler();
+    }
+
+    private void printEntry(final String name, final Format format, final SpoolOutputStream spool,
+        final String failure) throws IOException
+    {
+        final ZipEntry entry = new ZipEntry(name);
+        entry.setTime(System.currentTimeMillis());
+        this.zip.putNextEntry(entry, format);
+        if (failure != null)
+        {
+            this.printError(format, failure);
+        }
+        else if (spool.isTruncated() && format == Format.JSON)
+        {
+            // truncated JSON is not valid anymore
+            this.printError(format, "The output exceeded the maximum size and has been dropped");
+        }
+        else
+        {
+            this.flush();
+            spool.writeTo(this.zip);
+            if (spool.isTruncated())
+            {
+                this.println();
+                this.printError(format, "The output exceeded the maximum size and has been truncated");
+            }
+        }
+        this.flush();
+        this.zip.closeEntry();
+        spool.discard();
+    }
+
+    private void printError(final Format format, final String message)
+    {
+        if (format == Format.JSON)
+        {
+            this.print("{\"error\":\"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}");
+        }
+        else
+        {
+            this.println(message);
+        }
+    }
+
     private String getBaseName(final InventoryPrinterHandler handler)
     {
         final String title = handler.getTitle();
@@ -139,6 +292,131 @@ public class ZipConfigurationWriter extends ConfigurationWriter
             { this.entryCounter, name });
     }
 
+    /**
+     * The output of a single handler, rendered by one of the printer threads.
+     */
+    private static class Section implements Runnable
+    {
+
+        final InventoryPrinterHandler handler;
+
+        final SpoolOutputStream text;
+
+        final SpoolOutputStream json;
+
+        volatile long started;
+
+        long submitted;
+
+        int rounds;
+
+        Future<?> future;
+
+        Section(final InventoryPrinterHandler handler, final AtomicLong budget, final long maxSpoolSize)
+        {
+            this.handler = handler;
+            this.text = handler.supports(Format.TEXT) ? new SpoolOutputStream(budget, maxSpoolSize) : null;
+            this.json = handler.supports(Format.JSON) ? new SpoolOutputStream(budget, maxSpoolSize) : null;
+        }
+
+        @Override
+        public void run()
+        {
+            this.started = System.currentTimeMillis();
+            this.print(this.text, Format.TEXT);
+            this.print(this.json, Format.JSON);
+        }
+
+        private void print(final SpoolOutputStream spool, final Format format)
+        {
+            if (spool != null)
+            {
+                final PrintWriter pw = new PrintWriter(new OutputStreamWriter(spool, StandardCharsets.UTF_8));
+                this.handler.print(pw, format, true);
+                pw.flush();
+            }
+        }
+
+        /**
+         * Waits for the handler to be printed. The timeout starts once the
+         * printer has actually been called. A printer which has not been
+         * started within the time of the printers queued before it - the
+         * timeout for each round of printers since the submission - is
+         * cancelled without being called.
+         *
+         * @return {@code null} if the output is complete, a description of
+         *         the failure otherwise
+         */
+        String await(final long timeout)
+        {
+            try
+            {
+                if (timeout <= 0)
+                {
+                    this.future.get();
+                    return null;
+                }
+                while (true)
+                {
+                    final long start = this.started;
+                    final long deadline = (start == 0 ? this.submitted + this.rounds * timeout : start + timeout);
+                    try
+                    {
+                        this.future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                        return null;
+                    }
+                    catch (final TimeoutException te)
+                    {
+                        if (System.currentTimeMillis() < deadline || (start == 0 && this.started != 0))
+                        {
+                            // not timed out yet or just started: wait for the printer's own timeout
+                            continue;
+                        }
+                        this.future.cancel(true);
+                        final String message;
+                        if (start == 0)
+                        {
+                            message = "Inventory printer " + this.handler.getName()
+                                + " was not run: no printer thread became available within "
+                                + (this.rounds * timeout) + "ms";
+                        }
+                        else
+                        {
+                            message = "Inventory printer " + this.handler.getName()
+                                + " did not finish within " + timeout + "ms";
+                        }
+                        Activator.log(LogService.LOG_WARNING, message, null);
+                        return message;
+                    }
+                }
+            }
+            catch (final InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                this.future.cancel(true);
+                return "Interrupted while waiting for inventory printer " + this.handler.getName();
+            }
+            catch (final ExecutionException ee)
+            {
+                final String message = "Inventory printer " + this.handler.getName() + " failed: " + ee.getCause();
+                Activator.log(LogService.LOG_WARNING, message, ee.getCause());
+                return message;
+            }
+        }
+
+        void discard()
+        {
+            if (this.text != null)
+            {
+                this.text.discard();
+            }
+            if (this.json != null)
+            {
+                this.json.discard();
+            }
+        }
+    }
+
     private static class ConfigZipOutputStream extends ZipOutputStream
     {
 
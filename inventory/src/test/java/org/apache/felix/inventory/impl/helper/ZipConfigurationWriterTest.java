@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.inventory.impl.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.felix.inventory.Format;
+import org.apache.felix.inventory.impl.InventoryPrinterHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ZipConfigurationWriterTest {
+
+    @Test public void test_parallel_dump() throws IOException {
+        final InventoryPrinterHandler[] handlers = new InventoryPrinterHandler[] {
+            new TestHandler("slow", 200),
+            new TestHandler("fast", 0),
+            new TestHandler("hanging", 60000),
+            new TestHandler("last", 0)
+        };
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ZipConfigurationWriter w = ZipConfigurationWriter.create(out);
+        // a tiny buffer forces spooling to temporary files
+        w.printInventories(handlers, 4, 1000, 16, 1024);
+        w.finish();
+
+        final Map<String, String> entries = readZip(out.toByteArray());
+        final String[] names = entries.keySet().toArray(new String[entries.size()]);
+        Assert.assertArrayEquals(new String[] {
+            "000_slow.txt", "json/000_slow.json",
+            "001_fast.txt", "json/001_fast.json",
+            "002_hanging.txt", "json/002_hanging.json",
+            "003_last.txt", "json/003_last.json",
+            "index.json" }, names);
+        Assert.assertEquals("TEXT slow", entries.get("000_slow.txt"));
+        Assert.assertEquals("JSON last", entries.get("json/003_last.json"));
+        Assert.assertTrue(entries.get("002_hanging.txt").contains("did not finish"));
+        Assert.assertTrue(entries.get("json/002_hanging.json").startsWith("{\"error\":"));
+    }
+
+    @Test public void test_spool_size_is_limited() throws IOException {
+        final InventoryPrinterHandler[] handlers = new InventoryPrinterHandler[] {
+            new TestHandler("larger", 0),
+            new TestHandler("small", 0)
+        };
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ZipConfigurationWriter w = ZipConfigurationWriter.create(out);
+        // the output of "larger" exceeds the limit of a spool, spilled or not
+        w.printInventories(handlers, 2, 0, 4, 10);
+        w.finish();
+
+        final Map<String, String> entries = readZip(out.toByteArray());
+        Assert.assertTrue(entries.get("000_larger.txt").startsWith("TEXT large"));
+        Assert.assertTrue(entries.get("000_larger.txt").endsWith("has been truncated"));
+        Assert.assertTrue(entries.get("json/000_larger.json").startsWith("{\"error\":"));
+        Assert.assertEquals("TEXT small", entries.get("001_small.txt"));
+        Assert.assertEquals("JSON small", entries.get("json/001_small.json"));
+    }
+
+    @Test public void test_queued_printer_behind_stubborn_printer() throws IOException {
+        final InventoryPrinterHandler[] handlers = new InventoryPrinterHandler[] {
+            new TestHandler("stubborn", 5000, true),
+            new TestHandler("queued", 0)
+        };
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ZipConfigurationWriter w = ZipConfigurationWriter.create(out);
+        // the only thread stays busy with a printer ignoring the interrupt
+        final long start = System.currentTimeMillis();
+        w.printInventories(handlers, 1, 200, 1024, 1024);
+        w.finish();
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+
+        final Map<String, String> entries = readZip(out.toByteArray());
+        Assert.assertTrue(entries.get("000_stubborn.txt").contains("did not finish"));
+        Assert.assertTrue(entries.get("001_queued.txt").contains("was not run"));
+        Assert.assertTrue(entries.get("json/001_queued.json").startsWith("{\"error\":"));
+    }
+
+    private static Map<String, String> readZip(final byte[] data) throws IOException {
+        final Map<String, String> entries = new LinkedHashMap<>();
+        final ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(data));
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            final StringBuilder sb = new StringBuilder();
+            final Reader r = new InputStreamReader(zis, StandardCharsets.UTF_8);
+            final char[] buf = new char[1024];
+            int n;
+            while ((n = r.read(buf)) > 0) {
+                sb.append(buf, 0, n);
+            }
+            entries.put(entry.getName(), sb.toString().trim());
+        }
+        return entries;
+    }
+
+    private static class TestHandler implements InventoryPrinterHandler {
+
+        private final String name;
+
+        private final long delay;
+
+        private final boolean ignoreInterrupt;
+
+        TestHandler(final String name, final long delay) {
+            this(name, delay, false);
+        }
+
+        TestHandler(final String name, final long delay, final boolean ignoreInterrupt) {
+            this.name = name;
+            this.delay = delay;
+            this.ignoreInterrupt = ignoreInterrupt;
+        }
+
+        @Override
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public String getTitle() {
+            return this.name;
+        }
+
+        @Override
+        public Format[] getFormats() {
+            return new Format[] { Format.TEXT, Format.JSON };
+        }
+
+        @Override
+        public boolean supports(final Format format) {
+            return format == Format.TEXT || format == Format.JSON;
+        }
+
+        @Override
+        public void print(final PrintWriter printWriter, final Format format, final boolean isZip) {
+            final long end = System.currentTimeMillis() + this.delay;
+            long wait;
+            while ((wait = end - System.currentTimeMillis()) > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (final InterruptedException ie) {
+                    if (!this.ignoreInterrupt) {
+                        return;
+                    }
+                }
+            }
+            printWriter.print(format + " " + this.name);
+        }
+
+        @Override
+        public void addAttachments(final ZipOutputStream zos, final String namePrefix) {
+            // no attachments
+        }
+    }
+}
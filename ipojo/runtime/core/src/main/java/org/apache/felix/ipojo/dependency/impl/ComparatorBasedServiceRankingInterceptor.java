@@ -39,6 +39,15 @@ public class ComparatorBasedServiceRankingInterceptor implements ServiceRankingI
         this.m_comparator = cmp;
     }
 
+    /**
+     * Gets the comparator used to sort the references.
+     * As the ranking only depends on this comparator, the dependency can maintain the sorted list incrementally.
+     * @return the comparator
+     */
+    public Comparator<ServiceReference> getComparator() {
+        return m_comparator;
+    }
+
 
     public void open(DependencyModel dependency) {    }
 
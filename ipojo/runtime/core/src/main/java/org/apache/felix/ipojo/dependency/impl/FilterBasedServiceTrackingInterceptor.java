@@ -19,7 +19,7 @@
 
 package org.apache.felix.ipojo.dependency.impl;
 
-import org.apache.felix.ipojo.dependency.interceptors.ServiceTrackingInterceptor;
+import org.apache.felix.ipojo.dependency.interceptors.StatelessServiceTrackingInterceptor;
 import org.apache.felix.ipojo.dependency.interceptors.TransformedServiceReference;
 import org.apache.felix.ipojo.util.DependencyModel;
 import org.osgi.framework.BundleContext;
@@ -28,8 +28,10 @@ import org.osgi.framework.ServiceReference;
 
 /**
  * An implementation of the service tracking interceptor using a filter.
+ * The filter never changes (a new interceptor is created when the dependency filter is changed), so the decisions
+ * only depend on the reference properties and can be cached.
  */
-public class FilterBasedServiceTrackingInterceptor implements ServiceTrackingInterceptor {
+public class FilterBasedServiceTrackingInterceptor implements StatelessServiceTrackingInterceptor {
 
     private final Filter m_filter;
 
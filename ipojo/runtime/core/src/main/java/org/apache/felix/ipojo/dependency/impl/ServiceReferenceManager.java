@@ -23,6 +23,7 @@ import org.apache.felix.ipojo.Factory;
 import org.apache.felix.ipojo.dependency.interceptors.ServiceBindingInterceptor;
 import org.apache.felix.ipojo.dependency.interceptors.ServiceRankingInterceptor;
 import org.apache.felix.ipojo.dependency.interceptors.ServiceTrackingInterceptor;
+import org.apache.felix.ipojo.dependency.interceptors.StatelessServiceTrackingInterceptor;
 import org.apache.felix.ipojo.dependency.interceptors.TransformedServiceReference;
 import org.apache.felix.ipojo.util.*;
 import org.osgi.framework.Constants;
@@ -101,6 +102,15 @@ public class ServiceReferenceManager implements TrackerCustomizer {
     private LinkedList<ServiceBindingInterceptor> m_bindingInterceptors = new
             LinkedList<ServiceBindingInterceptor>();
 
+    /**
+     * The decisions taken by the stateless tracking interceptors, per interceptor and per (original) service
+     * reference.
+     * A decision is reused only if the reference given to the interceptor has the same properties.
+     * @see StatelessServiceTrackingInterceptor
+     */
+    private final Map<ServiceTrackingInterceptor, Map<ServiceReference, TrackingDecision>> m_trackingDecisions = new
+            IdentityHashMap<ServiceTrackingInterceptor, Map<ServiceReference, TrackingDecision>>();
+
     /**
      * Creates the service reference manager.
      *
@@ -267,6 +277,7 @@ public class ServiceReferenceManager implements TrackerCustomizer {
         try {
             m_dependency.acquireWriteLockIfNotHeld();
             m_trackingInterceptors.remove(interceptor);
+            m_trackingDecisions.remove(interceptor);
             interceptor.close(m_dependency);
             changeset = computeChangesInMatchingServices();
         } finally {
@@ -432,6 +443,7 @@ public class ServiceReferenceManager implements TrackerCustomizer {
                 interceptor.close(m_dependency);
             }
             m_trackingInterceptors.clear();
+            m_trackingDecisions.clear();
             m_matchingReferences.clear();
             m_selectedReferences = new ArrayList<TransformedServiceReference>();
         } finally {
@@ -463,8 +475,12 @@ public class ServiceReferenceManager implements TrackerCustomizer {
     private <S> TransformedServiceReference<S> accept(TransformedServiceReference<S> reference) {
         TransformedServiceReference<S> accumulator = reference;
         for (ServiceTrackingInterceptor interceptor : m_trackingInterceptors) {
-            TransformedServiceReference<S> accepted = interceptor.accept(m_dependency,
-                    m_dependency.getBundleContext(), accumulator);
+            TransformedServiceReference<S> accepted;
+            if (interceptor instanceof StatelessServiceTrackingInterceptor) {
+                accepted = acceptUsingCachedDecision(interceptor, accumulator);
+            } else {
+                accepted = interceptor.accept(m_dependency, m_dependency.getBundleContext(), accumulator);
+            }
             if (accepted != null) {
                 accumulator = accepted;
             } else {
@@ -479,6 +495,58 @@ public class ServiceReferenceManager implements TrackerCustomizer {
         return accumulator;
     }
 
+    /**
+     * Asks a stateless interceptor to accept the given reference, reusing its previous decision if the reference
+     * has not changed since. Only decisions that did not transform the reference are kept.
+     * This method is called when holding the write lock on the dependency.
+     *
+     * @param interceptor the stateless interceptor
+     * @param reference the reference, as transformed by the preceding interceptors
+     * @param <S> the service interface
+     * @return the transformed reference, null if rejected
+     */
+    private <S> TransformedServiceReference<S> acceptUsingCachedDecision(ServiceTrackingInterceptor interceptor,
+                                                                         TransformedServiceReference<S> reference) {
+        Map<ServiceReference, TrackingDecision> decisions = m_trackingDecisions.get(interceptor);
+        if (decisions == null) {
+            decisions = new HashMap<ServiceReference, TrackingDecision>();
+            m_trackingDecisions.put(interceptor, decisions);
+        }
+
+        ServiceReference key = reference.getWrappedReference();
+        Map<String, Object> properties = getProperties(reference);
+        TrackingDecision decision = decisions.get(key);
+        if (decision != null && decision.properties.equals(properties)) {
+            return decision.accepted ? reference : null;
+        }
+
+        TransformedServiceReference<S> accepted = interceptor.accept(m_dependency, m_dependency.getBundleContext(),
+                reference);
+        if (accepted == null) {
+            decisions.put(key, new TrackingDecision(properties, false));
+        } else if (accepted == reference && properties.equals(getProperties(accepted))) {
+            decisions.put(key, new TrackingDecision(properties, true));
+        } else {
+            // The interceptor has transformed the reference, we cannot replay this decision.
+            decisions.remove(key);
+        }
+        return accepted;
+    }
+
+    private static Map<String, Object> getProperties(ServiceReference reference) {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        for (String key : reference.getPropertyKeys()) {
+            properties.put(key, reference.getProperty(key));
+        }
+        return properties;
+    }
+
+    private void forgetTrackingDecisions(ServiceReference reference) {
+        for (Map<ServiceReference, TrackingDecision> decisions : m_trackingDecisions.values()) {
+            decisions.remove(reference);
+        }
+    }
+
     public void addedService(ServiceReference reference) {
         // A service was added to the tracker.
 
@@ -548,6 +616,24 @@ public class ServiceReferenceManager implements TrackerCustomizer {
 
     private RankingResult applyRankingOnModification(ServiceReference reference) {
         // TODO we are holding the lock here.
+        if (isIncrementalRanking()) {
+            // The modified reference keeps its place in the matching set, but may move in the sorted set.
+            List<ServiceReference> selected = new ArrayList<ServiceReference>(m_selectedReferences);
+            int index = ServiceReferenceUtils.indexOfReferenceById(selected, reference);
+            if (isComparatorBasedRanking()) {
+                if (index != -1) {
+                    selected.remove(index);
+                }
+                ServiceReferenceUtils.insertSorted(selected, reference,
+                        ((ComparatorBasedServiceRankingInterceptor) m_rankingInterceptor).getComparator(),
+                        getMatchingServices());
+            } else if (index != -1) {
+                selected.set(index, reference);
+            } else {
+                selected.add(reference);
+            }
+            return new RankingResult(new ArrayList<ServiceReference>(), new ArrayList<ServiceReference>(), selected);
+        }
         List<ServiceReference> beforeRanking = getSelectedServices();
         List<ServiceReference> references = m_rankingInterceptor.onServiceModified(m_dependency, getMatchingServices(),
                 reference);
@@ -563,6 +649,20 @@ public class ServiceReferenceManager implements TrackerCustomizer {
 
     private RankingResult applyRankingOnArrival(ServiceReference ref) {
         // TODO we are holding the lock here.
+        if (isIncrementalRanking()) {
+            // Only insert the new reference, the others are already sorted. As the new reference is the last
+            // matching one, it goes after the references it is equal to.
+            List<ServiceReference> selected = new ArrayList<ServiceReference>(m_selectedReferences);
+            if (isComparatorBasedRanking()) {
+                ServiceReferenceUtils.insertSorted(selected, ref,
+                        ((ComparatorBasedServiceRankingInterceptor) m_rankingInterceptor).getComparator());
+            } else {
+                selected.add(ref);
+            }
+            List<ServiceReference> arrivals = new ArrayList<ServiceReference>();
+            arrivals.add(ref);
+            return new RankingResult(new ArrayList<ServiceReference>(), arrivals, selected);
+        }
         List<ServiceReference> beforeRanking = getSelectedServices();
         List<ServiceReference> references = m_rankingInterceptor.onServiceArrival(m_dependency, getMatchingServices(),
                 ref);
@@ -573,25 +673,62 @@ public class ServiceReferenceManager implements TrackerCustomizer {
 
     private RankingResult applyRankingOnDeparture(ServiceReference ref) {
         // TODO we are holding the lock here.
+        if (isIncrementalRanking()) {
+            // Only remove the leaving reference, the order of the others is not impacted.
+            List<ServiceReference> selected = new ArrayList<ServiceReference>(m_selectedReferences);
+            List<ServiceReference> departures = new ArrayList<ServiceReference>();
+            int index = ServiceReferenceUtils.indexOfReferenceById(selected, ref);
+            if (index != -1) {
+                departures.add(selected.remove(index));
+            }
+            return new RankingResult(departures, new ArrayList<ServiceReference>(), selected);
+        }
         List<ServiceReference> beforeRanking = getSelectedServices();
         List<ServiceReference> references = m_rankingInterceptor.onServiceDeparture(m_dependency, getMatchingServices(),
                 ref);
         return computeDifferences(beforeRanking, references);
     }
 
+    /**
+     * Checks whether the current ranking interceptor lets us maintain the selected set incrementally. This is the
+     * case for the built-in interceptors: their result only depends on the comparator (or on the order of the
+     * matching set), so the selected set can be updated from the changed reference only, instead of sorting and
+     * diffing the whole matching set. Sub-classes of the built-in interceptors may rank differently, so they are
+     * not considered.
+     * This method is called when holding the write lock on the dependency.
+     *
+     * @return {@literal true} if the ranking can be applied incrementally
+     */
+    private boolean isIncrementalRanking() {
+        return isComparatorBasedRanking()
+                || m_rankingInterceptor.getClass() == EmptyBasedServiceRankingInterceptor.class;
+    }
+
+    private boolean isComparatorBasedRanking() {
+        return m_rankingInterceptor.getClass() == ComparatorBasedServiceRankingInterceptor.class;
+    }
+
     private RankingResult computeDifferences(List<ServiceReference> beforeRanking, List<ServiceReference> ranked) {
         // compute the differences
         List<ServiceReference> departures = new ArrayList<ServiceReference>();
         List<ServiceReference> arrivals = new ArrayList<ServiceReference>();
+        Set<Object> beforeIds = new HashSet<Object>();
+        for (ServiceReference old : beforeRanking) {
+            beforeIds.add(old.getProperty(Constants.SERVICE_ID));
+        }
+        Set<Object> rankedIds = new HashSet<Object>();
+        for (ServiceReference newRef : ranked) {
+            rankedIds.add(newRef.getProperty(Constants.SERVICE_ID));
+        }
         // All references that are no more in the set are considered as leaving services.
         for (ServiceReference old : beforeRanking) {
-            if (!ServiceReferenceUtils.containsReferenceById(ranked, old)) {
+            if (!rankedIds.contains(old.getProperty(Constants.SERVICE_ID))) {
                 departures.add(old);
             }
         }
         // All references that are in `references` but not in `beforeRanking` are new services
         for (ServiceReference newRef : ranked) {
-            if (!ServiceReferenceUtils.containsReferenceById(beforeRanking, newRef)) {
+            if (!beforeIds.contains(newRef.getProperty(Constants.SERVICE_ID))) {
                 arrivals.add(newRef);
             }
         }
@@ -682,6 +819,7 @@ public class ServiceReferenceManager implements TrackerCustomizer {
         try {
             m_dependency.acquireWriteLockIfNotHeld();
             initial = m_matchingReferences.remove(reference);
+            forgetTrackingDecisions(reference);
             if (initial != null) {
                 // Case 1
                 onDepartureOfAMatchingService(initial, service);
@@ -713,8 +851,9 @@ public class ServiceReferenceManager implements TrackerCustomizer {
             if (!m_trackingInterceptors.isEmpty()) {
                 ServiceTrackingInterceptor interceptor = m_trackingInterceptors.getLast();
                 if (interceptor != null && interceptor instanceof FilterBasedServiceTrackingInterceptor) {
-                    // Remove it first.
+                    // Remove it first, with the decisions it took.
                     m_trackingInterceptors.removeLast();
+                    m_trackingDecisions.remove(interceptor);
                 }
             }
 
@@ -850,6 +989,8 @@ public class ServiceReferenceManager implements TrackerCustomizer {
         try {
             m_dependency.acquireWriteLockIfNotHeld();
             m_matchingReferences.clear();
+            // An interceptor has changed its mind, cached decisions cannot be trusted anymore.
+            m_trackingDecisions.clear();
             changeset = computeChangesInMatchingServices();
         } finally {
             m_dependency.releaseWriteLockIfHeld();
@@ -944,6 +1085,19 @@ public class ServiceReferenceManager implements TrackerCustomizer {
         }
     }
 
+    /**
+     * A decision taken by a stateless tracking interceptor for a given set of properties.
+     */
+    private static class TrackingDecision {
+        final Map<String, Object> properties;
+        final boolean accepted;
+
+        private TrackingDecision(Map<String, Object> properties, boolean accepted) {
+            this.properties = properties;
+            this.accepted = accepted;
+        }
+    }
+
     private class RankingResult {
         final List<ServiceReference> departures;
         final List<ServiceReference> arrivals;
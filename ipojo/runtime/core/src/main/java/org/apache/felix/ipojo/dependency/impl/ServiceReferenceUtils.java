@@ -25,6 +25,7 @@ import org.osgi.framework.Filter;
 import org.osgi.framework.ServiceReference;
 
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -83,6 +84,98 @@ public class ServiceReferenceUtils {
         return null;
     }
 
+    /**
+     * Gets the position of the reference having the same service.id as the given reference in the given list.
+     * @param references the list of references
+     * @param ref the reference
+     * @return the index of the reference with the same service.id as ref, {@literal -1} if there is no such
+     * reference in the list.
+     */
+    public static int indexOfReferenceById(List<? extends ServiceReference> references, ServiceReference ref) {
+        Object id = ref.getProperty(Constants.SERVICE_ID);
+        for (int i = 0; i < references.size(); i++) {
+            if (references.get(i).getProperty(Constants.SERVICE_ID).equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Inserts a reference in a list sorted according to the given comparator.
+     * The reference is inserted after all the references considered as equal by the comparator, so the result is
+     * the same as appending the reference and sorting the list with a stable sort.
+     * @param references the sorted list of references, modified by this method
+     * @param ref the reference to insert
+     * @param comparator the comparator used to sort the list
+     * @return the index where the reference was inserted
+     */
+    public static int insertSorted(List<ServiceReference> references, ServiceReference ref,
+                                   Comparator<ServiceReference> comparator) {
+        int low = 0;
+        int high = references.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparator.compare(references.get(middle), ref) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        references.add(low, ref);
+        return low;
+    }
+
+    /**
+     * Inserts a reference in a list sorted according to the given comparator.
+     * The reference is inserted among the references considered as equal by the comparator according to the order
+     * of the given matching references, so the result is the same as sorting the matching references with a stable
+     * sort. This is used when a reference that is already part of the matching references is modified.
+     * @param references the sorted list of references, modified by this method
+     * @param ref the reference to insert
+     * @param comparator the comparator used to sort the list
+     * @param matching the matching references, in the order used to sort them
+     * @return the index where the reference was inserted
+     */
+    public static int insertSorted(List<ServiceReference> references, ServiceReference ref,
+                                   Comparator<ServiceReference> comparator,
+                                   List<? extends ServiceReference> matching) {
+        // Find the range of references equal to the inserted one.
+        int low = 0;
+        int high = references.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparator.compare(references.get(middle), ref) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int end = low;
+        high = references.size();
+        while (end < high) {
+            int middle = (end + high) >>> 1;
+            if (comparator.compare(references.get(middle), ref) <= 0) {
+                end = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        int position = end;
+        if (low < end) {
+            int order = indexOfReferenceById(matching, ref);
+            for (int i = low; i < end; i++) {
+                if (indexOfReferenceById(matching, references.get(i)) > order) {
+                    position = i;
+                    break;
+                }
+            }
+        }
+        references.add(position, ref);
+        return position;
+    }
+
     /**
      * Checks whether the two references has the same properties and their value are equals.
      * @param ref1 first reference
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.felix.ipojo.dependency.interceptors;
+
+/**
+ * A tracking interceptor declaring that its decisions only depend on the properties of the reference it receives.
+ *
+ * For a given dependency, two calls to {@link #accept(org.apache.felix.ipojo.util.DependencyModel,
+ * org.osgi.framework.BundleContext, TransformedServiceReference)} with references having the same properties must
+ * return the same answer. This lets the dependency cache the decision per service reference, and skip the
+ * interceptor when the set of matching services is recomputed (for instance because another interceptor arrived or
+ * because the filter changed) while the reference was left untouched.
+ *
+ * Only <em>filtering</em> decisions are cached: if the interceptor transforms the reference, it is called again
+ * every time. Stateless interceptors changing their configuration must still call
+ * {@link org.apache.felix.ipojo.util.DependencyModel#invalidateMatchingServices()}, this discards the cached
+ * decisions.
+ *
+ * @since 1.12.2
+ */
+public interface StatelessServiceTrackingInterceptor extends ServiceTrackingInterceptor {
+
+}
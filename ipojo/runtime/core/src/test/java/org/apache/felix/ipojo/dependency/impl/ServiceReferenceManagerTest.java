@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.felix.ipojo.dependency.impl;
+
+import org.apache.felix.framework.FilterImpl;
+import org.apache.felix.ipojo.ComponentFactory;
+import org.apache.felix.ipojo.ComponentInstance;
+import org.apache.felix.ipojo.util.DependencyModel;
+import org.apache.felix.ipojo.util.Logger;
+import org.apache.felix.ipojo.util.Tracker;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.ServiceReference;
+
+import java.util.Collections;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks the decisions cached for the stateless tracking interceptors.
+ */
+public class ServiceReferenceManagerTest {
+
+    private DependencyModel dependency;
+
+    private ServiceReference reference;
+
+    private ServiceReferenceManager manager;
+
+    @Before
+    public void setup() {
+        ComponentFactory factory = mock(ComponentFactory.class);
+        when(factory.getLogger()).thenReturn(mock(Logger.class));
+        ComponentInstance instance = mock(ComponentInstance.class);
+        when(instance.getFactory()).thenReturn(factory);
+
+        reference = mock(ServiceReference.class);
+        when(reference.getPropertyKeys()).thenReturn(new String[] {"service.id", "foo"});
+        when(reference.getProperty("service.id")).thenReturn(1L);
+        when(reference.getProperty("foo")).thenReturn("bar");
+
+        Tracker tracker = mock(Tracker.class);
+        when(tracker.getServiceReferences()).thenReturn(new ServiceReference[] {reference});
+        when(tracker.getServiceReferencesList()).thenReturn(Collections.singletonList(reference));
+
+        dependency = mock(DependencyModel.class);
+        when(dependency.getComponentInstance()).thenReturn(instance);
+        when(dependency.getTracker()).thenReturn(tracker);
+        when(dependency.match(any(ServiceReference.class))).thenReturn(true);
+
+        manager = new ServiceReferenceManager(dependency, null, null);
+        manager.addedService(reference);
+        assertThat(manager.getSelectedServices()).hasSize(1);
+        verify(dependency, times(1)).match(any(ServiceReference.class));
+    }
+
+    @Test
+    public void testDecisionIsCachedWhilePropertiesAreUnchanged() {
+        manager.modifiedService(reference, null);
+        manager.modifiedService(reference, null);
+        verify(dependency, times(1)).match(any(ServiceReference.class));
+
+        when(reference.getProperty("foo")).thenReturn("baz");
+        manager.modifiedService(reference, null);
+        verify(dependency, times(2)).match(any(ServiceReference.class));
+        assertThat(manager.getSelectedServices()).hasSize(1);
+    }
+
+    @Test
+    public void testDecisionIsDiscardedOnInvalidation() {
+        when(dependency.match(any(ServiceReference.class))).thenReturn(false);
+        manager.invalidateMatchingServices();
+        verify(dependency, times(2)).match(any(ServiceReference.class));
+        assertThat(manager.getSelectedServices()).isEmpty();
+    }
+
+    @Test
+    public void testDecisionIsDiscardedOnDeparture() {
+        manager.removedService(reference, null);
+        manager.addedService(reference);
+        verify(dependency, times(2)).match(any(ServiceReference.class));
+    }
+
+    @Test
+    public void testDecisionIsNotReusedWithANewFilter() throws Exception {
+        manager.setFilter(new FilterImpl("(foo=baz)"), dependency.getTracker());
+        assertThat(manager.getSelectedServices()).isEmpty();
+
+        manager.setFilter(new FilterImpl("(foo=bar)"), dependency.getTracker());
+        assertThat(manager.getSelectedServices()).hasSize(1);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.felix.ipojo.dependency.impl;
+
+import org.apache.felix.ipojo.util.ServiceReferenceRankingComparator;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks the incremental maintenance of sorted service reference lists.
+ */
+public class ServiceReferenceUtilsTest {
+
+    private ServiceReference reference(long id, int ranking) {
+        ServiceReference reference = mock(ServiceReference.class);
+        when(reference.getPropertyKeys()).thenReturn(new String[]{Constants.SERVICE_ID, Constants.SERVICE_RANKING});
+        when(reference.getProperty(Constants.SERVICE_ID)).thenReturn(id);
+        when(reference.getProperty(Constants.SERVICE_RANKING)).thenReturn(ranking);
+        return reference;
+    }
+
+    @Test
+    public void insertSortedMatchesFullSort() {
+        ServiceReferenceRankingComparator comparator = new ServiceReferenceRankingComparator();
+        List<ServiceReference> all = new ArrayList<ServiceReference>();
+        all.add(reference(1, 0));
+        all.add(reference(2, 10));
+        all.add(reference(3, 0));
+        all.add(reference(4, 5));
+        all.add(reference(5, 10));
+
+        List<ServiceReference> incremental = new ArrayList<ServiceReference>();
+        for (ServiceReference reference : all) {
+            ServiceReferenceUtils.insertSorted(incremental, reference, comparator);
+        }
+
+        List<ServiceReference> sorted = new ArrayList<ServiceReference>(all);
+        Collections.sort(sorted, comparator);
+
+        assertThat(incremental).isEqualTo(sorted);
+    }
+
+    @Test
+    public void insertSortedKeepsArrivalOrderOfEqualReferences() {
+        // Only compares the ranking, so references with the same ranking are equal.
+        Comparator<ServiceReference> comparator = new Comparator<ServiceReference>() {
+            public int compare(ServiceReference ref1, ServiceReference ref2) {
+                return (Integer) ref2.getProperty(Constants.SERVICE_RANKING)
+                        - (Integer) ref1.getProperty(Constants.SERVICE_RANKING);
+            }
+        };
+        List<ServiceReference> matching = new ArrayList<ServiceReference>();
+        matching.add(reference(1, 0));
+        matching.add(reference(2, 5));
+        matching.add(reference(3, 0));
+        matching.add(reference(4, 0));
+
+        // Arrivals are appended to the matching references.
+        List<ServiceReference> incremental = new ArrayList<ServiceReference>();
+        for (ServiceReference reference : matching) {
+            ServiceReferenceUtils.insertSorted(incremental, reference, comparator);
+        }
+        List<ServiceReference> sorted = new ArrayList<ServiceReference>(matching);
+        Collections.sort(sorted, comparator);
+        assertThat(incremental).isEqualTo(sorted);
+
+        // A modified reference keeps its place in the matching references.
+        ServiceReference modified = reference(3, 0);
+        matching.set(2, modified);
+        incremental.remove(ServiceReferenceUtils.indexOfReferenceById(incremental, modified));
+        ServiceReferenceUtils.insertSorted(incremental, modified, comparator, matching);
+        sorted = new ArrayList<ServiceReference>(matching);
+        Collections.sort(sorted, comparator);
+        assertThat(incremental).isEqualTo(sorted);
+
+        modified = reference(2, 0);
+        matching.set(1, modified);
+        incremental.remove(ServiceReferenceUtils.indexOfReferenceById(incremental, modified));
+        ServiceReferenceUtils.insertSorted(incremental, modified, comparator, matching);
+        sorted = new ArrayList<ServiceReference>(matching);
+        Collections.sort(sorted, comparator);
+        assertThat(incremental).isEqualTo(sorted);
+    }
+
+    @Test
+    public void indexOfReferenceById() {
+        List<ServiceReference> references = new ArrayList<ServiceReference>();
+        references.add(reference(1, 0));
+        references.add(reference(2, 0));
+
+        assertThat(ServiceReferenceUtils.indexOfReferenceById(references, reference(2, 5))).isEqualTo(1);
+        assertThat(ServiceReferenceUtils.indexOfReferenceById(references, reference(3, 0))).isEqualTo(-1);
+    }
+}
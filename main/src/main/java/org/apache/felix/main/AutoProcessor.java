@@ -18,8 +18,15 @@
  */
 package org.apache.felix.main;
 
+import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.osgi.framework.*;
 import org.osgi.service.startlevel.*;
 
@@ -80,6 +87,19 @@ public class AutoProcessor
      * The property name prefix for the launcher's auto-start property.
     **/
     public static final String AUTO_START_PROP = "felix.auto.start";
+    /**
+     * The property name used to specify the number of threads installing
+     * the auto-deploy and auto-install bundles concurrently. The default is
+     * 1, i.e. bundles are installed one after the other.
+    **/
+    public static final String AUTO_THREADS_PROP = "felix.auto.threads";
+    /**
+     * The property name used to specify whether concurrently installed bundles
+     * are still installed in the configured order, which keeps the assignment
+     * of bundle ids deterministic. In this case only the bundle content is read
+     * concurrently. The default is false.
+    **/
+    public static final String AUTO_ORDERED_PROP = "felix.auto.ordered";
 
     /**
      * Used to instigate auto-deploy directory process and auto-install/auto-start
@@ -169,24 +189,38 @@ public class AutoProcessor
                 }
             }
 
-            // Install bundle JAR files and remember the bundle objects.
-            final List startBundleList = new ArrayList();
+            // Look up the bundles by location, removing them from
+            // the map of installed bundles so the remaining bundles
+            // indicate which bundles may need to be uninstalled.
+            Bundle[] jarBundles = new Bundle[jarList.size()];
+            List installList = new ArrayList();
             for (int i = 0; i < jarList.size(); i++)
             {
-                // Look up the bundle by location, removing it from
-                // the map of installed bundles so the remaining bundles
-                // indicate which bundles may need to be uninstalled.
-                Bundle b = (Bundle) installedBundleMap.remove(
-                    ((File) jarList.get(i)).toURI().toString());
+                String location = ((File) jarList.get(i)).toURI().toString();
+                jarBundles[i] = (Bundle) installedBundleMap.remove(location);
+                if ((jarBundles[i] == null) && actionList.contains(AUTO_DEPLOY_INSTALL_VALUE))
+                {
+                    installList.add(location);
+                }
+            }
+
+            // Install the bundle JAR files not installed yet, which may
+            // happen concurrently.
+            Object[] installed = installBundles(installList, configMap, context);
+
+            // Remember the bundle objects.
+            final List startBundleList = new ArrayList();
+            for (int i = 0, installIdx = 0; i < jarList.size(); i++)
+            {
+                Bundle b = jarBundles[i];
 
                 try
                 {
-                    // If the bundle is not already installed, then install it
-                    // if the 'install' action is present.
+                    // If the bundle is not already installed, then take the
+                    // result of installing it if the 'install' action is present.
                     if ((b == null) && actionList.contains(AUTO_DEPLOY_INSTALL_VALUE))
                     {
-                        b = context.installBundle(
-                            ((File) jarList.get(i)).toURI().toString());
+                        b = getInstalledBundle(installed[installIdx++]);
                     }
                     // If the bundle is already installed, then update it
                     // if the 'update' action is present.
@@ -276,6 +310,8 @@ public class AutoProcessor
         // property name, where "n" is the desired start level for the list
         // of bundles. If no start level is specified, the default start
         // level is assumed.
+        List locations = new ArrayList();
+        List startLevels = new ArrayList();
         for (Iterator i = configMap.keySet().iterator(); i.hasNext(); )
         {
             String key = ((String) i.next()).toLowerCase();
@@ -302,22 +338,32 @@ public class AutoProcessor
                 }
             }
 
-            // Parse and install the bundles associated with the key.
+            // Parse the bundles associated with the key.
             StringTokenizer st = new StringTokenizer((String) configMap.get(key), "\" ", true);
             for (String location = nextLocation(st); location != null; location = nextLocation(st))
             {
-                try
-                {
-                    Bundle b = context.installBundle(location, null);
-                    sl.setBundleStartLevel(b, startLevel);
-                }
-                catch (Exception ex)
-                {
-                    System.err.println("Auto-properties install: " + location + " ("
-                        + ex + ((ex.getCause() != null) ? " - " + ex.getCause() : "") + ")");
+                locations.add(location);
+                startLevels.add(new Integer(startLevel));
+            }
+        }
+
+        // Install the bundles, which may happen concurrently, and then
+        // assign their start levels.
+        Object[] installed = installBundles(locations, configMap, context);
+        for (int i = 0; i < installed.length; i++)
+        {
+            String location = (String) locations.get(i);
+            try
+            {
+                Bundle b = getInstalledBundle(installed[i]);
+                sl.setBundleStartLevel(b, ((Integer) startLevels.get(i)).intValue());
+            }
+            catch (Exception ex)
+            {
+                System.err.println("Auto-properties install: " + location + " ("
+                    + ex + ((ex.getCause() != null) ? " - " + ex.getCause() : "") + ")");
 if (ex.getCause() != null)
     ex.printStackTrace();
-                }
             }
         }
 
@@ -349,6 +395,247 @@ if (ex.getCause() != null)
         }
     }
 
+    /**
+     * <p>
+     * Installs the bundles from the given locations. If the
+     * {@link #AUTO_THREADS_PROP} property asks for more than one thread, the
+     * bundles are installed concurrently so their copies into the bundle cache
+     * overlap, otherwise one after the other. If {@link #AUTO_ORDERED_PROP} is
+     * set, only the bundle content is read concurrently and the bundles are
+     * installed in the given order to keep the bundle ids deterministic.
+     * If the calling thread is interrupted, the bundles which are not being
+     * installed yet are reported as failed, while the outcome of the installs
+     * already in progress is waited for.
+     * </p>
+     * @return An array holding, for each location, the installed bundle or the
+     *         exception thrown while installing it.
+     */
+    private static Object[] installBundles(List locations, Map configMap, final BundleContext context)
+    {
+        Object[] result = new Object[locations.size()];
+
+        // Bundles which are already installed don't need to be read again.
+        List pending = new ArrayList();
+        for (int i = 0; i < result.length; i++)
+        {
+            String location = (String) locations.get(i);
+            result[i] = context.getBundle(location);
+            if (result[i] == null)
+            {
+                pending.add(new Integer(i));
+            }
+        }
+
+        int threads = 1;
+        if (configMap.get(AUTO_THREADS_PROP) != null)
+        {
+            try
+            {
+                threads = Integer.parseInt(configMap.get(AUTO_THREADS_PROP).toString().trim());
+            }
+            catch (NumberFormatException ex)
+            {
+                System.err.println("Invalid property: " + AUTO_THREADS_PROP);
+            }
+        }
+
+        if ((threads <= 1) || (pending.size() <= 1))
+        {
+            for (int i = 0; i < pending.size(); i++)
+            {
+                int idx = ((Integer) pending.get(i)).intValue();
+                result[idx] = install(context, (String) locations.get(idx), null);
+            }
+            return result;
+        }
+
+        boolean ordered = "true".equalsIgnoreCase(String.valueOf(configMap.get(AUTO_ORDERED_PROP)));
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(threads, pending.size()), new ThreadFactory() {
+                private int m_count = 0;
+                public synchronized Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(r, "FelixAutoInstall-" + (++m_count));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        Future[] futures = new Future[pending.size()];
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        try
+        {
+            if (ordered)
+            {
+                // Read ahead a bounded number of bundles while installing
+                // them in order from memory.
+                int window = threads * 2;
+                for (int i = 0; i < futures.length; i++)
+                {
+                    for (int j = i; (j < futures.length) && (j < i + window); j++)
+                    {
+                        if (futures[j] == null)
+                        {
+                            int idx = ((Integer) pending.get(j)).intValue();
+                            futures[j] = executor.submit(new ContentReader((String) locations.get(idx)));
+                        }
+                    }
+                    byte[] content = null;
+                    try
+                    {
+                        content = (byte[]) futures[i].get();
+                    }
+                    catch (ExecutionException ex)
+                    {
+                        // Let the framework report the problem accessing the bundle.
+                    }
+                    futures[i] = null;
+                    int idx = ((Integer) pending.get(i)).intValue();
+                    result[idx] = install(context, (String) locations.get(idx),
+                        (content == null) ? null : new ByteArrayInputStream(content));
+                }
+            }
+            else
+            {
+                for (int i = 0; i < futures.length; i++)
+                {
+                    final String location = (String) locations.get(((Integer) pending.get(i)).intValue());
+                    futures[i] = executor.submit(new Callable() {
+                        public Object call()
+                        {
+                            if (interrupted.get())
+                            {
+                                return null;
+                            }
+                            return install(context, location, null);
+                        }
+                    });
+                }
+                for (int i = 0; i < futures.length; i++)
+                {
+                    result[((Integer) pending.get(i)).intValue()] = futures[i].get();
+                }
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            if (!ordered)
+            {
+                // Installs which did not start yet are skipped, but those in
+                // progress are waited for, since their bundles may be
+                // installed and must be reported as such.
+                interrupted.set(true);
+                for (int i = 0; i < futures.length; i++)
+                {
+                    int idx = ((Integer) pending.get(i)).intValue();
+                    if ((futures[i] != null) && (result[idx] == null))
+                    {
+                        result[idx] = getUninterruptibly(futures[i]);
+                    }
+                }
+            }
+            Thread.currentThread().interrupt();
+            for (int i = 0; i < result.length; i++)
+            {
+                if (result[i] == null)
+                {
+                    result[i] = new BundleException("Interrupted installing bundle: " + locations.get(i), ex);
+                }
+            }
+        }
+        catch (ExecutionException ex)
+        {
+            // Not expected, install() catches all exceptions.
+            throw new RuntimeException(ex.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    private static Object getUninterruptibly(Future future)
+    {
+        while (true)
+        {
+            try
+            {
+                return future.get();
+            }
+            catch (InterruptedException ex)
+            {
+                // Keep waiting, the caller restores the interrupt status.
+            }
+            catch (ExecutionException ex)
+            {
+                // Not expected, install() catches all exceptions.
+                throw new RuntimeException(ex.getCause());
+            }
+        }
+    }
+
+    private static Object install(BundleContext context, String location, InputStream is)
+    {
+        try
+        {
+            return context.installBundle(location, is);
+        }
+        catch (Exception ex)
+        {
+            return ex;
+        }
+    }
+
+    private static Bundle getInstalledBundle(Object installed) throws BundleException
+    {
+        if (installed instanceof BundleException)
+        {
+            throw (BundleException) installed;
+        }
+        else if (installed instanceof RuntimeException)
+        {
+            throw (RuntimeException) installed;
+        }
+        return (Bundle) installed;
+    }
+
+    /**
+     * Reads the content of a bundle location into memory, returning null for
+     * reference: locations, which must not be copied.
+    **/
+    private static class ContentReader implements Callable
+    {
+        private final String m_location;
+
+        ContentReader(String location)
+        {
+            m_location = location;
+        }
+
+        public Object call() throws IOException
+        {
+            if (m_location.startsWith("reference:"))
+            {
+                return null;
+            }
+            InputStream is = new URL(m_location).openStream();
+            try
+            {
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                byte[] buffer = new byte[64 * 1024];
+                for (int len = is.read(buffer); len != -1; len = is.read(buffer))
+                {
+                    os.write(buffer, 0, len);
+                }
+                return os.toByteArray();
+            }
+            finally
+            {
+                is.close();
+            }
+        }
+    }
+
     private static String nextLocation(StringTokenizer st)
     {
         String retVal = null;
@@ -0,0 +1,601 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.metatype.internal;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.metatype.AD;
+import org.apache.felix.metatype.Attribute;
+import org.apache.felix.metatype.Designate;
+import org.apache.felix.metatype.DesignateObject;
+import org.apache.felix.metatype.MetaData;
+import org.apache.felix.metatype.OCD;
+import org.apache.felix.metatype.OptionalAttributes;
+import org.osgi.service.log.LogService;
+import org.osgi.service.metatype.AttributeDefinition;
+
+
+/**
+ * The <code>MetaDataCache</code> class keeps a compact binary copy of the
+ * <code>MetaData</code> parsed from the meta type documents of a bundle in
+ * the data area of the metatype bundle. As long as the bundle has not been
+ * modified and still provides the same documents, the cached copy is used
+ * instead of parsing the XML documents again.
+ * <p>
+ * The cache files are named after the bundle ID and are validated against
+ * the last modification time of the bundle and the URLs of the documents.
+ * Any file which cannot be read is ignored and rewritten on the next store.
+ *
+ * @author <a href="mailto:dev@felix.apache.org">Felix Project Team</a>
+ */
+class MetaDataCache
+{
+
+    /** The name of the directory in the bundle data area */
+    static final String CACHE_DIR = "metatype-cache";
+
+    private static final int MAGIC = 0x4d544443; // MTDC
+
+    private static final int VERSION = 1;
+
+    private static final String SUFFIX = ".cache";
+
+    private final File cacheDir;
+
+
+    /**
+     * Creates a cache storing its files in the given directory.
+     *
+     * @param cacheDir The directory to hold the cache files. If this is
+     *      <code>null</code>, nothing is ever cached.
+     */
+    MetaDataCache( File cacheDir )
+    {
+        this.cacheDir = cacheDir;
+    }
+
+
+    /**
+     * Returns the cached <code>MetaData</code> of the bundle or
+     * <code>null</code> if there is no valid cache entry for the bundle as
+     * it is described by the given last modification time and documents.
+     */
+    List<MetaData> load( long bundleId, long lastModified, List<URL> documents )
+    {
+        final File file = getFile( bundleId );
+        if ( file == null || !file.isFile() )
+        {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+            if ( in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != bundleId
+                || in.readLong() != lastModified )
+            {
+                return null;
+            }
+
+            final int count = in.readInt();
+            if ( count != documents.size() )
+            {
+                return null;
+            }
+            for ( int i = 0; i < count; i++ )
+            {
+                if ( !documents.get( i ).toExternalForm().equals( readString( in ) ) )
+                {
+                    return null;
+                }
+            }
+
+            final List<MetaData> result = new ArrayList<MetaData>();
+            for ( int i = 0; i < count; i++ )
+            {
+                if ( in.readBoolean() )
+                {
+                    MetaData metaData = readMetaData( in );
+                    metaData.setSource( documents.get( i ) );
+                    result.add( metaData );
+                }
+            }
+            return result;
+        }
+        catch ( IOException ioe )
+        {
+            Activator.log( LogService.LOG_WARNING, "load: Ignoring unreadable cache file " + file + " : " + ioe.getMessage() );
+            return null;
+        }
+        finally
+        {
+            close( in );
+        }
+    }
+
+
+    /**
+     * Stores the <code>MetaData</code> parsed from the documents of the bundle.
+     * The <code>metaData</code> list is index aligned with the
+     * <code>documents</code> list; documents which could not be parsed have
+     * a <code>null</code> entry.
+     */
+    void store( long bundleId, long lastModified, List<URL> documents, List<MetaData> metaData )
+    {
+        final File file = getFile( bundleId );
+        if ( file == null || ( !cacheDir.isDirectory() && !cacheDir.mkdirs() ) )
+        {
+            return;
+        }
+
+        final File tmp = new File( cacheDir, bundleId + SUFFIX + ".tmp" );
+        DataOutputStream out = null;
+        try
+        {
+            out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ) );
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            out.writeLong( bundleId );
+            out.writeLong( lastModified );
+            out.writeInt( documents.size() );
+            for ( int i = 0; i < documents.size(); i++ )
+            {
+                writeString( out, documents.get( i ).toExternalForm() );
+            }
+            for ( int i = 0; i < metaData.size(); i++ )
+            {
+                MetaData md = metaData.get( i );
+                out.writeBoolean( md != null );
+                if ( md != null )
+                {
+                    writeMetaData( out, md );
+                }
+            }
+            out.close();
+            out = null;
+
+            if ( !tmp.renameTo( file ) )
+            {
+                // renameTo does not replace existing files on all platforms
+                file.delete();
+                if ( !tmp.renameTo( file ) )
+                {
+                    throw new IOException( "Cannot rename " + tmp + " to " + file );
+                }
+            }
+        }
+        catch ( IOException ioe )
+        {
+            Activator.log( LogService.LOG_WARNING, "store: Cannot write cache file " + file + " : " + ioe.getMessage() );
+            close( out );
+            tmp.delete();
+        }
+    }
+
+
+    /**
+     * Removes the cache entry of the bundle, if any.
+     */
+    void remove( long bundleId )
+    {
+        final File file = getFile( bundleId );
+        if ( file != null )
+        {
+            file.delete();
+        }
+    }
+
+
+    private File getFile( long bundleId )
+    {
+        return ( cacheDir == null ) ? null : new File( cacheDir, bundleId + SUFFIX );
+    }
+
+
+    //---------- MetaData serialization
+
+    private static void writeMetaData( DataOutputStream out, MetaData md ) throws IOException
+    {
+        writeOptionalAttributes( out, md );
+        writeString( out, md.getNamespace() );
+        writeString( out, md.getLocalePrefix() );
+
+        Map ocds = md.getObjectClassDefinitions();
+        out.writeInt( ocds == null ? -1 : ocds.size() );
+        if ( ocds != null )
+        {
+            for ( Iterator oi = ocds.values().iterator(); oi.hasNext(); )
+            {
+                writeOCD( out, ( OCD ) oi.next() );
+            }
+        }
+
+        List designates = md.getDesignates();
+        out.writeInt( designates == null ? -1 : designates.size() );
+        if ( designates != null )
+        {
+            for ( Iterator di = designates.iterator(); di.hasNext(); )
+            {
+                writeDesignate( out, ( Designate ) di.next() );
+            }
+        }
+    }
+
+
+    private static MetaData readMetaData( DataInputStream in ) throws IOException
+    {
+        MetaData md = new MetaData();
+        readOptionalAttributes( in, md );
+        md.setNamespace( readString( in ) );
+        md.setLocalePrefix( readString( in ) );
+
+        int ocds = in.readInt();
+        for ( int i = 0; i < ocds; i++ )
+        {
+            md.addObjectClassDefinition( readOCD( in ) );
+        }
+
+        int designates = in.readInt();
+        for ( int i = 0; i < designates; i++ )
+        {
+            md.addDesignate( readDesignate( in ) );
+        }
+
+        return md;
+    }
+
+
+    private static void writeOCD( DataOutputStream out, OCD ocd ) throws IOException
+    {
+        writeOptionalAttributes( out, ocd );
+        writeString( out, ocd.getID() );
+        writeString( out, ocd.getName() );
+        writeString( out, ocd.getDescription() );
+
+        Map icons = ocd.getIcons();
+        out.writeInt( icons == null ? -1 : icons.size() );
+        if ( icons != null )
+        {
+            for ( Iterator ii = icons.entrySet().iterator(); ii.hasNext(); )
+            {
+                Map.Entry icon = ( Map.Entry ) ii.next();
+                out.writeInt( ( ( Integer ) icon.getKey() ).intValue() );
+                writeString( out, ( String ) icon.getValue() );
+            }
+        }
+
+        Map ads = ocd.getAttributeDefinitions();
+        out.writeInt( ads == null ? -1 : ads.size() );
+        if ( ads != null )
+        {
+            for ( Iterator ai = ads.values().iterator(); ai.hasNext(); )
+            {
+                writeAD( out, ( AD ) ai.next() );
+            }
+        }
+    }
+
+
+    private static OCD readOCD( DataInputStream in ) throws IOException
+    {
+        OCD ocd = new OCD();
+        readOptionalAttributes( in, ocd );
+        ocd.setId( readString( in ) );
+        ocd.setName( readString( in ) );
+        ocd.setDescription( readString( in ) );
+
+        int icons = in.readInt();
+        for ( int i = 0; i < icons; i++ )
+        {
+            Integer size = new Integer( in.readInt() );
+            ocd.addIcon( size, readString( in ) );
+        }
+
+        int ads = in.readInt();
+        for ( int i = 0; i < ads; i++ )
+        {
+            ocd.addAttributeDefinition( readAD( in ) );
+        }
+
+        return ocd;
+    }
+
+
+    private static void writeAD( DataOutputStream out, AD ad ) throws IOException
+    {
+        writeOptionalAttributes( out, ad );
+        writeString( out, ad.getID() );
+        writeString( out, ad.getName() );
+        writeString( out, ad.getDescription() );
+        writeString( out, toTypeString( ad.getType() ) );
+        out.writeInt( ad.getCardinality() );
+        writeString( out, ad.getMin() );
+        writeString( out, ad.getMax() );
+        out.writeBoolean( ad.isRequired() );
+        writeStrings( out, ad.getOptionValues() );
+        writeStrings( out, ad.getOptionLabels() );
+        writeStrings( out, ad.getDefaultValue() );
+    }
+
+
+    private static AD readAD( DataInputStream in ) throws IOException
+    {
+        CachedAD ad = new CachedAD();
+        readOptionalAttributes( in, ad );
+        ad.setID( readString( in ) );
+        ad.setName( readString( in ) );
+        ad.setDescription( readString( in ) );
+        ad.setType( readString( in ) );
+        ad.setCardinality( in.readInt() );
+        ad.setMin( readString( in ) );
+        ad.setMax( readString( in ) );
+        ad.setRequired( in.readBoolean() );
+
+        String[] values = readStrings( in );
+        String[] labels = readStrings( in );
+        Map options = new LinkedHashMap();
+        if ( values != null && labels != null )
+        {
+            for ( int i = 0; i < values.length && i < labels.length; i++ )
+            {
+                options.put( values[i], labels[i] );
+            }
+        }
+        ad.setOptions( options );
+
+        // set the default value last, as done by the MetaDataReader (FELIX-3884, FELIX-4665)
+        ad.restoreDefaultValue( readStrings( in ) );
+
+        return ad;
+    }
+
+
+    private static void writeDesignate( DataOutputStream out, Designate designate ) throws IOException
+    {
+        writeOptionalAttributes( out, designate );
+        writeString( out, designate.getPid() );
+        writeString( out, designate.getFactoryPid() );
+        writeString( out, designate.getBundleLocation() );
+        out.writeBoolean( designate.isOptional() );
+        out.writeBoolean( designate.isMerge() );
+
+        DesignateObject object = designate.getObject();
+        out.writeBoolean( object != null );
+        if ( object != null )
+        {
+            writeOptionalAttributes( out, object );
+            writeString( out, object.getOcdRef() );
+
+            List attributes = object.getAttributes();
+            out.writeInt( attributes == null ? -1 : attributes.size() );
+            if ( attributes != null )
+            {
+                for ( Iterator ai = attributes.iterator(); ai.hasNext(); )
+                {
+                    Attribute attribute = ( Attribute ) ai.next();
+                    writeOptionalAttributes( out, attribute );
+                    writeString( out, attribute.getAdRef() );
+                    writeStrings( out, attribute.getContent() );
+                }
+            }
+        }
+    }
+
+
+    private static Designate readDesignate( DataInputStream in ) throws IOException
+    {
+        Designate designate = new Designate();
+        readOptionalAttributes( in, designate );
+        designate.setPid( readString( in ) );
+        designate.setFactoryPid( readString( in ) );
+        designate.setBundleLocation( readString( in ) );
+        designate.setOptional( in.readBoolean() );
+        designate.setMerge( in.readBoolean() );
+
+        if ( in.readBoolean() )
+        {
+            DesignateObject object = new DesignateObject();
+            readOptionalAttributes( in, object );
+            object.setOcdRef( readString( in ) );
+
+            int attributes = in.readInt();
+            for ( int i = 0; i < attributes; i++ )
+            {
+                Attribute attribute = new Attribute();
+                readOptionalAttributes( in, attribute );
+                attribute.setAdRef( readString( in ) );
+                attribute.addContent( readStrings( in ) );
+                object.addAttribute( attribute );
+            }
+
+            designate.setObject( object );
+        }
+
+        return designate;
+    }
+
+
+    private static void writeOptionalAttributes( DataOutputStream out, OptionalAttributes attrs ) throws IOException
+    {
+        Map map = attrs.getOptionalAttributes();
+        out.writeInt( map == null ? -1 : map.size() );
+        if ( map != null )
+        {
+            for ( Iterator ei = map.entrySet().iterator(); ei.hasNext(); )
+            {
+                Map.Entry entry = ( Map.Entry ) ei.next();
+                writeString( out, ( String ) entry.getKey() );
+                writeString( out, ( String ) entry.getValue() );
+            }
+        }
+    }
+
+
+    private static void readOptionalAttributes( DataInputStream in, OptionalAttributes attrs ) throws IOException
+    {
+        int size = in.readInt();
+        for ( int i = 0; i < size; i++ )
+        {
+            attrs.addOptionalAttribute( readString( in ), readString( in ) );
+        }
+    }
+
+
+    private static void writeStrings( DataOutputStream out, String[] values ) throws IOException
+    {
+        out.writeInt( values == null ? -1 : values.length );
+        if ( values != null )
+        {
+            for ( int i = 0; i < values.length; i++ )
+            {
+                writeString( out, values[i] );
+            }
+        }
+    }
+
+
+    private static String[] readStrings( DataInputStream in ) throws IOException
+    {
+        int length = in.readInt();
+        if ( length < 0 )
+        {
+            return null;
+        }
+
+        String[] values = new String[length];
+        for ( int i = 0; i < length; i++ )
+        {
+            values[i] = readString( in );
+        }
+        return values;
+    }
+
+
+    /**
+     * Writes the string as a length prefixed UTF-8 byte sequence. Unlike
+     * <code>writeUTF</code> this supports <code>null</code> as well as
+     * descriptions longer than 64k.
+     */
+    private static void writeString( DataOutputStream out, String value ) throws IOException
+    {
+        if ( value == null )
+        {
+            out.writeInt( -1 );
+        }
+        else
+        {
+            byte[] bytes = value.getBytes( "UTF-8" );
+            out.writeInt( bytes.length );
+            out.write( bytes );
+        }
+    }
+
+
+    private static String readString( DataInputStream in ) throws IOException
+    {
+        int length = in.readInt();
+        if ( length < 0 )
+        {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully( bytes );
+        return new String( bytes, "UTF-8" );
+    }
+
+
+    /**
+     * Returns the type name understood by {@link AD#toType(String)}.
+     */
+    private static String toTypeString( int type )
+    {
+        switch ( type )
+        {
+            case AttributeDefinition.LONG:
+                return "Long";
+            case AttributeDefinition.DOUBLE:
+                return "Double";
+            case AttributeDefinition.FLOAT:
+                return "Float";
+            case AttributeDefinition.INTEGER:
+                return "Integer";
+            case AttributeDefinition.BYTE:
+                return "Byte";
+            case AttributeDefinition.CHARACTER:
+                return "Character";
+            case AttributeDefinition.BOOLEAN:
+                return "Boolean";
+            case AttributeDefinition.SHORT:
+                return "Short";
+            case AttributeDefinition.PASSWORD:
+                return "Password";
+            case AttributeDefinition.STRING:
+            default:
+                return "String";
+        }
+    }
+
+
+    private static void close( Closeable closeable )
+    {
+        if ( closeable != null )
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch ( IOException ignore )
+            {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * The <code>CachedAD</code> restores the already validated default
+     * values without splitting and unescaping them again.
+     */
+    private static class CachedAD extends AD
+    {
+        void restoreDefaultValue( String[] values )
+        {
+            if ( values != null )
+            {
+                setDefaultValue( values, Math.abs( getCardinality() ) );
+            }
+        }
+    }
+}
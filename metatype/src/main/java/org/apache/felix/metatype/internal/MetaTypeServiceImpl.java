@@ -22,7 +22,11 @@ package org.apache.felix.metatype.internal;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -51,8 +55,29 @@ import org.osgi.service.metatype.MetaTypeService;
 class MetaTypeServiceImpl implements MetaTypeService, SynchronousBundleListener
 {
 
+    /**
+     * The name of the framework property defining the number of
+     * <code>MetaTypeInformation</code> objects strongly held in memory (value
+     * is "felix.metatype.cache.size"). The default is
+     * {@link #DEFAULT_CACHE_SIZE}, a value of zero or less only retains
+     * softly referenced objects.
+     */
+    static final String PROP_CACHE_SIZE = "felix.metatype.cache.size";
+
+    static final int DEFAULT_CACHE_SIZE = 50;
+
     private final Map<Long, SoftReference<MetaTypeInformationImpl>> bundleMetaTypeInformation;
 
+    /**
+     * The most recently used <code>MetaTypeInformation</code> objects. These
+     * are kept from being reclaimed by the garbage collector, all others are
+     * only softly referenced in {@link #bundleMetaTypeInformation} and are
+     * restored from the {@link #metaDataCache} once reclaimed.
+     */
+    private final Map<Long, MetaTypeInformationImpl> recentlyUsed;
+
+    private final MetaDataCache metaDataCache;
+
     private final ManagedServiceTracker managedServiceTracker;
 
     private final MetaTypeProviderTracker providerTracker;
@@ -66,6 +91,8 @@ class MetaTypeServiceImpl implements MetaTypeService, SynchronousBundleListener
     MetaTypeServiceImpl( BundleContext bundleContext )
     {
         this.bundleMetaTypeInformation = new ConcurrentHashMap<Long, SoftReference<MetaTypeInformationImpl>>();
+        this.recentlyUsed = new LruMap( getCacheSize( bundleContext ) );
+        this.metaDataCache = new MetaDataCache( bundleContext.getDataFile( MetaDataCache.CACHE_DIR ) );
 
         bundleContext.addBundleListener( this );
 
@@ -91,6 +118,10 @@ class MetaTypeServiceImpl implements MetaTypeService, SynchronousBundleListener
         this.providerTracker.close();
         this.managedServiceTracker.close();
         this.bundleMetaTypeInformation.clear();
+        synchronized ( this.recentlyUsed )
+        {
+            this.recentlyUsed.clear();
+        }
     }
 
 
@@ -98,6 +129,11 @@ class MetaTypeServiceImpl implements MetaTypeService, SynchronousBundleListener
     {
         if ( event.getType() == BundleEvent.STOPPING )
         {
+            synchronized ( this.recentlyUsed )
+            {
+                this.recentlyUsed.remove( new Long( event.getBundle().getBundleId() ) );
+            }
+
             SoftReference<MetaTypeInformationImpl> mtir = this.bundleMetaTypeInformation.remove( new Long( event.getBundle()
                 .getBundleId() ) );
             if ( mtir != null )
@@ -109,6 +145,10 @@ class MetaTypeServiceImpl implements MetaTypeService, SynchronousBundleListener
                 }
             }
         }
+        else if ( event.getType() == BundleEvent.UNINSTALLED )
+        {
+            this.metaDataCache.remove( event.getBundle().getBundleId() );
+        }
     }
 
 
@@ -173,12 +213,27 @@ class MetaTypeServiceImpl implements MetaTypeService, SynchronousBundleListener
         }
 
         MetaTypeInformationImpl cmti = new MetaTypeInformationImpl( bundle );
-        while ( docs.hasMoreElements() )
+
+        // use the cached documents unless the bundle has changed since
+        final List<URL> documents = Collections.list( docs );
+        final List<MetaData> cached = this.metaDataCache.load( bundle.getBundleId(), bundle.getLastModified(), documents );
+        if ( cached != null )
         {
-            URL doc = docs.nextElement();
+            for ( MetaData metaData : cached )
+            {
+                cmti.addMetaData( metaData );
+            }
+            return cmti;
+        }
+
+        final List<MetaData> parsed = new ArrayList<MetaData>( documents.size() );
+        boolean complete = true;
+        for ( URL doc : documents )
+        {
+            MetaData metaData = null;
             try
             {
-                MetaData metaData = reader.parse( doc );
+                metaData = reader.parse( doc );
                 if ( metaData != null )
                 {
                     cmti.addMetaData( metaData );
@@ -187,7 +242,15 @@ class MetaTypeServiceImpl implements MetaTypeService, SynchronousBundleListener
             catch ( IOException ioe )
             {
                 Activator.log( LogService.LOG_ERROR, "fromDocuments: Error accessing document " + doc + " : " + ioe.getMessage(), null );
+                complete = false;
             }
+            parsed.add( metaData );
+        }
+
+        // don't cache failures, which may be transient
+        if ( complete )
+        {
+            this.metaDataCache.store( bundle.getBundleId(), bundle.getLastModified(), documents, parsed );
         }
         return cmti;
     }
@@ -292,14 +355,71 @@ class MetaTypeServiceImpl implements MetaTypeService, SynchronousBundleListener
             }
         }
 
-        this.bundleMetaTypeInformation.put( new Long( bundle.getBundleId() ),
-            new SoftReference<MetaTypeInformationImpl>( mti ) );
+        final Long bundleId = new Long( bundle.getBundleId() );
+        this.bundleMetaTypeInformation.put( bundleId, new SoftReference<MetaTypeInformationImpl>( mti ) );
+        synchronized ( this.recentlyUsed )
+        {
+            this.recentlyUsed.put( bundleId, mti );
+        }
     }
 
 
     private MetaTypeInformationImpl getMetaTypeInformationInternal( final Bundle bundle )
     {
-        SoftReference<MetaTypeInformationImpl> mtir = this.bundleMetaTypeInformation.get( new Long( bundle.getBundleId() ) );
-        return ( mtir == null ) ? null : mtir.get();
+        final Long bundleId = new Long( bundle.getBundleId() );
+        SoftReference<MetaTypeInformationImpl> mtir = this.bundleMetaTypeInformation.get( bundleId );
+        MetaTypeInformationImpl mti = ( mtir == null ) ? null : mtir.get();
+        if ( mti != null )
+        {
+            // refresh the access order
+            synchronized ( this.recentlyUsed )
+            {
+                this.recentlyUsed.put( bundleId, mti );
+            }
+        }
+        return mti;
+    }
+
+
+    private static int getCacheSize( final BundleContext bundleContext )
+    {
+        final String value = bundleContext.getProperty( PROP_CACHE_SIZE );
+        if ( value != null )
+        {
+            try
+            {
+                return Integer.parseInt( value.trim() );
+            }
+            catch ( NumberFormatException nfe )
+            {
+                Activator.log( LogService.LOG_WARNING, "Ignoring invalid " + PROP_CACHE_SIZE + " value " + value );
+            }
+        }
+        return DEFAULT_CACHE_SIZE;
+    }
+
+    /**
+     * The <code>LruMap</code> is an access ordered map dropping the least
+     * recently used entry once the maximum size is exceeded.
+     */
+    private static class LruMap extends LinkedHashMap<Long, MetaTypeInformationImpl>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+
+        LruMap( final int maxSize )
+        {
+            super( 16, 0.75f, true );
+            this.maxSize = maxSize;
+        }
+
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<Long, MetaTypeInformationImpl> eldest )
+        {
+            return size() > maxSize;
+        }
     }
 }
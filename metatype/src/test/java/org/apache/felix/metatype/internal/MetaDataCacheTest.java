@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.metatype.internal;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.felix.metatype.AD;
+import org.apache.felix.metatype.Attribute;
+import org.apache.felix.metatype.Designate;
+import org.apache.felix.metatype.MetaData;
+import org.apache.felix.metatype.MetaDataReader;
+import org.apache.felix.metatype.OCD;
+import org.osgi.service.metatype.AttributeDefinition;
+
+import junit.framework.TestCase;
+
+
+/**
+ * The <code>MetaDataCacheTest</code> class tests the {@link MetaDataCache}.
+ *
+ * @author <a href="mailto:dev@felix.apache.org">Felix Project Team</a>
+ */
+public class MetaDataCacheTest extends TestCase
+{
+
+    private static final String DOCUMENT = "<metatype:MetaData xmlns:metatype=\"http://www.osgi.org/xmlns/metatype/v1.2.0\" localization=\"OSGI-INF/l10n/test\" vendor=\"Apache\">"
+        + "<OCD id=\"ocd1\" name=\"%ocd.name\" description=\"Test OCD\">"
+        + "<AD id=\"size\" type=\"Integer\" cardinality=\"3\" min=\"1\" max=\"10\" default=\"2,3\" />"
+        + "<AD id=\"mode\" type=\"String\" default=\"b\" required=\"false\">"
+        + "<Option value=\"a\" label=\"A\" /><Option value=\"b\" label=\"B\" /></AD>"
+        + "<AD id=\"text\" type=\"String\" default=\"x\\, y\" />"
+        + "<Icon resource=\"icon.png\" size=\"16\" />"
+        + "</OCD>"
+        + "<Designate pid=\"pid1\" bundle=\"*\"><Object ocdref=\"ocd1\"><Attribute adref=\"size\" content=\"4,5\" /></Object></Designate>"
+        + "<Designate factoryPid=\"factory1\" optional=\"true\"><Object ocdref=\"ocd1\" /></Designate>"
+        + "</metatype:MetaData>";
+
+    private File cacheDir;
+
+    private MetaDataCache cache;
+
+    private List<URL> documents;
+
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        cacheDir = File.createTempFile( "metatype", ".cache" );
+        cacheDir.delete();
+        cache = new MetaDataCache( cacheDir );
+        documents = Collections.singletonList( new URL( "file:/OSGI-INF/metatype/test.xml" ) );
+    }
+
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        File[] files = cacheDir.listFiles();
+        if ( files != null )
+        {
+            for ( int i = 0; i < files.length; i++ )
+            {
+                files[i].delete();
+            }
+        }
+        cacheDir.delete();
+
+        super.tearDown();
+    }
+
+
+    public void testRoundTrip() throws IOException
+    {
+        MetaData original = parse();
+        cache.store( 5, 1000, documents, Collections.singletonList( original ) );
+
+        List<MetaData> loaded = cache.load( 5, 1000, documents );
+        assertNotNull( loaded );
+        assertEquals( 1, loaded.size() );
+
+        MetaData md = loaded.get( 0 );
+        assertEquals( original.getNamespace(), md.getNamespace() );
+        assertEquals( "OSGI-INF/l10n/test", md.getLocalePrefix() );
+        assertEquals( "Apache", md.getOptionalAttributes().get( "vendor" ) );
+        assertEquals( documents.get( 0 ), md.getSource() );
+
+        OCD ocd = ( OCD ) md.getObjectClassDefinitions().get( "ocd1" );
+        assertNotNull( ocd );
+        assertSame( md, ocd.getMetadata() );
+        assertEquals( "%ocd.name", ocd.getName() );
+        assertEquals( "Test OCD", ocd.getDescription() );
+        assertEquals( "icon.png", ocd.getIcons().get( new Integer( 16 ) ) );
+        assertEquals( Arrays.asList( new Object[] { "size", "mode", "text" } ),
+            Arrays.asList( ocd.getAttributeDefinitions().keySet().toArray() ) );
+
+        AD size = ( AD ) ocd.getAttributeDefinitions().get( "size" );
+        assertEquals( AttributeDefinition.INTEGER, size.getType() );
+        assertEquals( 3, size.getCardinality() );
+        assertEquals( "1", size.getMin() );
+        assertEquals( "10", size.getMax() );
+        assertTrue( size.isRequired() );
+        assertTrue( Arrays.equals( new String[] { "2", "3" }, size.getDefaultValue() ) );
+
+        AD mode = ( AD ) ocd.getAttributeDefinitions().get( "mode" );
+        assertFalse( mode.isRequired() );
+        assertTrue( Arrays.equals( new String[] { "a", "b" }, mode.getOptionValues() ) );
+        assertTrue( Arrays.equals( new String[] { "A", "B" }, mode.getOptionLabels() ) );
+        assertTrue( Arrays.equals( new String[] { "b" }, mode.getDefaultValue() ) );
+
+        AD text = ( AD ) ocd.getAttributeDefinitions().get( "text" );
+        assertTrue( Arrays.equals( new String[] { "x, y" }, text.getDefaultValue() ) );
+
+        List designates = md.getDesignates();
+        assertEquals( 2, designates.size() );
+
+        Designate d1 = ( Designate ) designates.get( 0 );
+        assertEquals( "pid1", d1.getPid() );
+        assertNull( d1.getFactoryPid() );
+        assertEquals( "*", d1.getBundleLocation() );
+        assertEquals( "ocd1", d1.getObject().getOcdRef() );
+        Attribute attr = ( Attribute ) d1.getObject().getAttributes().get( 0 );
+        assertEquals( "size", attr.getAdRef() );
+        assertTrue( Arrays.equals( new String[] { "4", "5" }, attr.getContent() ) );
+
+        Designate d2 = ( Designate ) designates.get( 1 );
+        assertEquals( "factory1", d2.getFactoryPid() );
+        assertTrue( d2.isOptional() );
+        assertNull( d2.getObject().getAttributes() );
+    }
+
+
+    public void testModifiedBundle() throws IOException
+    {
+        cache.store( 5, 1000, documents, Collections.singletonList( parse() ) );
+
+        assertNull( cache.load( 5, 2000, documents ) );
+        assertNull( cache.load( 6, 1000, documents ) );
+        assertNull( cache.load( 5, 1000, Collections.singletonList( new URL( "file:/OSGI-INF/metatype/other.xml" ) ) ) );
+    }
+
+
+    public void testUnparseableDocument() throws IOException
+    {
+        cache.store( 5, 1000, documents, Collections.singletonList( ( MetaData ) null ) );
+
+        List<MetaData> loaded = cache.load( 5, 1000, documents );
+        assertNotNull( loaded );
+        assertTrue( loaded.isEmpty() );
+    }
+
+
+    public void testRemove() throws IOException
+    {
+        cache.store( 5, 1000, documents, Collections.singletonList( parse() ) );
+        cache.remove( 5 );
+
+        assertNull( cache.load( 5, 1000, documents ) );
+    }
+
+
+    public void testNoCacheDirectory() throws IOException
+    {
+        MetaDataCache noCache = new MetaDataCache( null );
+        noCache.store( 5, 1000, documents, Collections.singletonList( parse() ) );
+
+        assertNull( noCache.load( 5, 1000, documents ) );
+    }
+
+
+    private MetaData parse() throws IOException
+    {
+        return new MetaDataReader().parse( new ByteArrayInputStream( DOCUMENT.getBytes( "UTF-8" ) ) );
+    }
+}
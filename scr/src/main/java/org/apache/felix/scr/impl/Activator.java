@@ -218,6 +218,7 @@ public class Activator extends AbstractExtender
                 runtime,
                 m_componentRegistry.getServiceRegistrationProperties() );
         m_componentRegistry.setRegistration(m_runtime_reg);
+        m_componentRegistry.getChangeNotifier().start(m_context);
 
         // log SCR startup
         logger.log(Level.INFO, " Version = {0}",
@@ -425,6 +426,7 @@ public class Activator extends AbstractExtender
         // dispose component registry
         if ( m_componentRegistry != null )
         {
+            m_componentRegistry.getChangeNotifier().stop();
             m_componentRegistry = null;
         }
 
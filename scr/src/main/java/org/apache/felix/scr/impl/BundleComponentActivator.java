@@ -797,6 +797,11 @@ public class BundleComponentActivator implements ComponentActivator
         this.m_componentRegistry.updateChangeCount();
     }
 
+    @Override
+    public void componentStateChanged(final AbstractComponentManager<?> manager) {
+        this.m_componentRegistry.componentStateChanged(manager);
+    }
+
     @Override
     public ServiceReference<?> getTrueCondition()
     {
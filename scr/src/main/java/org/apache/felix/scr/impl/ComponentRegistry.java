@@ -49,6 +49,9 @@ import org.apache.felix.scr.impl.manager.RegionConfigurationSupport;
 import org.apache.felix.scr.impl.manager.ScrConfiguration;
 import org.apache.felix.scr.impl.metadata.ComponentMetadata;
 import org.apache.felix.scr.impl.metadata.TargetedPID;
+import org.apache.felix.scr.impl.runtime.ComponentChangeNotifier;
+import org.apache.felix.scr.info.ComponentChange;
+import org.apache.felix.scr.info.ComponentChangeListener;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
@@ -56,6 +59,7 @@ import org.osgi.service.cm.ConfigurationAdmin;
 import org.osgi.service.component.ComponentConstants;
 import org.osgi.service.component.ComponentException;
 import org.osgi.service.component.runtime.ServiceComponentRuntime;
+import org.osgi.service.component.runtime.dto.ComponentConfigurationDTO;
 
 
 /**
@@ -135,12 +139,15 @@ public class ComponentRegistry
 
     private final UpdateChangeCountProperty m_updateChangeCountPropertyTask;
 
+    private final ComponentChangeNotifier m_changeNotifier;
+
     public ComponentRegistry(final ScrConfiguration scrConfiguration, final ScrLogger logger, final ScheduledExecutorService componentActor )
     {
         m_configuration = scrConfiguration;
         m_updateChangeCountPropertyTask = new UpdateChangeCountProperty(m_configuration.serviceChangecountTimeout(), logger, componentActor);
         m_logger = logger;
         m_componentActor = componentActor;
+        m_changeNotifier = new ComponentChangeNotifier(logger);
         m_componentHoldersByName = new HashMap<>();
         m_componentHoldersByPid = new HashMap<>();
         m_componentsById = new HashMap<>();
@@ -298,7 +305,12 @@ public class ComponentRegistry
                 set.add( componentHolder );
             }
         }
-        this.updateChangeCount();
+        final long generation = m_updateChangeCountPropertyTask.updateChangeCount();
+        if ( m_changeNotifier.hasListeners() )
+        {
+            m_changeNotifier.fire(new ComponentChange(generation, ComponentChange.Type.DESCRIPTION_ADDED,
+                key.getBundleId(), key.getComponentName(), -1, -1));
+        }
   }
 
     /**
@@ -441,7 +453,12 @@ public class ComponentRegistry
                     }
                 }
             }
-            this.updateChangeCount();
+            final long generation = m_updateChangeCountPropertyTask.updateChangeCount();
+            if ( m_changeNotifier.hasListeners() )
+            {
+                m_changeNotifier.fire(new ComponentChange(generation, ComponentChange.Type.DESCRIPTION_REMOVED,
+                    key.getBundleId(), key.getComponentName(), -1, -1));
+            }
         }
     }
 
@@ -724,6 +741,43 @@ public class ComponentRegistry
         m_updateChangeCountPropertyTask.updateChangeCount();
     }
 
+    /**
+     * Inform about a state change of a component configuration. This updates
+     * the change count and informs the {@link ComponentChangeListener}s.
+     * @param manager The component manager
+     */
+    public void componentStateChanged(final AbstractComponentManager<?> manager)
+    {
+        final long generation = m_updateChangeCountPropertyTask.updateChangeCount();
+        if ( m_changeNotifier.hasListeners() )
+        {
+            final Bundle bundle = manager.getBundle();
+            final int state = manager.getFailureReason() != null
+                    ? ComponentConfigurationDTO.FAILED_ACTIVATION : manager.getSpecState();
+            m_changeNotifier.fire(new ComponentChange(generation, ComponentChange.Type.CONFIGURATION_CHANGED,
+                bundle == null ? -1 : bundle.getBundleId(), manager.getComponentMetadata().getName(),
+                manager.getId(), state));
+        }
+    }
+
+    /**
+     * The current change count, incremented with every change of the components.
+     * @return The change count
+     */
+    public long getChangeCount()
+    {
+        return m_updateChangeCountPropertyTask.getChangeCount();
+    }
+
+    /**
+     * The notifier informing the {@link ComponentChangeListener}s
+     * @return The notifier
+     */
+    public ComponentChangeNotifier getChangeNotifier()
+    {
+        return m_changeNotifier;
+    }
+
     static class UpdateChangeCountProperty implements Runnable {
         // TODO 1 seems really low?  
         private static final long MIN_ALLOWED_DELAY = 1;
@@ -768,9 +822,14 @@ public class ComponentRegistry
             return props;
         }
 
-        public void updateChangeCount() {
-            this.changeCount.incrementAndGet();
+        public long updateChangeCount() {
+            final long value = this.changeCount.incrementAndGet();
             schedule();
+            return value;
+        }
+
+        long getChangeCount() {
+            return this.changeCount.get();
         }
         synchronized void schedule()
         {
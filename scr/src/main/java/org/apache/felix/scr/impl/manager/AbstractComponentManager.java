@@ -1463,7 +1463,7 @@ public abstract class AbstractComponentManager<S> implements ComponentManager<S>
             {
                 this.failureReason = null;
             }
-            m_container.getActivator().updateChangeCount();
+            m_container.getActivator().componentStateChanged(this);
         }
         else
         {
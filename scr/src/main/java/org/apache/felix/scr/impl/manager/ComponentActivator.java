@@ -60,5 +60,8 @@ public interface ComponentActivator extends ExtendedServiceListenerContext<Exten
     /** Inform about any change in the state of the components. */
     void updateChangeCount();
 
+    /** Inform about a change in the state of a component configuration. */
+    void componentStateChanged(AbstractComponentManager<?> manager);
+
     ServiceReference<?> getTrueCondition();
 }
@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.felix.scr.impl.logger.InternalLogger.Level;
+import org.apache.felix.scr.impl.logger.ScrLogger;
+import org.apache.felix.scr.info.ComponentChange;
+import org.apache.felix.scr.info.ComponentChangeListener;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Delivers {@link ComponentChange}s to the {@link ComponentChangeListener}
+ * services (whiteboard pattern).
+ * <p>
+ * Changes are queued by the thread changing a component and delivered on
+ * a dedicated thread, so a slow listener does not delay the component actor.
+ * All changes queued until the delivery task runs are handed to the listeners
+ * as one batch. If no listener is registered,
+ * {@link #hasListeners()} returns {@code false} and callers should not
+ * create changes at all.
+ */
+public class ComponentChangeNotifier implements ServiceListener
+{
+    private static final String FILTER = "(objectClass=" + ComponentChangeListener.class.getName() + ")";
+
+    private final ScrLogger logger;
+
+    private final Executor executor;
+
+    /** The executor created by this notifier, shut down on {@link #stop()}. */
+    private final ExecutorService ownExecutor;
+
+    private final Map<ServiceReference<?>, ComponentChangeListener> listeners = new ConcurrentHashMap<>();
+
+    private final ConcurrentLinkedQueue<ComponentChange> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private volatile BundleContext context;
+
+    public ComponentChangeNotifier(final ScrLogger logger)
+    {
+        this.logger = logger;
+        this.ownExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "SCR Component Change Delivery");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor = this.ownExecutor;
+    }
+
+    ComponentChangeNotifier(final ScrLogger logger, final Executor executor)
+    {
+        this.logger = logger;
+        this.ownExecutor = null;
+        this.executor = executor;
+    }
+
+    /**
+     * Start tracking listener services
+     * @param bundleContext The bundle context used to get the listeners
+     */
+    public void start(final BundleContext bundleContext)
+    {
+        this.context = bundleContext;
+        try
+        {
+            bundleContext.addServiceListener(this, FILTER);
+            final ServiceReference<?>[] refs = bundleContext.getServiceReferences(ComponentChangeListener.class.getName(), null);
+            if ( refs != null )
+            {
+                for(final ServiceReference<?> ref : refs)
+                {
+                    addListener(ref);
+                }
+            }
+        }
+        catch ( final InvalidSyntaxException ise )
+        {
+            // can't happen, the filter is constant
+        }
+    }
+
+    /**
+     * Stop tracking listener services and release them, pending changes are discarded.
+     */
+    public void stop()
+    {
+        final BundleContext bundleContext = this.context;
+        if ( bundleContext != null )
+        {
+            try
+            {
+                bundleContext.removeServiceListener(this);
+            }
+            catch ( final IllegalStateException ise )
+            {
+                // bundle context is already invalid
+            }
+        }
+        for(final ServiceReference<?> ref : new ArrayList<>(listeners.keySet()))
+        {
+            removeListener(ref);
+        }
+        this.context = null;
+        pending.clear();
+        if ( ownExecutor != null )
+        {
+            ownExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Whether at least one listener is registered.
+     * @return {@code true} if changes are delivered
+     */
+    public boolean hasListeners()
+    {
+        return !listeners.isEmpty();
+    }
+
+    /**
+     * Queue a change for delivery
+     * @param change The change
+     */
+    public void fire(final ComponentChange change)
+    {
+        if ( !hasListeners() )
+        {
+            return;
+        }
+        pending.add(change);
+        if ( scheduled.compareAndSet(false, true) )
+        {
+            try
+            {
+                executor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        deliver();
+                    }
+
+                    @Override
+                    public String toString()
+                    {
+                        return "Deliver component changes";
+                    }
+                });
+            }
+            catch ( final RejectedExecutionException ree )
+            {
+                // shutting down
+                scheduled.set(false);
+                pending.clear();
+            }
+        }
+    }
+
+    private void deliver()
+    {
+        scheduled.set(false);
+        final List<ComponentChange> batch = new ArrayList<>();
+        ComponentChange change;
+        while ( (change = pending.poll()) != null )
+        {
+            batch.add(change);
+        }
+        if ( batch.isEmpty() )
+        {
+            return;
+        }
+        for(final Map.Entry<ServiceReference<?>, ComponentChangeListener> entry : listeners.entrySet())
+        {
+            try
+            {
+                entry.getValue().componentsChanged(batch);
+            }
+            catch ( final Throwable t )
+            {
+                logger.log(Level.WARN, "Component change listener {0} threw an exception", t, entry.getKey());
+            }
+        }
+    }
+
+    @Override
+    public void serviceChanged(final ServiceEvent event)
+    {
+        switch ( event.getType() )
+        {
+            case ServiceEvent.REGISTERED:
+                addListener(event.getServiceReference());
+                break;
+            case ServiceEvent.UNREGISTERING:
+            case ServiceEvent.MODIFIED_ENDMATCH:
+                removeListener(event.getServiceReference());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void addListener(final ServiceReference<?> ref)
+    {
+        final BundleContext bundleContext = this.context;
+        if ( bundleContext != null && !listeners.containsKey(ref) )
+        {
+            final Object service = bundleContext.getService(ref);
+            // a concurrent registration event might have added the listener already,
+            // each successful get is balanced with an unget
+            if ( !(service instanceof ComponentChangeListener)
+                || listeners.putIfAbsent(ref, (ComponentChangeListener) service) != null )
+            {
+                if ( service != null )
+                {
+                    bundleContext.ungetService(ref);
+                }
+            }
+        }
+    }
+
+    private void removeListener(final ServiceReference<?> ref)
+    {
+        if ( listeners.remove(ref) != null )
+        {
+            final BundleContext bundleContext = this.context;
+            if ( bundleContext != null )
+            {
+                try
+                {
+                    bundleContext.ungetService(ref);
+                }
+                catch ( final IllegalStateException ise )
+                {
+                    // bundle context is already invalid
+                }
+            }
+        }
+    }
+}
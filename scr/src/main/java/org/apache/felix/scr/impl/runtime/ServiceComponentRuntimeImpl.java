@@ -18,12 +18,15 @@
  */
 package org.apache.felix.scr.impl.runtime;
 
+import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.apache.felix.scr.impl.ComponentRegistry;
 import org.apache.felix.scr.impl.manager.ComponentHolder;
@@ -46,6 +49,19 @@ import org.osgi.service.component.runtime.dto.UnsatisfiedReferenceDTO;
 import org.osgi.util.promise.Promise;
 import org.osgi.util.promise.Promises;
 
+/**
+ * Implementation of the {@link ServiceComponentRuntime}.
+ * <p>
+ * Apart from the bundle, a component description only depends on the immutable
+ * component metadata, therefore the metadata part of the description DTO of a
+ * component is created once. The holders and their descriptions are kept as a
+ * snapshot together with the change count of the {@link ComponentRegistry} it
+ * has been created for, it is only rebuilt once the change count differs.
+ * Callers always get copies of the cached descriptions with a bundle DTO
+ * reflecting the current state of the bundle.
+ * Configuration DTOs are always created on request as they contain the bound
+ * services which might change without a change of the change count.
+ */
 public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime
 {
     private static final String[] EMPTY = {};
@@ -53,6 +69,27 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime
     private final BundleContext context;
     private final ComponentRegistry componentRegistry;
 
+    /**
+     * Description DTOs without the bundle by component holder, removed once the holder is gone.
+     * These are never handed out, callers get copies.
+     */
+    private final Map<ComponentHolder<?>, ComponentDescriptionDTO> descriptions = Collections.synchronizedMap(new WeakHashMap<ComponentHolder<?>, ComponentDescriptionDTO>());
+
+    /** All holders and their descriptions for a change count of the registry. */
+    private volatile DescriptionSnapshot snapshot;
+
+    private static final class DescriptionSnapshot
+    {
+        final long changeCount;
+        final Map<ComponentHolder<?>, ComponentDescriptionDTO> descriptions;
+
+        DescriptionSnapshot(final long changeCount, final Map<ComponentHolder<?>, ComponentDescriptionDTO> descriptions)
+        {
+            this.changeCount = changeCount;
+            this.descriptions = descriptions;
+        }
+    }
+
     public ServiceComponentRuntimeImpl(final BundleContext context, final ComponentRegistry componentRegistry)
     {
         this.context = context;
@@ -65,20 +102,40 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime
     @Override
     public Collection<ComponentDescriptionDTO> getComponentDescriptionDTOs(Bundle... bundles)
     {
-        List<ComponentHolder<?>> holders;
-        if (bundles == null || bundles.length == 0)
-        {
-            holders = componentRegistry.getComponentHolders();
-        }
-        else
+        final boolean all = bundles == null || bundles.length == 0;
+        if ( all )
         {
-            holders = componentRegistry.getComponentHolders(bundles);
+            // read the change count before the holders, a concurrent change results in a newer count
+            final long changeCount = componentRegistry.getChangeCount();
+            DescriptionSnapshot current = this.snapshot;
+            if ( current == null || current.changeCount != changeCount )
+            {
+                final List<ComponentHolder<?>> holders = componentRegistry.getComponentHolders();
+                final Map<ComponentHolder<?>, ComponentDescriptionDTO> templates = new LinkedHashMap<>();
+                for (ComponentHolder<?> holder: holders)
+                {
+                    templates.put(holder, getTemplate(holder));
+                }
+                current = new DescriptionSnapshot(changeCount, templates);
+                this.snapshot = current;
+            }
+            final List<ComponentDescriptionDTO> result = new ArrayList<>(current.descriptions.size());
+            for (Map.Entry<ComponentHolder<?>, ComponentDescriptionDTO> entry : current.descriptions.entrySet())
+            {
+                final ComponentDescriptionDTO dto = copyDescription(entry.getKey(), entry.getValue());
+                if ( dto != null )
+                {
+                    result.add(dto);
+                }
+            }
+            return result;
         }
 
-        List<ComponentDescriptionDTO> result = new ArrayList<>(holders.size());
+        final List<ComponentHolder<?>> holders = componentRegistry.getComponentHolders(bundles);
+        final List<ComponentDescriptionDTO> result = new ArrayList<>(holders.size());
         for (ComponentHolder<?> holder: holders)
         {
-            ComponentDescriptionDTO dto = holderToDescription(holder);
+            ComponentDescriptionDTO dto = getDescription(holder);
             if ( dto != null )
             {
                 result.add(dto);
@@ -96,7 +153,7 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime
         ComponentHolder<?> holder = componentRegistry.getComponentHolder(bundle, name);
         if ( holder != null )
         {
-            return holderToDescription(holder);
+            return getDescription(holder);
         }
         else
         {
@@ -122,7 +179,7 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime
                 return Collections.emptyList();
             }
             // Get a fully filled out valid description DTO
-            description = holderToDescription(holder);
+            description = getDescription(holder);
             if ( description == null)
             {
                 return Collections.emptyList();
@@ -315,17 +372,102 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime
         return componentRegistry.getComponentHolder(b, name);
     }
 
-    private ComponentDescriptionDTO holderToDescription( ComponentHolder<?> holder )
+    /**
+     * Get the description DTO for the holder
+     * @param holder The component holder
+     * @return The description or {@code null} if the bundle is not active anymore
+     */
+    private ComponentDescriptionDTO getDescription( final ComponentHolder<?> holder )
+    {
+        return copyDescription(holder, getTemplate(holder));
+    }
+
+    /**
+     * Get the cached description DTO without the bundle for the holder, the DTO is
+     * created on first access
+     * @param holder The component holder
+     * @return The cached description
+     */
+    private ComponentDescriptionDTO getTemplate( final ComponentHolder<?> holder )
+    {
+        ComponentDescriptionDTO dto = descriptions.get(holder);
+        if ( dto == null )
+        {
+            dto = holderToDescription(holder);
+            descriptions.put(holder, dto);
+        }
+        return dto;
+    }
+
+    /**
+     * Copy a cached description DTO and add the current state of the bundle.
+     * @param holder The component holder
+     * @param template The cached description
+     * @return The description or {@code null} if the bundle is not active anymore
+     */
+    private ComponentDescriptionDTO copyDescription( final ComponentHolder<?> holder, final ComponentDescriptionDTO template )
     {
         ComponentDescriptionDTO dto = new ComponentDescriptionDTO();
-        ComponentMetadata m = holder.getComponentMetadata();
-        dto.activate = m.getActivate();
         dto.bundle = bundleToDTO(holder.getActivator().getBundleContext());
         // immediately return if bundle is not active anymore
         if ( dto.bundle == null )
         {
             return null;
         }
+        dto.activate = template.activate;
+        dto.configurationPid = template.configurationPid.clone();
+        dto.configurationPolicy = template.configurationPolicy;
+        dto.deactivate = template.deactivate;
+        dto.defaultEnabled = template.defaultEnabled;
+        dto.factory = template.factory;
+        dto.immediate = template.immediate;
+        dto.implementationClass = template.implementationClass;
+        dto.modified = template.modified;
+        dto.name = template.name;
+        dto.properties = copyProperties(template.properties);
+        dto.references = new ReferenceDTO[template.references.length];
+        for (int i = 0; i < template.references.length; i++)
+        {
+            dto.references[i] = copyReference(template.references[i]);
+        }
+        dto.scope = template.scope;
+        dto.serviceInterfaces = template.serviceInterfaces.clone();
+        // DS 1.4
+        dto.factoryProperties = template.factoryProperties == null ? null : copyProperties(template.factoryProperties);
+        dto.activationFields = template.activationFields.clone();
+        dto.init = template.init;
+        return dto;
+    }
+
+    /**
+     * Copy the properties of a cached description, array values are copied
+     * as well so callers can't change the cached description.
+     * @param source The cached properties
+     * @return The copy
+     */
+    private Map<String, Object> copyProperties(final Map<String, Object> source)
+    {
+        final Map<String, Object> result = new HashMap<>(source.size());
+        for (final Map.Entry<String, Object> entry : source.entrySet())
+        {
+            Object value = entry.getValue();
+            if (value != null && value.getClass().isArray())
+            {
+                final int length = Array.getLength(value);
+                final Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+                System.arraycopy(value, 0, copy, 0, length);
+                value = copy;
+            }
+            result.put(entry.getKey(), value);
+        }
+        return result;
+    }
+
+    private ComponentDescriptionDTO holderToDescription( ComponentHolder<?> holder )
+    {
+        ComponentDescriptionDTO dto = new ComponentDescriptionDTO();
+        ComponentMetadata m = holder.getComponentMetadata();
+        dto.activate = m.getActivate();
         dto.configurationPid = m.getConfigurationPid().toArray(new String[m.getConfigurationPid().size()]);
         dto.configurationPolicy = m.getConfigurationPolicy();
         dto.deactivate = m.getDeactivate();
@@ -419,6 +561,27 @@ public class ServiceComponentRuntimeImpl implements ServiceComponentRuntime
         return dtos;
     }
 
+    private ReferenceDTO copyReference(final ReferenceDTO source)
+    {
+        ReferenceDTO dto = new ReferenceDTO();
+        dto.bind = source.bind;
+        dto.cardinality = source.cardinality;
+        dto.field = source.field;
+        dto.fieldOption = source.fieldOption;
+        dto.interfaceName = source.interfaceName;
+        dto.name = source.name;
+        dto.policy = source.policy;
+        dto.policyOption = source.policyOption;
+        dto.scope = source.scope;
+        dto.target = source.target;
+        dto.unbind = source.unbind;
+        dto.updated = source.updated;
+        // DS 1.4
+        dto.parameter = source.parameter;
+        dto.collectionType = source.collectionType;
+        return dto;
+    }
+
     private BundleDTO bundleToDTO(BundleContext bundleContext)
     {
         if (bundleContext == null)
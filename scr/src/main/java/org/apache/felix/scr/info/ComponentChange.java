@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.info;
+
+/**
+ * A change of a component description or of a component configuration
+ * as reported to a {@link ComponentChangeListener}.
+ * <p>
+ * Each change carries the generation of the component runtime it belongs
+ * to. The generation is the value the {@code service.changecount} property
+ * of the {@code ServiceComponentRuntime} service has after this change.
+ *
+ * @since 1.1
+ */
+public final class ComponentChange
+{
+
+    /** The type of a change. */
+    public enum Type
+    {
+        /** A component description has been added. */
+        DESCRIPTION_ADDED,
+
+        /** A component description has been removed. */
+        DESCRIPTION_REMOVED,
+
+        /** The state of a component configuration changed. */
+        CONFIGURATION_CHANGED
+    }
+
+    private final long generation;
+
+    private final Type type;
+
+    private final long bundleId;
+
+    private final String name;
+
+    private final long configurationId;
+
+    private final int state;
+
+    /**
+     * Create a new change.
+     * @param generation The generation of the component runtime
+     * @param type The type of the change
+     * @param bundleId The id of the bundle declaring the component
+     * @param name The name of the component
+     * @param configurationId The id of the component configuration or {@code -1}
+     * @param state The state of the component configuration as defined by
+     *        {@code ComponentConfigurationDTO} or {@code -1}
+     */
+    public ComponentChange(final long generation,
+            final Type type,
+            final long bundleId,
+            final String name,
+            final long configurationId,
+            final int state)
+    {
+        this.generation = generation;
+        this.type = type;
+        this.bundleId = bundleId;
+        this.name = name;
+        this.configurationId = configurationId;
+        this.state = state;
+    }
+
+    /**
+     * The generation of the component runtime after this change.
+     * @return The generation
+     */
+    public long getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * The type of this change.
+     * @return The type
+     */
+    public Type getType()
+    {
+        return type;
+    }
+
+    /**
+     * The id of the bundle declaring the component.
+     * @return The bundle id
+     */
+    public long getBundleId()
+    {
+        return bundleId;
+    }
+
+    /**
+     * The name of the component.
+     * @return The component name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * The id of the component configuration.
+     * @return The id or {@code -1} if this change is about a component description
+     */
+    public long getConfigurationId()
+    {
+        return configurationId;
+    }
+
+    /**
+     * The new state of the component configuration, one of the state
+     * constants of {@code ComponentConfigurationDTO}.
+     * @return The state or {@code -1} if this change is about a component description
+     */
+    public int getState()
+    {
+        return state;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ComponentChange [generation=" + generation + ", type=" + type + ", bundleId=" + bundleId
+            + ", name=" + name + ", configurationId=" + configurationId + ", state=" + state + "]";
+    }
+}
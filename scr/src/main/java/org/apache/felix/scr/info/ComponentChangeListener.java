@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.info;
+
+import java.util.List;
+
+/**
+ * Services registered under this interface are informed about changes
+ * of the components managed by the service component runtime.
+ * <p>
+ * Instead of polling the {@code ServiceComponentRuntime} and comparing the
+ * returned DTOs, a listener receives the changes as they happen. Changes are
+ * delivered asynchronously and in order, possibly combined into batches.
+ * A listener registered while components are already active only receives
+ * changes happening after its registration and should query the
+ * {@code ServiceComponentRuntime} once to get the initial state.
+ *
+ * @since 1.1
+ */
+public interface ComponentChangeListener
+{
+
+    /**
+     * Inform about changes of components.
+     * @param changes The changes in the order they occurred, never empty
+     */
+    void componentsChanged(List<ComponentChange> changes);
+}
@@ -166,6 +166,11 @@ public class SingleComponentManagerTest
             // TODO Auto-generated method stub
         }
 
+        @Override
+        public void componentStateChanged(AbstractComponentManager<?> manager) {
+            // nothing to do
+        }
+
         @Override
         public BundleLogger getLogger() {
             return bundleLogger;
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.apache.felix.scr.impl.logger.ScrLogger;
+import org.apache.felix.scr.info.ComponentChange;
+import org.apache.felix.scr.info.ComponentChangeListener;
+import org.mockito.Mockito;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.runtime.dto.ComponentConfigurationDTO;
+
+import junit.framework.TestCase;
+
+public class ComponentChangeNotifierTest extends TestCase
+{
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private final Executor executor = new Executor()
+    {
+        @Override
+        public void execute(Runnable command)
+        {
+            tasks.add(command);
+        }
+    };
+
+    private final List<List<ComponentChange>> received = new ArrayList<>();
+
+    private final ComponentChangeListener listener = new ComponentChangeListener()
+    {
+        @Override
+        public void componentsChanged(List<ComponentChange> changes)
+        {
+            received.add(new ArrayList<>(changes));
+        }
+    };
+
+    private void runTasks()
+    {
+        final List<Runnable> current = new ArrayList<>(tasks);
+        tasks.clear();
+        for (Runnable r : current)
+        {
+            r.run();
+        }
+    }
+
+    private ComponentChange change(long generation)
+    {
+        return new ComponentChange(generation, ComponentChange.Type.CONFIGURATION_CHANGED, 5, "test", 1,
+            ComponentConfigurationDTO.ACTIVE);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void testBatchedDelivery() throws Exception
+    {
+        final ServiceReference ref = Mockito.mock(ServiceReference.class);
+        final BundleContext context = Mockito.mock(BundleContext.class);
+        Mockito.when(context.getServiceReferences(ComponentChangeListener.class.getName(), null)).thenReturn(new ServiceReference[] {ref});
+        Mockito.when(context.getService(ref)).thenReturn(listener);
+
+        final ComponentChangeNotifier notifier = new ComponentChangeNotifier(Mockito.mock(ScrLogger.class), executor);
+        notifier.start(context);
+        assertTrue(notifier.hasListeners());
+
+        notifier.fire(change(1));
+        notifier.fire(change(2));
+        assertEquals(1, tasks.size());
+        runTasks();
+
+        assertEquals(1, received.size());
+        assertEquals(2, received.get(0).size());
+        assertEquals(1, received.get(0).get(0).getGeneration());
+        assertEquals(2, received.get(0).get(1).getGeneration());
+
+        notifier.fire(change(3));
+        runTasks();
+        assertEquals(2, received.size());
+        assertEquals(3, received.get(1).get(0).getGeneration());
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void testListenerRemoved() throws Exception
+    {
+        final ServiceReference ref = Mockito.mock(ServiceReference.class);
+        final BundleContext context = Mockito.mock(BundleContext.class);
+        Mockito.when(context.getService(ref)).thenReturn(listener);
+
+        final ComponentChangeNotifier notifier = new ComponentChangeNotifier(Mockito.mock(ScrLogger.class), executor);
+        notifier.start(context);
+        assertFalse(notifier.hasListeners());
+
+        // without listeners nothing is scheduled
+        notifier.fire(change(1));
+        assertTrue(tasks.isEmpty());
+
+        notifier.serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, ref));
+        assertTrue(notifier.hasListeners());
+
+        notifier.serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, ref));
+        assertFalse(notifier.hasListeners());
+        Mockito.verify(context).ungetService(ref);
+
+        notifier.fire(change(2));
+        assertTrue(tasks.isEmpty());
+        assertTrue(received.isEmpty());
+    }
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void testStopReleasesListeners() throws Exception
+    {
+        final ServiceReference ref = Mockito.mock(ServiceReference.class);
+        final BundleContext context = Mockito.mock(BundleContext.class);
+        Mockito.when(context.getServiceReferences(ComponentChangeListener.class.getName(), null)).thenReturn(new ServiceReference[] {ref});
+        Mockito.when(context.getService(ref)).thenReturn(listener);
+
+        final ComponentChangeNotifier notifier = new ComponentChangeNotifier(Mockito.mock(ScrLogger.class), executor);
+        notifier.start(context);
+
+        // a registration event for a known listener does not get the service again
+        notifier.serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, ref));
+        Mockito.verify(context).getService(ref);
+
+        notifier.fire(change(1));
+        notifier.stop();
+        assertFalse(notifier.hasListeners());
+        Mockito.verify(context).removeServiceListener(notifier);
+        Mockito.verify(context).ungetService(ref);
+
+        runTasks();
+        assertTrue(received.isEmpty());
+    }
+
+}
@@ -20,16 +20,28 @@ package org.apache.felix.scr.impl.runtime;
 
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
 
+import org.apache.felix.scr.impl.ComponentRegistry;
+import org.apache.felix.scr.impl.logger.ScrLogger;
+import org.apache.felix.scr.impl.manager.ComponentActivator;
+import org.apache.felix.scr.impl.manager.ComponentHolder;
+import org.apache.felix.scr.impl.manager.ScrConfiguration;
+import org.apache.felix.scr.impl.metadata.ComponentMetadata;
+import org.apache.felix.scr.impl.metadata.DSVersion;
 import org.mockito.Mockito;
 import org.osgi.dto.DTO;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
+import org.osgi.framework.Version;
 import org.osgi.framework.dto.BundleDTO;
 import org.osgi.framework.dto.ServiceReferenceDTO;
+import org.osgi.service.component.runtime.dto.ComponentDescriptionDTO;
 
 import junit.framework.TestCase;
 
@@ -74,6 +86,72 @@ public class ServiceComponentRuntimeImplTest extends TestCase
         equalsToString(Arrays.asList(new String[] {"foo", "bar"}), scr);
     }
 
+    public void testDescriptionSnapshot() throws Exception
+    {
+        final Bundle bundle = Mockito.mock(Bundle.class);
+        Mockito.when(bundle.getBundleId()).thenReturn(42L);
+        Mockito.when(bundle.getVersion()).thenReturn(new Version("1.0.0"));
+        Mockito.when(bundle.getLastModified()).thenReturn(1000L);
+        Mockito.when(bundle.getState()).thenReturn(Bundle.ACTIVE);
+
+        final ComponentRegistry registry = new ComponentRegistry(Mockito.mock(ScrConfiguration.class),
+            Mockito.mock(ScrLogger.class), Mockito.mock(ScheduledExecutorService.class));
+        final ComponentHolder<?> first = registerComponentHolder(registry, bundle, "first");
+
+        final ServiceComponentRuntimeImpl scr = new ServiceComponentRuntimeImpl(Mockito.mock(BundleContext.class), registry);
+        final List<ComponentDescriptionDTO> descriptions = (List<ComponentDescriptionDTO>) scr.getComponentDescriptionDTOs();
+        assertEquals(1, descriptions.size());
+        assertEquals("first", descriptions.get(0).name);
+        assertEquals(1000L, descriptions.get(0).bundle.lastModified);
+
+        // changes of the returned descriptions are not visible to other callers
+        descriptions.get(0).name = "changed";
+        descriptions.get(0).properties.put("changed", Boolean.TRUE);
+        ((String[]) descriptions.get(0).properties.get("array"))[0] = "changed";
+        Mockito.when(bundle.getLastModified()).thenReturn(2000L);
+
+        final List<ComponentDescriptionDTO> unchanged = (List<ComponentDescriptionDTO>) scr.getComponentDescriptionDTOs();
+        assertEquals(1, unchanged.size());
+        assertNotSame(descriptions.get(0), unchanged.get(0));
+        assertEquals("first", unchanged.get(0).name);
+        assertFalse(unchanged.get(0).properties.containsKey("changed"));
+        assertEquals("a", ((String[]) unchanged.get(0).properties.get("array"))[0]);
+        assertEquals(2000L, unchanged.get(0).bundle.lastModified);
+
+        // the description of a holder is only created once
+        Mockito.verify(first, Mockito.times(1)).getComponentMetadata();
+
+        registerComponentHolder(registry, bundle, "second");
+        final Collection<ComponentDescriptionDTO> changed = scr.getComponentDescriptionDTOs();
+        assertEquals(2, changed.size());
+        Mockito.verify(first, Mockito.times(1)).getComponentMetadata();
+    }
+
+    private ComponentHolder<?> registerComponentHolder(final ComponentRegistry registry, final Bundle bundle, final String name) throws Exception
+    {
+        final ComponentMetadata metadata = new ComponentMetadata(DSVersion.DS14);
+        metadata.setName(name);
+        metadata.setImplementationClassName("place.holder.implementation");
+        metadata.validate();
+        metadata.getProperties().put("array", new String[] {"a", "b"});
+
+        final BundleContext bundleContext = Mockito.mock(BundleContext.class);
+        Mockito.when(bundleContext.getBundle()).thenReturn(bundle);
+        final ComponentActivator activator = Mockito.mock(ComponentActivator.class);
+        Mockito.when(activator.getBundleContext()).thenReturn(bundleContext);
+        final ComponentHolder<?> holder = Mockito.mock(ComponentHolder.class);
+        Mockito.when(holder.getComponentMetadata()).thenReturn(metadata);
+        Mockito.when(holder.getActivator()).thenReturn(activator);
+
+        final Method check = ComponentRegistry.class.getDeclaredMethod("checkComponentName", Bundle.class, String.class);
+        check.setAccessible(true);
+        final Method register = ComponentRegistry.class.getDeclaredMethod("registerComponentHolder", check.getReturnType(), ComponentHolder.class);
+        register.setAccessible(true);
+        register.invoke(registry, check.invoke(registry, bundle, name), holder);
+        Mockito.clearInvocations(holder);
+        return holder;
+    }
+
     private void equalsToString(Object o, ServiceComponentRuntimeImpl scr)
     {
         assertEquals(String.valueOf(o), scr.convert(o));
@@ -21,17 +21,35 @@ package org.apache.felix.bundleplugin;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -59,6 +77,8 @@ import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
 import org.apache.maven.shared.dependency.graph.DependencyNode;
 import org.codehaus.plexus.util.FileUtils;
 
+import aQute.bnd.header.OSGiHeader;
+import aQute.bnd.osgi.About;
 import aQute.bnd.osgi.Analyzer;
 import aQute.bnd.osgi.Jar;
 
@@ -124,6 +144,35 @@ public class BundleAllPlugin extends ManifestPlugin
     @Parameter
     private int depth = Integer.MAX_VALUE;
 
+    /**
+     * Number of threads wrapping the dependencies, artifacts not depending on each other are wrapped concurrently.
+     */
+    @Parameter( property = "bundleall.threads", defaultValue = "1" )
+    private int threads = 1;
+
+    /**
+     * Directory caching the wrapped bundles by a digest of their inputs, unchanged artifacts are
+     * copied from the cache instead of being wrapped again. No cache is used if not set.
+     */
+    @Parameter( property = "bundleall.cacheDirectory" )
+    private File cacheDirectory;
+
+    /**
+     * Classpath jars shared between the builders of all wrapped artifacts.
+     */
+    private final Map<File, SharedJar> m_classpathJars = new ConcurrentHashMap<>();
+
+    /**
+     * Digests of the files and directories used as input, see {@link #getCacheKey(MavenProject, ClassPathItem[])}.
+     * The output directory is not memoized as the wrapped bundles are written to it.
+     */
+    private final Map<File, String> m_digests = new ConcurrentHashMap<>();
+
+    /**
+     * Bundles being built concurrently, they are not used on the classpath before they are complete.
+     */
+    private final Set<File> m_pendingOutputs = ConcurrentHashMap.newKeySet();
+
 
     @Override
     public void execute() throws MojoExecutionException
@@ -158,16 +207,34 @@ public class BundleAllPlugin extends ManifestPlugin
      */
     protected BundleInfo bundleAll( MavenProject project, int maxDepth ) throws MojoExecutionException
     {
-        if ( alreadyBundled( project.getArtifact() ) )
+        List<MavenProject> projects = new ArrayList<>();
+        collect( project, maxDepth, projects, new HashSet<>() );
+        return wrap( projects );
+    }
+
+
+    /**
+     * Collect the projects to bundle, each project is added after all its children
+     *
+     * @param project
+     * @param maxDepth how deep to process the dependency tree
+     * @param projects the projects to bundle in the order they would be bundled sequentially
+     * @param collected the keys of the projects already collected
+     * @throws MojoExecutionException
+     */
+    private void collect( MavenProject project, int maxDepth, List<MavenProject> projects, Set<String> collected )
+        throws MojoExecutionException
+    {
+        if ( alreadyBundled( project.getArtifact() ) || collected.contains( getBundleName( project.getArtifact() ) ) )
         {
             getLog().debug( "Ignoring project already processed " + project.getArtifact() );
-            return null;
+            return;
         }
 
         if ( m_artifactsBeingProcessed.contains( project.getArtifact() ) )
         {
             getLog().warn( "Ignoring artifact due to dependency cycle " + project.getArtifact() );
-            return null;
+            return;
         }
         m_artifactsBeingProcessed.add( project.getArtifact() );
 
@@ -185,12 +252,11 @@ public class BundleAllPlugin extends ManifestPlugin
             throw new MojoExecutionException( "Unable to build dependency tree", e );
         }
 
-        BundleInfo bundleInfo = new BundleInfo();
-
         if ( dependencyTree.getChildren().isEmpty() )
         {
             /* no need to traverse the tree */
-            return bundleRoot( project, bundleInfo );
+            collectRoot( project, projects, collected );
+            return;
         }
 
         getLog().debug( "Will bundle the following dependency tree" + LS + dependencyTree );
@@ -267,11 +333,7 @@ public class BundleAllPlugin extends ManifestPlugin
             if ( ( Artifact.SCOPE_COMPILE.equals( artifact.getScope() ) )
                 || ( Artifact.SCOPE_RUNTIME.equals( artifact.getScope() ) ) )
             {
-                BundleInfo subBundleInfo = bundleAll( childProject, maxDepth - 1 );
-                if ( subBundleInfo != null )
-                {
-                    bundleInfo.merge( subBundleInfo );
-                }
+                collect( childProject, maxDepth - 1, projects, collected );
             }
             else
             {
@@ -281,32 +343,151 @@ public class BundleAllPlugin extends ManifestPlugin
             }
         }
 
-        return bundleRoot( project, bundleInfo );
+        collectRoot( project, projects, collected );
     }
 
 
     /**
-     * Bundle the root of a dependency tree after all its children have been bundled
+     * Collect the root of a dependency tree after all its children have been collected
      *
      * @param project
-     * @param bundleInfo
-     * @return
-     * @throws MojoExecutionException
+     * @param projects
+     * @param collected
      */
-    private BundleInfo bundleRoot( MavenProject project, BundleInfo bundleInfo ) throws MojoExecutionException
+    private void collectRoot( MavenProject project, List<MavenProject> projects, Set<String> collected )
     {
         /* do not bundle the project the mojo was called on */
         if ( getProject() != project )
         {
             getLog().debug( "Project artifact location: " + project.getArtifact().getFile() );
 
-            BundleInfo subBundleInfo = bundle( project );
-            if ( subBundleInfo != null )
+            collected.add( getBundleName( project.getArtifact() ) );
+            projects.add( project );
+        }
+    }
+
+
+    /**
+     * Bundle the collected projects. With more than one thread a project is bundled as soon as the
+     * projects it depends on, which are collected before it, have been bundled.
+     *
+     * @param projects the projects in the order they would be bundled sequentially
+     * @return the merged bundle information
+     * @throws MojoExecutionException
+     */
+    protected BundleInfo wrap( List<MavenProject> projects ) throws MojoExecutionException
+    {
+        BundleInfo bundleInfo = new BundleInfo();
+        ExecutorService executor = null;
+        try
+        {
+            if ( threads <= 1 || projects.size() <= 1 )
+            {
+                for ( MavenProject project : projects )
+                {
+                    merge( bundleInfo, bundle( project ) );
+                }
+                return bundleInfo;
+            }
+
+            executor = Executors.newFixedThreadPool( Math.min( threads, projects.size() ) );
+            for ( MavenProject project : projects )
+            {
+                m_pendingOutputs.add( getOutputFile( project.getArtifact() ) );
+            }
+            Map<String, CompletableFuture<BundleInfo>> wrapped = new HashMap<>();
+            List<CompletableFuture<BundleInfo>> results = new ArrayList<>();
+            for ( MavenProject project : projects )
+            {
+                /* dependencies bundled before are on the classpath of the project */
+                List<CompletableFuture<BundleInfo>> dependencies = new ArrayList<>();
+                for ( Artifact dependency : getDependencies( project ) )
+                {
+                    CompletableFuture<BundleInfo> result = wrapped.get( getArtifactKey( dependency ) );
+                    if ( result != null )
+                    {
+                        dependencies.add( result );
+                    }
+                }
+
+                CompletableFuture<BundleInfo> result = CompletableFuture
+                    .allOf( dependencies.toArray( new CompletableFuture[dependencies.size()] ) )
+                    .thenApplyAsync( v -> {
+                        try
+                        {
+                            return bundle( project );
+                        }
+                        catch ( MojoExecutionException e )
+                        {
+                            throw new CompletionException( e );
+                        }
+                        finally
+                        {
+                            m_pendingOutputs.remove( getOutputFile( project.getArtifact() ) );
+                        }
+                    }, executor );
+                wrapped.put( getArtifactKey( project.getArtifact() ), result );
+                results.add( result );
+            }
+
+            for ( CompletableFuture<BundleInfo> result : results )
             {
-                bundleInfo.merge( subBundleInfo );
+                try
+                {
+                    merge( bundleInfo, result.join() );
+                }
+                catch ( CompletionException e )
+                {
+                    if ( e.getCause() instanceof MojoExecutionException )
+                    {
+                        throw ( MojoExecutionException ) e.getCause();
+                    }
+                    if ( e.getCause() instanceof RuntimeException )
+                    {
+                        throw ( RuntimeException ) e.getCause();
+                    }
+                    throw e;
+                }
             }
+            return bundleInfo;
+        }
+        finally
+        {
+            if ( executor != null )
+            {
+                executor.shutdownNow();
+            }
+            m_pendingOutputs.clear();
+            for ( SharedJar jar : m_classpathJars.values() )
+            {
+                jar.dispose();
+            }
+            m_classpathJars.clear();
         }
-        return bundleInfo;
+    }
+
+
+    private static void merge( BundleInfo bundleInfo, BundleInfo subBundleInfo )
+    {
+        if ( subBundleInfo != null )
+        {
+            bundleInfo.merge( subBundleInfo );
+        }
+    }
+
+
+    private static Collection<Artifact> getDependencies( MavenProject project )
+    {
+        Set<Artifact> dependencies = new LinkedHashSet<>();
+        if ( project.getArtifacts() != null )
+        {
+            dependencies.addAll( project.getArtifacts() );
+        }
+        if ( project.getDependencyArtifacts() != null )
+        {
+            dependencies.addAll( project.getDependencyArtifacts() );
+        }
+        return dependencies;
     }
 
 
@@ -340,7 +521,28 @@ public class BundleAllPlugin extends ManifestPlugin
                 //                    + " to the same file, try cleaning: " + outputFile );
             }
 
-            Analyzer analyzer = getAnalyzer( project, instructions, getClasspath( project) );
+            ClassPathItem[] classpath = getClasspath( project );
+
+            File cachedFile = null;
+            if ( cacheDirectory != null )
+            {
+                cachedFile = new File( cacheDirectory, getCacheKey( project, classpath ) + ".jar" );
+                if ( cachedFile.isFile() )
+                {
+                    getLog().info( "Using cached bundle for " + artifact );
+                    outputFile.getAbsoluteFile().getParentFile().mkdirs();
+                    FileUtils.copyFile( cachedFile, outputFile );
+                    try ( Jar cachedJar = new Jar( project.getArtifactId(), outputFile ) )
+                    {
+                        Manifest manifest = cachedJar.getManifest();
+                        String exportHeader = manifest != null
+                            ? manifest.getMainAttributes().getValue( Analyzer.EXPORT_PACKAGE ) : null;
+                        return addExportedPackages( project, OSGiHeader.parseHeader( exportHeader ).keySet() );
+                    }
+                }
+            }
+
+            Analyzer analyzer = getAnalyzer( project, instructions, classpath );
 
             Jar osgiJar = new Jar( project.getArtifactId(), project.getArtifact().getFile() );
 
@@ -372,6 +574,11 @@ public class BundleAllPlugin extends ManifestPlugin
             analyzer.close();
             osgiJar.close();
 
+            if ( cachedFile != null )
+            {
+                storeInCache( outputFile, cachedFile );
+            }
+
             return bundleInfo;
         }
         /* too bad Jar.write throws Exception */
@@ -383,6 +590,185 @@ public class BundleAllPlugin extends ManifestPlugin
     }
 
 
+    /**
+     * Classpath jars are only read by the builders, when wrapping concurrently share them instead of reading them
+     * again for every artifact. See {@link SharedJar} for the concurrent access.
+     */
+    @Override
+    protected Jar getClasspathJar( ClassPathItem item ) throws IOException
+    {
+        if ( threads <= 1 )
+        {
+            return super.getClasspathJar( item );
+        }
+
+        SharedJar jar = m_classpathJars.get( item.file );
+        if ( jar == null )
+        {
+            jar = new SharedJar( item.id, item.file );
+            SharedJar existing = m_classpathJars.putIfAbsent( item.file, jar );
+            if ( existing != null )
+            {
+                jar.dispose();
+                jar = existing;
+            }
+        }
+        return jar;
+    }
+
+
+    /**
+     * The cache key is a digest of everything the wrapped bundle is created from: the plugin and bnd versions,
+     * the artifact and its pom, the import instruction, the output directory analyzed by {@link #getAnalyzer}
+     * without the bundles wrapped into it and the classpath.
+     */
+    private String getCacheKey( MavenProject project, ClassPathItem[] classpath ) throws IOException
+    {
+        MessageDigest digest = newDigest();
+        update( digest, getCreatedByVersion( "org.apache.felix", "maven-bundle-plugin" ) );
+        update( digest, About.CURRENT.toString() );
+        update( digest, getArtifactKey( project.getArtifact() ) + ":" + project.getVersion() );
+        update( digest, wrapImportPackage );
+        update( digest, getDigest( project.getArtifact().getFile() ) );
+        if ( project.getFile() != null )
+        {
+            update( digest, getDigest( project.getFile() ) );
+        }
+        if ( getOutputDirectory() != null )
+        {
+            update( digest, getDigest( getOutputDirectory() ) );
+        }
+        for ( ClassPathItem item : classpath )
+        {
+            update( digest, item.id );
+            update( digest, getDigest( item.file ) );
+        }
+        return toHex( digest.digest() );
+    }
+
+
+    private String getDigest( File file ) throws IOException
+    {
+        if ( file.equals( getOutputDirectory() ) )
+        {
+            /* the wrapped bundles are written to the output directory while it is digested, leave them out */
+            return digest( file, true );
+        }
+
+        String digest = m_digests.get( file );
+        if ( digest == null )
+        {
+            digest = digest( file, false );
+            m_digests.put( file, digest );
+        }
+        return digest;
+    }
+
+
+    private String digest( File file, boolean excludeBundles ) throws IOException
+    {
+        MessageDigest md = newDigest();
+        if ( file.isDirectory() )
+        {
+            Path root = file.toPath();
+            List<Path> files;
+            try ( Stream<Path> paths = Files.walk( root ) )
+            {
+                files = paths.filter( Files::isRegularFile )
+                    .filter( path -> !excludeBundles || !isBundle( root, path ) )
+                    .sorted().collect( Collectors.toList() );
+            }
+            for ( Path path : files )
+            {
+                update( md, root.relativize( path ).toString() );
+                update( md, path );
+            }
+        }
+        else if ( file.isFile() )
+        {
+            update( md, file.toPath() );
+        }
+        return toHex( md.digest() );
+    }
+
+
+    /**
+     * Whether the file is written by {@link #getOutputFile(Artifact)}
+     */
+    private static boolean isBundle( Path outputDirectory, Path path )
+    {
+        return outputDirectory.equals( path.getParent() ) && path.getFileName().toString().endsWith( ".jar" );
+    }
+
+
+    private void storeInCache( File outputFile, File cachedFile )
+    {
+        try
+        {
+            cachedFile.getParentFile().mkdirs();
+            File tmpFile = File.createTempFile( cachedFile.getName(), ".tmp", cachedFile.getParentFile() );
+            try
+            {
+                FileUtils.copyFile( outputFile, tmpFile );
+                Files.move( tmpFile.toPath(), cachedFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE );
+            }
+            finally
+            {
+                tmpFile.delete();
+            }
+        }
+        catch ( IOException e )
+        {
+            getLog().warn( "Unable to cache bundle " + outputFile + " in " + cachedFile.getParentFile(), e );
+        }
+    }
+
+
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-256" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+
+    private static void update( MessageDigest digest, String value )
+    {
+        digest.update( String.valueOf( value ).getBytes( StandardCharsets.UTF_8 ) );
+        digest.update( ( byte ) 0 );
+    }
+
+
+    private static void update( MessageDigest digest, Path file ) throws IOException
+    {
+        byte[] buffer = new byte[8192];
+        try ( InputStream in = Files.newInputStream( file ) )
+        {
+            for ( int n = in.read( buffer ); n != -1; n = in.read( buffer ) )
+            {
+                digest.update( buffer, 0, n );
+            }
+        }
+    }
+
+
+    private static String toHex( byte[] bytes )
+    {
+        StringBuilder buf = new StringBuilder( bytes.length * 2 );
+        for ( byte b : bytes )
+        {
+            buf.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( b & 0xf, 16 ) );
+        }
+        return buf.toString();
+    }
+
+
     private boolean isOsgi( Jar jar ) throws Exception
     {
         if ( jar.getManifest() != null )
@@ -431,6 +817,12 @@ public class BundleAllPlugin extends ManifestPlugin
     @Override
     protected File getFile( final Artifact artifact )
     {
+        if ( m_pendingOutputs.contains( getOutputFile( artifact ) ) )
+        {
+            /* same as bundling sequentially, where the bundle is not yet built */
+            return super.getFile( artifact );
+        }
+
         File bundle = getBuiltFile( artifact );
 
         if ( bundle != null )
@@ -577,4 +969,34 @@ public class BundleAllPlugin extends ManifestPlugin
 
         }
     }
+
+
+    /**
+     * A classpath jar shared between builders, closing it is deferred until all artifacts are bundled.
+     * <p>
+     * bnd's {@link Jar} is not thread safe, sharing it relies on the builders only reading their classpath:
+     * the entries of the jar are all read when it is opened and its resources read from the underlying zip
+     * file, which supports concurrent readers. Lazily computed state like the manifest may be computed more
+     * than once but always to the same value. The shared jars must not be modified.
+     */
+    private static final class SharedJar extends Jar
+    {
+        SharedJar( String name, File file ) throws IOException
+        {
+            super( name, file );
+        }
+
+
+        @Override
+        public void close()
+        {
+            /* the builders close their classpath, see dispose */
+        }
+
+
+        void dispose()
+        {
+            super.close();
+        }
+    }
 }
@@ -630,7 +630,7 @@ public class BundlePlugin extends AbstractMojo
             List<Jar> jars = new ArrayList<>();
             for ( int i = 0; i < classpath.length; i++ ) {
                 if ( classpath[i].file.exists() ) {
-                    jars.add( new Jar( classpath[i].id, classpath[i].file ) );
+                    jars.add( getClasspathJar( classpath[i] ) );
                 }
             }
             builder.setClasspath( jars );
@@ -640,6 +640,19 @@ public class BundlePlugin extends AbstractMojo
     }
 
 
+    /**
+     * Open a classpath entry of the builder
+     *
+     * @param item the classpath entry
+     * @return the jar, closed with the builder
+     * @throws IOException if the entry can't be read
+     */
+    protected Jar getClasspathJar( ClassPathItem item ) throws IOException
+    {
+        return new Jar( item.id, item.file );
+    }
+
+
     protected static Properties sanitize( Properties properties )
     {
         // convert any non-String keys/values to Strings
@@ -1221,7 +1234,7 @@ public class BundlePlugin extends AbstractMojo
         builder.setJar( jar );
     }
 
-    private static String getCreatedByVersion( String groupId, String artifactId )
+    protected static String getCreatedByVersion( String groupId, String artifactId )
     {
         try
         {
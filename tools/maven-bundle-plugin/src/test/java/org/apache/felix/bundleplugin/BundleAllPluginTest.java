@@ -21,8 +21,15 @@ package org.apache.felix.bundleplugin;
  */
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.DefaultArtifact;
@@ -31,6 +38,7 @@ import org.apache.maven.artifact.handler.DefaultArtifactHandler;
 import org.apache.maven.artifact.versioning.VersionRange;
 import org.apache.maven.plugin.testing.stubs.ArtifactStub;
 import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
 
 
 /**
@@ -54,7 +62,13 @@ public class BundleAllPluginTest extends AbstractBundlePluginTest
 
     private void init() throws Exception
     {
-        plugin = new BundleAllPlugin();
+        init( new BundleAllPlugin() );
+    }
+
+
+    private void init( BundleAllPlugin plugin ) throws Exception
+    {
+        this.plugin = plugin;
         File baseDirectory = new File( getBasedir() );
         File buildDirectory = new File( baseDirectory, "target" );
         plugin.setBuildDirectory( buildDirectory.getPath() );
@@ -120,6 +134,130 @@ public class BundleAllPluginTest extends AbstractBundlePluginTest
             exports.containsKey( "org.apache.maven.model.io.xpp3" ) );
     }
 
+    public void testCache() throws Exception
+    {
+        File cacheDirectory = getTestFile( "target/bundleall-cache" );
+        FileUtils.deleteDirectory( cacheDirectory );
+        setVariableValueToObject( plugin, "cacheDirectory", cacheDirectory );
+
+        MavenProject project = getProject( "artifact" );
+        project.getArtifact().setFile( getTestBundle() );
+        File outputFile = plugin.getOutputFile( project.getArtifact() );
+        outputFile.delete();
+
+        BundleInfo bundleInfo = plugin.bundle( project );
+        assertTrue( bundleInfo.getExportedPackages().containsKey( "org.apache.maven.model" ) );
+        File[] cachedFiles = cacheDirectory.listFiles();
+        assertEquals( 1, cachedFiles.length );
+
+        /* the same inputs use the cached bundle instead of wrapping the artifact again */
+        File cachedBundle = getTestFile( "src/test/resources/aopalliance-1.0.jar" );
+        FileUtils.copyFile( cachedBundle, cachedFiles[0] );
+        outputFile.delete();
+
+        bundleInfo = plugin.bundle( project );
+        assertTrue( bundleInfo.getExportedPackages().isEmpty() );
+        assertTrue( FileUtils.contentEquals( cachedBundle, outputFile ) );
+
+        /* bundles wrapped into the output directory do not change the key */
+        File otherBundle = new File( outputFile.getParentFile(), "group.other_1.0.0.jar" );
+        FileUtils.copyFile( cachedBundle, otherBundle );
+        try
+        {
+            init();
+            setVariableValueToObject( plugin, "cacheDirectory", cacheDirectory );
+            outputFile.delete();
+
+            bundleInfo = plugin.bundle( project );
+            assertTrue( bundleInfo.getExportedPackages().isEmpty() );
+            assertEquals( 1, cacheDirectory.listFiles().length );
+        }
+        finally
+        {
+            otherBundle.delete();
+        }
+
+        /* other instructions miss the cache */
+        setVariableValueToObject( plugin, "wrapImportPackage", "org.apache.maven.model.*" );
+        outputFile.delete();
+
+        bundleInfo = plugin.bundle( project );
+        assertTrue( bundleInfo.getExportedPackages().containsKey( "org.apache.maven.model" ) );
+        assertEquals( 2, cacheDirectory.listFiles().length );
+    }
+
+
+    public void testConcurrentWrapping() throws Exception
+    {
+        final List<String> events = Collections.synchronizedList( new ArrayList<String>() );
+        final CountDownLatch bWrapped = new CountDownLatch( 1 );
+        init( new BundleAllPlugin()
+        {
+            @Override
+            protected BundleInfo bundle( MavenProject project )
+            {
+                String name = project.getArtifactId();
+                events.add( "start " + name );
+                if ( "a".equals( name ) )
+                {
+                    /* b does not depend on a, so it is wrapped while a is */
+                    try
+                    {
+                        assertTrue( bWrapped.await( 10, TimeUnit.SECONDS ) );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        throw new IllegalStateException( e );
+                    }
+                }
+                BundleInfo bundleInfo = new BundleInfo();
+                bundleInfo.addExportedPackage( "org." + name, project.getArtifact() );
+                events.add( "end " + name );
+                if ( "b".equals( name ) )
+                {
+                    bWrapped.countDown();
+                }
+                return bundleInfo;
+            }
+        } );
+        setVariableValueToObject( plugin, "threads", 3 );
+
+        MavenProject a = getProject( "a" );
+        MavenProject b = getProject( "b" );
+        MavenProject c = getProject( "c", a, b );
+        BundleInfo bundleInfo = plugin.wrap( Arrays.asList( a, b, c ) );
+
+        assertEquals( 3, bundleInfo.getExportedPackages().size() );
+        assertTrue( events.indexOf( "end b" ) < events.indexOf( "end a" ) );
+        /* c waits for its dependencies */
+        assertTrue( events.indexOf( "end a" ) < events.indexOf( "start c" ) );
+        assertTrue( events.indexOf( "end b" ) < events.indexOf( "start c" ) );
+    }
+
+
+    private MavenProject getProject( String artifactId, MavenProject... dependencies )
+    {
+        VersionRange versionRange = VersionRange.createFromVersion( "1.0.0.0" );
+        ArtifactHandler artifactHandler = new DefaultArtifactHandler( "jar" );
+        Artifact artifact = new DefaultArtifact( "group", artifactId, versionRange, Artifact.SCOPE_COMPILE, "jar",
+            null, artifactHandler );
+
+        Set<Artifact> artifacts = new LinkedHashSet<>();
+        for ( MavenProject dependency : dependencies )
+        {
+            artifacts.add( dependency.getArtifact() );
+        }
+
+        MavenProject project = getMavenProjectStub();
+        project.setGroupId( artifact.getGroupId() );
+        project.setArtifactId( artifact.getArtifactId() );
+        project.setVersion( artifact.getVersion() );
+        project.setArtifact( artifact );
+        project.setArtifacts( artifacts );
+        project.setDependencyArtifacts( artifacts );
+        return project;
+    }
+
     //    public void testRewriting()
     //        throws Exception
     //    {
@@ -0,0 +1,483 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.utils.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A streaming JSON pull parser.
+ *
+ * The input is read incrementally from a {@link Reader} and reported as a
+ * sequence of {@link Event events}, so documents of any size can be processed
+ * in constant memory. Parts of the document can still be materialized with
+ * {@link #getValue()}, using the same object representation as the
+ * {@link JSONParser}:
+ * <pre>
+ * JSONReader reader = new JSONReader(in);
+ * reader.next(); // START_OBJECT
+ * while (reader.next() == JSONReader.Event.KEY_NAME) {
+ *     String name = reader.getString();
+ *     if (reader.next() == JSONReader.Event.START_ARRAY &amp;&amp; "resources".equals(name)) {
+ *         while (reader.next() != JSONReader.Event.END_ARRAY) {
+ *             Map&lt;String, Object&gt; resource = (Map&lt;String, Object&gt;) reader.getValue();
+ *             ...
+ *         }
+ *     } else {
+ *         reader.skipChildren();
+ *     }
+ * }
+ * </pre>
+ */
+public class JSONReader implements Closeable {
+
+    /**
+     * The events reported by {@link JSONReader#next()}.
+     */
+    public enum Event {
+        START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, KEY_NAME,
+        VALUE_STRING, VALUE_NUMBER, VALUE_TRUE, VALUE_FALSE, VALUE_NULL
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private long consumed;
+
+    // the open objects (true) and arrays (false)
+    private boolean[] objects = new boolean[32];
+    private boolean first;
+    private int depth;
+    private boolean expectValue;
+    private boolean done;
+
+    private Event current;
+    private final StringBuilder text = new StringBuilder();
+    private boolean integral;
+
+    public JSONReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Creates a reader for the stream, whose encoding is inferred as described
+     * in section 3 of RFC 4627, defaulting to UTF-8.
+     * @param is The input stream to read.
+     * @throws IOException if the start of the stream cannot be read.
+     */
+    public JSONReader(InputStream is) throws IOException {
+        this(createReader(is));
+    }
+
+    /**
+     * @return whether the document has more events, i.e. whether the top level
+     * value has not been read completely yet.
+     * @throws IOException if reading from the underlying reader fails.
+     */
+    public boolean hasNext() throws IOException {
+        if (depth > 0 || expectValue) {
+            return true;
+        }
+        int c = skipWhitespace();
+        if (c == -1) {
+            return false;
+        }
+        if (done) {
+            throw error("Unexpected character after the end of the document: " + (char) c);
+        }
+        pos--;
+        return true;
+    }
+
+    /**
+     * Reads the next event.
+     * @return The event.
+     * @throws IOException if reading from the underlying reader fails.
+     * @throws IllegalArgumentException if the input is not well-formed JSON.
+     * @throws NoSuchElementException if there are no more events.
+     */
+    public Event next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int c = skipWhitespace();
+        if (depth == 0 || expectValue) {
+            expectValue = false;
+            return current = readValue(c);
+        }
+
+        boolean object = objects[depth - 1];
+        char closing = object ? '}' : ']';
+        if (c == closing) {
+            return current = end(object);
+        }
+        if (first) {
+            first = false;
+        } else if (c == ',') {
+            c = skipWhitespace();
+        } else {
+            throw error("Expected ',' or '" + closing + "' but found " + describe(c));
+        }
+
+        if (!object) {
+            return current = readValue(c);
+        }
+        if (c != '"') {
+            throw error("Expected a key but found " + describe(c));
+        }
+        readString();
+        c = skipWhitespace();
+        if (c != ':') {
+            throw error("Expected ':' but found " + describe(c));
+        }
+        expectValue = true;
+        return current = Event.KEY_NAME;
+    }
+
+    /**
+     * @return The text of the current {@link Event#KEY_NAME}, {@link Event#VALUE_STRING}
+     * or {@link Event#VALUE_NUMBER} event.
+     */
+    public String getString() {
+        if (current != Event.KEY_NAME && current != Event.VALUE_STRING && current != Event.VALUE_NUMBER) {
+            throw new IllegalStateException("No string value for " + current);
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return whether the current {@link Event#VALUE_NUMBER} has neither a
+     * fraction nor an exponent.
+     */
+    public boolean isIntegralNumber() {
+        checkNumber();
+        return integral;
+    }
+
+    public long getLong() {
+        checkNumber();
+        return integral ? Long.parseLong(text.toString()) : (long) Double.parseDouble(text.toString());
+    }
+
+    public double getDouble() {
+        checkNumber();
+        return Double.parseDouble(text.toString());
+    }
+
+    /**
+     * Materializes the value of the current event, consuming all events of
+     * nested objects and arrays. Objects are returned as a
+     * {@link java.util.Map Map&lt;String, Object&gt;}, arrays as a
+     * {@link java.util.List}, integral numbers as a {@link Long} (or a
+     * {@link Double} if they don't fit), other numbers as a {@link Double},
+     * booleans as a {@link Boolean} and strings as a {@link String}.
+     * @return The value.
+     * @throws IOException if reading from the underlying reader fails.
+     */
+    public Object getValue() throws IOException {
+        if (current == null) {
+            throw new IllegalStateException("next() has not been called");
+        }
+        switch (current) {
+        case START_OBJECT:
+            Map<String, Object> map = new HashMap<String, Object>();
+            while (next() != Event.END_OBJECT) {
+                String key = text.toString();
+                next();
+                map.put(key, getValue());
+            }
+            return map;
+        case START_ARRAY:
+            List<Object> list = new ArrayList<Object>();
+            while (next() != Event.END_ARRAY) {
+                list.add(getValue());
+            }
+            return list;
+        case VALUE_STRING:
+            return text.toString();
+        case VALUE_NUMBER:
+            if (integral) {
+                try {
+                    return Long.parseLong(text.toString());
+                } catch (NumberFormatException nfe) {
+                    // too large for a long
+                }
+            }
+            return Double.parseDouble(text.toString());
+        case VALUE_TRUE:
+            return Boolean.TRUE;
+        case VALUE_FALSE:
+            return Boolean.FALSE;
+        case VALUE_NULL:
+            return null;
+        default:
+            throw new IllegalStateException("No value for " + current);
+        }
+    }
+
+    /**
+     * Skips all events of the object or array started by the current event.
+     * Does nothing for any other event.
+     * @throws IOException if reading from the underlying reader fails.
+     */
+    public void skipChildren() throws IOException {
+        if (current == Event.START_OBJECT || current == Event.START_ARRAY) {
+            int level = depth;
+            while (depth >= level) {
+                next();
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private Event readValue(int c) throws IOException {
+        switch (c) {
+        case '{':
+            push(true);
+            return Event.START_OBJECT;
+        case '[':
+            push(false);
+            return Event.START_ARRAY;
+        case '"':
+            readString();
+            done = depth == 0;
+            return Event.VALUE_STRING;
+        case '-':
+        case '0': case '1': case '2': case '3': case '4':
+        case '5': case '6': case '7': case '8': case '9':
+            readNumber(c);
+            done = depth == 0;
+            return Event.VALUE_NUMBER;
+        case 't':
+        case 'T':
+        case 'f':
+        case 'F':
+        case 'n':
+        case 'N':
+            Event event = readLiteral(c);
+            done = depth == 0;
+            return event;
+        default:
+            throw error("Expected a value but found " + describe(c));
+        }
+    }
+
+    private void push(boolean object) {
+        if (depth == objects.length) {
+            boolean[] tmp = new boolean[depth * 2];
+            System.arraycopy(objects, 0, tmp, 0, depth);
+            objects = tmp;
+        }
+        objects[depth++] = object;
+        first = true;
+    }
+
+    private Event end(boolean object) {
+        depth--;
+        first = false;
+        done = depth == 0;
+        return object ? Event.END_OBJECT : Event.END_ARRAY;
+    }
+
+    private void readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            // copy runs of unescaped characters in one go
+            int start = pos;
+            while (pos < limit) {
+                char ch = buffer[pos];
+                if (ch == '"' || ch == '\\') {
+                    break;
+                }
+                pos++;
+            }
+            text.append(buffer, start, pos - start);
+
+            int c = read();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                c = read();
+                switch (c) {
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'u':
+                    int uc = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0) {
+                            throw error("Malformatted unicode escape");
+                        }
+                        uc = (uc << 4) | digit;
+                    }
+                    text.append((char) uc);
+                    break;
+                case -1:
+                    throw error("Unterminated string");
+                default:
+                    // \" \\ \/ and, leniently, any other escaped character
+                    text.append((char) c);
+                }
+            } else if (c == -1) {
+                throw error("Unterminated string");
+            } else {
+                // the run ended at the end of the buffer
+                text.append((char) c);
+            }
+        }
+    }
+
+    private void readNumber(int c) throws IOException {
+        text.setLength(0);
+        integral = true;
+        while (true) {
+            if (c == '.' || c == 'e' || c == 'E') {
+                integral = false;
+            } else if (!(c >= '0' && c <= '9') && c != '-' && c != '+') {
+                break;
+            }
+            text.append((char) c);
+            c = read();
+        }
+        if (c != -1) {
+            pos--;
+        }
+    }
+
+    private Event readLiteral(int c) throws IOException {
+        text.setLength(0);
+        while (Character.isLetter(c)) {
+            text.append((char) c);
+            c = read();
+        }
+        if (c != -1) {
+            pos--;
+        }
+        String literal = text.toString();
+        if ("true".equalsIgnoreCase(literal)) {
+            return Event.VALUE_TRUE;
+        } else if ("false".equalsIgnoreCase(literal)) {
+            return Event.VALUE_FALSE;
+        } else if ("null".equalsIgnoreCase(literal)) {
+            return Event.VALUE_NULL;
+        }
+        throw error("Unexpected literal " + literal);
+    }
+
+    private void checkNumber() {
+        if (current != Event.VALUE_NUMBER) {
+            throw new IllegalStateException("No number value for " + current);
+        }
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c = read();
+        while (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\uFEFF') {
+            c = read();
+        }
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (pos == limit) {
+            consumed += limit;
+            pos = 0;
+            limit = 0;
+            int len = reader.read(buffer, 0, buffer.length);
+            if (len <= 0) {
+                return -1;
+            }
+            limit = len;
+        }
+        return buffer[pos++];
+    }
+
+    private static String describe(int c) {
+        return c == -1 ? "end of input" : "'" + (char) c + "'";
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Malformatted JSON at character " + (consumed + pos) + ": " + message);
+    }
+
+    private static Reader createReader(InputStream is) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(is, 4);
+        byte[] bytes = new byte[4];
+        int length = 0;
+        for (int len = 0; length < bytes.length && (len = in.read(bytes, length, bytes.length - length)) != -1; ) {
+            length += len;
+        }
+        if (length > 0) {
+            in.unread(bytes, 0, length);
+        }
+
+        /* Infer the encoding as described in section 3 of http://www.ietf.org/rfc/rfc4627.txt
+         * from the pattern of nulls in the first four octets:
+         *
+         *         00 00 00 xx  UTF-32BE
+         *         00 xx 00 xx  UTF-16BE
+         *         xx 00 00 00  UTF-32LE
+         *         xx 00 xx 00  UTF-16LE
+         *         xx xx xx xx  UTF-8
+         *
+         * A UTF-16 Byte Order Mark (BOM) is handled by the UTF-16 decoder.
+         */
+        String encoding = "UTF-8";
+        if (length >= 2 && ((bytes[0] == -1 && bytes[1] == -2) || (bytes[0] == -2 && bytes[1] == -1))) {
+            encoding = "UTF-16";
+        } else if (length == 4) {
+            if (bytes[0] == 0 && bytes[1] == 0) {
+                encoding = "UTF-32BE";
+            } else if (bytes[2] == 0 && bytes[3] == 0) {
+                encoding = "UTF-32LE";
+            } else if (bytes[0] == 0) {
+                encoding = "UTF-16BE";
+            } else if (bytes[1] == 0) {
+                encoding = "UTF-16LE";
+            }
+        }
+        return new InputStreamReader(in, encoding);
+    }
+}
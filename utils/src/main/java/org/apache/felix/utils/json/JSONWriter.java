@@ -18,9 +18,13 @@
  */
 package org.apache.felix.utils.json;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.lang.reflect.Array;
+import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
@@ -28,10 +32,17 @@ import java.util.Map.Entry;
 
 /**
  * Simple JSON writer to be used on top of a {@link Writer}.
+ * <p>
+ * The output is written as it is produced, so documents of any size can be
+ * written in constant memory. Unless the writer is created for an
+ * {@link OutputStream}, it is not buffered by this class, so callers should
+ * provide a buffered {@link Writer} and call {@link #flush()} when done.
  */
 public class JSONWriter
 {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private final Writer pw;
 
     private boolean comma;
@@ -42,6 +53,16 @@ public class JSONWriter
         this.pw = pw;
     }
 
+    /**
+     * Creates a writer producing UTF-8 encoded output through a buffer. Call
+     * {@link #flush()} once the document is complete.
+     * @param out The output stream
+     */
+    public JSONWriter(final OutputStream out)
+    {
+        this(new BufferedWriter(new OutputStreamWriter(out, UTF_8), 8192));
+    }
+
     public JSONWriter object() throws IOException
     {
         if (this.comma)  this.pw.write(',');
@@ -197,9 +218,20 @@ public class JSONWriter
     {
         pw.write('"');
         final int len = value.length();
+        // start of the current run of characters not requiring escaping
+        int start = 0;
         for(int i=0;i<len;i++)
         {
             final char c = value.charAt(i);
+            if (!needsEscaping(c))
+            {
+                continue;
+            }
+            if (start < i)
+            {
+                pw.write(value, start, i - start);
+            }
+            start = i + 1;
             switch(c){
             case '"':
                 pw.write("\\\"");
@@ -226,23 +258,27 @@ public class JSONWriter
                 pw.write("\\/");
                 break;
             default:
-                if ((c>='\u0000' && c<='\u001F') || (c>='\u007F' && c<='\u009F') || (c>='\u2000' && c<='\u20FF'))
-                {
-                    final String hex=Integer.toHexString(c);
-                    pw.write("\\u");
-                    for(int k=0;k<4-hex.length();k++){
-                        pw.write('0');
-                    }
-                    pw.write(hex.toUpperCase());
-                }
-                else{
-                    pw.write(c);
+                final String hex=Integer.toHexString(c);
+                pw.write("\\u");
+                for(int k=0;k<4-hex.length();k++){
+                    pw.write('0');
                 }
+                pw.write(hex.toUpperCase());
             }
         }
+        if (start < len)
+        {
+            pw.write(value, start, len - start);
+        }
         pw.write('"');
     }
 
+    private static boolean needsEscaping(final char c)
+    {
+        return c == '"' || c == '\\' || c == '/'
+            || (c>='\u0000' && c<='\u001F') || (c>='\u007F' && c<='\u009F') || (c>='\u2000' && c<='\u20FF');
+    }
+
     /**
      * @see Writer#flush()
      * @throws IOException when the underlying writer throws an exception.
@@ -20,8 +20,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.felix.utils.resource.CapabilitySet;
 import org.apache.felix.utils.resource.RequirementImpl;
@@ -64,6 +66,50 @@ public class BaseRepository implements Repository {
         resources.add(resource);
     }
 
+    protected void removeResource(Resource resource) {
+        removeCapabilities(resource);
+        resources.remove(resource);
+    }
+
+    /**
+     * Replaces the content of this repository with the given resources.
+     * Resources which are already contained in this repository (compared by
+     * identity) keep their indexed capabilities, so that a refresh only has to
+     * index the resources which have been added and deindex the ones which
+     * have been removed.
+     */
+    protected void updateResources(Collection<Resource> newResources) {
+        Set<Resource> current = Collections.newSetFromMap(new IdentityHashMap<Resource, Boolean>());
+        current.addAll(resources);
+        Set<Resource> retained = Collections.newSetFromMap(new IdentityHashMap<Resource, Boolean>());
+        retained.addAll(newResources);
+        for (Resource resource : resources) {
+            if (!retained.contains(resource)) {
+                removeCapabilities(resource);
+            }
+        }
+        resources.clear();
+        retained.clear();
+        for (Resource resource : newResources) {
+            if (retained.add(resource)) {
+                if (current.contains(resource)) {
+                    resources.add(resource);
+                } else {
+                    addResource(resource);
+                }
+            }
+        }
+    }
+
+    private void removeCapabilities(Resource resource) {
+        for (Capability cap : resource.getCapabilities(null)) {
+            CapabilitySet cs = capSets.get(cap.getNamespace());
+            if (cs != null) {
+                cs.removeCapability(cap);
+            }
+        }
+    }
+
     public List<Resource> getResources() {
         return resources;
     }
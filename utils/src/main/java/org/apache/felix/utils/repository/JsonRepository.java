@@ -18,13 +18,16 @@ package org.apache.felix.utils.repository;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-import org.apache.felix.utils.json.JSONParser;
+import org.apache.felix.utils.json.JSONReader;
 import org.apache.felix.utils.resource.ResourceBuilder;
 import org.osgi.framework.BundleException;
 import org.osgi.resource.Capability;
@@ -36,11 +39,17 @@ import org.osgi.resource.Resource;
  * The json should be a map: the key is the resource uri and the
  * value is a map of resource headers.
  * The content of the URL can be gzipped.
+ * When the content changes, only the resources whose headers have
+ * changed are built and indexed again.
  */
 public class JsonRepository extends BaseRepository {
 
     private final UrlLoader loader;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<String, Map<String, String>> headers = Collections.emptyMap();
+    private Map<String, List<Resource>> resourcesByUri = Collections.emptyMap();
+    // Resources added by buildResource() while the content is read
+    private final ThreadLocal<List<Resource>> builtResources = new ThreadLocal<>();
 
     public JsonRepository(String url, long expiration) {
         loader = new UrlLoader(url, expiration) {
@@ -78,41 +87,98 @@ public class JsonRepository extends BaseRepository {
     }
 
     protected boolean doRead(InputStream is) throws IOException {
-        Map<String, Map<String, String>> metadatas = verify(new JSONParser(is).getParsed());
-        lock.writeLock().lock();
+        Map<String, Map<String, String>> oldHeaders;
+        Map<String, List<Resource>> oldResources;
+        lock.readLock().lock();
         try {
-            resources.clear();
-            capSets.clear();
-            for (Map.Entry<String, Map<String, String>> metadata : metadatas.entrySet()) {
-                buildResource(metadata.getKey(), metadata.getValue());
+            oldHeaders = headers;
+            oldResources = resourcesByUri;
+        } finally {
+            lock.readLock().unlock();
+        }
+        // Stream the entries and only build resources for new or modified headers,
+        // the repository is left untouched if the content can not be read
+        Map<String, Map<String, String>> newHeaders = new LinkedHashMap<>();
+        Map<String, List<Resource>> newResources = new LinkedHashMap<>();
+        JSONReader reader = new JSONReader(is);
+        if (reader.next() != JSONReader.Event.START_OBJECT) {
+            throw new IOException("Expected a JSON object");
+        }
+        while (reader.next() == JSONReader.Event.KEY_NAME) {
+            String uri = reader.getString();
+            reader.next();
+            Map<String, String> headerMap = verify(reader.getValue());
+            List<Resource> resources = oldResources.get(uri);
+            if (resources == null || !headerMap.equals(oldHeaders.get(uri))) {
+                resources = build(uri, headerMap);
             }
+            newHeaders.put(uri, headerMap);
+            newResources.put(uri, resources);
+        }
+        List<Resource> resources = new ArrayList<>();
+        for (List<Resource> r : newResources.values()) {
+            resources.addAll(r);
+        }
+        lock.writeLock().lock();
+        try {
+            updateResources(resources);
+            headers = newHeaders;
+            resourcesByUri = newResources;
             return true;
         } finally {
             lock.writeLock().unlock();
         }
     }
 
+    /**
+     * Build the resources of an entry with {@link #buildResource(String, Map)},
+     * the resources it adds are collected instead of being indexed.
+     */
+    private List<Resource> build(String uri, Map<String, String> headerMap) throws IOException {
+        List<Resource> resources = new ArrayList<>();
+        builtResources.set(resources);
+        try {
+            buildResource(uri, headerMap);
+        } finally {
+            builtResources.remove();
+        }
+        return resources;
+    }
+
+    @Override
+    protected void addResource(Resource resource) {
+        List<Resource> resources = builtResources.get();
+        if (resources != null) {
+            resources.add(resource);
+        } else {
+            super.addResource(resource);
+        }
+    }
+
+    /**
+     * Build the resources of an entry and add them with {@link #addResource(Resource)}.
+     * This method is only called for entries which are new or whose headers have changed.
+     */
     protected void buildResource(String uri, Map<String, String> headerMap) throws IOException {
+        addResource(createResource(uri, headerMap));
+    }
+
+    protected Resource createResource(String uri, Map<String, String> headerMap) throws IOException {
         try {
-            Resource resource = ResourceBuilder.build(uri, headerMap);
-            addResource(resource);
+            return ResourceBuilder.build(uri, headerMap);
         } catch (BundleException e) {
             throw new IOException("Unable to read resource: " + uri, e);
         }
     }
 
     @SuppressWarnings("unchecked")
-    private Map<String, Map<String, String>> verify(Object value) {
-        Map<?, ?> obj = Map.class.cast(value);
-        for (Map.Entry<?, ?> entry : obj.entrySet()) {
-            String.class.cast(entry.getKey());
-            Map<?, ?> child = Map.class.cast(entry.getValue());
-            for (Map.Entry<?, ?> ce : child.entrySet()) {
-                String.class.cast(ce.getKey());
-                String.class.cast(ce.getValue());
-            }
+    private Map<String, String> verify(Object value) {
+        Map<?, ?> child = Map.class.cast(value);
+        for (Map.Entry<?, ?> ce : child.entrySet()) {
+            String.class.cast(ce.getKey());
+            String.class.cast(ce.getValue());
         }
-        return (Map<String, Map<String, String>>) obj;
+        return (Map<String, String>) child;
     }
 
 }
@@ -19,6 +19,7 @@ package org.apache.felix.utils.repository;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -114,22 +115,22 @@ public class XmlRepository extends BaseRepository {
         if (checkAndLoadReferrals(url, Integer.MAX_VALUE)) {
             lock.writeLock().lock();
             try {
-                resources.clear();
-                capSets.clear();
-                populate(loaders.get(url).xml, Integer.MAX_VALUE);
+                // Documents which did not change keep their parsed resources,
+                // so only the resources of modified documents are reindexed
+                List<Resource> newResources = new ArrayList<>();
+                populate(loaders.get(url).xml, Integer.MAX_VALUE, newResources);
+                updateResources(newResources);
             } finally {
                 lock.writeLock().unlock();
             }
         }
     }
 
-    private void populate(StaxParser.XmlRepository xml, int hopCount) {
+    private void populate(StaxParser.XmlRepository xml, int hopCount, List<Resource> newResources) {
         if (hopCount > 0) {
-            for (Resource resource : xml.resources) {
-                addResource(resource);
-            }
+            newResources.addAll(xml.resources);
             for (StaxParser.Referral referral : xml.referrals) {
-                populate(loaders.get(referral.url).xml, Math.min(referral.depth, hopCount - 1));
+                populate(loaders.get(referral.url).xml, Math.min(referral.depth, hopCount - 1), newResources);
             }
         }
     }
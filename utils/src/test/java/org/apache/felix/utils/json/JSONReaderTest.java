@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.utils.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JSONReaderTest {
+    @Test
+    public void testEvents() throws Exception {
+        String json = "{\"a\": [1, 2.5, \"x\\ty\"], \"b\": {\"c\": true, \"d\": null}, \"e\": false}";
+        JSONReader reader = new JSONReader(new StringReader(json));
+
+        assertEquals(JSONReader.Event.START_OBJECT, reader.next());
+        assertEquals(JSONReader.Event.KEY_NAME, reader.next());
+        assertEquals("a", reader.getString());
+        assertEquals(JSONReader.Event.START_ARRAY, reader.next());
+        assertEquals(JSONReader.Event.VALUE_NUMBER, reader.next());
+        assertTrue(reader.isIntegralNumber());
+        assertEquals(1L, reader.getLong());
+        assertEquals(JSONReader.Event.VALUE_NUMBER, reader.next());
+        assertFalse(reader.isIntegralNumber());
+        assertEquals(2.5d, reader.getDouble(), 0.0001d);
+        assertEquals(JSONReader.Event.VALUE_STRING, reader.next());
+        assertEquals("x\ty", reader.getString());
+        assertEquals(JSONReader.Event.END_ARRAY, reader.next());
+        assertEquals(JSONReader.Event.KEY_NAME, reader.next());
+        assertEquals("b", reader.getString());
+        assertEquals(JSONReader.Event.START_OBJECT, reader.next());
+        reader.skipChildren();
+        assertEquals(JSONReader.Event.KEY_NAME, reader.next());
+        assertEquals("e", reader.getString());
+        assertEquals(JSONReader.Event.VALUE_FALSE, reader.next());
+        assertEquals(JSONReader.Event.END_OBJECT, reader.next());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGetValueOfNestedElements() throws Exception {
+        String json = "{\"resources\": [{\"id\": 1}, {\"id\": 2, \"tags\": [\"a\", \"b\"]}]}";
+        JSONReader reader = new JSONReader(new StringReader(json));
+        assertEquals(JSONReader.Event.START_OBJECT, reader.next());
+        assertEquals(JSONReader.Event.KEY_NAME, reader.next());
+        assertEquals(JSONReader.Event.START_ARRAY, reader.next());
+
+        assertEquals(JSONReader.Event.START_OBJECT, reader.next());
+        Map<String, Object> first = (Map<String, Object>) reader.getValue();
+        assertEquals(1L, first.get("id"));
+        assertEquals(JSONReader.Event.START_OBJECT, reader.next());
+        Map<String, Object> second = (Map<String, Object>) reader.getValue();
+        assertEquals(Arrays.asList("a", "b"), second.get("tags"));
+
+        assertEquals(JSONReader.Event.END_ARRAY, reader.next());
+        assertEquals(JSONReader.Event.END_OBJECT, reader.next());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void testLongStringsAcrossBuffers() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append((char) ('a' + i % 26));
+            if (i % 1000 == 0) {
+                sb.append("\"∂/");
+            }
+        }
+        String value = sb.toString();
+
+        StringWriter sw = new StringWriter();
+        new JSONWriter(sw).array().value(value).value(value).endArray().flush();
+
+        JSONReader reader = new JSONReader(new StringReader(sw.toString()));
+        assertEquals(JSONReader.Event.START_ARRAY, reader.next());
+        assertEquals(JSONReader.Event.VALUE_STRING, reader.next());
+        assertEquals(value, reader.getString());
+        assertEquals(JSONReader.Event.VALUE_STRING, reader.next());
+        assertEquals(value, reader.getString());
+        assertEquals(JSONReader.Event.END_ARRAY, reader.next());
+    }
+
+    @Test
+    public void testInputStreamEncodings() throws Exception {
+        String json = "{\"k\": \"ä∂\"}";
+        for (String encoding : new String[] {"UTF-8", "UTF-16BE", "UTF-16LE", "UTF-16"}) {
+            JSONParser jp = new JSONParser(new ByteArrayInputStream(json.getBytes(encoding)));
+            assertEquals(encoding, "ä∂", jp.getParsed().get("k"));
+        }
+        assertEquals(0, new JSONParser(new ByteArrayInputStream("{}".getBytes("UTF-8"))).getParsed().size());
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        for (String json : new String[] {"{\"a\" 1}", "{\"a\": 1,}", "[1 2]", "{\"a\": \"b", "[1]]", "{\"a\": xyz}"}) {
+            try {
+                new JSONParser(json);
+                fail("Expected failure for " + json);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testOutputStreamWriter() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JSONWriter writer = new JSONWriter(out);
+        writer.object().key("k").value("ä").endObject().flush();
+        assertEquals("{\"k\":\"ä\"}", new String(out.toByteArray(), "UTF-8"));
+    }
+}
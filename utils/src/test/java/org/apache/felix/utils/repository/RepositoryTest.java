@@ -23,14 +23,25 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.zip.GZIPOutputStream;
 
+import org.apache.felix.utils.resource.RequirementImpl;
 import org.junit.Test;
 import org.osgi.resource.Resource;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.osgi.framework.namespace.BundleNamespace.BUNDLE_NAMESPACE;
 import static org.osgi.framework.namespace.IdentityNamespace.IDENTITY_NAMESPACE;
 import static org.osgi.framework.namespace.PackageNamespace.PACKAGE_NAMESPACE;
@@ -67,6 +78,85 @@ public class RepositoryTest {
         verify(repo);
     }
 
+    @Test
+    public void testJsonRefresh() throws Exception {
+        File temp = File.createTempFile("repo", ".json");
+        try {
+            writeJson(temp, "1.0.0", "2.0.0");
+            JsonRepository repo = new JsonRepository(temp.toURI().toURL().toExternalForm(), 0);
+            assertEquals(2, repo.getResources().size());
+            Resource a = repo.getResources().get(0);
+            Resource b = repo.getResources().get(1);
+
+            writeJson(temp, "1.0.0", "2.0.1");
+            temp.setLastModified(temp.lastModified() + 2000);
+            assertEquals(2, repo.getResources().size());
+            assertSame(a, repo.getResources().get(0));
+            assertNotSame(b, repo.getResources().get(1));
+            assertEquals(2, repo.findProviders(Collections.singleton(
+                    new RequirementImpl(null, PACKAGE_NAMESPACE, null, null))).values().iterator().next().size());
+
+            writeJson(temp, "1.0.0", null);
+            temp.setLastModified(temp.lastModified() + 2000);
+            assertEquals(1, repo.getResources().size());
+            assertSame(a, repo.getResources().get(0));
+            assertEquals(1, repo.findProviders(Collections.singleton(
+                    new RequirementImpl(null, PACKAGE_NAMESPACE, null, null))).values().iterator().next().size());
+        } finally {
+            temp.delete();
+        }
+    }
+
+    @Test
+    public void testJsonBuildResource() throws Exception {
+        File temp = File.createTempFile("repo", ".json");
+        try {
+            writeJson(temp, "1.0.0", "2.0.0");
+            final List<String> built = new ArrayList<>();
+            JsonRepository repo = new JsonRepository(temp.toURI().toURL().toExternalForm(), 0) {
+                @Override
+                protected void buildResource(String uri, Map<String, String> headerMap) throws IOException {
+                    built.add(uri);
+                    if (!uri.contains("/b-")) {
+                        super.buildResource(uri, headerMap);
+                    }
+                }
+            };
+            assertEquals(1, repo.getResources().size());
+            assertEquals(2, built.size());
+            assertEquals(1, repo.findProviders(Collections.singleton(
+                    new RequirementImpl(null, PACKAGE_NAMESPACE, null, null))).values().iterator().next().size());
+
+            writeJson(temp, "1.0.0", "2.0.1");
+            temp.setLastModified(temp.lastModified() + 2000);
+            assertEquals(1, repo.getResources().size());
+            assertEquals(3, built.size());
+            assertTrue(built.get(2).contains("/b-2.0.1"));
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private static void writeJson(File file, String versionA, String versionB) throws IOException {
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            w.write("{");
+            w.write(jsonEntry("a", versionA));
+            if (versionB != null) {
+                w.write(",");
+                w.write(jsonEntry("b", versionB));
+            }
+            w.write("}");
+        }
+    }
+
+    private static String jsonEntry(String name, String version) {
+        return "\"http://www.acme.com/" + name + "-" + version + ".jar\": {"
+                + "\"Bundle-ManifestVersion\": \"2\", "
+                + "\"Bundle-SymbolicName\": \"" + name + "\", "
+                + "\"Bundle-Version\": \"" + version + "\", "
+                + "\"Export-Package\": \"" + name + "; version=" + version + "\"}";
+    }
+
     private void verify(BaseRepository repo) {
         assertNotNull(repo.getResources());
         assertEquals(1, repo.getResources().size());
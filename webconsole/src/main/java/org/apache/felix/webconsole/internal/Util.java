@@ -112,6 +112,17 @@ public class Util {
         Arrays.sort( bundles, new BundleNameComparator( locale ) );
     }
 
+    /**
+     * Returns the comparator used by {@link #sort(Bundle[], Locale)}.
+     *
+     * @param locale the locale, used to obtain the localized bundle name
+     * @return the comparator ordering bundles by name
+     */
+    public static Comparator<Bundle> getNameComparator( Locale locale )
+    {
+        return new BundleNameComparator( locale );
+    }
+
     /**
      * This method expects a locale string in format language_COUNTRY, or
      * language. The method will determine which is the correct form of locale
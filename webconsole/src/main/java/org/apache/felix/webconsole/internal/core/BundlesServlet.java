@@ -31,19 +31,24 @@ import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
@@ -60,12 +65,14 @@ import org.apache.felix.webconsole.servlet.RequestVariableResolver;
 import org.apache.felix.webconsole.servlet.ServletConstants;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.Constants;
 import org.osgi.framework.Filter;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.SynchronousBundleListener;
 import org.osgi.framework.Version;
 import org.osgi.framework.VersionRange;
 import org.osgi.framework.startlevel.BundleStartLevel;
@@ -101,6 +108,25 @@ public class BundlesServlet extends AbstractOsgiManagerPlugin implements Invento
     // an LDAP filter, that is used to search manifest headers, see FELIX-1441
     private static final String FILTER_PARAM = "filter";
 
+    // paging of the bundle list: index of the first and maximum number of bundles returned
+    private static final String OFFSET_PARAM = "offset";
+
+    private static final String LIMIT_PARAM = "limit";
+
+    // sorting of the bundle list: one of id, name, state or symbolicName and asc or desc
+    private static final String SORT_PARAM = "sort";
+
+    private static final String ORDER_PARAM = "order";
+
+    // change count of a previous response, only bundles changed since are returned
+    private static final String SINCE_PARAM = "since";
+
+    // number of locales the bundle summaries are cached for
+    private static final int MAX_SUMMARY_LOCALES = 8;
+
+    // number of uninstalled bundles remembered for delta requests
+    private static final int MAX_REMOVED_BUNDLES = 256;
+
     private static final String FIELD_STARTLEVEL = "bundlestartlevel";
 
     private static final String FIELD_START = "bundlestart";
@@ -136,6 +162,35 @@ public class BundlesServlet extends AbstractOsgiManagerPlugin implements Invento
 
     private ServiceRegistration<BundleInfoProvider> bipCapabilitiesRequired;
 
+    // invalidates the bundle summaries and records the bundle changes
+    private SynchronousBundleListener bundleListener;
+
+    // summaries of the bundles (without details) per bundle id for the recently used locales
+    private final Map<Locale, Map<Long, Map<String, Object>>> bundleSummaries = Collections.synchronizedMap(
+            new LinkedHashMap<Locale, Map<Long, Map<String, Object>>>( 16, 0.75f, true ) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry( final Map.Entry<Locale, Map<Long, Map<String, Object>>> eldest ) {
+                    return size() > MAX_SUMMARY_LOCALES;
+                }
+            });
+
+    // the change count is incremented for each bundle event
+    private final AtomicLong changeCount = new AtomicLong();
+
+    // change count of the last event per bundle id
+    private final Map<Long, Long> bundleChanges = new ConcurrentHashMap<>();
+
+    // change count of the uninstallation per bundle id
+    private final Map<Long, Long> removedBundles = new ConcurrentHashMap<>();
+
+    // the oldest change count deltas can be computed for, older uninstallations have been forgotten
+    private volatile long oldestSince;
+
+    // distinguishes the change counts of different activations in the etag
+    private volatile long activationTime;
+
     /**
      * Default constructor
      * @throws IOException If template can't be read
@@ -192,6 +247,16 @@ public class BundlesServlet extends AbstractOsgiManagerPlugin implements Invento
         });
         bundleInfoTracker.open();
 
+        activationTime = System.currentTimeMillis();
+        bundleListener = new SynchronousBundleListener() {
+
+            @Override
+            public void bundleChanged(final BundleEvent event) {
+                BundlesServlet.this.bundleChanged(event);
+            }
+        };
+        bundleContext.addBundleListener( bundleListener );
+
         // bootdelegation property parsing from Apache Felix R4SearchPolicyCore
         String bootDelegation = bundleContext.getProperty( Constants.FRAMEWORK_BOOTDELEGATION );
         bootDelegation = ( bootDelegation == null ) ? "java.*" : bootDelegation + ",java.*";
@@ -227,6 +292,19 @@ public class BundlesServlet extends AbstractOsgiManagerPlugin implements Invento
             bundleInfoTracker = null;
         }
 
+        if ( bundleListener != null ) {
+            try {
+                bundleContext.removeBundleListener( bundleListener );
+            } catch ( final IllegalStateException ise) {
+                // might happen on shutdown, ignore
+            }
+            bundleListener = null;
+        }
+        bundleSummaries.clear();
+        bundleChanges.clear();
+        removedBundles.clear();
+        oldestSince = 0;
+
         if ( bipCapabilitiesProvided != null ) {
             bipCapabilitiesProvided.unregister();
             bipCapabilitiesProvided = null;
@@ -245,7 +323,7 @@ public class BundlesServlet extends AbstractOsgiManagerPlugin implements Invento
     public void print(PrintWriter pw, Format format, boolean isZip) {
         try
         {
-            final Map<String, Object> map = createObjectStructure(null, null, null, true, Locale.ENGLISH, null, null );
+            final Map<String, Object> map = createObjectStructure(null, null, null, true, Locale.ENGLISH, null, null, null );
 
             pw.println( "Status: " + map.get( "status" ) );
             pw.println();
@@ -336,11 +414,36 @@ public class BundlesServlet extends AbstractOsgiManagerPlugin implements Invento
         }
         if ( reqInfo.extension.equals("json")  )
         {
+            ListOptions options = null;
+            if ( reqInfo.bundle == null )
+            {
+                try
+                {
+                    options = new ListOptions( request );
+                }
+                catch ( final NumberFormatException nfe )
+                {
+                    response.sendError( HttpServletResponse.SC_BAD_REQUEST, "Invalid paging parameter specified" );
+                    return;
+                }
+
+                // the bundle list only changes with bundle events, let clients revalidate cheaply
+                final String etag = getETag( options, request.getParameter( FILTER_PARAM ), request.getLocale() );
+                response.setHeader( "ETag", etag );
+                response.setHeader( "Cache-Control", "no-cache" );
+                response.addHeader( "Vary", "Accept-Language" );
+                if ( matchesETag( request.getHeader( "If-None-Match" ), etag ) )
+                {
+                    response.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+                    return;
+                }
+            }
+
             final String pluginRoot = ( String ) request.getAttribute( ServletConstants.ATTR_PLUGIN_ROOT );
             final String servicesRoot = getServicesRoot( request );
             try
             {
-                this.renderJSON(response, reqInfo.bundle, pluginRoot, servicesRoot, request.getLocale(), request.getParameter(FILTER_PARAM), null );
+                this.renderJSON(response, reqInfo.bundle, pluginRoot, servicesRoot, request.getLocale(), request.getParameter(FILTER_PARAM), options, null );
             }
             catch (InvalidSyntaxException e)
             {
@@ -439,7 +542,7 @@ public class BundlesServlet extends AbstractOsgiManagerPlugin implements Invento
             final String pluginRoot = ( String ) req.getAttribute( ServletConstants.ATTR_PLUGIN_ROOT );
             final String servicesRoot = getServicesRoot( req );
             try {
-                this.renderJSON( resp, null, pluginRoot, servicesRoot, req.getLocale(), req.getParameter(FILTER_PARAM), bundleException );
+                this.renderJSON( resp, null, pluginRoot, servicesRoot, req.getLocale(), req.getParameter(FILTER_PARAM), null, bundleException );
             } catch (InvalidSyntaxException e) {
                 resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Invalid LDAP filter specified");
             }
@@ -529,7 +632,7 @@ public class BundlesServlet extends AbstractOsgiManagerPlugin implements Invento
         StringWriter w = new StringWriter();
         try
         {
-            writeJSON(w, reqInfo.bundle, pluginRoot, servicesRoot, request.getLocale(), request.getParameter(FILTER_PARAM), null );
+            writeJSON(w, reqInfo.bundle, pluginRoot, servicesRoot, request.getLocale(), request.getParameter(FILTER_PARAM), null, null );
         }
         catch (InvalidSyntaxException e)
         {
@@ -541,32 +644,38 @@ public class BundlesServlet extends AbstractOsgiManagerPlugin implements Invento
         response.getWriter().print(TEMPLATE_MAIN);
     }
 
-    private void renderJSON( final HttpServletResponse response, final Bundle bundle, final String pluginRoot, final String servicesRoot, final Locale locale, final String filter, final BundleException be )
+    private void renderJSON( final HttpServletResponse response, final Bundle bundle, final String pluginRoot, final String servicesRoot, final Locale locale, final String filter,
+            final ListOptions options, final BundleException be )
             throws IOException, InvalidSyntaxException
     {
         response.setContentType( "application/json" );
         response.setCharacterEncoding( "UTF-8" );
 
         final PrintWriter pw = response.getWriter();
-        writeJSON(pw, bundle, pluginRoot, servicesRoot, locale, filter, be);
+        writeJSON(pw, bundle, pluginRoot, servicesRoot, locale, filter, options, be);
     }
 
 
-    private void writeJSON( final Writer pw, final Bundle bundle, final String pluginRoot, final String servicesRoot, final Locale locale, final String filter, final BundleException be )
+    private void writeJSON( final Writer pw, final Bundle bundle, final String pluginRoot, final String servicesRoot, final Locale locale, final String filter,
+            final ListOptions options, final BundleException be )
             throws IOException, InvalidSyntaxException
     {
-        final Map<String, Object> map = createObjectStructure( bundle, pluginRoot, servicesRoot, false, locale, filter, be );
+        final Map<String, Object> map = createObjectStructure( bundle, pluginRoot, servicesRoot, false, locale, filter, options, be );
         final JSONWriter writer = new JSONWriter(pw);
 
         writer.value(map);
     }
 
     private Map<String, Object> createObjectStructure( final Bundle bundle, final String pluginRoot,
-            final String servicesRoot, final boolean fullDetails, final Locale locale, final String filter, final BundleException be ) throws IOException, InvalidSyntaxException
+            final String servicesRoot, final boolean fullDetails, final Locale locale, final String filter,
+            final ListOptions options, final BundleException be ) throws IOException, InvalidSyntaxException
     {
+        // read the change count first: changes while building are reported again by the next delta
+        final long currentChangeCount = this.changeCount.get();
+        // deltas before the oldest remembered uninstallation would miss bundles, return the full list instead
+        final long since = ( options != null && options.since >= this.oldestSince && options.since <= currentChangeCount )
+                ? options.since : -1;
         final Bundle[] allBundles = this.getBundles();
-        final List<Object> status = getStatusLine(allBundles);
-        final String statusLine = (String) status.remove(5);
         // filter bundles by headers
         final Bundle[] bundles;
         if (bundle != null)
@@ -592,10 +701,81 @@ public class BundlesServlet extends AbstractOsgiManagerPlugin implements Invento
             bundles = allBundles;
         }
 
-        Util.sort( bundles, locale );
-
         final Map<String, Object> map = new LinkedHashMap<String, Object>();
 
+        if ( options == null )
+        {
+            Util.sort( bundles, locale );
+            fillObjectStructure( map, allBundles, bundles, bundle, pluginRoot, servicesRoot, fullDetails, locale, be );
+            return map;
+        }
+
+        // only report the bundles changed or removed since the given change count
+        Bundle[] listed = bundles;
+        final List<Long> removed = new ArrayList<>();
+        if ( since >= 0 )
+        {
+            final List<Bundle> changed = new ArrayList<>();
+            for ( final Bundle b : bundles )
+            {
+                if ( this.bundleChanges.getOrDefault( b.getBundleId(), 0L ) > since )
+                {
+                    changed.add( b );
+                }
+            }
+            listed = changed.toArray( new Bundle[changed.size()] );
+
+            for ( final Map.Entry<Long, Long> entry : this.removedBundles.entrySet() )
+            {
+                if ( entry.getValue() > since )
+                {
+                    removed.add( entry.getKey() );
+                }
+            }
+            // bundles no longer matching the filter are removed from the client's view
+            if ( bundles != allBundles )
+            {
+                final Set<Bundle> matching = new HashSet<>( Arrays.asList( bundles ) );
+                for ( final Bundle b : allBundles )
+                {
+                    if ( !matching.contains( b ) && this.bundleChanges.getOrDefault( b.getBundleId(), 0L ) > since )
+                    {
+                        removed.add( b.getBundleId() );
+                    }
+                }
+            }
+            Collections.sort( removed );
+        }
+
+        Arrays.sort( listed, options.getComparator( locale ) );
+
+        // page through the sorted list
+        final int total = listed.length;
+        if ( options.offset > 0 || options.limit > 0 )
+        {
+            final int from = Math.min( options.offset, total );
+            final int to = options.limit > 0 ? ( int ) Math.min( ( long ) from + options.limit, total ) : total;
+            listed = Arrays.copyOfRange( listed, from, to );
+        }
+
+        fillObjectStructure( map, allBundles, listed, null, pluginRoot, servicesRoot, false, locale, be );
+        map.put( "total", total );
+        map.put( "changeCount", currentChangeCount );
+        if ( since >= 0 )
+        {
+            map.put( "since", since );
+            map.put( "removed", removed.toArray() );
+        }
+        return map;
+    }
+
+    private void fillObjectStructure( final Map<String, Object> map, final Bundle[] allBundles, final Bundle[] bundles,
+            final Bundle bundle, final String pluginRoot, final String servicesRoot, final boolean fullDetails,
+            final Locale locale, final BundleException be )
+    {
+        final List<Object> status = getStatusLine(allBundles);
+        final String statusLine = (String) status.remove(5);
+
         if (null != be)
         {
             final StringWriter s = new StringWriter();
@@ -609,15 +789,112 @@ public class BundlesServlet extends AbstractOsgiManagerPlugin implements Invento
         // add raw status
         map.put( "s", status.toArray() );
 
+        final boolean details = fullDetails || bundle != null;
         final Object[] bundlesArray = new Object[bundles.length];
         for ( int i = 0; i < bundles.length; i++ )
         {
-            bundlesArray[i] =
-                    bundleInfo( bundles[i], fullDetails || bundle != null, pluginRoot, servicesRoot, locale );
+            bundlesArray[i] = details
+                    ? bundleInfo( bundles[i], true, pluginRoot, servicesRoot, locale )
+                    : bundleSummary( bundles[i], locale );
         }
 
         map.put("data", bundlesArray);
-        return map;
+    }
+
+    /**
+     * Returns the summary of the bundle for the list, the summaries are cached
+     * until the next event of the bundle.
+     */
+    private Map<String, Object> bundleSummary( final Bundle bundle, final Locale locale )
+    {
+        final Map<Long, Map<String, Object>> summaries = this.bundleSummaries.computeIfAbsent( locale, l -> new ConcurrentHashMap<>() );
+        final Long id = bundle.getBundleId();
+        Map<String, Object> summary = summaries.get( id );
+        if ( summary == null )
+        {
+            final long stamp = this.changeCount.get();
+            summary = bundleInfo( bundle, false, null, null, locale );
+            // events increment the count before invalidating, don't cache a summary which might be outdated already
+            if ( stamp == this.changeCount.get() )
+            {
+                summaries.putIfAbsent( id, summary );
+            }
+        }
+        return summary;
+    }
+
+    private void bundleChanged( final BundleEvent event )
+    {
+        final Long id = event.getBundle().getBundleId();
+        final long stamp = this.changeCount.incrementAndGet();
+        if ( event.getType() == BundleEvent.UNINSTALLED )
+        {
+            this.removedBundles.put( id, stamp );
+            this.bundleChanges.remove( id );
+            if ( this.removedBundles.size() > MAX_REMOVED_BUNDLES )
+            {
+                pruneRemovedBundles();
+            }
+        }
+        else
+        {
+            this.bundleChanges.put( id, stamp );
+        }
+        synchronized ( this.bundleSummaries )
+        {
+            for ( final Map<Long, Map<String, Object>> summaries : this.bundleSummaries.values() )
+            {
+                summaries.remove( id );
+            }
+        }
+    }
+
+    /**
+     * Forgets the older half of the remembered uninstallations, requests for
+     * changes before the newest forgotten one get the full list again.
+     */
+    private void pruneRemovedBundles()
+    {
+        synchronized ( this.removedBundles )
+        {
+            final List<Long> stamps = new ArrayList<>( this.removedBundles.values() );
+            if ( stamps.size() <= MAX_REMOVED_BUNDLES )
+            {
+                return;
+            }
+            Collections.sort( stamps );
+            final long oldest = stamps.get( stamps.size() - MAX_REMOVED_BUNDLES / 2 - 1 );
+            // raise the limit first, a concurrent delta must not miss the entries removed below
+            this.oldestSince = Math.max( this.oldestSince, oldest );
+            this.removedBundles.values().removeIf( stamp -> stamp <= oldest );
+        }
+    }
+
+    /**
+     * Returns the entity tag of the bundle list, it changes with every bundle
+     * event and differs for all parameters and locales the list depends on.
+     */
+    private String getETag( final ListOptions options, final String filter, final Locale locale )
+    {
+        final String variant = options.toString() + '|' + filter + '|' + locale;
+        return "\"" + Long.toString( this.activationTime, 36 ) + "-" + this.changeCount.get()
+                + "-" + Integer.toHexString( variant.hashCode() ) + "\"";
+    }
+
+    private static boolean matchesETag( final String ifNoneMatch, final String etag )
+    {
+        if ( ifNoneMatch != null )
+        {
+            for ( final String candidate : ifNoneMatch.split( "," ) )
+            {
+                final String value = candidate.trim();
+                if ( value.equals( etag ) || value.equals( "*" ) || value.equals( "W/" + etag ) )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     private List<Object> getStatusLine(final Bundle[] bundles)
@@ -1400,6 +1677,68 @@ public class BundlesServlet extends AbstractOsgiManagerPlugin implements Invento
         t.start();
     }
 
+    /**
+     * The paging, sorting and delta parameters of a bundle list request
+     */
+    private static final class ListOptions
+    {
+        final int offset;
+        final int limit;
+        final String sort;
+        final boolean descending;
+        final long since;
+
+        ListOptions( final HttpServletRequest request )
+        {
+            this.offset = Math.max( 0, getNumber( request, OFFSET_PARAM, 0 ) );
+            this.limit = Math.max( 0, getNumber( request, LIMIT_PARAM, 0 ) );
+            this.sort = request.getParameter( SORT_PARAM );
+            this.descending = "desc".equalsIgnoreCase( request.getParameter( ORDER_PARAM ) );
+            final String value = request.getParameter( SINCE_PARAM );
+            this.since = ( value == null || value.isEmpty() ) ? -1 : Long.parseLong( value );
+        }
+
+        /**
+         * Returns the normalized parameters, equal for all requests resulting in the same list
+         */
+        @Override
+        public String toString()
+        {
+            return "offset=" + offset + "&limit=" + limit + "&sort=" + sort + "&order=" + ( descending ? "desc" : "asc" )
+                    + "&since=" + Math.max( -1, since );
+        }
+
+        private static int getNumber( final HttpServletRequest request, final String name, final int defaultValue )
+        {
+            final String value = request.getParameter( name );
+            return ( value == null || value.isEmpty() ) ? defaultValue : Integer.parseInt( value );
+        }
+
+        Comparator<Bundle> getComparator( final Locale locale )
+        {
+            final Comparator<Bundle> byName = Util.getNameComparator( locale );
+            final Comparator<Bundle> comparator;
+            if ( "id".equals( sort ) )
+            {
+                comparator = Comparator.comparingLong( Bundle::getBundleId );
+            }
+            else if ( "state".equals( sort ) )
+            {
+                comparator = Comparator.comparingInt( Bundle::getState ).thenComparing( byName );
+            }
+            else if ( "symbolicName".equals( sort ) )
+            {
+                comparator = Comparator.comparing( Bundle::getSymbolicName, Comparator.nullsFirst( Comparator.<String>naturalOrder() ) )
+                        .thenComparing( byName );
+            }
+            else
+            {
+                comparator = byName;
+            }
+            return descending ? comparator.reversed() : comparator;
+        }
+    }
+
     private final class RequestInfo
     {
         public final String extension;
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.webconsole.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.felix.webconsole.servlet.ServletConstants;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.Constants;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+public class BundlesServletTest {
+
+    private final List<Bundle> bundles = new ArrayList<>();
+
+    private BundlesServlet servlet;
+
+    private BundleListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        bundles.add(mockBundle(1, "Charlie", Bundle.ACTIVE));
+        bundles.add(mockBundle(2, "alpha", Bundle.RESOLVED));
+        bundles.add(mockBundle(3, "Bravo", Bundle.INSTALLED));
+
+        final BundleContext bundleContext = Mockito.mock(BundleContext.class);
+        Mockito.when(bundleContext.getBundle()).thenReturn(Mockito.mock(Bundle.class));
+        Mockito.when(bundleContext.getBundles()).thenAnswer(invocation -> bundles.toArray(new Bundle[bundles.size()]));
+
+        servlet = new BundlesServlet();
+        servlet.activate(bundleContext);
+
+        final ArgumentCaptor<BundleListener> listenerCaptor = ArgumentCaptor.forClass(BundleListener.class);
+        Mockito.verify(bundleContext).addBundleListener(listenerCaptor.capture());
+        listener = listenerCaptor.getValue();
+    }
+
+    @Test
+    public void testSortingAndPaging() throws Exception {
+        assertEquals(Arrays.asList(2L, 3L, 1L), getIds(get("", null).body));
+        assertEquals(Arrays.asList(1L, 2L, 3L), getIds(get("sort=id", null).body));
+        assertEquals(Arrays.asList(3L, 2L, 1L), getIds(get("sort=id&order=desc", null).body));
+        assertEquals(Arrays.asList(3L, 2L, 1L), getIds(get("sort=state", null).body));
+
+        final Response page = get("sort=id&offset=1&limit=1", null);
+        assertEquals(Arrays.asList(2L), getIds(page.body));
+        assertEquals("3", getValue(page.body, "total"));
+
+        assertEquals(Arrays.asList(), getIds(get("offset=5", null).body));
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, get("limit=x", null).status);
+    }
+
+    @Test
+    public void testSince() throws Exception {
+        final Response full = get("", null);
+        assertEquals("0", getValue(full.body, "changeCount"));
+        assertFalse(full.body.contains("\"since\""));
+
+        listener.bundleChanged(new BundleEvent(BundleEvent.UPDATED, bundles.get(0)));
+        final Response changed = get("since=0", null);
+        assertEquals(Arrays.asList(1L), getIds(changed.body));
+        assertEquals("1", getValue(changed.body, "changeCount"));
+        assertEquals("0", getValue(changed.body, "since"));
+        assertEquals("[]", getValue(changed.body, "removed"));
+
+        final Bundle uninstalled = bundles.remove(2);
+        listener.bundleChanged(new BundleEvent(BundleEvent.UNINSTALLED, uninstalled));
+        final Response removed = get("since=1", null);
+        assertEquals(Arrays.asList(), getIds(removed.body));
+        assertEquals("[3]", getValue(removed.body, "removed"));
+
+        // a change count from the future results in the full list
+        assertEquals(Arrays.asList(2L, 1L), getIds(get("since=100", null).body));
+    }
+
+    @Test
+    public void testSinceBeforeForgottenUninstallations() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            listener.bundleChanged(new BundleEvent(BundleEvent.UNINSTALLED, mockBundle(100 + i, "Removed " + i, Bundle.UNINSTALLED)));
+        }
+
+        // the oldest uninstallations are forgotten, a delta from before would miss them
+        final Response full = get("since=0", null);
+        assertFalse(full.body.contains("\"since\""));
+        assertEquals(Arrays.asList(2L, 3L, 1L), getIds(full.body));
+
+        final Response delta = get("since=299", null);
+        assertEquals("299", getValue(delta.body, "since"));
+        assertEquals("[399]", getValue(delta.body, "removed"));
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        final Response first = get("sort=id&limit=2", null);
+        assertEquals(HttpServletResponse.SC_OK, first.status);
+
+        final Response unchanged = get("sort=id&limit=2", first.etag);
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, unchanged.status);
+        assertEquals("", unchanged.body);
+
+        // other parameters or locales result in other lists
+        assertNotEquals(first.etag, get("sort=id&limit=1", null).etag);
+        assertEquals(HttpServletResponse.SC_OK, get("sort=id&limit=1", first.etag).status);
+        assertEquals(HttpServletResponse.SC_OK, get("sort=id&limit=2", first.etag, Locale.GERMAN).status);
+
+        listener.bundleChanged(new BundleEvent(BundleEvent.STARTED, bundles.get(1)));
+        final Response changed = get("sort=id&limit=2", first.etag);
+        assertEquals(HttpServletResponse.SC_OK, changed.status);
+        assertTrue(changed.body.contains("\"data\""));
+    }
+
+    private Response get(final String query, final String ifNoneMatch) throws Exception {
+        return get(query, ifNoneMatch, Locale.ENGLISH);
+    }
+
+    private Response get(final String query, final String ifNoneMatch, final Locale locale) throws Exception {
+        final HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(request.getPathInfo()).thenReturn("/" + BundlesServlet.NAME + ".json");
+        Mockito.when(request.getLocale()).thenReturn(locale);
+        Mockito.when(request.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+        Mockito.when(request.getAttribute(ServletConstants.ATTR_APP_ROOT)).thenReturn("/system/console");
+        Mockito.when(request.getAttribute(ServletConstants.ATTR_PLUGIN_ROOT)).thenReturn("/system/console/bundles");
+        for (final String param : query.split("&")) {
+            if (!param.isEmpty()) {
+                final String[] nameValue = param.split("=", 2);
+                Mockito.when(request.getParameter(nameValue[0])).thenReturn(nameValue[1]);
+            }
+        }
+
+        final StringWriter body = new StringWriter();
+        final HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+        Mockito.when(response.getWriter()).thenReturn(new PrintWriter(body));
+
+        servlet.doGet(request, response);
+
+        final Response result = new Response();
+        result.body = body.toString();
+        final ArgumentCaptor<Integer> status = ArgumentCaptor.forClass(Integer.class);
+        Mockito.verify(response, Mockito.atMost(1)).setStatus(status.capture());
+        final ArgumentCaptor<Integer> error = ArgumentCaptor.forClass(Integer.class);
+        Mockito.verify(response, Mockito.atMost(1)).sendError(error.capture(), Mockito.anyString());
+        result.status = !error.getAllValues().isEmpty() ? error.getValue()
+                : !status.getAllValues().isEmpty() ? status.getValue() : HttpServletResponse.SC_OK;
+        final ArgumentCaptor<String> etag = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(response, Mockito.atMost(1)).setHeader(Mockito.eq("ETag"), etag.capture());
+        result.etag = etag.getAllValues().isEmpty() ? null : etag.getValue();
+        return result;
+    }
+
+    private static Bundle mockBundle(final long id, final String name, final int state) {
+        final Hashtable<String, String> headers = new Hashtable<>();
+        headers.put(Constants.BUNDLE_NAME, name);
+        headers.put(Constants.BUNDLE_VERSION, "1.0.0");
+
+        final Bundle bundle = Mockito.mock(Bundle.class);
+        Mockito.when(bundle.getBundleId()).thenReturn(id);
+        Mockito.when(bundle.getState()).thenReturn(state);
+        Mockito.when(bundle.getSymbolicName()).thenReturn("bundle" + id);
+        Mockito.when(bundle.getHeaders()).thenReturn(headers);
+        Mockito.when(bundle.getHeaders(Mockito.anyString())).thenReturn(headers);
+        return bundle;
+    }
+
+    private static List<Long> getIds(final String json) {
+        final List<Long> ids = new ArrayList<>();
+        final Matcher m = Pattern.compile("\"id\":(\\d+)").matcher(json);
+        while (m.find()) {
+            ids.add(Long.valueOf(m.group(1)));
+        }
+        return ids;
+    }
+
+    private static String getValue(final String json, final String name) {
+        final Matcher m = Pattern.compile("\"" + name + "\":(\\[[^\\]]*\\]|[^,}]*)").matcher(json);
+        return m.find() ? m.group(1) : null;
+    }
+
+    private static final class Response {
+        int status;
+        String etag;
+        String body;
+    }
+}